@@ -0,0 +1,46 @@
+package com.diamondq.cachly.micronaut.caffeine;
+
+import com.diamondq.cachly.micronaut.BulkOperations;
+import com.github.benmanes.caffeine.cache.Cache;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Performs the native bulk operations against a Caffeine cache.
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+@Singleton
+public class CaffeineBulkOperations implements BulkOperations {
+
+  @Override
+  public <K, V> @Nullable Map<K, V> getAll(Object pNativeCache, Collection<K> pKeys) {
+    if (pNativeCache instanceof Cache<?, ?> cm) {
+      @SuppressWarnings("unchecked") Cache<K, V> castedCM = (Cache<K, V>) cm;
+      return castedCM.getAllPresent(pKeys);
+    }
+    return null;
+  }
+
+  @Override
+  public <K, V> boolean putAll(Object pNativeCache, Map<K, V> pEntries) {
+    if (pNativeCache instanceof Cache<?, ?> cm) {
+      @SuppressWarnings("unchecked") Cache<K, V> castedCM = (Cache<K, V>) cm;
+      castedCM.putAll(pEntries);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public <K> boolean removeAll(Object pNativeCache, Collection<K> pKeys) {
+    if (pNativeCache instanceof Cache<?, ?> cm) {
+      @SuppressWarnings("unchecked") Cache<K, ?> castedCM = (Cache<K, ?>) cm;
+      castedCM.invalidateAll(pKeys);
+      return true;
+    }
+    return false;
+  }
+}
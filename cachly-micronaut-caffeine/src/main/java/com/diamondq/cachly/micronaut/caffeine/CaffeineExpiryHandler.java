@@ -0,0 +1,46 @@
+package com.diamondq.cachly.micronaut.caffeine;
+
+import com.diamondq.cachly.micronaut.ExpiryHandler;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Applies per-entry expiry to a Caffeine cache. Caffeine only allows this when the cache was built with variable
+ * expiry, otherwise the cache level expire-after-write/access settings apply. Since Caffeine doesn't call back on
+ * reads, an expire-after-access is applied as an expiry from the last write.
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+@Singleton
+public class CaffeineExpiryHandler implements ExpiryHandler {
+
+  @Override
+  public void markForExpiry(String pKey, Duration pOverrideExpiry) {
+  }
+
+  @Override
+  public void afterWrite(Object pNativeCache, String pKey, @Nullable Duration pExpiresIn,
+    @Nullable Duration pExpiresAfterAccess) {
+    if (pNativeCache instanceof Cache<?, ?> cm) {
+      @SuppressWarnings("unchecked") Cache<String, ?> castedCM = (Cache<String, ?>) cm;
+      Optional<? extends Policy.VarExpiration<String, ?>> varExpiration = castedCM.policy().expireVariably();
+      if (varExpiration.isEmpty()) return;
+      Duration expiry = pExpiresIn;
+      if ((pExpiresAfterAccess != null) && ((expiry == null) || (pExpiresAfterAccess.compareTo(expiry) < 0)))
+        expiry = pExpiresAfterAccess;
+      if (expiry != null) varExpiration.get().setExpiresAfter(pKey, expiry);
+    }
+  }
+
+  @Override
+  public void invalidate(String pKey) {
+  }
+
+  @Override
+  public void invalidateAll() {
+  }
+}
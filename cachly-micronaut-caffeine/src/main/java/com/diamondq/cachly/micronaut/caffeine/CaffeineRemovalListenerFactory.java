@@ -0,0 +1,84 @@
+package com.diamondq.cachly.micronaut.caffeine;
+
+import com.diamondq.cachly.CacheKeyEvent;
+import com.diamondq.cachly.impl.CacheCallbackHandler;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import io.micronaut.cache.SyncCache;
+import io.micronaut.cache.caffeine.configuration.DefaultCacheConfiguration;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.context.annotation.EachBean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Parameter;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.inject.qualifiers.Qualifiers;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Optional;
+
+/**
+ * Bridges the removals of a Caffeine cache to the Cache Storage, the same way that the Ehcache event listener does for
+ * Ehcache. Micronaut builds each Caffeine cache with the removal listener named after it, once listening to removals
+ * is turned on for the cache, which is done here for every cache.
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+@Factory
+public class CaffeineRemovalListenerFactory {
+
+  /**
+   * Turns on listening to removals for every Caffeine cache
+   */
+  @Singleton
+  static class ListenToRemovals implements BeanCreatedEventListener<DefaultCacheConfiguration> {
+
+    @Override
+    public DefaultCacheConfiguration onCreated(BeanCreatedEvent<DefaultCacheConfiguration> pEvent) {
+      DefaultCacheConfiguration configuration = pEvent.getBean();
+      configuration.setListenToRemovals(true);
+      return configuration;
+    }
+  }
+
+  /**
+   * Creates the removal listener of a cache
+   *
+   * @param pConfiguration the cache configuration
+   * @param pApplicationContext the application context
+   * @return the listener
+   */
+  @SuppressWarnings("MethodMayBeStatic")
+  @EachBean(DefaultCacheConfiguration.class)
+  RemovalListener<Object, Object> removalListener(@Parameter DefaultCacheConfiguration pConfiguration,
+    ApplicationContext pApplicationContext) {
+    String name = pConfiguration.getCacheName();
+    return new RemovalListener<>() {
+
+      /**
+       * The native cache, once it has been built. The listener is created before the cache, so it's looked up lazily.
+       */
+      private volatile @Nullable Object mNativeCache;
+
+      @SuppressWarnings("rawtypes")
+      @Override
+      public void onRemoval(@Nullable Object pKey, @Nullable Object pValue, RemovalCause pCause) {
+
+        /* A value that was garbage collected can't be decoded, so there is nothing to report */
+
+        if ((pKey == null) || (pValue == null)) return;
+        Optional<CacheCallbackHandler> handlerOpt = pApplicationContext.findBean(CacheCallbackHandler.class);
+        if (handlerOpt.isEmpty()) return;
+        Object nativeCache = mNativeCache;
+        if (nativeCache == null) {
+          Optional<SyncCache> cacheOpt = pApplicationContext.findBean(SyncCache.class, Qualifiers.byName(name));
+          if (cacheOpt.isEmpty()) return;
+          nativeCache = cacheOpt.get().getNativeCache();
+          mNativeCache = nativeCache;
+        }
+        var eventEnum = (pCause == RemovalCause.REPLACED ? CacheKeyEvent.MODIFIED : CacheKeyEvent.REMOVED);
+        handlerOpt.get().handleEvent(nativeCache, pKey, eventEnum, pValue);
+      }
+    };
+  }
+}
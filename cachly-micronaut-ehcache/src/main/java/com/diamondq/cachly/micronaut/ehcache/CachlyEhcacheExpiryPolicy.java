@@ -16,7 +16,28 @@ import java.util.function.Supplier;
 public class CachlyEhcacheExpiryPolicy<K, V extends @Nullable Object>
   implements ExpiryPolicy<K, V>, ExpiryHandler, CacheEventListener<K, V> {
 
-  private final ConcurrentMap<String, Duration> mExpiries;
+  /**
+   * The expiry of a written key. Ehcache only tracks a single expiration time per entry, so an idle expiry is applied
+   * by moving it forward on each access, but never past the write deadline.
+   */
+  private record Mark(@Nullable Duration expiresIn, @Nullable Duration expiresAfterAccess, long writeDeadline) {
+
+    private Duration creationExpiry() {
+      if (expiresIn == null) return expiresAfterAccess == null ? INFINITE : expiresAfterAccess;
+      if ((expiresAfterAccess == null) || (expiresIn.compareTo(expiresAfterAccess) <= 0)) return expiresIn;
+      return expiresAfterAccess;
+    }
+
+    private @Nullable Duration accessExpiry() {
+      if (expiresAfterAccess == null) return null;
+      if (expiresIn == null) return expiresAfterAccess;
+      long remaining = writeDeadline - System.currentTimeMillis();
+      return remaining < expiresAfterAccess.toMillis() ? Duration.ofMillis(Math.max(remaining, 0L)) :
+        expiresAfterAccess;
+    }
+  }
+
+  private final ConcurrentMap<String, Mark> mExpiries;
 
   public CachlyEhcacheExpiryPolicy() {
     mExpiries = new ConcurrentHashMap<>();
@@ -34,24 +55,41 @@ public class CachlyEhcacheExpiryPolicy<K, V extends @Nullable Object>
 
   @Override
   public void markForExpiry(String pKey, Duration pOverrideExpiry) {
-    mExpiries.put(pKey, pOverrideExpiry);
+    markForExpiry(pKey, pOverrideExpiry, null);
+  }
+
+  @Override
+  public void markForExpiry(String pKey, @Nullable Duration pExpiresIn, @Nullable Duration pExpiresAfterAccess) {
+    if ((pExpiresIn == null) && (pExpiresAfterAccess == null)) {
+      mExpiries.remove(pKey);
+      return;
+    }
+    long writeDeadline = pExpiresIn != null ? System.currentTimeMillis() + pExpiresIn.toMillis() : Long.MAX_VALUE;
+    mExpiries.put(pKey, new Mark(pExpiresIn, pExpiresAfterAccess, writeDeadline));
   }
 
   @Override
   public Duration getExpiryForCreation(K pKey, V pValue) {
-    Duration duration = mExpiries.get(pKey.toString());
-    if (duration == null) return INFINITE;
-    return duration;
+    Mark mark = mExpiries.get(pKey.toString());
+    if (mark == null) return INFINITE;
+    return mark.creationExpiry();
   }
 
   @Override
   public @Nullable Duration getExpiryForAccess(K pKey, Supplier<? extends V> pValue) {
-    return null;
+    Mark mark = mExpiries.get(pKey.toString());
+    if (mark == null) return null;
+    return mark.accessExpiry();
   }
 
   @Override
   public @Nullable Duration getExpiryForUpdate(K pKey, Supplier<? extends V> pOldValue, V pNewValue) {
-    return null;
+
+    /* Every write is marked first, so an update takes the expiry of the new value */
+
+    Mark mark = mExpiries.get(pKey.toString());
+    if (mark == null) return INFINITE;
+    return mark.creationExpiry();
   }
 
   @Override
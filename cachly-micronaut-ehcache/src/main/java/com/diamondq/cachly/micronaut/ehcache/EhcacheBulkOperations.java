@@ -0,0 +1,52 @@
+package com.diamondq.cachly.micronaut.ehcache;
+
+import com.diamondq.cachly.micronaut.BulkOperations;
+import jakarta.inject.Singleton;
+import org.ehcache.Cache;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+@Singleton
+public class EhcacheBulkOperations implements BulkOperations {
+
+  @Override
+  public <K, V> @Nullable Map<K, V> getAll(Object pNativeCache, Collection<K> pKeys) {
+    if (pNativeCache instanceof Cache) {
+      @SuppressWarnings("unchecked") Cache<K, V> cache = (Cache<K, V>) pNativeCache;
+
+      /* Ehcache returns missing keys mapped to null */
+
+      Map<K, V> results = new HashMap<>();
+      cache.getAll(new HashSet<>(pKeys)).forEach((key, value) -> {
+        if (value != null) results.put(key, value);
+      });
+      return results;
+    }
+    return null;
+  }
+
+  @Override
+  public <K, V> boolean putAll(Object pNativeCache, Map<K, V> pEntries) {
+    if (pNativeCache instanceof Cache) {
+      @SuppressWarnings("unchecked") Cache<K, V> cache = (Cache<K, V>) pNativeCache;
+      cache.putAll(pEntries);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public <K> boolean removeAll(Object pNativeCache, Collection<K> pKeys) {
+    if (pNativeCache instanceof Cache) {
+      @SuppressWarnings("unchecked") Cache<K, ?> cache = (Cache<K, ?>) pNativeCache;
+      cache.removeAll(new HashSet<>(pKeys));
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,46 @@
+package com.diamondq.cachly.micronaut;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Performs bulk reads, writes and removals directly against a native cache, since the Micronaut SyncCache only offers
+ * per-key operations.
+ */
+public interface BulkOperations {
+
+  /**
+   * Attempts to read a set of keys from the native cache in a single call
+   *
+   * @param pNativeCache the native cache (type is unknown at this point)
+   * @param pKeys the keys
+   * @param <K> the key type
+   * @param <V> the value type
+   * @return the values that were found, or null if the native cache isn't supported
+   */
+  <K, V> @Nullable Map<K, V> getAll(Object pNativeCache, Collection<K> pKeys);
+
+  /**
+   * Attempts to write a set of entries into the native cache in a single call
+   *
+   * @param pNativeCache the native cache (type is unknown at this point)
+   * @param pEntries the entries
+   * @param <K> the key type
+   * @param <V> the value type
+   * @return true if the entries were written or false if the native cache isn't supported
+   */
+  <K, V> boolean putAll(Object pNativeCache, Map<K, V> pEntries);
+
+  /**
+   * Attempts to remove a set of keys from the native cache in a single call
+   *
+   * @param pNativeCache the native cache (type is unknown at this point)
+   * @param pKeys the keys
+   * @param <K> the key type
+   * @return true if the keys were removed or false if the native cache isn't supported
+   */
+  <K> boolean removeAll(Object pNativeCache, Collection<K> pKeys);
+
+}
@@ -1,11 +1,38 @@
 package com.diamondq.cachly.micronaut;
 
+import org.jspecify.annotations.Nullable;
+
 import java.time.Duration;
 
 public interface ExpiryHandler {
 
   void markForExpiry(String pKey, Duration pOverrideExpiry);
 
+  /**
+   * Marks the expiry of a key that is about to be written. Handlers that support idle expiry should override this.
+   *
+   * @param pKey the key
+   * @param pExpiresIn how long the entry lives after being written (or null if it doesn't expire)
+   * @param pExpiresAfterAccess how long the entry lives after it was last accessed (or null if it doesn't expire on
+   *   idle)
+   */
+  default void markForExpiry(String pKey, @Nullable Duration pExpiresIn, @Nullable Duration pExpiresAfterAccess) {
+    if (pExpiresIn != null) markForExpiry(pKey, pExpiresIn);
+  }
+
+  /**
+   * Called after a key was written, for handlers that need to adjust the expiry directly on the native cache
+   *
+   * @param pNativeCache the native cache (type is unknown at this point)
+   * @param pKey the key
+   * @param pExpiresIn how long the entry lives after being written (or null if it doesn't expire)
+   * @param pExpiresAfterAccess how long the entry lives after it was last accessed (or null if it doesn't expire on
+   *   idle)
+   */
+  default void afterWrite(Object pNativeCache, String pKey, @Nullable Duration pExpiresIn,
+    @Nullable Duration pExpiresAfterAccess) {
+  }
+
   void invalidate(String pKey);
 
   void invalidateAll();
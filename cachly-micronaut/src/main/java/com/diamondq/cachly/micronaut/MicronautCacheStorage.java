@@ -1,5 +1,6 @@
 package com.diamondq.cachly.micronaut;
 
+import com.diamondq.cachly.CacheKeyEvent;
 import com.diamondq.cachly.base.AbstractCacheStorage;
 import com.diamondq.cachly.base.MemoryStorageData;
 import com.diamondq.cachly.impl.CacheCallbackHandler;
@@ -12,12 +13,18 @@ import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import org.jspecify.annotations.Nullable;
 
-import java.time.Duration;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableSet;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
 import java.util.stream.Stream;
 
@@ -32,6 +39,15 @@ public class MicronautCacheStorage extends AbstractCacheStorage<SyncCache<?>, St
 
   private final List<ExpiryHandler> mExpiryHandlers;
 
+  private final List<BulkOperations> mBulkOperations;
+
+  /**
+   * An ordered side index of the keys written to the native cache, so that a subtree of keys can be found without
+   * iterating the whole cache. Evictions reported through the callback handler drop their keys. A native cache whose
+   * removals aren't bridged can still leave keys behind, which are dropped when a subtree scan finds them missing.
+   */
+  private final NavigableSet<String> mKeyIndex = new ConcurrentSkipListSet<>();
+
   /**
    * Injection Constructor
    *
@@ -41,11 +57,13 @@ public class MicronautCacheStorage extends AbstractCacheStorage<SyncCache<?>, St
    * @param pPrimaryCache the Micronaut cache for storage
    * @param pKeyExtractors the list of key extractors to get the contents from the native cache
    * @param pExpiryHandlers the list of handlers for expiry
+   * @param pBulkOperations the list of handlers for native bulk operations against the native cache
    */
   @Inject
   public MicronautCacheStorage(ConverterManager pConverterManager,
     @Named(TaskExecutors.IO) ExecutorService pExecutorService, CacheCallbackHandler pHandler,
-    SyncCache<?> pPrimaryCache, List<KeyExtractor> pKeyExtractors, List<ExpiryHandler> pExpiryHandlers) {
+    SyncCache<?> pPrimaryCache, List<KeyExtractor> pKeyExtractors, List<ExpiryHandler> pExpiryHandlers,
+    List<BulkOperations> pBulkOperations) {
     super(pConverterManager, pExecutorService,
 
       /* The cache object */
@@ -68,9 +86,9 @@ public class MicronautCacheStorage extends AbstractCacheStorage<SyncCache<?>, St
 
       (!(pPrimaryCache instanceof CachlySyncCache) || ((CachlySyncCache) pPrimaryCache).getPerformSerialization()),
 
-      /* Default string, type, key, value prefixes */
+      /* Default string, type, template, key, value prefixes */
 
-      null, null, null, null,
+      null, null, null, null, null,
 
       /* Default key serializers/deserializers, since the key is a String */
 
@@ -78,16 +96,69 @@ public class MicronautCacheStorage extends AbstractCacheStorage<SyncCache<?>, St
     );
     mKeyExtractors = pKeyExtractors;
     mExpiryHandlers = pExpiryHandlers;
+    mBulkOperations = pBulkOperations;
     pHandler.registerCacheStorage(mPrimaryCache.getNativeCache(), this);
     init();
+
+    /* A serializing cache may be persistent, so seed the index with the keys it already holds */
+
+    if (mSerializeValue) {
+      try (Stream<Entry<String, ?>> entries = streamPrimary()) {
+        entries.forEach((entry) -> mKeyIndex.add(entry.getKey()));
+      }
+    }
   }
 
   @Override
   protected void writeToCache(CommonKeyValuePair<SyncCache<?>, String> pEntry) {
-    Duration expiresIn = pEntry.expiresIn;
-    if (expiresIn != null) for (ExpiryHandler eh : mExpiryHandlers)
-      eh.markForExpiry(pEntry.serKey, expiresIn);
+    for (ExpiryHandler eh : mExpiryHandlers)
+      eh.markForExpiry(pEntry.serKey, pEntry.expiresIn, pEntry.expiresAfterAccess);
     pEntry.cache.put(pEntry.serKey, Objects.requireNonNull(pEntry.serValue));
+    mKeyIndex.add(pEntry.serKey);
+    afterWrite(pEntry);
+  }
+
+  private void afterWrite(CommonKeyValuePair<SyncCache<?>, String> pEntry) {
+    if ((pEntry.expiresIn == null) && (pEntry.expiresAfterAccess == null)) return;
+    Object nativeCache = pEntry.cache.getNativeCache();
+    for (ExpiryHandler eh : mExpiryHandlers)
+      eh.afterWrite(nativeCache, pEntry.serKey, pEntry.expiresIn, pEntry.expiresAfterAccess);
+  }
+
+  @Override
+  protected void writeAllToCache(List<CommonKeyValuePair<SyncCache<?>, String>> pEntries) {
+
+    /* Group the entries by cache, since metadata may be going to a different cache */
+
+    Map<SyncCache<?>, Map<String, Object>> byCache = new LinkedHashMap<>();
+    for (CommonKeyValuePair<SyncCache<?>, String> entry : pEntries) {
+      for (ExpiryHandler eh : mExpiryHandlers)
+        eh.markForExpiry(entry.serKey, entry.expiresIn, entry.expiresAfterAccess);
+      byCache.computeIfAbsent(entry.cache, (_) -> new LinkedHashMap<>())
+        .put(entry.serKey, Objects.requireNonNull(entry.serValue));
+    }
+
+    for (Map.Entry<SyncCache<?>, Map<String, Object>> cacheEntry : byCache.entrySet()) {
+      SyncCache<?> cache = cacheEntry.getKey();
+      if (bulkPutAll(cache.getNativeCache(), cacheEntry.getValue())) continue;
+
+      /* There is no native support, so fall back to a write per key */
+
+      for (Map.Entry<String, Object> entry : cacheEntry.getValue().entrySet()) {
+        cache.put(entry.getKey(), entry.getValue());
+      }
+    }
+    for (CommonKeyValuePair<SyncCache<?>, String> entry : pEntries) {
+      mKeyIndex.add(entry.serKey);
+      afterWrite(entry);
+    }
+  }
+
+  private boolean bulkPutAll(Object pNativeCache, Map<String, Object> pEntries) {
+    for (BulkOperations bo : mBulkOperations) {
+      if (bo.putAll(pNativeCache, pEntries)) return true;
+    }
+    return false;
   }
 
   @Override
@@ -95,6 +166,27 @@ public class MicronautCacheStorage extends AbstractCacheStorage<SyncCache<?>, St
     return mPrimaryCache.get(pKey, mSerValueClass);
   }
 
+  @Override
+  protected Map<String, Object> readAllFromPrimaryCache(Collection<String> pKeys) {
+    Object nativeCache = mPrimaryCache.getNativeCache();
+    for (BulkOperations bo : mBulkOperations) {
+      Map<String, Object> values = bo.getAll(nativeCache, pKeys);
+      if (values == null) continue;
+
+      /* The native cache returns the raw values, so convert any that aren't already the serialized value type */
+
+      Map<String, Object> results = new HashMap<>();
+      for (Map.Entry<String, Object> entry : values.entrySet()) {
+        Object value = entry.getValue();
+        results.put(entry.getKey(),
+          mSerValueClass.isInstance(value) ? value : mConverterManager.convert(value, mSerValueClass)
+        );
+      }
+      return results;
+    }
+    return super.readAllFromPrimaryCache(pKeys);
+  }
+
   @Override
   protected Stream<Entry<String, ?>> streamPrimary() {
     Object nativeCache = mPrimaryCache.getNativeCache();
@@ -126,6 +218,38 @@ public class MicronautCacheStorage extends AbstractCacheStorage<SyncCache<?>, St
       "The cache " + nativeCache.getClass().getName() + " is not able to be key iterated");
   }
 
+  @Override
+  protected Stream<Entry<String, ?>> streamPrimaryTree(String pKeyStr) {
+
+    /* The children are every key from root + "/" up to (but not including) root + "0", which is the next character */
+
+    String rootKey = toValueKeyString(pKeyStr);
+    List<String> keys = new ArrayList<>();
+    if (mKeyIndex.contains(rootKey)) keys.add(rootKey);
+    //noinspection HardcodedFileSeparator
+    keys.addAll(mKeyIndex.subSet(rootKey + "/", rootKey + "0"));
+    if (keys.isEmpty()) return Stream.empty();
+
+    /* Read the values, dropping any keys that the native cache no longer has */
+
+    Map<String, Object> values = readAllFromPrimaryCache(keys);
+    for (String key : keys) {
+      if (!values.containsKey(key)) mKeyIndex.remove(key);
+    }
+    return values.entrySet().stream().<Entry<String, ?>>map((entry) -> entry);
+  }
+
+  @Override
+  public void handleEvent(Object pKey, CacheKeyEvent pEvent, @Nullable Object pValue) {
+
+    /* The removal may be reported after the key was written again, so it's only dropped if it's really gone */
+
+    if ((pEvent == CacheKeyEvent.REMOVED) && (pKey instanceof String key) && (readFromPrimaryCache(key).isEmpty())) {
+      mKeyIndex.remove(key);
+    }
+    super.handleEvent(pKey, pEvent, pValue);
+  }
+
   @Override
   protected Stream<Entry<String, ?>> streamMetaEntries() {
     return streamPrimary();
@@ -137,10 +261,31 @@ public class MicronautCacheStorage extends AbstractCacheStorage<SyncCache<?>, St
       for (ExpiryHandler eh : mExpiryHandlers)
         eh.invalidateAll();
       pCache.invalidateAll();
+      mKeyIndex.clear();
     } else {
       for (ExpiryHandler eh : mExpiryHandlers)
         eh.invalidate(pKey);
       pCache.invalidate(pKey);
+      mKeyIndex.remove(pKey);
+    }
+  }
+
+  @Override
+  protected void invalidateKeys(SyncCache<?> pCache, Collection<String> pKeys) {
+    for (String key : pKeys) {
+      for (ExpiryHandler eh : mExpiryHandlers)
+        eh.invalidate(key);
+      mKeyIndex.remove(key);
+    }
+    Object nativeCache = pCache.getNativeCache();
+    for (BulkOperations bo : mBulkOperations) {
+      if (bo.removeAll(nativeCache, pKeys)) return;
+    }
+
+    /* There is no native support, so fall back to a remove per key */
+
+    for (String key : pKeys) {
+      pCache.invalidate(key);
     }
   }
 
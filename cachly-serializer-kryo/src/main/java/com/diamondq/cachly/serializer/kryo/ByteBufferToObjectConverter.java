@@ -2,8 +2,6 @@ package com.diamondq.cachly.serializer.kryo;
 
 import com.diamondq.common.converters.AbstractConverter;
 import com.diamondq.common.converters.Converter;
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.ByteBufferInput;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
@@ -21,20 +19,20 @@ import java.nio.ByteBuffer;
 public class ByteBufferToObjectConverter extends AbstractConverter<ByteBuffer, Object> {
 
   /**
-   * The Kryo instance
+   * The Kryo pool
    */
   @Reference
-  protected @MonotonicNonNull Kryo mKryo;
+  protected @MonotonicNonNull KryoPool mKryoPool;
 
   /**
    * CDI-based constructor
    *
-   * @param pKryo the Kryo instance
+   * @param pKryoPool the Kryo pool
    */
   @Inject
-  public ByteBufferToObjectConverter(@Named("cachly") Kryo pKryo) {
+  public ByteBufferToObjectConverter(@Named("cachly") KryoPool pKryoPool) {
     super(ByteBuffer.class, Object.class, "kryo");
-    mKryo = pKryo;
+    mKryoPool = pKryoPool;
   }
 
   /**
@@ -47,9 +45,7 @@ public class ByteBufferToObjectConverter extends AbstractConverter<ByteBuffer, O
   @SuppressWarnings("null")
   @Override
   public Object convert(ByteBuffer pInput) {
-    try (ByteBufferInput input = new ByteBufferInput(pInput)) {
-      if (mKryo == null) throw new IllegalStateException("Kryo instance is null");
-      return mKryo.readClassAndObject(input);
-    }
+    if (mKryoPool == null) throw new IllegalStateException("Kryo pool is null");
+    return mKryoPool.read(pInput);
   }
 }
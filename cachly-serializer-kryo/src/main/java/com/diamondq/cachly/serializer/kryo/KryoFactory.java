@@ -1,6 +1,5 @@
 package com.diamondq.cachly.serializer.kryo;
 
-import com.esotericsoftware.kryo.Kryo;
 import io.micronaut.context.annotation.Factory;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
@@ -13,12 +12,7 @@ public class KryoFactory {
   @SuppressWarnings("MethodMayBeStatic")
   @Singleton
   @Named("cachly")
-  public Kryo createKryo(List<KryoInitializer> pInitializers) {
-    Kryo kryo = new Kryo();
-    kryo.setRegistrationRequired(false);
-    kryo.setReferences(true);
-    for (KryoInitializer ki : pInitializers)
-      ki.initialize(kryo);
-    return kryo;
+  public KryoPool createKryoPool(List<KryoInitializer> pInitializers) {
+    return new KryoPool(pInitializers);
   }
 }
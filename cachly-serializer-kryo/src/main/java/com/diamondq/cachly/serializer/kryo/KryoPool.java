@@ -0,0 +1,155 @@
+package com.diamondq.cachly.serializer.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A pool of configured Kryo instances, along with the Output and Input buffers used with them. Kryo instances are not
+ * thread-safe, so each read or write borrows one for its duration. The pools are queues rather than thread locals, so
+ * they work the same for virtual threads, and they hold their contents through soft references so that they can shrink
+ * after a burst of concurrency.
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public final class KryoPool {
+
+  /**
+   * The initial size of a pooled output buffer
+   */
+  private static final int OUTPUT_BUFFER_SIZE = 4096;
+
+  /**
+   * Output buffers that grew past this size are not kept once they're returned to the pool
+   */
+  private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+  private static final byte[] EMPTY_BUFFER = new byte[0];
+
+  private final Pool<Kryo> mKryos;
+
+  /**
+   * The pool of outputs. Each one grows to fit the values written to it, so after warming up, a value is written
+   * without regrowing the buffer.
+   */
+  private final Pool<Output> mOutputs = new Pool<>(true, true) {
+    @Override
+    protected Output create() {
+      return new Output(OUTPUT_BUFFER_SIZE, -1);
+    }
+  };
+
+  private final Pool<Input> mInputs = new Pool<>(true, true) {
+    @Override
+    protected Input create() {
+      return new Input();
+    }
+  };
+
+  /**
+   * Primary constructor
+   *
+   * @param pInitializers the initializers that are run against each new Kryo instance
+   */
+  public KryoPool(List<KryoInitializer> pInitializers) {
+    List<KryoInitializer> initializers = List.copyOf(pInitializers);
+    mKryos = new Pool<>(true, true) {
+      @Override
+      protected Kryo create() {
+        return createKryo(initializers);
+      }
+    };
+  }
+
+  /**
+   * Creates a configured Kryo instance
+   *
+   * @param pInitializers the initializers
+   * @return the Kryo instance
+   */
+  public static Kryo createKryo(List<KryoInitializer> pInitializers) {
+    Kryo kryo = new Kryo();
+    kryo.setRegistrationRequired(false);
+    kryo.setReferences(true);
+    for (KryoInitializer ki : pInitializers)
+      ki.initialize(kryo);
+    return kryo;
+  }
+
+  /**
+   * Serializes a value, optionally leaving room in front of it
+   *
+   * @param pValue the value
+   * @param pHeaderSize the number of bytes to leave in front of the value, which are left for the caller to fill in
+   * @return an array holding exactly the header room followed by the value
+   */
+  public byte[] write(Object pValue, int pHeaderSize) {
+    Kryo kryo = mKryos.obtain();
+    Output output = mOutputs.obtain();
+    try {
+
+      /* Skip over the header room, and then copy out exactly what was written */
+
+      if (output.getBuffer().length < pHeaderSize) {
+        output.setBuffer(new byte[Math.max(pHeaderSize, OUTPUT_BUFFER_SIZE)], -1);
+      }
+      output.setPosition(pHeaderSize);
+      kryo.writeClassAndObject(output, pValue);
+      return Arrays.copyOf(output.getBuffer(), output.position());
+    }
+    finally {
+      if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) output.setBuffer(new byte[OUTPUT_BUFFER_SIZE], -1);
+      output.reset();
+      mOutputs.free(output);
+      release(kryo);
+    }
+  }
+
+  /**
+   * Deserializes a value from the remaining bytes of a buffer. A heap buffer is read in place.
+   *
+   * @param pBuffer the buffer
+   * @return the value
+   */
+  public Object read(ByteBuffer pBuffer) {
+    Kryo kryo = mKryos.obtain();
+    try {
+      if (!pBuffer.hasArray()) {
+        try (ByteBufferInput input = new ByteBufferInput(pBuffer)) {
+          return kryo.readClassAndObject(input);
+        }
+      }
+      Input input = mInputs.obtain();
+      try {
+        input.setBuffer(pBuffer.array(), pBuffer.arrayOffset() + pBuffer.position(), pBuffer.remaining());
+        return kryo.readClassAndObject(input);
+      }
+      finally {
+
+        /* Don't let the pool hold on to the stored array */
+
+        input.setBuffer(EMPTY_BUFFER);
+        mInputs.free(input);
+      }
+    }
+    finally {
+      release(kryo);
+    }
+  }
+
+  /**
+   * Returns a Kryo instance to the pool. A write or read that failed part way leaves its reference and class state
+   * behind, so the instance is reset before it's reused.
+   *
+   * @param pKryo the Kryo instance
+   */
+  private void release(Kryo pKryo) {
+    pKryo.reset();
+    mKryos.free(pKryo);
+  }
+}
@@ -0,0 +1,60 @@
+package com.diamondq.cachly.serializer.kryo;
+
+import com.diamondq.cachly.spi.StreamingSerializer;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams values into and out of the entries of a serializing storage using Kryo. The bytes of a value are the same as
+ * the ones written by {@link ObjectToByteBufferConverter}.
+ */
+@Singleton
+@Component(service = StreamingSerializer.class)
+public class KryoStreamingSerializer implements StreamingSerializer {
+
+  /**
+   * The Kryo pool
+   */
+  @Reference
+  protected @MonotonicNonNull KryoPool mKryoPool;
+
+  /**
+   * CDI constructor
+   *
+   * @param pKryoPool the Kryo pool
+   */
+  @Inject
+  public KryoStreamingSerializer(@Named("cachly") KryoPool pKryoPool) {
+    mKryoPool = pKryoPool;
+  }
+
+  /**
+   * OSGi constructor
+   */
+  public KryoStreamingSerializer() {
+  }
+
+  @Override
+  public String getName() {
+    return "kryo";
+  }
+
+  @Override
+  public byte[] serialize(Object pValue, int pHeaderSize) {
+    if (mKryoPool == null) throw new IllegalStateException("Kryo pool is null");
+    return mKryoPool.write(pValue, pHeaderSize);
+  }
+
+  @Override
+  public Object deserialize(ByteBuffer pBuffer, Type pType) {
+    if (mKryoPool == null) throw new IllegalStateException("Kryo pool is null");
+    return mKryoPool.read(pBuffer);
+  }
+}
@@ -2,8 +2,6 @@ package com.diamondq.cachly.serializer.kryo;
 
 import com.diamondq.common.converters.AbstractConverter;
 import com.diamondq.common.converters.Converter;
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Output;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
@@ -20,20 +18,20 @@ import java.nio.ByteBuffer;
 @Component(service = Converter.class)
 public class ObjectToByteBufferConverter extends AbstractConverter<Object, ByteBuffer> {
   /**
-   * Kryo object
+   * Kryo pool
    */
   @Reference
-  protected @MonotonicNonNull Kryo mKryo;
+  protected @MonotonicNonNull KryoPool mKryoPool;
 
   /**
    * CDI constructor
    *
-   * @param pKryo the kryo instance
+   * @param pKryoPool the Kryo pool
    */
   @Inject
-  public ObjectToByteBufferConverter(@Named("cachly") Kryo pKryo) {
+  public ObjectToByteBufferConverter(@Named("cachly") KryoPool pKryoPool) {
     super(Object.class, ByteBuffer.class, "kryo");
-    mKryo = pKryo;
+    mKryoPool = pKryoPool;
   }
 
   /**
@@ -45,11 +43,10 @@ public class ObjectToByteBufferConverter extends AbstractConverter<Object, ByteB
 
   @Override
   public ByteBuffer convert(Object pInput) {
-    try (Output output = new Output(1, Integer.MAX_VALUE)) {
-      if (mKryo == null) throw new IllegalStateException("Kryo instance is null");
-      mKryo.writeClassAndObject(output, pInput);
-      output.flush();
-      return ByteBuffer.wrap(output.getBuffer());
-    }
+    if (mKryoPool == null) throw new IllegalStateException("Kryo pool is null");
+
+    /* The buffer holds exactly the serialized bytes */
+
+    return ByteBuffer.wrap(mKryoPool.write(pInput, 0));
   }
 }
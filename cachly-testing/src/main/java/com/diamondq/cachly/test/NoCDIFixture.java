@@ -0,0 +1,134 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.impl.CacheCallbackHandler;
+import com.diamondq.cachly.impl.CacheEngineImpl;
+import com.diamondq.cachly.impl.MemoryCacheStorage;
+import com.diamondq.cachly.spi.BeanNameableLocator;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.cachly.spi.CachlyPathConfiguration;
+import com.diamondq.common.context.impl.ContextFactorySetup;
+import com.diamondq.common.converters.ConverterManager;
+import com.diamondq.common.converters.impl.ConverterManagerImpl;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Builds a cache engine without CDI, backed by a single memory storage called "my-cache". The caller adds its paths
+ * and loaders, activates the engine, and closes the fixture once the test is done, which shuts down the executor.
+ */
+public final class NoCDIFixture implements AutoCloseable {
+
+  /**
+   * The name of the memory storage that the paths are stored in
+   */
+  public static final String STORAGE_NAME = "my-cache";
+
+  private final ExecutorService mExecutorService;
+
+  private final ConverterManager mConverterManager;
+
+  private final CacheCallbackHandler mCallbackHandler;
+
+  private final CacheEngine mEngine;
+
+  private final MemoryCacheStorage mStorage;
+
+  /**
+   * Creates a fixture that runs on a single thread executor
+   */
+  public NoCDIFixture() {
+    this(Executors.newSingleThreadExecutor());
+  }
+
+  /**
+   * Primary constructor
+   *
+   * @param pExecutorService the Executor Service, which is shut down when the fixture is closed
+   */
+  public NoCDIFixture(ExecutorService pExecutorService) {
+    var contextFactory = ContextFactorySetup.setup();
+    mExecutorService = pExecutorService;
+    mConverterManager = new ConverterManagerImpl(List.of());
+    mCallbackHandler = new CacheCallbackHandler();
+    mEngine = new CacheEngineImpl(mCallbackHandler, mExecutorService, mConverterManager, contextFactory);
+    mEngine.addBeanNameLocator(new BeanNameableLocator());
+    mStorage = addStorage(STORAGE_NAME);
+  }
+
+  /**
+   * Adds another memory storage
+   *
+   * @param pName the storage name
+   * @return the storage
+   */
+  public MemoryCacheStorage addStorage(String pName) {
+    var storage = new MemoryCacheStorage(mConverterManager, mExecutorService, mCallbackHandler, pName);
+    mEngine.addCacheStorage(storage);
+    return storage;
+  }
+
+  /**
+   * Adds paths that are stored in the memory storage with the default settings
+   *
+   * @param pPaths the paths
+   */
+  public void addPaths(String... pPaths) {
+    for (String path : pPaths) {
+      addPath(path, (_) -> {
+      });
+    }
+  }
+
+  /**
+   * Adds a path that is stored in the memory storage. The configuration is applied when it's added, so the settings
+   * must be made by the configurer.
+   *
+   * @param pPath the path
+   * @param pConfigurer makes any further settings
+   */
+  public void addPath(String pPath, Consumer<CachlyPathConfiguration> pConfigurer) {
+    var pathConfig = new CachlyPathConfiguration(pPath);
+    pathConfig.setStorage(STORAGE_NAME);
+    pConfigurer.accept(pathConfig);
+    mEngine.addPathConfiguration(pathConfig);
+  }
+
+  /**
+   * Returns the cache engine
+   *
+   * @return the engine
+   */
+  public CacheEngine getEngine() {
+    return mEngine;
+  }
+
+  /**
+   * Returns the memory storage called "my-cache"
+   *
+   * @return the storage
+   */
+  public MemoryCacheStorage getStorage() {
+    return mStorage;
+  }
+
+  /**
+   * Returns the Executor Service
+   *
+   * @return the Executor Service
+   */
+  public ExecutorService getExecutorService() {
+    return mExecutorService;
+  }
+
+  /**
+   * Shuts down the engine's own executor, and then the Executor Service
+   */
+  @Override
+  public void close() {
+    mEngine.deactivate();
+    mExecutorService.shutdownNow();
+  }
+}
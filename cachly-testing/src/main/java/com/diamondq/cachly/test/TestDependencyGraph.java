@@ -0,0 +1,314 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoadContext;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.impl.CacheEngineImpl;
+import com.diamondq.cachly.impl.MemoryCacheStorage;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.cachly.spi.CachlyEngineConfiguration;
+import com.diamondq.cachly.spi.KeySPI;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the dependency graph under concurrent loads and evictions
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestDependencyGraph {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_PARENT = "graph-parent";
+
+      public static final String PARTIAL_CHILDREN = "graph-children";
+
+      public static final String PARTIAL_ID = "id";
+
+      public static final String PARTIAL_FAN_OUT = "graph-fan-out";
+    }
+
+    /**
+     * The key that everything depends on
+     */
+    public static final Key<String> PARENT = KeyBuilder.of(Strings.PARTIAL_PARENT, Types.STRING);
+
+    /**
+     * The placeholder for the child id
+     */
+    public static final KeyPlaceholder<String> CHILD_ID = KeyBuilder.placeholder(Strings.PARTIAL_ID, Types.STRING);
+
+    /**
+     * The key for a child
+     */
+    public static final Key<String> CHILD = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_CHILDREN, Types.STRING),
+      CHILD_ID
+    );
+
+    /**
+     * A key whose loader reads the parent and a child on other threads
+     */
+    public static final Key<String> FAN_OUT = KeyBuilder.of(Strings.PARTIAL_FAN_OUT, Types.STRING);
+
+  }
+
+  /**
+   * The parent loader
+   */
+  public static class ParentLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.PARENT, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("parent");
+    }
+  }
+
+  /**
+   * The child loader, which depends on the parent
+   */
+  public static class ChildLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.CHILD, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue(pCache.get(pAccessContext, Keys.PARENT) + "/" + pKey.getKey());
+    }
+  }
+
+  /**
+   * The fan out loader, which reads its dependencies through a CompletableFuture chain and a separate thread
+   */
+  public static class FanOutLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.FAN_OUT, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+      try {
+        CompletableFuture<String> parent = CompletableFuture.supplyAsync(() -> pCache.get(pAccessContext,
+          Keys.PARENT
+        ), CacheLoadContext.propagating(executor));
+        Future<String> child = executor.submit(CacheLoadContext.wrapCallable(() -> pCache.get(pAccessContext,
+          Keys.CHILD,
+          Keys.CHILD_ID,
+          "1"
+        )));
+        pResult.setValue(parent.join() + "+" + child.get());
+      }
+      catch (InterruptedException | ExecutionException ex) {
+        throw new IllegalStateException(ex);
+      }
+      finally {
+        executor.shutdown();
+      }
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  private volatile MemoryCacheStorage storage;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.PARENT.clearKeyDetails();
+    Keys.CHILD.clearKeyDetails();
+    Keys.FAN_OUT.clearKeyDetails();
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    storage = fixture.getStorage();
+    fixture.addPaths(Keys.Strings.PARTIAL_PARENT, Keys.Strings.PARTIAL_CHILDREN, Keys.Strings.PARTIAL_FAN_OUT);
+    cache.addCacheLoader(new ParentLoader());
+    cache.addCacheLoader(new ChildLoader());
+    cache.addCacheLoader(new FanOutLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void concurrentLoads() throws Exception {
+    AccessContext ac = cache.createAccessContext(null);
+    //noinspection MagicNumber
+    ExecutorService loaders = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      //noinspection MagicNumber
+      for (int i = 0; i < 1000; i++) {
+        String id = String.valueOf(i);
+        futures.add(loaders.submit(() -> cache.get(ac, Keys.CHILD, Keys.CHILD_ID, id)));
+        futures.add(loaders.submit(() -> cache.getDependentKeys(ac, Keys.PARENT.toString()).size()));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      loaders.shutdown();
+    }
+
+    Collection<Key<?>> dependents = cache.getDependentKeys(ac, Keys.PARENT.toString());
+    //noinspection MagicNumber
+    assertEquals(1000, dependents.size());
+    assertThrows(UnsupportedOperationException.class, dependents::clear);
+    Collection<String> dependencies = cache.getDependentOnKeys(ac,
+      cache.resolve(Keys.CHILD, Keys.CHILD_ID, "7").toString()
+    );
+    assertEquals(List.of(Keys.PARENT.toString()), List.copyOf(dependencies));
+
+    /* The snapshot isn't affected by invalidation */
+
+    cache.invalidate(ac, Keys.PARENT);
+    //noinspection MagicNumber
+    assertEquals(1000, dependents.size());
+    assertTrue(cache.getDependentKeys(ac, Keys.PARENT.toString()).isEmpty());
+  }
+
+  @Test
+  void fanOutDependencies() {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("parent+parent/1", cache.get(ac, Keys.FAN_OUT));
+    String childStr = cache.resolve(Keys.CHILD, Keys.CHILD_ID, "1").toString();
+    assertEquals(Set.of(Keys.PARENT.toString(), childStr),
+      Set.copyOf(cache.getDependentOnKeys(ac, Keys.FAN_OUT.toString()))
+    );
+
+    /* Invalidating the child, which was only read on another thread, still reaches the fan out key */
+
+    cache.invalidate(ac, Keys.CHILD, Keys.CHILD_ID, "1");
+    assertTrue(cache.getDependentOnKeys(ac, Keys.FAN_OUT.toString()).isEmpty());
+  }
+
+  @Test
+  void virtualThreadLoads() {
+    CachlyEngineConfiguration engineConfiguration = new CachlyEngineConfiguration();
+    engineConfiguration.setVirtualThreads(true);
+    ((CacheEngineImpl) cache).setEngineConfiguration(engineConfiguration);
+    assertTrue(CompletableFuture.supplyAsync(() -> Thread.currentThread().isVirtual(), cache.getTaskExecutor())
+      .join());
+
+    AccessContext ac = cache.createAccessContext(null);
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+    //noinspection MagicNumber
+    for (int i = 0; i < 5000; i++) {
+      futures.add(cache.getAsync(ac, cache.resolve(Keys.CHILD, Keys.CHILD_ID, String.valueOf(i))));
+    }
+    //noinspection MagicNumber
+    for (int i = 0; i < 5000; i++) {
+      assertEquals("parent/" + i, futures.get(i).join());
+    }
+    //noinspection MagicNumber
+    assertEquals(5000, cache.getDependentKeys(ac, Keys.PARENT.toString()).size());
+  }
+
+  @Test
+  void evictionPrunesEdges() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      cache.get(ac, Keys.CHILD, Keys.CHILD_ID, String.valueOf(i));
+    }
+    //noinspection MagicNumber
+    assertEquals(11, cache.getDependencyGraphSize());
+
+    /* Remove the children directly from the storage, as an eviction would */
+
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      KeySPI<String> child = (KeySPI<String>) cache.resolve(Keys.CHILD, Keys.CHILD_ID, String.valueOf(i));
+      cache.setupKey(child);
+      storage.invalidate(ac, child);
+    }
+
+    /* The pruning happens in the background */
+
+    //noinspection MagicNumber
+    long deadline = System.currentTimeMillis() + 5000L;
+    while ((cache.getDependencyGraphSize() > 0) && (System.currentTimeMillis() < deadline)) {
+      //noinspection MagicNumber
+      Thread.sleep(10L);
+    }
+    assertEquals(0, cache.getDependencyGraphSize());
+    assertTrue(cache.getDependentKeys(ac, Keys.PARENT.toString()).isEmpty());
+    assertEquals("parent", cache.get(ac, Keys.PARENT));
+  }
+
+  @Test
+  void cascadeAsync() {
+    AccessContext ac = cache.createAccessContext(null);
+    //noinspection MagicNumber
+    for (int i = 0; i < 100; i++) {
+      cache.get(ac, Keys.CHILD, Keys.CHILD_ID, String.valueOf(i));
+    }
+    cache.invalidateAsync(ac, Keys.PARENT).join();
+    long remaining = cache.streamEntries(ac)
+      .filter((entry) -> entry.getKey().toString().startsWith(Keys.Strings.PARTIAL_CHILDREN))
+      .count();
+    assertEquals(0L, remaining);
+    assertEquals(0, cache.getDependencyGraphSize());
+  }
+
+  @Test
+  void invalidateAllClearsGraph() {
+    AccessContext ac = cache.createAccessContext(null);
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      cache.get(ac, Keys.CHILD, Keys.CHILD_ID, String.valueOf(i));
+    }
+    //noinspection MagicNumber
+    assertEquals(11, cache.getDependencyGraphSize());
+    cache.invalidateAll(ac);
+    assertEquals(0, cache.getDependencyGraphSize());
+    assertTrue(cache.getDependentKeys(ac, Keys.PARENT.toString()).isEmpty());
+  }
+
+}
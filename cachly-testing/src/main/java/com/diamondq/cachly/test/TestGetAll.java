@@ -0,0 +1,167 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.BulkCacheLoader;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the getAll methods
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestGetAll {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_USERS = "bulk-users";
+
+      public static final String PARTIAL_ID = "id";
+    }
+
+    /**
+     * The placeholder for the id
+     */
+    public static final KeyPlaceholder<String> USER_ID = KeyBuilder.placeholder(Strings.PARTIAL_ID, Types.STRING);
+
+    /**
+     * The key for a single user
+     */
+    public static final Key<String> USER = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_USERS, Types.STRING),
+      USER_ID
+    );
+
+  }
+
+  /**
+   * A loader that loads users in bulk. The user "missing" doesn't exist.
+   */
+  public static class UserLoader implements BulkCacheLoader<String> {
+
+    private final AtomicInteger mLoadAllCount = new AtomicInteger();
+
+    private final AtomicInteger mLoadCount = new AtomicInteger();
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.USER, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      mLoadCount.incrementAndGet();
+      if (!"missing".equals(pKey.getKey())) pResult.setValue("User " + pKey.getKey());
+    }
+
+    @Override
+    public void loadAll(Cache pCache, AccessContext pAccessContext, Map<Key<String>, CacheResult<String>> pResults) {
+      mLoadAllCount.incrementAndGet();
+      pResults.forEach((key, result) -> {
+        if (!"missing".equals(key.getKey())) result.setValue("User " + key.getKey());
+      });
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  private volatile UserLoader loader;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.USER.clearKeyDetails();
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPaths(Keys.Strings.PARTIAL_USERS);
+    loader = new UserLoader();
+    cache.addCacheLoader(loader);
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void bulkLoad() {
+    AccessContext ac = cache.createAccessContext(null);
+    Key<String> user1 = cache.resolve(Keys.USER, Keys.USER_ID, "1");
+    Key<String> user2 = cache.resolve(Keys.USER, Keys.USER_ID, "2");
+    Key<String> user3 = cache.resolve(Keys.USER, Keys.USER_ID, "3");
+
+    /* Pre-load one of the users */
+
+    assertEquals("User 1", cache.get(ac, user1));
+    assertEquals(1, loader.mLoadCount.get());
+
+    /* The remaining two should be loaded in a single call */
+
+    Map<Key<String>, String> results = cache.getAll(ac, List.of(user1, user2, user3));
+    assertEquals(3, results.size());
+    assertEquals("User 1", results.get(user1));
+    assertEquals("User 2", results.get(user2));
+    assertEquals("User 3", results.get(user3));
+    assertEquals(1, loader.mLoadAllCount.get());
+    assertEquals(1, loader.mLoadCount.get());
+
+    /* Everything is now cached */
+
+    cache.getAll(ac, List.of(user1, user2, user3));
+    assertEquals(1, loader.mLoadAllCount.get());
+  }
+
+  @Test
+  void missing() {
+    AccessContext ac = cache.createAccessContext(null);
+    Key<String> user1 = cache.resolve(Keys.USER, Keys.USER_ID, "1");
+    Key<String> missing = cache.resolve(Keys.USER, Keys.USER_ID, "missing");
+    Map<Key<String>, String> results = cache.getAllIfPresent(ac, List.of(user1, missing));
+    assertEquals(1, results.size());
+    assertEquals("User 1", results.get(user1));
+    assertFalse(results.containsKey(missing));
+    assertThrows(NoSuchElementException.class, () -> cache.getAll(ac, List.of(user1, missing)));
+  }
+
+  @Test
+  void setAll() {
+    AccessContext ac = cache.createAccessContext(null);
+    Key<String> user1 = cache.resolve(Keys.USER, Keys.USER_ID, "1");
+    Key<String> user2 = cache.resolve(Keys.USER, Keys.USER_ID, "2");
+    cache.setAll(ac, Map.of(user1, "Set 1", user2, "Set 2"));
+    Map<Key<String>, String> results = cache.getAll(ac, List.of(user1, user2));
+    assertEquals("Set 1", results.get(user1));
+    assertEquals("Set 2", results.get(user2));
+    assertEquals(0, loader.mLoadAllCount.get());
+    assertEquals(0, loader.mLoadCount.get());
+  }
+
+}
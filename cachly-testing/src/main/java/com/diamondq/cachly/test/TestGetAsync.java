@@ -0,0 +1,160 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.AsyncCacheLoader;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the asynchronous get methods
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestGetAsync {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_SLOW = "async-slow";
+
+      public static final String PARTIAL_ASYNC = "async-loader";
+    }
+
+    /**
+     * A key with a slow blocking loader
+     */
+    public static final Key<String> SLOW = KeyBuilder.of(Strings.PARTIAL_SLOW, Types.STRING);
+
+    /**
+     * A key with an asynchronous loader
+     */
+    public static final Key<String> ASYNC = KeyBuilder.of(Strings.PARTIAL_ASYNC, Types.STRING);
+
+  }
+
+  private static final AtomicInteger sSlowLoads = new AtomicInteger();
+
+  private static final CountDownLatch sSlowRelease = new CountDownLatch(1);
+
+  /**
+   * A blocking loader that waits until released
+   */
+  public static class SlowLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.SLOW, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      sSlowLoads.incrementAndGet();
+      try {
+        //noinspection ResultOfMethodCallIgnored,MagicNumber
+        sSlowRelease.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      pResult.setValue("slow");
+    }
+  }
+
+  /**
+   * A non-blocking loader
+   */
+  public static class AsyncLoader implements AsyncCacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.ASYNC, false, "", this);
+    }
+
+    @Override
+    public CompletionStage<?> loadAsync(Cache pCache, AccessContext pAccessContext, Key<String> pKey,
+      CacheResult<String> pResult) {
+      return CompletableFuture.runAsync(() -> pResult.setValue("async"));
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.SLOW.clearKeyDetails();
+    Keys.ASYNC.clearKeyDetails();
+    //noinspection MagicNumber
+    fixture = new NoCDIFixture(Executors.newFixedThreadPool(4));
+    cache = fixture.getEngine();
+    fixture.addPaths(Keys.Strings.PARTIAL_SLOW, Keys.Strings.PARTIAL_ASYNC);
+    cache.addCacheLoader(new SlowLoader());
+    cache.addCacheLoader(new AsyncLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void singleFlight() {
+    AccessContext ac = cache.createAccessContext(null);
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      futures.add(cache.getAsync(ac, Keys.SLOW));
+    }
+    for (CompletableFuture<String> future : futures) {
+      assertTrue(!future.isDone(), "The load should still be blocked");
+    }
+    sSlowRelease.countDown();
+    for (CompletableFuture<String> future : futures) {
+      assertEquals("slow", future.join());
+    }
+    assertEquals(1, sSlowLoads.get());
+    assertEquals("slow", cache.get(ac, Keys.SLOW));
+    assertEquals(1, sSlowLoads.get());
+  }
+
+  @Test
+  void asyncLoader() {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("async", cache.getAsync(ac, Keys.ASYNC).join());
+    assertEquals("async", cache.getIfPresentAsync(ac, Keys.ASYNC).join().orElse(null));
+    cache.setAsync(ac, Keys.ASYNC, "updated").join();
+    assertEquals("updated", cache.get(ac, Keys.ASYNC));
+  }
+
+}
@@ -8,24 +8,16 @@ import com.diamondq.cachly.CacheResult;
 import com.diamondq.cachly.Key;
 import com.diamondq.cachly.KeyBuilder;
 import com.diamondq.cachly.KeyPlaceholder;
-import com.diamondq.cachly.impl.CacheCallbackHandler;
-import com.diamondq.cachly.impl.CacheEngineImpl;
-import com.diamondq.cachly.impl.MemoryCacheStorage;
-import com.diamondq.cachly.spi.BeanNameableLocator;
 import com.diamondq.cachly.spi.CacheEngine;
-import com.diamondq.cachly.spi.CachlyPathConfiguration;
-import com.diamondq.common.context.impl.ContextFactorySetup;
-import com.diamondq.common.converters.impl.ConverterManagerImpl;
 import com.diamondq.common.types.Types;
 import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -114,30 +106,32 @@ public class TestGetNoCDI {
 
   private volatile CacheEngine cache;
 
+  private volatile NoCDIFixture fixture;
+
   /**
    * Creates the cache engine for testing
    */
   @BeforeEach
   public void before() {
-    var contextFactory = ContextFactorySetup.setup();
-    var converterManager = new ConverterManagerImpl(List.of());
-    var executorService = Executors.newSingleThreadExecutor();
-    var callbackHandler = new CacheCallbackHandler();
     Keys.PROCESS_DEFINITIONS.clearKeyDetails();
     Keys.PD_BY_ID_PLACE.clearKeyDetails();
     Keys.PD_BY_ID.clearKeyDetails();
-    cache = new CacheEngineImpl(callbackHandler, executorService, converterManager, contextFactory);
-    cache.addBeanNameLocator(new BeanNameableLocator());
-    cache.addCacheStorage(new MemoryCacheStorage(converterManager, executorService, callbackHandler, "my-cache"));
-    var pathConfig = new CachlyPathConfiguration(Keys.Strings.PARTIAL_PROCESS_DEFINITIONS);
-    pathConfig.setStorage("my-cache");
-    pathConfig.setSerializer("kryo");
-    cache.addPathConfiguration(pathConfig);
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPath(Keys.Strings.PARTIAL_PROCESS_DEFINITIONS, (pathConfig) -> pathConfig.setSerializer("kryo"));
     cache.addCacheLoader(new PDLoader());
     cache.addCacheLoader(new PDIDLoader());
     cache.activate();
   }
 
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
   @Test
   void test() {
     AccessContext ac = cache.createAccessContext(null);
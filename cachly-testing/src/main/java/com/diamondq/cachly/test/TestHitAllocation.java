@@ -0,0 +1,122 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that cache hits don't allocate
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestHitAllocation {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_ITEMS = "alloc-items";
+
+      public static final String PARTIAL_ID = "id";
+    }
+
+    /**
+     * The placeholder for the id
+     */
+    public static final KeyPlaceholder<String> ITEM_ID = KeyBuilder.placeholder(Strings.PARTIAL_ID, Types.STRING);
+
+    /**
+     * The key for a single item
+     */
+    public static final Key<String> ITEM = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_ITEMS, Types.STRING),
+      ITEM_ID
+    );
+
+  }
+
+  /**
+   * Loads items
+   */
+  public static class ItemLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.ITEM, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("Item " + pKey.getKey());
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.ITEM.clearKeyDetails();
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPaths(Keys.Strings.PARTIAL_ITEMS);
+    cache.addCacheLoader(new ItemLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void hitDoesNotAllocate() {
+    AccessContext ac = cache.createAccessContext(null);
+    Key<String> item = cache.resolve(Keys.ITEM, Keys.ITEM_ID, "1");
+    assertEquals("Item 1", cache.get(ac, item));
+
+    /* Warm up so that the hit path is compiled */
+
+    //noinspection MagicNumber
+    for (int i = 0; i < 200_000; i++) {
+      cache.get(ac, item);
+    }
+
+    ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long before = threadMXBean.getCurrentThreadAllocatedBytes();
+    //noinspection MagicNumber
+    for (int i = 0; i < 100_000; i++) {
+      cache.get(ac, item);
+    }
+    long allocated = threadMXBean.getCurrentThreadAllocatedBytes() - before;
+
+    /* Allow for a little noise from the measurement itself, but nothing close to an allocation per hit */
+
+    //noinspection MagicNumber
+    assertTrue(allocated < 16_384, "The hit path allocated " + allocated + " bytes over 100000 gets");
+  }
+
+}
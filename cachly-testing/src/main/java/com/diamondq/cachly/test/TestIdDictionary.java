@@ -0,0 +1,68 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.base.IdDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the lock-free id dictionary used by the serializing storages
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestIdDictionary {
+
+  @Test
+  void racingWritersAgree() throws Exception {
+    IdDictionary<String> dictionary = new IdDictionary<>();
+    //noinspection MagicNumber
+    ExecutorService writers = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<Integer>>> futures = new ArrayList<>();
+      //noinspection MagicNumber
+      for (int t = 0; t < 8; t++) {
+        futures.add(writers.submit(() -> {
+          List<Integer> ids = new ArrayList<>();
+          //noinspection MagicNumber
+          for (int i = 0; i < 1000; i++) {
+            String value = "value-" + i;
+            Integer id = dictionary.getId(value);
+            ids.add(id != null ? id : dictionary.publish(value, dictionary.allocate()));
+          }
+          return ids;
+        }));
+      }
+
+      /* Every writer ends up with the same id for each value, and every id decodes back to its value */
+
+      List<Integer> first = futures.getFirst().get();
+      for (Future<List<Integer>> future : futures) {
+        assertEquals(first, future.get());
+      }
+      //noinspection MagicNumber
+      assertEquals(1000, new HashSet<>(first).size());
+      for (int i = 0; i < first.size(); i++) {
+        assertEquals("value-" + i, dictionary.getValue(first.get(i)));
+      }
+    }
+    finally {
+      writers.shutdown();
+    }
+  }
+
+  @Test
+  void neverWraps() {
+    IdDictionary<String> dictionary = new IdDictionary<>();
+    dictionary.restore("last", Integer.MAX_VALUE);
+    assertThrows(IllegalStateException.class, dictionary::allocate);
+    assertEquals(Integer.valueOf(Integer.MAX_VALUE), dictionary.getId("last"));
+  }
+
+}
@@ -0,0 +1,152 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the subtree scans and invalidation
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestKeyTree {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_USERS = "tree-users";
+
+      public static final String PARTIAL_SUMMARY = "tree-summary";
+
+      public static final String PARTIAL_ID = "id";
+    }
+
+    /**
+     * The root of all the users
+     */
+    public static final Key<String> USERS = KeyBuilder.of(Strings.PARTIAL_USERS, Types.STRING);
+
+    /**
+     * The placeholder for the user id
+     */
+    public static final KeyPlaceholder<String> USER_ID = KeyBuilder.placeholder(Strings.PARTIAL_ID, Types.STRING);
+
+    /**
+     * A user
+     */
+    public static final Key<String> USER = KeyBuilder.from(USERS, USER_ID);
+
+    /**
+     * A summary, which depends on the first user
+     */
+    public static final Key<String> SUMMARY = KeyBuilder.of(Strings.PARTIAL_SUMMARY, Types.STRING);
+
+  }
+
+  /**
+   * The user loader
+   */
+  public static class UserLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.USER, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("user-" + pKey.getKey());
+    }
+  }
+
+  /**
+   * The summary loader
+   */
+  public static class SummaryLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.SUMMARY, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("summary of " + pCache.get(pAccessContext, Keys.USER, Keys.USER_ID, "1"));
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.USER.clearKeyDetails();
+    Keys.SUMMARY.clearKeyDetails();
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPaths(Keys.Strings.PARTIAL_USERS, Keys.Strings.PARTIAL_SUMMARY);
+    cache.addCacheLoader(new UserLoader());
+    cache.addCacheLoader(new SummaryLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  private Set<String> streamKeys(AccessContext pAccessContext, Key<?> pPrefixKey) {
+    return cache.streamEntries(pAccessContext, pPrefixKey)
+      .map((entry) -> entry.getKey().toString())
+      .collect(Collectors.toSet());
+  }
+
+  @Test
+  void subtree() {
+    AccessContext ac = cache.createAccessContext(null);
+    for (String id : List.of("1", "2", "10")) {
+      cache.get(ac, Keys.USER, Keys.USER_ID, id);
+    }
+    assertEquals("summary of user-1", cache.get(ac, Keys.SUMMARY));
+
+    /* A sibling that merely shares the prefix string isn't part of the subtree */
+
+    assertEquals(Set.of("tree-users/1"), streamKeys(ac, cache.resolve(Keys.USER, Keys.USER_ID, "1")));
+    assertEquals(Set.of("tree-users/1", "tree-users/2", "tree-users/10"), streamKeys(ac, Keys.USERS));
+
+    /* Invalidating the subtree also invalidates its dependents */
+
+    cache.invalidateTree(ac, cache.resolve(Keys.USER, Keys.USER_ID, "1"));
+    assertEquals(Set.of("tree-users/2", "tree-users/10"), streamKeys(ac, Keys.USERS));
+    assertEquals(Set.of(), streamKeys(ac, Keys.SUMMARY));
+
+    cache.invalidateTree(ac, Keys.USERS);
+    assertEquals(Set.of(), streamKeys(ac, Keys.USERS));
+  }
+
+}
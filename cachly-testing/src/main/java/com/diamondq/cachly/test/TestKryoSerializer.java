@@ -0,0 +1,127 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.serializer.kryo.ByteBufferToObjectConverter;
+import com.diamondq.cachly.serializer.kryo.KryoPool;
+import com.diamondq.cachly.serializer.kryo.KryoStreamingSerializer;
+import com.diamondq.cachly.serializer.kryo.ObjectToByteBufferConverter;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the Kryo serializer outside a storage
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestKryoSerializer {
+
+  private static final int HEADER_SIZE = 7;
+
+  private volatile KryoPool kryoPool;
+
+  private volatile KryoStreamingSerializer serializer;
+
+  /**
+   * Creates the Kryo pool for testing
+   */
+  @BeforeEach
+  public void before() {
+    kryoPool = new KryoPool(List.of());
+    serializer = new KryoStreamingSerializer(kryoPool);
+  }
+
+  @Test
+  void streamedRoundTrip() {
+    Map<String, List<Integer>> value = new HashMap<>();
+    //noinspection MagicNumber
+    value.put("abc", new ArrayList<>(List.of(1, 2, 3)));
+    value.put("def", new ArrayList<>());
+    byte[] data = serializer.serialize(value, HEADER_SIZE);
+
+    /* The value is read in place from behind the header */
+
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    buffer.position(HEADER_SIZE);
+    assertEquals(value, serializer.deserialize(buffer, Map.class));
+
+    /* The converter reads the same bytes, since an entry may be read either way */
+
+    ByteBuffer valueBuffer = ByteBuffer.wrap(data, HEADER_SIZE, data.length - HEADER_SIZE).slice();
+    assertEquals(value, new ByteBufferToObjectConverter(kryoPool).convert(valueBuffer));
+  }
+
+  @Test
+  void streamedMatchesConverter() {
+    //noinspection MagicNumber
+    String value = "x".repeat(10000);
+    byte[] data = serializer.serialize(value, HEADER_SIZE);
+
+    /* The converter hands back exactly the serialized bytes, with nothing trailing */
+
+    ByteBuffer converted = new ObjectToByteBufferConverter(kryoPool).convert(value);
+    assertArrayEquals(converted.array(), Arrays.copyOfRange(data, HEADER_SIZE, data.length));
+
+    /* The pooled output is reused, and still only hands back what was written */
+
+    byte[] small = serializer.serialize("y", HEADER_SIZE);
+    try (Output output = new Output(HEADER_SIZE, -1)) {
+      KryoPool.createKryo(List.of()).writeClassAndObject(output, "y");
+      assertEquals(HEADER_SIZE + output.position(), small.length);
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(small);
+    buffer.position(HEADER_SIZE);
+    assertEquals("y", serializer.deserialize(buffer, String.class));
+  }
+
+  @Test
+  void concurrentRoundTrips() throws Exception {
+    ObjectToByteBufferConverter writer = new ObjectToByteBufferConverter(kryoPool);
+    ByteBufferToObjectConverter reader = new ByteBufferToObjectConverter(kryoPool);
+    //noinspection MagicNumber
+    ExecutorService threads = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      //noinspection MagicNumber
+      for (int t = 0; t < 8; t++) {
+        int thread = t;
+        futures.add(threads.submit(() -> {
+          //noinspection MagicNumber
+          for (int i = 0; i < 2000; i++) {
+
+            /* Vary the size, so that the pooled buffers grow and are shared between small and large values */
+
+            Map<String, Object> value = new HashMap<>();
+            value.put("thread", thread);
+            value.put("i", i);
+            //noinspection MagicNumber
+            value.put("payload", String.valueOf(thread).repeat(i % 500));
+            assertEquals(value, reader.convert(writer.convert(value)));
+            ByteBuffer buffer = ByteBuffer.wrap(serializer.serialize(value, HEADER_SIZE));
+            buffer.position(HEADER_SIZE);
+            assertEquals(value, serializer.deserialize(buffer, Map.class));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      threads.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the generation based lazy invalidation
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestLazyInvalidation {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_ROOT = "lazy-root";
+
+      public static final String PARTIAL_MIDDLE = "lazy-middle";
+
+      public static final String PARTIAL_LEAVES = "lazy-leaves";
+
+      public static final String PARTIAL_ID = "id";
+    }
+
+    /**
+     * The root key, which is lazily invalidated
+     */
+    public static final Key<String> ROOT = KeyBuilder.of(Strings.PARTIAL_ROOT, Types.STRING);
+
+    /**
+     * A key depending on the root
+     */
+    public static final Key<String> MIDDLE = KeyBuilder.of(Strings.PARTIAL_MIDDLE, Types.STRING);
+
+    /**
+     * The placeholder for the leaf id
+     */
+    public static final KeyPlaceholder<String> LEAF_ID = KeyBuilder.placeholder(Strings.PARTIAL_ID, Types.STRING);
+
+    /**
+     * The leaves, which depend on the middle key
+     */
+    public static final Key<String> LEAF = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_LEAVES, Types.STRING),
+      LEAF_ID
+    );
+
+  }
+
+  private static final AtomicInteger sRootVersion = new AtomicInteger();
+
+  private static final AtomicInteger sLeafLoads = new AtomicInteger();
+
+  /**
+   * The root loader, which returns the current version
+   */
+  public static class RootLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.ROOT, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("v" + sRootVersion.get());
+    }
+  }
+
+  /**
+   * The middle loader
+   */
+  public static class MiddleLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.MIDDLE, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue(pCache.get(pAccessContext, Keys.ROOT));
+    }
+  }
+
+  /**
+   * The leaf loader
+   */
+  public static class LeafLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.LEAF, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      sLeafLoads.incrementAndGet();
+      pResult.setValue(pCache.get(pAccessContext, Keys.MIDDLE) + "/" + pKey.getKey());
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.ROOT.clearKeyDetails();
+    Keys.MIDDLE.clearKeyDetails();
+    Keys.LEAF.clearKeyDetails();
+    sRootVersion.set(1);
+    sLeafLoads.set(0);
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPath(Keys.Strings.PARTIAL_ROOT, (pathConfig) -> pathConfig.setLazyInvalidation(true));
+    fixture.addPaths(Keys.Strings.PARTIAL_MIDDLE, Keys.Strings.PARTIAL_LEAVES);
+    cache.addCacheLoader(new RootLoader());
+    cache.addCacheLoader(new MiddleLoader());
+    cache.addCacheLoader(new LeafLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void staleOnRead() {
+    AccessContext ac = cache.createAccessContext(null);
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      assertEquals("v1/" + i, cache.get(ac, Keys.LEAF, Keys.LEAF_ID, String.valueOf(i)));
+    }
+    //noinspection MagicNumber
+    assertEquals(10, sLeafLoads.get());
+
+    /* Invalidating the root leaves the graph alone, but everything below it is now stale */
+
+    sRootVersion.set(2);
+    int graphSize = cache.getDependencyGraphSize();
+    cache.invalidate(ac, Keys.ROOT);
+    assertEquals(graphSize, cache.getDependencyGraphSize());
+
+    /* Each leaf is reloaded on its next read (through the middle key), and only once */
+
+    assertEquals("v2/3", cache.get(ac, Keys.LEAF, Keys.LEAF_ID, "3"));
+    //noinspection MagicNumber
+    assertEquals(11, sLeafLoads.get());
+    assertEquals("v2/3", cache.get(ac, Keys.LEAF, Keys.LEAF_ID, "3"));
+    //noinspection MagicNumber
+    assertEquals(11, sLeafLoads.get());
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      assertEquals("v2/" + i, cache.get(ac, Keys.LEAF, Keys.LEAF_ID, String.valueOf(i)));
+    }
+    //noinspection MagicNumber
+    assertEquals(20, sLeafLoads.get());
+  }
+
+}
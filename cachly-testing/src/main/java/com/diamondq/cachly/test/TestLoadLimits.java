@@ -0,0 +1,176 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheOverloadedException;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.cachly.spi.LoadMetrics;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the per path load limits
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestLoadLimits {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_SLOW = "limits-slow";
+
+      public static final String PARTIAL_FAST = "limits-fast";
+
+      public static final String PARTIAL_ID = "id";
+    }
+
+    /**
+     * The placeholder for the id
+     */
+    public static final KeyPlaceholder<String> ID = KeyBuilder.placeholder(Strings.PARTIAL_ID, Types.STRING);
+
+    /**
+     * The keys loaded from the slow backend
+     */
+    public static final Key<String> SLOW = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_SLOW, Types.STRING), ID);
+
+    /**
+     * The keys loaded from a healthy backend
+     */
+    public static final Key<String> FAST = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_FAST, Types.STRING), ID);
+
+  }
+
+  private static volatile CountDownLatch sStarted = new CountDownLatch(1);
+
+  private static volatile CountDownLatch sRelease = new CountDownLatch(1);
+
+  /**
+   * The slow loader, which blocks until released
+   */
+  public static class SlowLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.SLOW, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      sStarted.countDown();
+      try {
+        //noinspection MagicNumber
+        if (!sRelease.await(10L, TimeUnit.SECONDS)) throw new IllegalStateException("Never released");
+      }
+      catch (InterruptedException ex) {
+        throw new IllegalStateException(ex);
+      }
+      pResult.setValue("slow/" + pKey.getKey());
+    }
+  }
+
+  /**
+   * The fast loader
+   */
+  public static class FastLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.FAST, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("fast/" + pKey.getKey());
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.SLOW.clearKeyDetails();
+    Keys.FAST.clearKeyDetails();
+    sStarted = new CountDownLatch(1);
+    sRelease = new CountDownLatch(1);
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPath(Keys.Strings.PARTIAL_SLOW, (slowConfig) -> {
+      slowConfig.setMaxConcurrentLoads(1);
+      slowConfig.setMaxQueuedLoads(0);
+      //noinspection MagicNumber
+      slowConfig.setLoadTimeout(Duration.ofMillis(200L));
+    });
+    fixture.addPaths(Keys.Strings.PARTIAL_FAST);
+    cache.addCacheLoader(new SlowLoader());
+    cache.addCacheLoader(new FastLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void shedsWhenFull() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get(ac, Keys.SLOW, Keys.ID, "1"));
+    //noinspection MagicNumber
+    assertTrue(sStarted.await(5L, TimeUnit.SECONDS));
+
+    /* The only slot is taken and nothing may queue, so a different key is shed right away */
+
+    assertThrows(CacheOverloadedException.class, () -> cache.get(ac, Keys.SLOW, Keys.ID, "2"));
+
+    /* The same key waits on the running load, but only up to the load timeout */
+
+    assertThrows(CacheOverloadedException.class, () -> cache.get(ac, Keys.SLOW, Keys.ID, "1"));
+
+    /* The other path is unaffected */
+
+    assertEquals("fast/1", cache.get(ac, Keys.FAST, Keys.ID, "1"));
+
+    LoadMetrics metrics = cache.getLoadMetrics().get(Keys.Strings.PARTIAL_SLOW);
+    assertNotNull(metrics);
+    assertEquals(1, metrics.activeLoads());
+    assertEquals(1L, metrics.rejectedLoads());
+    assertEquals(1L, metrics.timedOutLoads());
+    assertNull(cache.getLoadMetrics().get(Keys.Strings.PARTIAL_FAST));
+
+    sRelease.countDown();
+    assertEquals("slow/1", first.join());
+    assertEquals("slow/2", cache.get(ac, Keys.SLOW, Keys.ID, "2"));
+  }
+
+}
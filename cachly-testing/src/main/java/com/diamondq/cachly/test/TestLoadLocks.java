@@ -0,0 +1,249 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Tests the per-key load locking
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestLoadLocks {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_SELF = "locks-self";
+
+      public static final String PARTIAL_OTHER = "locks-other";
+
+      public static final String PARTIAL_PING = "locks-ping";
+
+      public static final String PARTIAL_PONG = "locks-pong";
+    }
+
+    /**
+     * A key whose loader requests itself
+     */
+    public static final Key<String> SELF = KeyBuilder.of(Strings.PARTIAL_SELF, Types.STRING);
+
+    /**
+     * A simple key
+     */
+    public static final Key<String> OTHER = KeyBuilder.of(Strings.PARTIAL_OTHER, Types.STRING);
+
+    /**
+     * A key whose loader requests PONG
+     */
+    public static final Key<String> PING = KeyBuilder.of(Strings.PARTIAL_PING, Types.STRING);
+
+    /**
+     * A key whose loader requests PING
+     */
+    public static final Key<String> PONG = KeyBuilder.of(Strings.PARTIAL_PONG, Types.STRING);
+
+  }
+
+  /**
+   * A loader that recursively asks for its own key
+   */
+  public static class SelfLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.SELF, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue(pCache.get(pAccessContext, Keys.SELF));
+    }
+  }
+
+  private static final AtomicInteger sOtherLoads = new AtomicInteger();
+
+  /**
+   * A simple loader
+   */
+  public static class OtherLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.OTHER, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      sOtherLoads.incrementAndGet();
+      pResult.setValue("other");
+    }
+  }
+
+  private static volatile CountDownLatch sBothLoading = new CountDownLatch(2);
+
+  /**
+   * A loader that requests the other key of a pair, once both loads are running
+   */
+  public static class PairLoader implements CacheLoader<String> {
+
+    private final Key<String> mKey;
+
+    private final Key<String> mOther;
+
+    /**
+     * Primary constructor
+     *
+     * @param pKey the key this loader loads
+     * @param pOther the key it requests
+     */
+    public PairLoader(Key<String> pKey, Key<String> pOther) {
+      mKey = pKey;
+      mOther = pOther;
+    }
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(mKey, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      sBothLoading.countDown();
+      try {
+        //noinspection MagicNumber
+        if (!sBothLoading.await(5L, TimeUnit.SECONDS)) throw new IllegalStateException("The other load never started");
+      }
+      catch (InterruptedException ex) {
+        throw new IllegalStateException(ex);
+      }
+      pResult.setValue(pCache.get(pAccessContext, mOther));
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    sOtherLoads.set(0);
+    sBothLoading = new CountDownLatch(2);
+    Keys.SELF.clearKeyDetails();
+    Keys.OTHER.clearKeyDetails();
+    Keys.PING.clearKeyDetails();
+    Keys.PONG.clearKeyDetails();
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPaths(Keys.Strings.PARTIAL_SELF,
+      Keys.Strings.PARTIAL_OTHER,
+      Keys.Strings.PARTIAL_PING,
+      Keys.Strings.PARTIAL_PONG
+    );
+    cache.addCacheLoader(new SelfLoader());
+    cache.addCacheLoader(new OtherLoader());
+    cache.addCacheLoader(new PairLoader(Keys.PING, Keys.PONG));
+    cache.addCacheLoader(new PairLoader(Keys.PONG, Keys.PING));
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void recursiveLoad() {
+    AccessContext ac = cache.createAccessContext(null);
+    assertThrows(IllegalStateException.class, () -> cache.get(ac, Keys.SELF));
+
+    /* The failed load must not leave the lock behind */
+
+    assertThrows(IllegalStateException.class, () -> cache.get(ac, Keys.SELF));
+    assertEquals("other", cache.get(ac, Keys.OTHER));
+  }
+
+  @Test
+  void crossThreadCycle() {
+    AccessContext ac = cache.createAccessContext(null);
+
+    /* Each thread loads one key of the pair, and then waits on the other thread's load of the other key */
+
+    CompletableFuture<String> ping = CompletableFuture.supplyAsync(() -> cache.get(ac, Keys.PING));
+    CompletableFuture<String> pong = CompletableFuture.supplyAsync(() -> cache.get(ac, Keys.PONG));
+
+    /* The cycle is reported, and the load that failed fails the one waiting on it too, so neither hangs */
+
+    //noinspection MagicNumber
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      for (CompletableFuture<String> future : List.of(ping, pong)) {
+        CompletionException ex = assertThrows(CompletionException.class, future::join);
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+      }
+    });
+
+    /* The failed loads must not leave their locks behind */
+
+    assertEquals("other", cache.get(ac, Keys.OTHER));
+  }
+
+  @Test
+  void syncGetRacesQueuedAsyncLoad() throws Exception {
+    AccessContext ac = cache.createAccessContext(null);
+
+    /* Keep the only executor thread busy, so that the asynchronous load is queued behind it */
+
+    CountDownLatch release = new CountDownLatch(1);
+    fixture.getExecutorService().execute(() -> {
+      try {
+        //noinspection ResultOfMethodCallIgnored,MagicNumber
+        release.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    CompletableFuture<String> future = cache.getAsync(ac, Keys.OTHER);
+
+    /* The synchronous get waits on the queued load, which must still be able to run once the executor frees up */
+
+    //noinspection MagicNumber
+    CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(release::countDown);
+    //noinspection MagicNumber
+    assertEquals("other", assertTimeoutPreemptively(Duration.ofSeconds(5), () -> cache.get(ac, Keys.OTHER)));
+    //noinspection MagicNumber
+    assertEquals("other", future.get(5, TimeUnit.SECONDS));
+    assertEquals(1, sOtherLoads.get());
+  }
+
+}
@@ -0,0 +1,199 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.CacheValue;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the per-path expiry configuration
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestPathExpiry {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_USERS = "expiry-users";
+
+      public static final String PARTIAL_ID = "id";
+
+      public static final String PARTIAL_IDLE = "expiry-idle";
+    }
+
+    /**
+     * The placeholder for the id
+     */
+    public static final KeyPlaceholder<String> USER_ID = KeyBuilder.placeholder(Strings.PARTIAL_ID, Types.STRING);
+
+    /**
+     * The key for a single user
+     */
+    public static final Key<String> USER = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_USERS, Types.STRING),
+      USER_ID
+    );
+
+    /**
+     * A key that expires when it isn't read
+     */
+    public static final Key<String> IDLE = KeyBuilder.of(Strings.PARTIAL_IDLE, Types.STRING);
+
+  }
+
+  private static final AtomicInteger sUserLoads = new AtomicInteger();
+
+  private static final AtomicInteger sIdleLoads = new AtomicInteger();
+
+  /**
+   * Loads users. The user "missing" is cached as a null.
+   */
+  public static class UserLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.USER, true, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      sUserLoads.incrementAndGet();
+      pResult.setNullableVaue("missing".equals(pKey.getKey()) ? null : "User " + pKey.getKey());
+    }
+  }
+
+  /**
+   * Loads the idle key
+   */
+  public static class IdleLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.IDLE, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("Idle " + sIdleLoads.incrementAndGet());
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.USER.clearKeyDetails();
+    Keys.IDLE.clearKeyDetails();
+    sUserLoads.set(0);
+    sIdleLoads.set(0);
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPath(Keys.Strings.PARTIAL_USERS, (usersConfig) -> {
+      //noinspection MagicNumber
+      usersConfig.setExpireAfterWrite(Duration.ofSeconds(10));
+      //noinspection MagicNumber
+      usersConfig.setNegativeTtl(Duration.ofMillis(200));
+    });
+    //noinspection MagicNumber
+    fixture.addPath(Keys.Strings.PARTIAL_IDLE, (idleConfig) -> idleConfig.setExpireAfterAccess(Duration.ofMillis(300)));
+    cache.addCacheLoader(new UserLoader());
+    cache.addCacheLoader(new IdleLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void negativeTtl() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    Key<String> user = cache.resolve(Keys.USER, Keys.USER_ID, "1");
+    Key<String> missing = cache.resolve(Keys.USER, Keys.USER_ID, "missing");
+    assertEquals("User 1", cache.get(ac, user));
+    CacheValue<String> value = cache.getCacheValue(ac, missing);
+    assertTrue(value.isFound());
+    assertTrue(value.isNull());
+    cache.getCacheValue(ac, missing);
+    assertEquals(2, sUserLoads.get());
+
+    /* The null result expires quickly, but the found one doesn't */
+
+    //noinspection MagicNumber
+    Thread.sleep(400);
+    assertEquals("User 1", cache.get(ac, user));
+    cache.getCacheValue(ac, missing);
+    assertEquals(3, sUserLoads.get());
+  }
+
+  @Test
+  void unreadExpiredEntriesAreReclaimed() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    Key<String> missing = cache.resolve(Keys.USER, Keys.USER_ID, "missing");
+    assertTrue(cache.getCacheValue(ac, missing).isNull());
+
+    /* Once the null result has expired, writing other entries removes it without it ever being read again */
+
+    //noinspection MagicNumber
+    Thread.sleep(400);
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      cache.get(ac, cache.resolve(Keys.USER, Keys.USER_ID, String.valueOf(i)));
+    }
+    String missingStr = missing.toString();
+    assertFalse(fixture.getStorage()
+      .streamEntries(ac)
+      .anyMatch((entry) -> missingStr.equals(entry.getKey().toString())));
+    assertEquals(11, sUserLoads.get());
+  }
+
+  @Test
+  void expireAfterAccess() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("Idle 1", cache.get(ac, Keys.IDLE));
+
+    /* Reading keeps extending the expiry */
+
+    //noinspection MagicNumber
+    for (int i = 0; i < 5; i++) {
+      //noinspection MagicNumber
+      Thread.sleep(100);
+      assertEquals("Idle 1", cache.get(ac, Keys.IDLE));
+    }
+
+    /* But leaving it idle lets it expire */
+
+    //noinspection MagicNumber
+    Thread.sleep(500);
+    assertEquals("Idle 2", cache.get(ac, Keys.IDLE));
+  }
+
+}
@@ -0,0 +1,140 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.impl.MemoryCacheStorage;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.cachly.spi.CachlyPathConfiguration;
+import com.diamondq.cachly.spi.KeySPI;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that key setup follows changes to the path configuration
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestPathTopology {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_ITEMS = "topology-items";
+
+      public static final String PARTIAL_ID = "id";
+    }
+
+    /**
+     * The placeholder for the id
+     */
+    public static final KeyPlaceholder<String> ITEM_ID = KeyBuilder.placeholder(Strings.PARTIAL_ID, Types.STRING);
+
+    /**
+     * The key for a single item
+     */
+    public static final Key<String> ITEM = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_ITEMS, Types.STRING),
+      ITEM_ID
+    );
+
+  }
+
+  private static final AtomicInteger sLoads = new AtomicInteger();
+
+  /**
+   * Loads items
+   */
+  public static class ItemLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.ITEM, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("Item " + pKey.getKey() + " " + sLoads.incrementAndGet());
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  private volatile MemoryCacheStorage otherStorage;
+
+  private volatile ItemLoader loader;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.ITEM.clearKeyDetails();
+    sLoads.set(0);
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    otherStorage = fixture.addStorage("other-cache");
+    fixture.addPaths(Keys.Strings.PARTIAL_ITEMS);
+    loader = new ItemLoader();
+    cache.addCacheLoader(loader);
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void reconfiguredPath() {
+    AccessContext ac = cache.createAccessContext(null);
+    Key<String> item1 = cache.resolve(Keys.ITEM, Keys.ITEM_ID, "1");
+    Key<String> item2 = cache.resolve(Keys.ITEM, Keys.ITEM_ID, "2");
+    assertEquals("Item 1 1", cache.get(ac, item1));
+    assertEquals("Item 2 2", cache.get(ac, item2));
+    assertSame(((KeySPI<String>) item1).getLastStorage(), ((KeySPI<String>) item2).getLastStorage());
+
+    /* Moving the path to another storage means the keys are set up again, and so are loaded into the new storage */
+
+    var pathConfig = new CachlyPathConfiguration(Keys.Strings.PARTIAL_ITEMS);
+    pathConfig.setStorage("other-cache");
+    cache.addPathConfiguration(pathConfig);
+    assertEquals("Item 1 3", cache.get(ac, item1));
+    assertSame(otherStorage, ((KeySPI<String>) item1).getLastStorage());
+    assertEquals("Item 1 3", cache.get(ac, item1));
+  }
+
+  @Test
+  void removedLoader() {
+    AccessContext ac = cache.createAccessContext(null);
+    KeySPI<String> item1 = (KeySPI<String>) cache.resolve(Keys.ITEM, Keys.ITEM_ID, "1");
+    assertEquals("Item 1 1", cache.get(ac, item1));
+
+    /* Once the loader is gone, the key is set up again and fails like a key that no loader ever covered */
+
+    cache.removeCacheLoader(loader);
+    cache.setupKey(item1);
+    assertThrows(IllegalStateException.class, item1::getLoader);
+    assertThrows(IllegalStateException.class, item1::getLastStorage);
+  }
+
+}
@@ -0,0 +1,164 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the refresh-ahead paths
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestRefreshAhead {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_HOT = "refresh-hot";
+
+      public static final String PARTIAL_COLD = "refresh-cold";
+    }
+
+    /**
+     * A key that is read after loading
+     */
+    public static final Key<String> HOT = KeyBuilder.of(Strings.PARTIAL_HOT, Types.STRING);
+
+    /**
+     * A key that is never read after loading
+     */
+    public static final Key<String> COLD = KeyBuilder.of(Strings.PARTIAL_COLD, Types.STRING);
+
+  }
+
+  /**
+   * A loader that returns an increasing counter with a short expiry
+   */
+  public static class CountingLoader implements CacheLoader<String> {
+
+    private final Key<String> mKey;
+
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    /**
+     * Constructor
+     *
+     * @param pKey the key
+     */
+    public CountingLoader(Key<String> pKey) {
+      mKey = pKey;
+    }
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(mKey, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      //noinspection MagicNumber
+      pResult.setValue("Load " + mCount.incrementAndGet()).setOverrideExpiry(Duration.ofMillis(500));
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  private volatile CountingLoader hotLoader;
+
+  private volatile CountingLoader coldLoader;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.HOT.clearKeyDetails();
+    Keys.COLD.clearKeyDetails();
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    for (String path : List.of(Keys.Strings.PARTIAL_HOT, Keys.Strings.PARTIAL_COLD)) {
+      //noinspection MagicNumber
+      fixture.addPath(path, (pathConfig) -> pathConfig.setRefreshAheadFactor(0.5));
+    }
+    hotLoader = new CountingLoader(Keys.HOT);
+    coldLoader = new CountingLoader(Keys.COLD);
+    cache.addCacheLoader(hotLoader);
+    cache.addCacheLoader(coldLoader);
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void hotEntryIsRefreshed() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("Load 1", cache.get(ac, Keys.HOT));
+
+    /* Reading it again marks it as hot */
+
+    assertEquals("Load 1", cache.get(ac, Keys.HOT));
+
+    /* Wait for the background refresh */
+
+    //noinspection MagicNumber
+    long deadline = System.currentTimeMillis() + 2000;
+    String value = cache.get(ac, Keys.HOT);
+    while (("Load 1".equals(value)) && (System.currentTimeMillis() < deadline)) {
+      //noinspection BusyWait,MagicNumber
+      Thread.sleep(10);
+      value = cache.get(ac, Keys.HOT);
+    }
+    assertEquals("Load 2", value);
+    assertEquals(2, hotLoader.mCount.get());
+  }
+
+  @Test
+  void coldEntryIsNotRefreshed() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("Load 1", cache.get(ac, Keys.COLD));
+
+    //noinspection MagicNumber
+    Thread.sleep(400);
+    assertEquals(1, coldLoader.mCount.get());
+  }
+
+  @Test
+  void invalidatedEntryIsNotRefreshed() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("Load 1", cache.get(ac, Keys.HOT));
+    assertEquals("Load 1", cache.get(ac, Keys.HOT));
+
+    /* The scheduled refresh goes away with the entry */
+
+    cache.invalidateAll(ac);
+    //noinspection MagicNumber
+    Thread.sleep(400);
+    assertEquals(1, hotLoader.mCount.get());
+  }
+
+}
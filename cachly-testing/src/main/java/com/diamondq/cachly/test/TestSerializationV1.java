@@ -0,0 +1,197 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.base.AbstractCacheStorage;
+import com.diamondq.cachly.impl.AccessContextImpl;
+import com.diamondq.cachly.spi.CommonKeyValuePair;
+import com.diamondq.cachly.spi.CompositeKey;
+import com.diamondq.cachly.spi.KeySPI;
+import com.diamondq.cachly.spi.ResolvedKeyPlaceholder;
+import com.diamondq.cachly.spi.StaticKey;
+import com.diamondq.cachly.spi.StaticKeyPlaceholder;
+import com.diamondq.common.converters.impl.ConverterManagerImpl;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that entries and dictionary records written in the v1 serialization format are still readable
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestSerializationV1 {
+
+  /**
+   * A serializing storage over a plain map, so that the raw bytes can be written directly, and survive a restart
+   */
+  public static class ByteStorage extends AbstractCacheStorage<String, String> {
+
+    private final ConcurrentNavigableMap<String, byte[]> mData;
+
+    /**
+     * Primary constructor
+     *
+     * @param pExecutorService the Executor Service
+     * @param pData the underlying data
+     */
+    public ByteStorage(ExecutorService pExecutorService, ConcurrentNavigableMap<String, byte[]> pData) {
+      super(new ConverterManagerImpl(List.of()),
+        pExecutorService,
+        "",
+        null,
+        String.class,
+        byte[].class,
+        true,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null
+      );
+      mData = pData;
+      init();
+    }
+
+    @Override
+    protected void writeToCache(CommonKeyValuePair<String, String> pEntry) {
+      mData.put(pEntry.serKey, (byte[]) pEntry.serValue);
+    }
+
+    @Override
+    protected Optional<?> readFromPrimaryCache(String pKey) {
+      return Optional.ofNullable(mData.get(pKey));
+    }
+
+    @Override
+    protected void invalidate(String pCache, @Nullable String pKey) {
+      if (pKey == null) mData.clear();
+      else mData.remove(pKey);
+    }
+
+    @Override
+    protected Stream<Map.Entry<String, ? extends Object>> streamPrimary() {
+      return mData.entrySet().stream().map((entry) -> new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue()));
+    }
+
+    @Override
+    protected Stream<Map.Entry<String, ? extends Object>> streamMetaEntries() {
+      return streamPrimary();
+    }
+  }
+
+  private volatile ExecutorService executorService;
+
+  private volatile ConcurrentNavigableMap<String, byte[]> data;
+
+  /**
+   * Writes the v1 dictionary records and entries
+   */
+  @BeforeEach
+  public void before() {
+    executorService = Executors.newSingleThreadExecutor();
+    data = new ConcurrentSkipListMap<>();
+
+    /* The dictionary: the default serializer, the two base keys, and the String class */
+
+    data.put("s/0", "__NULL__".getBytes(StandardCharsets.UTF_8));
+    data.put("s/1", "v1-items/{id}".getBytes(StandardCharsets.UTF_8));
+    data.put("s/2", "v1-static".getBytes(StandardCharsets.UTF_8));
+    ByteBuffer type = ByteBuffer.allocate(1 + String.class.getName().length());
+    type.put((byte) 1);
+    type.put(String.class.getName().getBytes(StandardCharsets.UTF_8));
+    data.put("t/0", type.array());
+
+    /* The entries hold null values, so only the v1 header and key are decoded */
+
+    data.put("p/v1-items/abc", entry(1, true));
+    data.put("p/v1-static", entry(2, false));
+  }
+
+  /**
+   * Shuts down the executor
+   */
+  @AfterEach
+  public void after() {
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Builds a v1 entry: the version and flags, then the base key, serializer, output type and value class ids as
+   * unsigned shorts, and then the part type of each placeholder
+   */
+  private static byte[] entry(int pBaseKeyId, boolean pPlaceholder) {
+    //noinspection MagicNumber
+    ByteBuffer buffer = ByteBuffer.allocate(9 + (pPlaceholder ? 1 : 0));
+    buffer.put((byte) (AbstractCacheStorage.SERIALIZATION_VERSION_1 + (AbstractCacheStorage.FLAG_ISNULL << 4)));
+    buffer.putShort((short) pBaseKeyId);
+    buffer.putShort((short) 0);
+    buffer.putShort((short) 0);
+    buffer.putShort((short) 0);
+    if (pPlaceholder) buffer.put((byte) 2);
+    return buffer.array();
+  }
+
+  @Test
+  void queryForKey() {
+    ByteStorage storage = new ByteStorage(executorService, data);
+    AccessContext ac = new AccessContextImpl(Map.of());
+    KeySPI<String> item = new CompositeKey<>(new StaticKey<>("v1-items", String.class),
+      new ResolvedKeyPlaceholder<>(new StaticKeyPlaceholder<>("id", String.class), "abc")
+    );
+    CacheResult<String> result = storage.queryForKey(ac, item);
+    assertTrue(result.entryFound());
+    assertTrue(result.isNull());
+    assertTrue(storage.queryForKey(ac, new CompositeKey<>("v1-static", String.class)).entryFound());
+  }
+
+  @Test
+  void streamEntries() {
+    assertEntries(new ByteStorage(executorService, data));
+  }
+
+  @Test
+  void restart() {
+    assertEntries(new ByteStorage(executorService, data));
+
+    /* A second storage over the same data rebuilds its dictionaries from the v1 records */
+
+    assertEntries(new ByteStorage(executorService, data));
+  }
+
+  private static void assertEntries(ByteStorage pStorage) {
+    AccessContext ac = new AccessContextImpl(Map.of());
+    Map<String, Map.Entry<Key<?>, CacheResult<?>>> entries;
+    try (Stream<Map.Entry<Key<?>, CacheResult<?>>> stream = pStorage.streamEntries(ac)) {
+      entries = stream.collect(Collectors.toMap((entry) -> entry.getKey().toString(), (entry) -> entry));
+    }
+    assertEquals(Set.of("v1-items/abc", "v1-static"), entries.keySet());
+    Map.Entry<Key<?>, CacheResult<?>> item = entries.get("v1-items/abc");
+    assertInstanceOf(ResolvedKeyPlaceholder.class, ((KeySPI<?>) item.getKey()).getParts()[1]);
+    assertEquals(String.class, item.getKey().getOutputType());
+    assertTrue(item.getValue().entryFound());
+    assertTrue(item.getValue().isNull());
+  }
+
+}
@@ -19,6 +19,7 @@ import org.junit.jupiter.api.Test;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 @SuppressWarnings("ClassNamePrefixedWithPackageName")
@@ -119,4 +120,18 @@ public class TestSerializing {
     assertNotNull(test);
   }
 
+  @Test
+  void testHit() {
+    AccessContext ac = cache.createAccessContext(null);
+    cache.get(ac, Keys.MAP_BY_ID, Keys.MAP_BY_ID_PLACEHOLDER, "abc");
+
+    /* The second read is a hit, which only decodes the value */
+
+    SerializeTest test = cache.get(ac, Keys.MAP_BY_ID, Keys.MAP_BY_ID_PLACEHOLDER, "abc");
+    assertNotNull(test);
+    assertEquals("abc", test.string);
+    //noinspection MagicNumber
+    assertEquals(123, test.integer);
+  }
+
 }
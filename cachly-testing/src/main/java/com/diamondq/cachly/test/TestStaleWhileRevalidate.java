@@ -0,0 +1,206 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.CacheValue;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the stale-while-revalidate paths
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestStaleWhileRevalidate {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_PARENT = "swr-parent";
+
+      public static final String PARTIAL_CHILD = "swr-child";
+
+      public static final String PARTIAL_EXPIRING = "swr-expiring";
+    }
+
+    /**
+     * The shared parent key
+     */
+    public static final Key<String> PARENT = KeyBuilder.of(Strings.PARTIAL_PARENT, Types.STRING);
+
+    /**
+     * A key that depends on the parent
+     */
+    public static final Key<String> CHILD = KeyBuilder.of(Strings.PARTIAL_CHILD, Types.STRING);
+
+    /**
+     * A key with a short expiry
+     */
+    public static final Key<String> EXPIRING = KeyBuilder.of(Strings.PARTIAL_EXPIRING, Types.STRING);
+
+  }
+
+  private static final AtomicInteger sParentLoads = new AtomicInteger();
+
+  private static final AtomicInteger sExpiringLoads = new AtomicInteger();
+
+  /**
+   * The parent loader
+   */
+  public static class ParentLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.PARENT, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("Parent " + sParentLoads.incrementAndGet());
+    }
+  }
+
+  /**
+   * The child loader, which depends on the parent
+   */
+  public static class ChildLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.CHILD, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      pResult.setValue("Child of " + pCache.get(pAccessContext, Keys.PARENT));
+    }
+  }
+
+  /**
+   * A loader with a short expiry
+   */
+  public static class ExpiringLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.EXPIRING, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      //noinspection MagicNumber
+      pResult.setValue("Expiring " + sExpiringLoads.incrementAndGet()).setOverrideExpiry(Duration.ofMillis(300));
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.PARENT.clearKeyDetails();
+    Keys.CHILD.clearKeyDetails();
+    Keys.EXPIRING.clearKeyDetails();
+    sParentLoads.set(0);
+    sExpiringLoads.set(0);
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    fixture.addPaths(Keys.Strings.PARTIAL_PARENT);
+    for (String path : List.of(Keys.Strings.PARTIAL_CHILD, Keys.Strings.PARTIAL_EXPIRING)) {
+      //noinspection MagicNumber
+      fixture.addPath(path, (pathConfig) -> pathConfig.setStaleWhileRevalidate(Duration.ofSeconds(10)));
+    }
+    cache.addCacheLoader(new ParentLoader());
+    cache.addCacheLoader(new ChildLoader());
+    cache.addCacheLoader(new ExpiringLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void staleAfterCascade() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("Child of Parent 1", cache.get(ac, Keys.CHILD));
+
+    /* Invalidating the parent cascades to the child, which keeps its value as stale */
+
+    cache.invalidate(ac, Keys.PARENT);
+    CacheValue<String> value = cache.getCacheValue(ac, Keys.CHILD);
+    assertTrue(value.isStale());
+    assertEquals("Child of Parent 1", value.getValue());
+
+    /* Eventually the reload completes */
+
+    value = waitForFresh(ac, Keys.CHILD);
+    assertFalse(value.isStale());
+    assertEquals("Child of Parent 2", value.getValue());
+  }
+
+  @Test
+  void staleAfterExpiry() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("Expiring 1", cache.get(ac, Keys.EXPIRING));
+
+    //noinspection MagicNumber
+    Thread.sleep(400);
+    CacheValue<String> value = cache.getCacheValue(ac, Keys.EXPIRING);
+    assertTrue(value.isStale());
+    assertEquals("Expiring 1", value.getValue());
+
+    value = waitForFresh(ac, Keys.EXPIRING);
+    assertFalse(value.isStale());
+    assertEquals("Expiring 2", value.getValue());
+  }
+
+  @Test
+  void explicitInvalidateIsNotStale() {
+    AccessContext ac = cache.createAccessContext(null);
+    assertEquals("Child of Parent 1", cache.get(ac, Keys.CHILD));
+    cache.invalidate(ac, Keys.CHILD);
+    CacheValue<String> value = cache.getCacheValue(ac, Keys.CHILD);
+    assertFalse(value.isStale());
+    assertEquals("Child of Parent 1", value.getValue());
+  }
+
+  private CacheValue<String> waitForFresh(AccessContext pAccessContext, Key<String> pKey) throws InterruptedException {
+    //noinspection MagicNumber
+    long deadline = System.currentTimeMillis() + 2000;
+    CacheValue<String> value = cache.getCacheValue(pAccessContext, pKey);
+    while ((value.isStale()) && (System.currentTimeMillis() < deadline)) {
+      //noinspection BusyWait,MagicNumber
+      Thread.sleep(10);
+      value = cache.getCacheValue(pAccessContext, pKey);
+    }
+    return value;
+  }
+
+}
@@ -0,0 +1,232 @@
+package com.diamondq.cachly.test;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.cachly.KeyPlaceholder;
+import com.diamondq.cachly.impl.MemoryCacheStorage;
+import com.diamondq.cachly.spi.CacheEngine;
+import com.diamondq.cachly.spi.KeySPI;
+import com.diamondq.common.types.Types;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the tag based invalidation
+ */
+@SuppressWarnings("ClassNamePrefixedWithPackageName")
+public class TestTags {
+
+  /**
+   * The keys
+   */
+  public static class Keys {
+
+    private static class Strings {
+      public static final String PARTIAL_SETTINGS = "tag-settings";
+
+      public static final String PARTIAL_REPORTS = "tag-reports";
+
+      public static final String PARTIAL_SUMMARY = "tag-summary";
+
+      public static final String PARTIAL_TENANT = "tenant";
+    }
+
+    /**
+     * The placeholder for the tenant
+     */
+    public static final KeyPlaceholder<String> TENANT = KeyBuilder.placeholder(Strings.PARTIAL_TENANT, Types.STRING);
+
+    /**
+     * The settings of a tenant, tagged with the tenant
+     */
+    public static final Key<String> SETTINGS = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_SETTINGS, Types.STRING),
+      TENANT
+    );
+
+    /**
+     * The report of a tenant, which lives in a different part of the hierarchy but is tagged with the tenant too
+     */
+    public static final Key<String> REPORT = KeyBuilder.from(KeyBuilder.of(Strings.PARTIAL_REPORTS, Types.STRING),
+      TENANT
+    );
+
+    /**
+     * An untagged key depending on the report of tenant 1
+     */
+    public static final Key<String> SUMMARY = KeyBuilder.of(Strings.PARTIAL_SUMMARY, Types.STRING);
+
+  }
+
+  private static final AtomicInteger sLoads = new AtomicInteger();
+
+  /**
+   * Loads a value tagged with its tenant
+   */
+  public static class TenantLoader implements CacheLoader<String> {
+
+    private final Key<String> mKey;
+
+    /**
+     * Primary constructor
+     *
+     * @param pKey the key to load
+     */
+    public TenantLoader(Key<String> pKey) {
+      mKey = pKey;
+    }
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(mKey, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      sLoads.incrementAndGet();
+      pResult.setValue(pKey.toString()).addTag("tenant:" + pKey.getKey());
+    }
+  }
+
+  /**
+   * The summary loader
+   */
+  public static class SummaryLoader implements CacheLoader<String> {
+
+    @Override
+    public CacheLoaderInfo<String> getInfo() {
+      return new CacheLoaderInfo<>(Keys.SUMMARY, false, "", this);
+    }
+
+    @Override
+    public void load(Cache pCache, AccessContext pAccessContext, Key<String> pKey, CacheResult<String> pResult) {
+      sLoads.incrementAndGet();
+      pResult.setValue("summary of " + pCache.get(pAccessContext, Keys.REPORT, Keys.TENANT, "1"));
+    }
+  }
+
+  private volatile CacheEngine cache;
+
+  private volatile NoCDIFixture fixture;
+
+  private volatile MemoryCacheStorage storage;
+
+  /**
+   * Creates the cache engine for testing
+   */
+  @BeforeEach
+  public void before() {
+    Keys.SETTINGS.clearKeyDetails();
+    Keys.REPORT.clearKeyDetails();
+    Keys.SUMMARY.clearKeyDetails();
+    sLoads.set(0);
+    fixture = new NoCDIFixture();
+    cache = fixture.getEngine();
+    storage = fixture.getStorage();
+    fixture.addPaths(Keys.Strings.PARTIAL_SETTINGS, Keys.Strings.PARTIAL_REPORTS, Keys.Strings.PARTIAL_SUMMARY);
+    cache.addCacheLoader(new TenantLoader(Keys.SETTINGS));
+    cache.addCacheLoader(new TenantLoader(Keys.REPORT));
+    cache.addCacheLoader(new SummaryLoader());
+    cache.activate();
+  }
+
+  /**
+   * Shuts down the cache engine's executors
+   */
+  @AfterEach
+  public void after() {
+    fixture.close();
+  }
+
+  @Test
+  void invalidateByTag() {
+    AccessContext ac = cache.createAccessContext(null);
+    for (String tenant : List.of("1", "2")) {
+      cache.get(ac, Keys.SETTINGS, Keys.TENANT, tenant);
+      cache.get(ac, Keys.REPORT, Keys.TENANT, tenant);
+    }
+    cache.get(ac, Keys.SUMMARY);
+    //noinspection MagicNumber
+    assertEquals(5, sLoads.get());
+    //noinspection MagicNumber
+    assertEquals(4, cache.getTagIndexSize());
+
+    /* Both entries of tenant 1, and the summary depending on one of them, are reloaded. Tenant 2 isn't touched. */
+
+    cache.invalidateByTag(ac, "tenant:1");
+    assertEquals(2, cache.getTagIndexSize());
+    for (String tenant : List.of("1", "2")) {
+      cache.get(ac, Keys.SETTINGS, Keys.TENANT, tenant);
+      cache.get(ac, Keys.REPORT, Keys.TENANT, tenant);
+    }
+    cache.get(ac, Keys.SUMMARY);
+    //noinspection MagicNumber
+    assertEquals(8, sLoads.get());
+    //noinspection MagicNumber
+    assertEquals(4, cache.getTagIndexSize());
+
+    /* An unknown tag is a no-op */
+
+    cache.invalidateByTag(ac, "tenant:3");
+    //noinspection MagicNumber
+    assertEquals(4, cache.getTagIndexSize());
+  }
+
+  @Test
+  void evictionShrinksIndex() throws InterruptedException {
+    AccessContext ac = cache.createAccessContext(null);
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      cache.get(ac, Keys.SETTINGS, Keys.TENANT, String.valueOf(i));
+    }
+    //noinspection MagicNumber
+    assertEquals(10, cache.getTagIndexSize());
+
+    /* Remove the entries directly from the storage, as an eviction would */
+
+    //noinspection MagicNumber
+    for (int i = 0; i < 10; i++) {
+      KeySPI<String> settings = (KeySPI<String>) cache.resolve(Keys.SETTINGS, Keys.TENANT, String.valueOf(i));
+      cache.setupKey(settings);
+      storage.invalidate(ac, settings);
+    }
+
+    /* The pruning happens in the background */
+
+    //noinspection MagicNumber
+    long deadline = System.currentTimeMillis() + 5000L;
+    while ((cache.getTagIndexSize() > 0) && (System.currentTimeMillis() < deadline)) {
+      //noinspection MagicNumber
+      Thread.sleep(10L);
+    }
+    assertEquals(0, cache.getTagIndexSize());
+  }
+
+  @Test
+  void setAllReplacesTags() {
+    AccessContext ac = cache.createAccessContext(null);
+    cache.get(ac, Keys.SETTINGS, Keys.TENANT, "1");
+    assertEquals(1, cache.getTagIndexSize());
+
+    /* The value that was set carries no tags, so invalidating by the old tag leaves it alone */
+
+    Key<String> settings = cache.resolve(Keys.SETTINGS, Keys.TENANT, "1");
+    cache.setAll(ac, Map.of(settings, "set"));
+    assertEquals(0, cache.getTagIndexSize());
+    cache.invalidateByTag(ac, "tenant:1");
+    assertEquals("set", cache.get(ac, settings));
+    assertEquals(1, sLoads.get());
+  }
+
+}
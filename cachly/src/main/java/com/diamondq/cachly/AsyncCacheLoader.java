@@ -0,0 +1,43 @@
+package com.diamondq.cachly;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A cache loader that is able to load a value without blocking the calling thread. When the cache needs the value, it
+ * calls loadAsync, and the result is stored once the returned stage completes.
+ *
+ * @param <O> the expected result type
+ */
+public interface AsyncCacheLoader<O extends @Nullable Object> extends CacheLoader<O> {
+
+  /**
+   * Called to load a specific key. The result must be populated before the returned stage completes.
+   *
+   * @param pCache the cache
+   * @param pAccessContext the access context
+   * @param pKey the key to load
+   * @param pResult the place to store the result
+   * @return a stage that completes once the result has been populated
+   */
+  CompletionStage<?> loadAsync(Cache pCache, AccessContext pAccessContext, Key<O> pKey, CacheResult<O> pResult);
+
+  /**
+   * Synchronous loads simply wait for the asynchronous load to complete
+   *
+   * @see com.diamondq.cachly.CacheLoader#load(com.diamondq.cachly.Cache, com.diamondq.cachly.AccessContext,
+   *   com.diamondq.cachly.Key, com.diamondq.cachly.CacheResult)
+   */
+  @Override
+  default void load(Cache pCache, AccessContext pAccessContext, Key<O> pKey, CacheResult<O> pResult) {
+    try {
+      loadAsync(pCache, pAccessContext, pKey, pResult).toCompletableFuture().join();
+    }
+    catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException re) throw re;
+      throw ex;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.diamondq.cachly;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * A cache loader that is able to load many keys in a single call (such as a single database query). When several keys
+ * handled by this loader are missing during a getAll, they are passed to loadAll together instead of calling load for
+ * each one.
+ *
+ * @param <O> the expected result type
+ */
+public interface BulkCacheLoader<O extends @Nullable Object> extends CacheLoader<O> {
+
+  /**
+   * Called to load a set of keys. Each key is mapped to an empty result which should be populated. Any result that
+   * is left untouched is treated as not found.
+   *
+   * @param pCache the cache
+   * @param pAccessContext the access context
+   * @param pResults the keys to load and the place to store each result
+   */
+  void loadAll(Cache pCache, AccessContext pAccessContext, Map<Key<O>, CacheResult<O>> pResults);
+
+}
@@ -8,6 +8,7 @@ import java.time.Duration;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 /**
@@ -636,6 +637,98 @@ public interface Cache {
     AccessContext pAccessContext, Key<V> pKey, KeyPlaceholder<K1> pHolder1, String pValue1, KeyPlaceholder<K2> pHolder2,
     String pValue2, KeyPlaceholder<K3> pHolder3, String pValue3, KeyPlaceholder<K4> pHolder4, String pValue4);
 
+  /**
+   * Retrieves a value from the cache along with whether it's stale. On a path with stale-while-revalidate configured,
+   * an entry that expired or was invalidated by a dependency keeps being returned (flagged as stale) during the grace
+   * window while a reload runs in the background. Unlike get, a missing entry is returned as not found.
+   *
+   * @param <V> the type of the result
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @return the value
+   */
+  <V extends @Nullable Object> CacheValue<V> getCacheValue(AccessContext pAccessContext, Key<V> pKey);
+
+  /**
+   * Retrieves a set of values from the cache. The keys are grouped by storage so that each storage is queried once, and
+   * missing keys are loaded together when their loader is a {@link BulkCacheLoader} (one bulk load per loader and
+   * storage). Like get, a key that can't be found (or is null) and doesn't support null causes an exception.
+   *
+   * @param <V> the type of the result
+   * @param pAccessContext the access context
+   * @param pKeys the keys
+   * @return the map of the given keys to their values
+   */
+  <V extends @Nullable Object> Map<Key<V>, V> getAll(AccessContext pAccessContext, Collection<? extends Key<V>> pKeys);
+
+  /**
+   * Retrieves a set of values from the cache. This is the same as getAll, except that keys that can't be found (or are
+   * null) are simply left out of the result.
+   *
+   * @param <V> the type of the result
+   * @param pAccessContext the access context
+   * @param pKeys the keys
+   * @return the map of the given keys to their values
+   */
+  <V extends @Nullable Object> Map<Key<V>, @NonNull V> getAllIfPresent(AccessContext pAccessContext,
+    Collection<? extends Key<V>> pKeys);
+
+  /**
+   * Stores a set of values in the cache. The keys are grouped by storage so that each storage is written once.
+   *
+   * @param <V> the type of the result
+   * @param pAccessContext the access context
+   * @param pValues the values by key
+   */
+  <V extends @Nullable Object> void setAll(AccessContext pAccessContext, Map<? extends Key<V>, V> pValues);
+
+  /**
+   * Retrieves a value from the cache without blocking the caller. If the value is not present, the load is run on the
+   * cache's executor, and concurrent requests for the same key share a single load.
+   *
+   * @param <V> the type of the result
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @return the future result
+   */
+  <V extends @Nullable Object> CompletableFuture<V> getAsync(AccessContext pAccessContext, Key<V> pKey);
+
+  /**
+   * Retrieves a value from the cache without blocking the caller
+   *
+   * @param <V> the type of the result
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @return the future optional result
+   */
+  <V extends @Nullable Object> CompletableFuture<Optional<@NonNull V>> getIfPresentAsync(AccessContext pAccessContext,
+    Key<V> pKey);
+
+  /**
+   * Stores a value in the cache without blocking the caller
+   *
+   * @param <V> the type of the result
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @param pValue the value
+   * @return a future that completes once the value (and any write-back) has been stored
+   */
+  <V extends @Nullable Object> CompletableFuture<@Nullable Void> setAsync(AccessContext pAccessContext, Key<V> pKey,
+    V pValue);
+
+  /**
+   * Invalidates an entry in the cache, and everything that depends on it, without blocking the caller. The dependent
+   * entries are removed in one batch per storage, and the batches run in parallel.
+   *
+   * @param <V> the type of the result
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @return a future that completes once every affected entry has been removed, or completes exceptionally if the
+   *   invalidation fails
+   */
+  <V extends @Nullable Object> CompletableFuture<@Nullable Void> invalidateAsync(AccessContext pAccessContext,
+    Key<V> pKey);
+
   /**
    * Invalidate all keys
    *
@@ -652,6 +745,36 @@ public interface Cache {
   Stream<Map.Entry<Key<? extends @Nullable Object>, CacheResult<? extends @Nullable Object>>> streamEntries(
     AccessContext pAccessContext);
 
+  /**
+   * Returns a stream of entries in a subtree, which is the given key and everything stored below it (such as all the
+   * entries under users/{ac:user}). Any placeholders in the key are resolved first. The cost is proportional to the
+   * size of the subtree, rather than to the whole cache.
+   *
+   * @param pAccessContext the access context
+   * @param pPrefixKey the key at the root of the subtree
+   * @return the stream
+   */
+  Stream<Map.Entry<Key<? extends @Nullable Object>, CacheResult<? extends @Nullable Object>>> streamEntries(
+    AccessContext pAccessContext, Key<?> pPrefixKey);
+
+  /**
+   * Invalidates a subtree, which is the given key and everything stored below it, along with everything that depends
+   * on any of those entries. Any placeholders in the key are resolved first.
+   *
+   * @param pAccessContext the access context
+   * @param pPrefixKey the key at the root of the subtree
+   */
+  void invalidateTree(AccessContext pAccessContext, Key<?> pPrefixKey);
+
+  /**
+   * Invalidates every entry whose loader attached the given tag to its result, along with everything that depends on
+   * any of those entries
+   *
+   * @param pAccessContext the access context
+   * @param pTag the tag
+   */
+  void invalidateByTag(AccessContext pAccessContext, String pTag);
+
   /**
    * Get the list of keys that are dependent on the given key
    *
@@ -0,0 +1,136 @@
+package com.diamondq.cachly;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * The dependency collection scope of a running load. Every key that is read while a loader runs is recorded as a
+ * dependency of the key being loaded, so that the loaded value is invalidated along with it.
+ * <p>
+ * The scope is bound with a ScopedValue, so it's visible on the loader's thread and in any structured concurrency
+ * subtasks forked from it. Work that is handed to an executor or a CompletableFuture chain doesn't inherit it, so a
+ * loader that fans out that way should wrap the tasks (or the executor) with one of the helpers below. Otherwise, the
+ * keys read by those tasks are not recorded as dependencies.
+ */
+public final class CacheLoadContext {
+
+  private static final ScopedValue<CacheLoadContext> sCurrent = ScopedValue.newInstance();
+
+  /**
+   * The key strings read within this scope. It's written to by any thread that shares the scope.
+   */
+  private final Set<String> mDependencies = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Primary constructor. A context is normally only created by the cache engine.
+   */
+  public CacheLoadContext() {
+  }
+
+  /**
+   * Returns the context bound to the current thread
+   *
+   * @return the context or null if no load is running
+   */
+  public static @Nullable CacheLoadContext current() {
+    return sCurrent.isBound() ? sCurrent.get() : null;
+  }
+
+  /**
+   * Records a dependency
+   *
+   * @param pKeyStr the key string that was read
+   */
+  public void addDependency(String pKeyStr) {
+    mDependencies.add(pKeyStr);
+  }
+
+  /**
+   * Returns the dependencies recorded so far
+   *
+   * @return a snapshot of the key strings
+   */
+  public Set<String> getDependencies() {
+    return Set.copyOf(mDependencies);
+  }
+
+  /**
+   * Runs an operation with this context bound
+   *
+   * @param pRunnable the operation
+   */
+  public void run(Runnable pRunnable) {
+    ScopedValue.where(sCurrent, this).run(pRunnable);
+  }
+
+  /**
+   * Calls an operation with this context bound
+   *
+   * @param <R> the result type
+   * @param <X> the exception type
+   * @param pOp the operation
+   * @return the result of the operation
+   * @throws X if the operation fails
+   */
+  public <R extends @Nullable Object, X extends Throwable> R call(ScopedValue.CallableOp<? extends R, X> pOp)
+    throws X {
+    return ScopedValue.where(sCurrent, this).call(pOp);
+  }
+
+  /**
+   * Wraps a task so that it runs within the current context
+   *
+   * @param pRunnable the task
+   * @return the wrapped task, or the task itself if no load is running
+   */
+  public static Runnable wrap(Runnable pRunnable) {
+    CacheLoadContext context = current();
+    if (context == null) return pRunnable;
+    return () -> context.run(pRunnable);
+  }
+
+  /**
+   * Wraps a supplier (such as one given to CompletableFuture.supplyAsync) so that it runs within the current context
+   *
+   * @param <T> the result type
+   * @param pSupplier the supplier
+   * @return the wrapped supplier, or the supplier itself if no load is running
+   */
+  public static <T extends @Nullable Object> Supplier<T> wrapSupplier(Supplier<T> pSupplier) {
+    CacheLoadContext context = current();
+    if (context == null) return pSupplier;
+    return () -> context.call(pSupplier::get);
+  }
+
+  /**
+   * Wraps a callable so that it runs within the current context
+   *
+   * @param <T> the result type
+   * @param pCallable the callable
+   * @return the wrapped callable, or the callable itself if no load is running
+   */
+  public static <T extends @Nullable Object> Callable<T> wrapCallable(Callable<T> pCallable) {
+    CacheLoadContext context = current();
+    if (context == null) return pCallable;
+    return () -> context.call(pCallable::call);
+  }
+
+  /**
+   * Wraps an executor so that every task given to it runs within the current context. The context is captured when
+   * this is called, not when a task is submitted, so the result can be handed to the async methods of a
+   * CompletableFuture chain whose stages complete on other threads.
+   *
+   * @param pExecutor the executor
+   * @return the wrapped executor, or the executor itself if no load is running
+   */
+  public static Executor propagating(Executor pExecutor) {
+    CacheLoadContext context = current();
+    if (context == null) return pExecutor;
+    return (r) -> pExecutor.execute(() -> context.run(r));
+  }
+}
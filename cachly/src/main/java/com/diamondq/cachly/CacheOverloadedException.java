@@ -0,0 +1,19 @@
+package com.diamondq.cachly;
+
+/**
+ * Thrown when a key can't be loaded because the loads of its path are at their configured limits, and the path's
+ * overload policy is to fail fast
+ */
+public class CacheOverloadedException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Primary constructor
+   *
+   * @param pMessage the message
+   */
+  public CacheOverloadedException(String pMessage) {
+    super(pMessage);
+  }
+}
@@ -4,6 +4,7 @@ import com.diamondq.cachly.spi.StaticCacheResult;
 import org.jspecify.annotations.Nullable;
 
 import java.time.Duration;
+import java.util.Set;
 
 /**
  * Describes a Cache Result (is mutable)
@@ -74,6 +75,23 @@ public interface CacheResult<V extends @Nullable Object> {
    */
   V getValue();
 
+  /**
+   * Attaches a tag to the result. Once the result is stored, every entry carrying the tag can be invalidated at once
+   * with Cache.invalidateByTag, regardless of where it sits in the key hierarchy. Tags are only tracked in memory, so
+   * they don't survive a restart of a persistent storage.
+   *
+   * @param pTag the tag (such as "tenant:42")
+   * @return the cache result (for fluent use)
+   */
+  CacheResult<V> addTag(String pTag);
+
+  /**
+   * Returns the tags attached to the result
+   *
+   * @return the tags (may be empty)
+   */
+  Set<String> getTags();
+
   /**
    * Returns not found result
    *
@@ -0,0 +1,71 @@
+package com.diamondq.cachly;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The result of a cache lookup, including whether the value is stale. A stale value is the previous value of an entry
+ * that expired or was invalidated by a dependency, which is still being served while a reload runs in the background.
+ *
+ * @param <V> the value type
+ */
+public final class CacheValue<V extends @Nullable Object> {
+
+  private final @Nullable V mValue;
+
+  private final boolean mFound;
+
+  private final boolean mStale;
+
+  /**
+   * Primary constructor
+   *
+   * @param pValue the value
+   * @param pFound true if the entry was found
+   * @param pStale true if the value is stale
+   */
+  public CacheValue(@Nullable V pValue, boolean pFound, boolean pStale) {
+    mValue = pValue;
+    mFound = pFound;
+    mStale = pStale;
+  }
+
+  /**
+   * Returns whether the entry was found
+   *
+   * @return true if the entry was found or false if it was not found
+   */
+  public boolean isFound() {
+    return mFound;
+  }
+
+  /**
+   * Returns whether the value is stale, meaning that a newer value is being loaded in the background
+   *
+   * @return true if the value is stale
+   */
+  public boolean isStale() {
+    return mStale;
+  }
+
+  /**
+   * Indicates whether the value is null
+   *
+   * @return true if the value is null or false if it is not null
+   */
+  public boolean isNull() {
+    return mValue == null;
+  }
+
+  /**
+   * Returns the value. If the value is null, then this will throw an error. If this is a possibility, always call
+   * isNull() first to check.
+   *
+   * @return the value
+   */
+  public V getValue() {
+    var value = mValue;
+    if (value == null) throw new IllegalStateException("Value is null");
+    return value;
+  }
+
+}
@@ -11,6 +11,7 @@ import com.diamondq.cachly.spi.CacheStorage;
 import com.diamondq.cachly.spi.CommonKeyValuePair;
 import com.diamondq.cachly.spi.CompositeKey;
 import com.diamondq.cachly.spi.KeySPI;
+import com.diamondq.cachly.spi.PathPolicy;
 import com.diamondq.cachly.spi.ResolvedAccessContextPlaceholder;
 import com.diamondq.cachly.spi.ResolvedKeyPlaceholder;
 import com.diamondq.cachly.spi.StaticAccessContextPlaceholder;
@@ -18,6 +19,7 @@ import com.diamondq.cachly.spi.StaticCacheResult;
 import com.diamondq.cachly.spi.StaticKey;
 import com.diamondq.cachly.spi.StaticKeyPlaceholder;
 import com.diamondq.cachly.spi.StaticKeyPlaceholderWithDefault;
+import com.diamondq.cachly.spi.StreamingSerializer;
 import com.diamondq.common.converters.ConverterManager;
 import com.diamondq.common.errors.DQRuntimeException;
 import com.diamondq.common.lambda.interfaces.Consumer3;
@@ -39,17 +41,21 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -66,7 +72,13 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    * Represents the serialization version number so that in the case of a change in the serialization format, older
    * persisted entries can be recognized and properly deserialized.
    */
-  public static final byte SERIALIZATION_VERSION = 1;
+  public static final byte SERIALIZATION_VERSION = 2;
+
+  /**
+   * The first serialization version, which is still read. It refers to the key's base key and output type rather than
+   * to a key template, and its ids are unsigned shorts.
+   */
+  public static final byte SERIALIZATION_VERSION_1 = 1;
 
   /**
    * The flag indicating that the value is actually null (as opposed to not found)
@@ -83,6 +95,15 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
 
   private static final byte TYPE_WILDCARD = 5;
 
+  /**
+   * Marks a type record whose ids and lengths are varints rather than shorts
+   */
+  private static final byte TYPE_FLAG_VARINT = 0x10;
+
+  private static final byte TYPE_MASK = 0x0F;
+
+  private static final byte PART_TYPE_STATIC = 0;
+
   private static final byte PART_TYPE_ACCESS_CONTEXT = 1;
 
   private static final byte PART_TYPE_PLACEHOLDER = 2;
@@ -126,6 +147,192 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
     }
   }
 
+  /**
+   * The structure of a serialized key: its base key, its output type and the kind of each part. It's stored once in
+   * the metadata, and each entry just refers to it by id, along with the offsets of the placeholder values within the
+   * entry's key. Two templates are equal if they describe the same structure.
+   */
+  protected static final class KeyTemplate {
+
+    private final String mBaseKey;
+
+    private final Type mOutputType;
+
+    /**
+     * The kind of each part (PART_TYPE_STATIC or one of the placeholder part types)
+     */
+    private final byte[] mPartTypes;
+
+    /**
+     * The default key of each part with a defaulted placeholder
+     */
+    private final @Nullable KeySPI<String>[] mDefaultKeys;
+
+    private final int mPlaceholderCount;
+
+    private final int mHashCode;
+
+    /**
+     * The name of each part, which is the key of a static part and the name of a placeholder. It's only needed for
+     * reads, so it's worked out the first time the template is read with.
+     */
+    private volatile String @Nullable [] mPartNames;
+
+    /**
+     * Primary constructor
+     *
+     * @param pBaseKey the full base key
+     * @param pOutputType the output type
+     * @param pPartTypes the kind of each part
+     * @param pDefaultKeys the default key of each part with a defaulted placeholder
+     */
+    KeyTemplate(String pBaseKey, Type pOutputType, byte[] pPartTypes, @Nullable KeySPI<String>[] pDefaultKeys) {
+      mBaseKey = pBaseKey;
+      mOutputType = pOutputType;
+      mPartTypes = pPartTypes;
+      mDefaultKeys = pDefaultKeys;
+      int placeholderCount = 0;
+      for (byte partType : pPartTypes) {
+        if (partType != PART_TYPE_STATIC) placeholderCount++;
+      }
+      mPlaceholderCount = placeholderCount;
+      int hashCode = Objects.hash(mBaseKey, mOutputType, Arrays.hashCode(mPartTypes));
+      for (KeySPI<String> defaultKey : mDefaultKeys) {
+        hashCode = (31 * hashCode) + (defaultKey == null ? 0 : defaultKey.toString().hashCode());
+      }
+      mHashCode = hashCode;
+    }
+
+    /**
+     * Describes the structure of a key
+     *
+     * @param pKey the key
+     * @return the template
+     */
+    static KeyTemplate of(KeySPI<?> pKey) {
+      KeySPI<? extends @Nullable Object>[] parts = pKey.getParts();
+      int partsLen = parts.length;
+      byte[] partTypes = new byte[partsLen];
+      @SuppressWarnings("unchecked") @Nullable KeySPI<String>[] defaultKeys = new KeySPI[partsLen];
+      for (int i = 0; i < partsLen; i++) {
+        KeySPI<?> part = parts[i];
+        if (part instanceof ResolvedKeyPlaceholder<?> rkp) {
+          KeySPI<?> placeholder = rkp.getPlaceholder();
+          if (placeholder instanceof StaticKeyPlaceholder) {
+            partTypes[i] = PART_TYPE_PLACEHOLDER;
+          } else if (placeholder instanceof StaticKeyPlaceholderWithDefault skpwd) {
+            partTypes[i] = PART_TYPE_PLACEHOLDER_DEFAULTS;
+            defaultKeys[i] = skpwd.getDefaultKey();
+          } else {
+            throw new IllegalStateException("Unrecognized placeholder (" + placeholder.getClass().getName() + ")");
+          }
+        } else if (part instanceof ResolvedAccessContextPlaceholder<?> racp) {
+          KeySPI<?> placeholder = racp.getPlaceholder();
+          if (placeholder instanceof StaticAccessContextPlaceholder) {
+            partTypes[i] = PART_TYPE_ACCESS_CONTEXT;
+          } else {
+            throw new IllegalStateException("Unrecognized placeholder (" + placeholder.getClass().getName() + ")");
+          }
+        } else {
+          partTypes[i] = PART_TYPE_STATIC;
+        }
+      }
+      return new KeyTemplate(pKey.getFullBaseKey(), pKey.getOutputType(), partTypes, defaultKeys);
+    }
+
+    /**
+     * Returns the number of placeholder parts
+     *
+     * @return the number
+     */
+    int getPlaceholderCount() {
+      return mPlaceholderCount;
+    }
+
+    /**
+     * Builds the parts of a key from its full key string
+     *
+     * @param pFullKey the full key string
+     * @param pBuffer the buffer positioned at the offset table of the placeholder values
+     * @return the parts
+     */
+    KeySPI<? extends @Nullable Object>[] buildParts(String pFullKey, ByteBuffer pBuffer) {
+      String[] partNames = getPartNames();
+      int partsLen = mPartTypes.length;
+      @SuppressWarnings("unchecked") KeySPI<? extends @Nullable Object>[] parts = new KeySPI[partsLen];
+      for (int i = 0; i < partsLen; i++) {
+        byte partType = mPartTypes[i];
+        if (partType == PART_TYPE_STATIC) {
+          parts[i] = new StaticKey<>(partNames[i], mOutputType);
+          continue;
+        }
+        int start = getVarInt(pBuffer);
+        String value = pFullKey.substring(start, start + getVarInt(pBuffer));
+        if (partType == PART_TYPE_PLACEHOLDER) {
+          parts[i] = new ResolvedKeyPlaceholder<>(new StaticKeyPlaceholder<>(partNames[i], mOutputType), value);
+        } else if (partType == PART_TYPE_ACCESS_CONTEXT) {
+          parts[i] = new ResolvedAccessContextPlaceholder<>(new StaticAccessContextPlaceholder<>(partNames[i],
+            mOutputType
+          ), value);
+        } else {
+          KeySPI<String> defaultKey = mDefaultKeys[i];
+          if (defaultKey == null) throw new IllegalStateException("The default key is missing");
+          @SuppressWarnings(
+            { "unchecked", "rawtypes" }) KeySPI<Object> r = (KeySPI<Object>) (KeySPI) new ResolvedKeyPlaceholder<>(new StaticKeyPlaceholderWithDefault(
+            partNames[i],
+            mOutputType,
+            defaultKey
+          ), value
+          );
+          parts[i] = r;
+        }
+      }
+      return parts;
+    }
+
+    private String[] getPartNames() {
+      String[] partNames = mPartNames;
+      if (partNames == null) {
+
+        /* The base key only holds names, never placeholder values, so it's safe to split */
+
+        //noinspection HardcodedFileSeparator
+        partNames = mBaseKey.split("/");
+        if (partNames.length != mPartTypes.length) {
+          throw new IllegalStateException("The base key (" + mBaseKey + ") doesn't match its template");
+        }
+        for (int i = 0; i < partNames.length; i++) {
+          String name = partNames[i];
+          if (mPartTypes[i] == PART_TYPE_ACCESS_CONTEXT) partNames[i] = name.substring(4, name.length() - 1);
+          else if (mPartTypes[i] != PART_TYPE_STATIC) partNames[i] = name.substring(1, name.length() - 1);
+        }
+        mPartNames = partNames;
+      }
+      return partNames;
+    }
+
+    @Override
+    public int hashCode() {
+      return mHashCode;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object pObj) {
+      if (pObj == this) return true;
+      if (!(pObj instanceof KeyTemplate other)) return false;
+      if ((mHashCode != other.mHashCode) || (!mBaseKey.equals(other.mBaseKey)) || (!mOutputType.equals(
+        other.mOutputType)) || (!Arrays.equals(mPartTypes, other.mPartTypes))) return false;
+      for (int i = 0; i < mDefaultKeys.length; i++) {
+        KeySPI<String> defaultKey = mDefaultKeys[i];
+        KeySPI<String> otherDefaultKey = other.mDefaultKeys[i];
+        if (!Objects.equals(defaultKey == null ? null : defaultKey.toString(),
+          otherDefaultKey == null ? null : otherDefaultKey.toString()
+        )) return false;
+      }
+      return true;
+    }
+  }
+
   /**
    * The executor service
    */
@@ -160,17 +367,9 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
   protected final           Class<?>                  mSerValueClass;
 
   /**
-   * The map of strings to short ids
-   */
-  protected final              ConcurrentMap<String, Short>    mStringToShort;
-  /**
-   * The map of short ids to strings
-   */
-  protected final              ConcurrentMap<Short, String>    mShortToString;
-  /**
-   * The counter for tracking string ids
+   * The dictionary of string ids
    */
-  protected final              AtomicInteger                   mStringCounter;
+  protected final              IdDictionary<String>            mStrings;
   /**
    * The prefix to write before strings
    */
@@ -180,17 +379,9 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected final @NonNegative int                             mStringPrefixLen;
   /**
-   * The map of types to short ids
-   */
-  protected final              ConcurrentMap<Type, Short>      mTypeToShort;
-  /**
-   * The map of short ids to types
+   * The dictionary of type ids
    */
-  protected final              ConcurrentMap<Short, Type>      mShortToType;
-  /**
-   * The counter for tracking type ids
-   */
-  protected final              AtomicInteger                   mTypeCounter;
+  protected final              IdDictionary<Type>              mTypes;
   /**
    * The prefix to write before types
    */
@@ -200,17 +391,21 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected final @NonNegative int                             mTypePrefixLen;
   /**
-   * The map of keys to short ids
+   * The dictionary of key ids
+   */
+  protected final              IdDictionary<Key<?>>            mKeys;
+  /**
+   * The dictionary of key template ids
    */
-  protected final              ConcurrentMap<Key<?>, Short>    mKeyToShort;
+  protected final              IdDictionary<KeyTemplate>       mTemplates;
   /**
-   * The map of short ids to keys
+   * The prefix to write before key templates
    */
-  protected final              ConcurrentMap<Short, Key<?>>    mShortToKey;
+  protected final              String                          mTemplatePrefix;
   /**
-   * The counter for tracking key ids
+   * The length of the key template prefix (for performance)
    */
-  protected final              AtomicInteger                   mKeyCounter;
+  protected final @NonNegative int                             mTemplatePrefixLen;
   /**
    * The key prefix
    */
@@ -246,6 +441,11 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected @MonotonicNonNull CacheEngine            mCacheEngine;
 
+  /**
+   * The function to serialize a full key string into a primary cache key (cached to avoid a lambda per call)
+   */
+  private final Function<String, SER_KEY> mToSerKey;
+
   /**
    * Primary constructor
    *
@@ -259,6 +459,7 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    *   memory-based caches, but true is usually needed for persistent caches.
    * @param pStringPrefix a prefix to add to all keys
    * @param pTypePrefix a prefix to add to all types
+   * @param pTemplatePrefix a prefix to add to all key templates
    * @param pKeyPrefix the prefix for keys
    * @param pValuePrefix the prefix for values
    * @param pKeySerializer the function that will serialize keys from a string to the serialized format
@@ -266,8 +467,9 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected AbstractCacheStorage(ConverterManager pConverterManager, ExecutorService pExecutorService,
     CACHE pPrimaryCache, @Nullable CACHE pMetaCache, Class<SER_KEY> pSerKeyClass, Class<?> pSerValueClass,
-    boolean pSerializeValue, @Nullable String pStringPrefix, @Nullable String pTypePrefix, @Nullable String pKeyPrefix,
-    @Nullable String pValuePrefix, @Nullable Function<String, SER_KEY> pKeySerializer,
+    boolean pSerializeValue, @Nullable String pStringPrefix, @Nullable String pTypePrefix,
+    @Nullable String pTemplatePrefix, @Nullable String pKeyPrefix, @Nullable String pValuePrefix,
+    @Nullable Function<String, SER_KEY> pKeySerializer,
     @Nullable Function<SER_KEY, String> pKeyDeserializer) {
     mConverterManager = pConverterManager;
     mExecutorService = pExecutorService;
@@ -277,21 +479,19 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
     mKeyDeserializer = pKeyDeserializer;
     mSerKeyClass = pSerKeyClass;
     mSerValueClass = pSerValueClass;
-    mStringToShort = new ConcurrentHashMap<>();
-    mShortToString = new ConcurrentHashMap<>();
-    mStringCounter = new AtomicInteger();
+    mStrings = new IdDictionary<>();
     //noinspection HardcodedFileSeparator
     mStringPrefix = pStringPrefix != null ? pStringPrefix : "s/";
     mStringPrefixLen = mStringPrefix.length();
-    mTypeToShort = new ConcurrentHashMap<>();
-    mShortToType = new ConcurrentHashMap<>();
-    mTypeCounter = new AtomicInteger();
+    mTypes = new IdDictionary<>();
     //noinspection HardcodedFileSeparator
     mTypePrefix = pTypePrefix != null ? pTypePrefix : "t/";
     mTypePrefixLen = mTypePrefix.length();
-    mKeyToShort = new ConcurrentHashMap<>();
-    mShortToKey = new ConcurrentHashMap<>();
-    mKeyCounter = new AtomicInteger();
+    mKeys = new IdDictionary<>();
+    mTemplates = new IdDictionary<>();
+    //noinspection HardcodedFileSeparator
+    mTemplatePrefix = pTemplatePrefix != null ? pTemplatePrefix : "m/";
+    mTemplatePrefixLen = mTemplatePrefix.length();
     //noinspection HardcodedFileSeparator
     mKeyPrefix = pKeyPrefix != null ? pKeyPrefix : "k/";
     mKeyPrefixLen = mTypePrefix.length();
@@ -301,6 +501,7 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
     mSerializeValue = pSerializeValue;
     mCallbacks = new ConcurrentHashMap<>();
     mCallbackSemaphores = new ConcurrentHashMap<>();
+    mToSerKey = this::serializeKeyString;
 
     if (!mSerializeValue) {
       if (mSerValueClass != MemoryStorageData.class) {
@@ -315,34 +516,33 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected void init() {
     if (mSerializeValue) {
-      Map<Short, ByteBuffer> temporaryKeys = new HashMap<>();
-      Map<Short, ByteBuffer> temporaryTypes = new HashMap<>();
+      Map<Integer, ByteBuffer> temporaryKeys = new HashMap<>();
+      Map<Integer, ByteBuffer> temporaryTypes = new HashMap<>();
+      Map<Integer, ByteBuffer> temporaryTemplates = new HashMap<>();
       streamMetaEntries().forEach((entry) -> {
         SER_KEY key = entry.getKey();
         String keyStr = (mKeyDeserializer != null ? mKeyDeserializer.apply(key) : (String) key);
         if (keyStr.startsWith(mStringPrefix)) {
           var keyStrLen = keyStr.length();
           if (keyStrLen <= mStringPrefixLen) throw new IllegalStateException("Key string is too short");
-          short id = Short.parseShort(keyStr.substring(mStringPrefixLen));
+          int id = Integer.parseInt(keyStr.substring(mStringPrefixLen));
           Object value = entry.getValue();
           ByteBuffer valueBuffer = convertSERVALUEtoByteBuffer(value);
 
           /* The contents of a String is just the UTF-8 bytes */
 
           String valueStr = new String(valueBuffer.array(), StandardCharsets.UTF_8);
-          mStringToShort.put(valueStr, id);
-          mShortToString.put(id, valueStr);
-          if (id > mStringCounter.get()) mStringCounter.set(id);
+          mStrings.restore(valueStr, id);
         } else if (keyStr.startsWith(mTypePrefix)) {
           var keyStrLen = keyStr.length();
           if (keyStrLen <= mTypePrefixLen) throw new IllegalStateException("Key string is too short");
-          short id = Short.parseShort(keyStr.substring(mTypePrefixLen));
+          int id = Integer.parseInt(keyStr.substring(mTypePrefixLen));
           Object value = entry.getValue();
           ByteBuffer valueBuffer = convertSERVALUEtoByteBuffer(value);
 
           /* The type buffer starts with a type identifier */
 
-          int typeType = valueBuffer.get();
+          int typeType = valueBuffer.get() & TYPE_MASK;
           Type type;
           if (typeType == TYPE_CLASS) {
 
@@ -359,12 +559,11 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
             temporaryTypes.put(id, valueBuffer);
             return;
           }
-          mShortToType.put(id, type);
-          if (id > mTypeCounter.get()) mTypeCounter.set(id);
+          mTypes.restore(type, id);
         } else if (keyStr.startsWith(mKeyPrefix)) {
           var keyStrLen = keyStr.length();
           if (keyStrLen <= mKeyPrefixLen) throw new IllegalStateException("Key string is too short");
-          short id = Short.parseShort(keyStr.substring(mKeyPrefixLen));
+          int id = Integer.parseInt(keyStr.substring(mKeyPrefixLen));
           Object value = entry.getValue();
           ByteBuffer valueBuffer = convertSERVALUEtoByteBuffer(value);
 
@@ -376,35 +575,45 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
            */
 
           temporaryKeys.put(id, valueBuffer);
+        } else if (keyStr.startsWith(mTemplatePrefix)) {
+          var keyStrLen = keyStr.length();
+          if (keyStrLen <= mTemplatePrefixLen) throw new IllegalStateException("Key string is too short");
+          int id = Integer.parseInt(keyStr.substring(mTemplatePrefixLen));
+
+          /* Like keys, templates refer to types that may not have been read yet */
+
+          temporaryTemplates.put(id, convertSERVALUEtoByteBuffer(entry.getValue()));
         }
       });
 
       /* Handle all the saved types. NOTE: Again, due to ordering, this list may need to be processed multiple times */
 
-      Map<Short, ByteBuffer> currentTypes = temporaryTypes;
+      Map<Integer, ByteBuffer> currentTypes = temporaryTypes;
       while (!currentTypes.isEmpty()) {
-        Map<Short, ByteBuffer> delayed = new HashMap<>();
+        Map<Integer, ByteBuffer> delayed = new HashMap<>();
         TemporaryTypeLoop:
-        for (Map.Entry<Short, ByteBuffer> entry : currentTypes.entrySet()) {
-          short id = entry.getKey();
+        for (Map.Entry<Integer, ByteBuffer> entry : currentTypes.entrySet()) {
+          int id = entry.getKey();
           ByteBuffer valueBuffer = entry.getValue();
           valueBuffer.rewind();
 
-          /* The type buffer starts with a type identifier */
+          /* The type buffer starts with a type identifier, flagged if the record was written with varints */
 
-          int typeType = valueBuffer.get();
+          int typeTag = valueBuffer.get();
+          boolean varint = (typeTag & TYPE_FLAG_VARINT) != 0;
+          int typeType = typeTag & TYPE_MASK;
           Type type;
           if (typeType == TYPE_PARAMETERIZED) {
 
             /* Check if the owner and raw types are available */
 
-            short ownerTypeId = valueBuffer.getShort();
-            short rawTypeId = valueBuffer.getShort();
-            if (!mShortToType.containsKey(ownerTypeId)) {
+            int ownerTypeId = readId(valueBuffer, varint);
+            int rawTypeId = readId(valueBuffer, varint);
+            if (!mTypes.containsId(ownerTypeId)) {
               delayed.put(id, valueBuffer);
               continue;
             }
-            if (!mShortToType.containsKey(rawTypeId)) {
+            if (!mTypes.containsId(rawTypeId)) {
               delayed.put(id, valueBuffer);
               continue;
             }
@@ -413,12 +622,12 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
             var raw = decompressType(rawTypeId);
             if (raw == null) throw new IllegalArgumentException("null not supported");
             Class<?> rawType = (Class<?>) raw;
-            short actualTypeArgumentsLen = valueBuffer.getShort();
+            int actualTypeArgumentsLen = readLength(valueBuffer, varint);
             if (actualTypeArgumentsLen < 0) throw new IllegalStateException("actualTypeArgumentsLen is negative");
             Type[] actualTypeArguments = new Type[actualTypeArgumentsLen];
-            for (short shortI = 0; shortI < actualTypeArgumentsLen; shortI++) {
-              short actualTypeId = valueBuffer.getShort();
-              if (!mShortToType.containsKey(actualTypeId)) {
+            for (int shortI = 0; shortI < actualTypeArgumentsLen; shortI++) {
+              int actualTypeId = readId(valueBuffer, varint);
+              if (!mTypes.containsId(actualTypeId)) {
                 delayed.put(id, valueBuffer);
                 continue TemporaryTypeLoop;
               }
@@ -432,8 +641,8 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
               type = TypeUtils.parameterize(rawType, actualTypeArguments);
             }
           } else if (typeType == TYPE_GENERIC_ARRAY) {
-            short gaTypeId = valueBuffer.getShort();
-            if (!mShortToType.containsKey(gaTypeId)) {
+            int gaTypeId = readId(valueBuffer, varint);
+            if (!mTypes.containsId(gaTypeId)) {
               delayed.put(id, valueBuffer);
               continue;
             }
@@ -443,16 +652,16 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
           } else if (typeType == TYPE_VARIABLE) {
             throw new UnsupportedOperationException("Variable Types are not supported");
           } else if (typeType == TYPE_WILDCARD) {
-            short lowerBoundsLen = valueBuffer.getShort();
+            int lowerBoundsLen = readLength(valueBuffer, varint);
             if (lowerBoundsLen < 0) throw new IllegalStateException("lowerBoundsLen is negative");
             Type[] lowerBounds = lowerBoundsLen == 0 ? null : new Type[lowerBoundsLen];
-            short upperBoundsLen = valueBuffer.getShort();
+            int upperBoundsLen = readLength(valueBuffer, varint);
             if (upperBoundsLen < 0) throw new IllegalStateException("upperBoundsLen is negative");
             Type[] upperBounds = upperBoundsLen == 0 ? null : new Type[upperBoundsLen];
             if (lowerBounds != null) {
-              for (short shortI = 0; shortI < lowerBounds.length; shortI++) {
-                short lowerBoundsTypeId = valueBuffer.getShort();
-                if (!mShortToType.containsKey(lowerBoundsTypeId)) {
+              for (int shortI = 0; shortI < lowerBounds.length; shortI++) {
+                int lowerBoundsTypeId = readId(valueBuffer, varint);
+                if (!mTypes.containsId(lowerBoundsTypeId)) {
                   delayed.put(id, valueBuffer);
                   continue TemporaryTypeLoop;
                 }
@@ -462,9 +671,9 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
               }
             }
             if ((upperBoundsLen > 0) && (upperBounds != null)) {
-              for (short shortI = 0; shortI < upperBounds.length; shortI++) {
-                short upperBoundsTypeId = valueBuffer.getShort();
-                if (!mShortToType.containsKey(upperBoundsTypeId)) {
+              for (int shortI = 0; shortI < upperBounds.length; shortI++) {
+                int upperBoundsTypeId = readId(valueBuffer, varint);
+                if (!mTypes.containsId(upperBoundsTypeId)) {
                   delayed.put(id, valueBuffer);
                   continue TemporaryTypeLoop;
                 }
@@ -480,9 +689,7 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
           } else {
             throw new IllegalArgumentException("Unrecognized type (" + typeType + ")");
           }
-          mTypeToShort.put(type, id);
-          mShortToType.put(id, type);
-          if (id > mTypeCounter.get()) mTypeCounter.set(id);
+          mTypes.restore(type, id);
         }
         if (currentTypes.size() == delayed.size()) throw new IllegalStateException("Unable to proceed decoding types");
         currentTypes = delayed;
@@ -490,23 +697,39 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
 
       /* Handle all the saved keys */
 
-      for (Map.Entry<Short, ByteBuffer> entry : temporaryKeys.entrySet()) {
-        short id = entry.getKey();
+      for (Map.Entry<Integer, ByteBuffer> entry : temporaryKeys.entrySet()) {
+        int id = entry.getKey();
         ByteBuffer valueBuffer = entry.getValue();
         valueBuffer.rewind();
         int partLen = valueBuffer.limit() / 4;
         @SuppressWarnings("unchecked") KeySPI<@Nullable Object>[] parts = new KeySPI[partLen];
         for (int i = 0; i < partLen; i++) {
-          var keyType = decompressType(valueBuffer.getShort());
+          var keyType = decompressType(getId(valueBuffer));
           if (keyType == null) throw new IllegalArgumentException("null not supported");
-          String keyBase = decompressString(valueBuffer.getShort());
+          String keyBase = decompressString(getId(valueBuffer));
           if (keyBase == null) throw new IllegalArgumentException("null not supported");
           parts[i] = new StaticKey<>(keyBase, keyType);
         }
-        Key<?> shortKey = new CompositeKey<>(parts);
-        mKeyToShort.put(shortKey, id);
-        mShortToKey.put(id, shortKey);
-        if (id > mKeyCounter.get()) mKeyCounter.set(id);
+        mKeys.restore(new CompositeKey<>(parts), id);
+      }
+
+      /* Handle all the saved templates, now that everything they refer to is known */
+
+      for (Map.Entry<Integer, ByteBuffer> entry : temporaryTemplates.entrySet()) {
+        ByteBuffer valueBuffer = entry.getValue();
+        valueBuffer.rewind();
+        String baseKey = decompressString(getVarInt(valueBuffer));
+        if (baseKey == null) throw new IllegalArgumentException("null not supported");
+        Type outputType = decompressType(getVarInt(valueBuffer));
+        if (outputType == null) throw new IllegalArgumentException("null not supported");
+        int partsLen = getVarInt(valueBuffer);
+        byte[] partTypes = new byte[partsLen];
+        @SuppressWarnings("unchecked") @Nullable KeySPI<String>[] defaultKeys = new KeySPI[partsLen];
+        for (int i = 0; i < partsLen; i++) {
+          partTypes[i] = valueBuffer.get();
+          if (partTypes[i] == PART_TYPE_PLACEHOLDER_DEFAULTS) defaultKeys[i] = readDefaultKey(valueBuffer);
+        }
+        mTemplates.restore(new KeyTemplate(baseKey, outputType, partTypes, defaultKeys), entry.getKey());
       }
     }
   }
@@ -518,6 +741,18 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected abstract void writeToCache(CommonKeyValuePair<CACHE, SER_KEY> pEntry);
 
+  /**
+   * Writes a set of entries to the cache. By default, each entry is written individually, but storages with a native
+   * bulk write should override this.
+   *
+   * @param pEntries the entries of data to write
+   */
+  protected void writeAllToCache(List<CommonKeyValuePair<CACHE, SER_KEY>> pEntries) {
+    for (CommonKeyValuePair<CACHE, SER_KEY> entry : pEntries) {
+      writeToCache(entry);
+    }
+  }
+
   /**
    * Reads from the primary cache
    *
@@ -526,6 +761,60 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected abstract Optional<?> readFromPrimaryCache(SER_KEY pKey);
 
+  /**
+   * Reads from the primary cache without wrapping the value. By default, this unwraps
+   * {@link #readFromPrimaryCache(Object)}, but storages that can read without allocating should override this.
+   *
+   * @param pKey the key
+   * @return the value or null if it's not present
+   */
+  protected @Nullable Object readValueFromPrimaryCache(SER_KEY pKey) {
+    return readFromPrimaryCache(pKey).orElse(null);
+  }
+
+  /**
+   * Reads a set of keys from the primary cache. By default, each key is read individually, but storages with a native
+   * bulk read should override this.
+   *
+   * @param pKeys the keys
+   * @return the values that were found, by key
+   */
+  protected Map<SER_KEY, Object> readAllFromPrimaryCache(Collection<SER_KEY> pKeys) {
+    Map<SER_KEY, Object> results = new HashMap<>();
+    for (SER_KEY key : pKeys) {
+      Object value = readValueFromPrimaryCache(key);
+      if (value != null) results.put(key, value);
+    }
+    return results;
+  }
+
+  /**
+   * Calculates the serialized version of a key within the primary cache
+   *
+   * @param pKey the key
+   * @return the serialized key
+   */
+  protected SER_KEY toSerKey(KeySPI<?> pKey) {
+    return pKey.getIdentity().getSerializedKey(this, mToSerKey);
+  }
+
+  private SER_KEY serializeKeyString(String pFullKey) {
+    String keyStr = toValueKeyString(pFullKey);
+    @SuppressWarnings("unchecked") SER_KEY serKey = (
+      mKeySerializer != null ? mKeySerializer.apply(keyStr) : (SER_KEY) keyStr);
+    return serKey;
+  }
+
+  /**
+   * Calculates the string form of a key within the primary cache, before any key serializer is applied
+   *
+   * @param pFullKey the key string
+   * @return the key string with the value prefix
+   */
+  protected String toValueKeyString(String pFullKey) {
+    return mValuePrefix != null ? mValuePrefix + pFullKey : pFullKey;
+  }
+
   /**
    * Invalidate entries
    *
@@ -534,6 +823,19 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected abstract void invalidate(CACHE pCache, @Nullable SER_KEY pKey);
 
+  /**
+   * Invalidate a set of entries. By default, each key is invalidated individually, but storages with a native bulk
+   * remove should override this.
+   *
+   * @param pCache the cache
+   * @param pKeys the keys to invalidate
+   */
+  protected void invalidateKeys(CACHE pCache, Collection<SER_KEY> pKeys) {
+    for (SER_KEY key : pKeys) {
+      invalidate(pCache, key);
+    }
+  }
+
   /**
    * Convert the given key/value into a list of CommonKeyValuePair's
    *
@@ -545,22 +847,17 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
   protected <V extends @Nullable Object> List<CommonKeyValuePair<CACHE, SER_KEY>> serializeEntry(KeySPI<V> pKey,
     CacheResult<V> pResult) {
 
-    String fullKey = pKey.toString();
-
     /* Calculate the final primary key */
 
-    String primaryKeyStr = mValuePrefix + fullKey;
-    @SuppressWarnings("unchecked") SER_KEY primaryKey = (
-      mKeySerializer != null ? mKeySerializer.apply(primaryKeyStr) : (SER_KEY) primaryKeyStr);
+    SER_KEY primaryKey = toSerKey(pKey);
 
     if (mSerializeValue) {
       /* Get the pieces that need to be serialized */
 
-      String baseKey = pKey.getFullBaseKey();
-      String serializerName = pKey.getLastSerializerName();
-      String serializer = Cache.DEFAULT_SERIALIZER.equals(serializerName) ? null : serializerName;
+      String serializer = getSerializer(pKey);
       Type outputType = pKey.getOutputType();
-      Duration overrideExpiry = pResult.getOverrideExpiry();
+      PathPolicy pathPolicy = pKey.getPathPolicy();
+      Duration writeExpiry = pathPolicy.getStorageExpiry(pResult);
       boolean isNull = pResult.isNull();
       V value = isNull ? null : pResult.getValue();
       @SuppressWarnings({ "null", "unchecked" }) Class<V> valueClass =
@@ -570,94 +867,70 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
 
       /* Now, compress the metadata into smaller pieces */
 
-      short baseKeyId = compressString(baseKey, listOfEntries);
-      short serializerId = compressString(serializer, listOfEntries);
-      short outputTypeId = compressType(outputType, listOfEntries);
-      short valueClassId = compressType(valueClass, listOfEntries);
-
-      /* Now build the block */
-
-      ByteBuffer valueBuffer;
-      int valueBufferSize;
-
-      if (value != null) {
-        valueBuffer = mConverterManager.convert(value, ByteBuffer.class, serializer);
-        valueBuffer.rewind();
-        valueBufferSize = valueBuffer.limit();
-      } else {
-        valueBuffer = null;
-        valueBufferSize = 0;
-      }
-
-      //noinspection ExtractMethodRecommender
-      int size = 0;
-      for (KeySPI<?> part : pKey.getParts()) {
-        if (part instanceof ResolvedKeyPlaceholder<?> rkp) {
-          KeySPI<?> placeholder = rkp.getPlaceholder();
-          if (placeholder instanceof StaticKeyPlaceholder) {
-            size += 1;
-          } else if (placeholder instanceof StaticKeyPlaceholderWithDefault) {
-            size += 3;
-          } else {
-            throw new IllegalStateException("Unrecognized placeholder (" + placeholder.getClass().getName() + ")");
-          }
-        } else if (part instanceof ResolvedAccessContextPlaceholder<?> racp) {
-          KeySPI<?> placeholder = racp.getPlaceholder();
-          if (placeholder instanceof StaticAccessContextPlaceholder) {
-            size += 3;
-          } else {
-            throw new IllegalStateException("Unrecognized placeholder (" + placeholder.getClass().getName() + ")");
-          }
+      int templateId = compressTemplate(KeyTemplate.of(pKey), listOfEntries);
+      int serializerId = compressString(serializer, listOfEntries);
+      int valueClassId = compressType(valueClass, listOfEntries);
+
+      /* Work out the offset table, which is where each placeholder value sits within the key */
+
+      KeySPI<? extends @Nullable Object>[] parts = pKey.getParts();
+      int[] offsets = new int[parts.length * 2];
+      int offsetsLen = 0;
+      int headerSize = 1 + varIntSize(templateId) + varIntSize(serializerId) + varIntSize(valueClassId);
+      int position = 0;
+      for (KeySPI<?> part : parts) {
+        int partLen = part.getKey().length();
+        if ((part instanceof ResolvedKeyPlaceholder<?>) || (part instanceof ResolvedAccessContextPlaceholder<?>)) {
+          offsets[offsetsLen++] = position;
+          offsets[offsetsLen++] = partLen;
+          headerSize += varIntSize(position) + varIntSize(partLen);
         }
+        position += partLen + 1;
       }
 
-      ByteBuffer result = ByteBuffer.allocate(valueBufferSize + 9 + size);
+      /*
+       * Now build the block. A streaming serializer writes the value into the final array behind room for the header.
+       * Otherwise, the value is converted on its own and copied in behind the header.
+       */
 
-      /* Write the version */
-
-      byte flags = (byte) (isNull ? FLAG_ISNULL : 0);
-      result.put((byte) (SERIALIZATION_VERSION + (flags << 4)));
+      StreamingSerializer streamingSerializer = getStreamingSerializer(serializer);
+      ByteBuffer result;
+      if ((value != null) && (streamingSerializer != null)) {
+        result = ByteBuffer.wrap(streamingSerializer.serialize(value, headerSize));
+        writeHeader(result, isNull, templateId, serializerId, valueClassId, offsets, offsetsLen);
+      } else {
+        ByteBuffer valueBuffer;
+        int valueBufferSize;
 
-      /* Write the ids */
+        if (value != null) {
+          valueBuffer = mConverterManager.convert(value, ByteBuffer.class, serializer);
+          valueBuffer.rewind();
+          valueBufferSize = valueBuffer.limit();
+        } else {
+          valueBuffer = null;
+          valueBufferSize = 0;
+        }
 
-      result.putShort(baseKeyId);
-      result.putShort(serializerId);
-      result.putShort(outputTypeId);
-      result.putShort(valueClassId);
+        result = ByteBuffer.allocate(valueBufferSize + headerSize);
+        writeHeader(result, isNull, templateId, serializerId, valueClassId, offsets, offsetsLen);
 
-      /* Write any of the placeholder part data */
+        /* Write the data */
 
-      for (KeySPI<?> part : pKey.getParts()) {
-        if (part instanceof ResolvedKeyPlaceholder<?> rkp) {
-          KeySPI<?> placeholder = rkp.getPlaceholder();
-          if (placeholder instanceof StaticKeyPlaceholder) {
-            result.put(PART_TYPE_PLACEHOLDER);
-          } else if (placeholder instanceof StaticKeyPlaceholderWithDefault skpwd) {
-            result.put(PART_TYPE_PLACEHOLDER_DEFAULTS);
-            result.putShort(compressKey(skpwd.getDefaultKey(), listOfEntries));
-          } else {
-            throw new IllegalStateException("Unrecognized placeholder (" + placeholder.getClass().getName() + ")");
-          }
-        } else if (part instanceof ResolvedAccessContextPlaceholder<?> racp) {
-          KeySPI<?> placeholder = racp.getPlaceholder();
-          if (placeholder instanceof StaticAccessContextPlaceholder) {
-            result.put(PART_TYPE_ACCESS_CONTEXT);
-          } else {
-            throw new IllegalStateException("Unrecognized placeholder (" + placeholder.getClass().getName() + ")");
-          }
-        }
+        if (valueBuffer != null && valueBufferSize > 0) result.put(valueBuffer);
       }
-
-      /* Write the data */
-
-      if (valueBuffer != null && valueBufferSize > 0) result.put(valueBuffer);
       result.rewind();
 
       /* Calculate the final value */
 
       Object finalValue = convertByteBufferToSERVALUE(result);
 
-      listOfEntries.add(new CommonKeyValuePair<>(mPrimaryCache, primaryKey, pKey, finalValue, overrideExpiry));
+      listOfEntries.add(new CommonKeyValuePair<>(mPrimaryCache,
+        primaryKey,
+        pKey,
+        finalValue,
+        writeExpiry,
+        pathPolicy.getExpireAfterAccess()
+      ));
       return listOfEntries;
     }
 
@@ -665,13 +938,14 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
 
     Object finalValue = new MemoryStorageData(pKey, pResult.isNull() ? null : pResult.getValue());
 
-    Duration overrideExpiry = pResult.getOverrideExpiry();
+    PathPolicy pathPolicy = pKey.getPathPolicy();
 
     return Collections.singletonList(new CommonKeyValuePair<>(mPrimaryCache,
       primaryKey,
       pKey,
       finalValue,
-      overrideExpiry
+      pathPolicy.getStorageExpiry(pResult),
+      pathPolicy.getExpireAfterAccess()
     ));
   }
 
@@ -691,6 +965,25 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected abstract Stream<Map.Entry<SER_KEY, ? extends Object>> streamMetaEntries();
 
+  /**
+   * Streams the entries of the primary cache in a subtree, which is the given key and every key below it. By default,
+   * the whole primary cache is streamed and filtered, so storages that can keep their keys ordered should override
+   * this to only visit the subtree.
+   *
+   * @param pKeyStr the key string at the root of the subtree (without the value prefix)
+   * @return the stream of serialized keys and values
+   */
+  protected Stream<Map.Entry<SER_KEY, ? extends Object>> streamPrimaryTree(String pKeyStr) {
+    String rootKey = toValueKeyString(pKeyStr);
+    //noinspection HardcodedFileSeparator
+    String childPrefix = rootKey + "/";
+    var keyDeserializer = mKeyDeserializer;
+    return streamPrimary().filter((entry) -> {
+      String keyStr = (keyDeserializer != null ? keyDeserializer.apply(entry.getKey()) : (String) entry.getKey());
+      return keyStr.startsWith(childPrefix) || keyStr.equals(rootKey);
+    });
+  }
+
   /**
    * Deserializes a SER_KEY and SER_VALUE into a Key<?> and CacheResult<?>
    *
@@ -700,6 +993,66 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    */
   protected Map.Entry<Key<?>, CacheResult<?>> deserializeEntry(SER_KEY pKey, @Nullable Object pValue) {
 
+    String fullKey = toFullKey(pKey);
+
+    if (pValue == null) return new SimpleEntry<>(new CompositeKey<>(fullKey, Object.class), CacheResult.notFound());
+
+    if (mSerializeValue) {
+
+      ByteBuffer buffer = convertSERVALUEtoByteBuffer(pValue);
+      buffer.rewind();
+      EntryHeader header = readHeader(fullKey, buffer);
+
+      /* Now generate the value */
+
+      Object value;
+      if (header.isNull) {
+        value = null;
+      } else {
+        value = decodeValue(buffer, header.valueClass, header.serializer);
+      }
+
+      var finalValue = new StaticCacheResult<@Nullable Object>(value, true);
+
+      return new SimpleEntry<>(header.key, finalValue);
+    }
+
+    /* Since this code is not deserializing from bytes, it's just a simple return */
+
+    MemoryStorageData msd = (MemoryStorageData) pValue;
+
+    return new SimpleEntry<>(msd.key, new StaticCacheResult<@Nullable Object>(msd.value, true));
+  }
+
+  /**
+   * Deserializes just the key of an entry. Unlike {@link #deserializeEntry(Object, Object)}, the value isn't decoded,
+   * so this is cheap enough to use when only the keys of a subtree are needed.
+   *
+   * @param pKey the key
+   * @param pValue the value
+   * @return the key
+   */
+  protected Key<?> deserializeKey(SER_KEY pKey, @Nullable Object pValue) {
+
+    String fullKey = toFullKey(pKey);
+
+    if (pValue == null) return new CompositeKey<>(fullKey, Object.class);
+
+    if (!mSerializeValue) return ((MemoryStorageData) pValue).key;
+
+    ByteBuffer buffer = convertSERVALUEtoByteBuffer(pValue);
+    buffer.rewind();
+    return readHeader(fullKey, buffer).key;
+  }
+
+  /**
+   * Converts a SER_KEY into the key string, without the value prefix
+   *
+   * @param pKey the key
+   * @return the key string
+   */
+  private String toFullKey(SER_KEY pKey) {
+
     String fullKey = (mKeyDeserializer != null ? mKeyDeserializer.apply(pKey) : (String) pKey);
 
     //noinspection VariableNotUsedInsideIf
@@ -708,158 +1061,377 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
       if (fullKeyLen <= mValuePrefixLen) throw new IllegalStateException("Key string is too short");
       fullKey = fullKey.substring(mValuePrefixLen);
     }
+    return fullKey;
+  }
 
-    if (pValue == null) return new SimpleEntry<>(new CompositeKey<>(fullKey, Object.class), CacheResult.notFound());
+  /**
+   * The header of a serialized entry
+   *
+   * @param key the rebuilt key
+   * @param isNull true if a null value was stored
+   * @param serializer the serializer name or null for the default serializer
+   * @param valueClass the value class
+   */
+  private record EntryHeader(Key<?> key, boolean isNull, @Nullable String serializer, Type valueClass) {
+  }
 
-    if (mSerializeValue) {
+  /**
+   * Reads the header of a serialized entry and rebuilds its key
+   *
+   * @param pFullKey the key string, without the value prefix
+   * @param pBuffer the buffer, positioned at the start of the entry. It's left positioned at the value.
+   * @return the header
+   */
+  private EntryHeader readHeader(String pFullKey, ByteBuffer pBuffer) {
 
-      ByteBuffer buffer = convertSERVALUEtoByteBuffer(pValue);
-      buffer.rewind();
+    /* Get and validate the version */
+
+    byte versionFlags = pBuffer.get();
+    @SuppressWarnings("MagicNumber") byte version = (byte) (versionFlags & 0x0F);
+
+    @SuppressWarnings("MagicNumber") int flags = (byte) ((versionFlags & 0xF0) >> 4);
+
+    /* Is null? */
+
+    boolean isNull = (flags & FLAG_ISNULL) == FLAG_ISNULL;
+
+    Key<?> finalKey;
+    String serializer;
+    Type valueClass;
+    if (version == SERIALIZATION_VERSION) {
 
-      /* Get and validate the version */
+      /* The template already knows the structure of the key, so it's just a matter of picking out the values */
 
-      byte versionFlags = buffer.get();
-      @SuppressWarnings("MagicNumber") byte version = (byte) (versionFlags & 0x0F);
-      if (version != SERIALIZATION_VERSION) {
-        throw new IllegalStateException(
-          "The entry " + fullKey + " has an unrecognized serialization version (" + String.valueOf(version) + ")");
+      int templateId = getVarInt(pBuffer);
+      KeyTemplate template = mTemplates.getValue(templateId);
+      if (template == null) {
+        throw new IllegalArgumentException("The template id (" + String.valueOf(templateId) + ") is not recognized");
       }
+      serializer = decompressString(getVarInt(pBuffer));
+      valueClass = decompressType(getVarInt(pBuffer));
+      if (valueClass == null) throw new IllegalArgumentException("null not supported");
+      finalKey = new CompositeKey<>(template.buildParts(pFullKey, pBuffer));
+    } else if (version == SERIALIZATION_VERSION_1) {
+      int baseKeyId = getId(pBuffer);
+      int serializerId = getId(pBuffer);
+      int outputTypeId = getId(pBuffer);
+      int valueClassId = getId(pBuffer);
+      serializer = decompressString(serializerId);
+      valueClass = decompressType(valueClassId);
+      if (valueClass == null) throw new IllegalArgumentException("null not supported");
+      finalKey = deserializeV1Key(pFullKey, baseKeyId, outputTypeId, pBuffer);
+    } else {
+      throw new IllegalStateException(
+        "The entry " + pFullKey + " has an unrecognized serialization version (" + String.valueOf(version) + ")");
+    }
+    return new EntryHeader(finalKey, isNull, serializer, valueClass);
+  }
 
-      @SuppressWarnings("MagicNumber") int flags = (byte) ((versionFlags & 0xF0) >> 4);
+  /**
+   * Decodes just the value of an entry whose key is already known, such as for a point lookup. Unlike
+   * {@link #deserializeEntry(Object, Object)}, the key is not rebuilt from the entry. The header is only read far enough
+   * to find the value, and the serializer is taken from the key when it has its details.
+   *
+   * @param pKey the key that was looked up
+   * @param pValue the value read from the primary cache
+   * @return the value, which is null if a null was stored
+   */
+  protected @Nullable Object deserializeValue(KeySPI<?> pKey, Object pValue) {
 
-      /* Is null? */
+    /* Since this code is not deserializing from bytes, the value is just unwrapped */
 
-      boolean isNull = (flags & FLAG_ISNULL) == FLAG_ISNULL;
+    if (!mSerializeValue) return ((MemoryStorageData) pValue).value;
 
-      /* Get the ids */
+    ByteBuffer buffer = convertSERVALUEtoByteBuffer(pValue);
+    buffer.rewind();
 
-      short baseKeyId = buffer.getShort();
-      short serializerId = buffer.getShort();
-      short outputTypeId = buffer.getShort();
-      short valueClassId = buffer.getShort();
+    /* Get and validate the version */
 
-      /* Decompress ids */
+    byte versionFlags = buffer.get();
+    @SuppressWarnings("MagicNumber") byte version = (byte) (versionFlags & 0x0F);
 
-      String baseKey = decompressString(baseKeyId);
-      if (baseKey == null) throw new IllegalArgumentException("null not supported");
-      String serializer = decompressString(serializerId);
-      var outputType = decompressType(outputTypeId);
-      if (outputType == null) throw new IllegalArgumentException("null not supported");
-      var valueClass = decompressType(valueClassId);
-      if (valueClass == null) throw new IllegalArgumentException("null not supported");
+    @SuppressWarnings("MagicNumber") int flags = (byte) ((versionFlags & 0xF0) >> 4);
+
+    if ((flags & FLAG_ISNULL) == FLAG_ISNULL) return null;
 
-      /* Now generate the Key */
+    int serializerId;
+    int valueClassId;
+    if (version == SERIALIZATION_VERSION) {
 
-      String[] baseSplit = baseKey.split("/");
-      int keyLen = baseSplit.length;
-      String[] fullSplit = fullKey.split("/");
-      if (keyLen != fullSplit.length) {
-        throw new IllegalStateException(
-          "The base key (" + baseKey + ") doesn't have the same number of parts as the full key (" + fullKey + ")");
+      /* Skip the template, since the caller has the key, and then the offset table of its placeholders */
+
+      getVarInt(buffer);
+      serializerId = getVarInt(buffer);
+      valueClassId = getVarInt(buffer);
+      for (KeySPI<?> part : pKey.getParts()) {
+        if ((part instanceof ResolvedKeyPlaceholder<?>) || (part instanceof ResolvedAccessContextPlaceholder<?>)) {
+          getVarInt(buffer);
+          getVarInt(buffer);
+        }
       }
+    } else if (version == SERIALIZATION_VERSION_1) {
 
-      @SuppressWarnings("unchecked") KeySPI<? extends @Nullable Object>[] parts = new KeySPI[keyLen];
-
-      for (int i = 0; i < keyLen; i++) {
-        String partBaseKey = baseSplit[i];
-        if (partBaseKey.startsWith("{")) {
-          String strippedPartBaseKey = partBaseKey.substring(1, partBaseKey.length() - 1);
-          byte placeholderType = buffer.get();
-          if (placeholderType == PART_TYPE_ACCESS_CONTEXT) {
-            parts[i] = new ResolvedAccessContextPlaceholder<>(new StaticAccessContextPlaceholder<>(strippedPartBaseKey,
-              outputType
-            ), fullSplit[i]
-            );
-          } else if (placeholderType == PART_TYPE_PLACEHOLDER) {
-            parts[i] = new ResolvedKeyPlaceholder<>(new StaticKeyPlaceholder<>(strippedPartBaseKey, outputType),
-              fullSplit[i]
-            );
-          } else if (placeholderType == PART_TYPE_PLACEHOLDER_DEFAULTS) {
-            short defaultKeyId = buffer.getShort();
-            Key<String> defaultKey = decompressKey(defaultKeyId);
-            @SuppressWarnings(
-              { "unchecked", "rawtypes" }) KeySPI<Object> r = (KeySPI<Object>) (KeySPI) new ResolvedKeyPlaceholder<>(new StaticKeyPlaceholderWithDefault(
-              strippedPartBaseKey,
-              outputType,
-              defaultKey
-            ), fullSplit[i]
-            );
-            parts[i] = r;
-          } else {
-            throw new IllegalStateException(
-              "The placeholder part type(" + String.valueOf(placeholderType) + ") is not recognized");
-          }
-        } else {
-          parts[i] = new StaticKey<>(fullSplit[i], outputType);
+      /* Skip the base key and output type, and then the part types of the placeholders */
+
+      getId(buffer);
+      serializerId = getId(buffer);
+      getId(buffer);
+      valueClassId = getId(buffer);
+      for (KeySPI<?> part : pKey.getParts()) {
+        if ((part instanceof ResolvedKeyPlaceholder<?>) || (part instanceof ResolvedAccessContextPlaceholder<?>)) {
+          if (buffer.get() == PART_TYPE_PLACEHOLDER_DEFAULTS) getId(buffer);
         }
       }
+    } else {
+      throw new IllegalStateException(
+        "The entry " + pKey + " has an unrecognized serialization version (" + String.valueOf(version) + ")");
+    }
 
-      Key<?> finalKey = new CompositeKey<>(parts);
+    String serializer = pKey.hasKeyDetails() ? getSerializer(pKey) : decompressString(serializerId);
+    Type valueClass = decompressType(valueClassId);
+    if (valueClass == null) throw new IllegalArgumentException("null not supported");
+    return decodeValue(buffer, valueClass, serializer);
+  }
 
-      /* Now generate the value */
+  /**
+   * Writes the v2 header of an entry
+   *
+   * @param pBuffer the buffer, positioned at the start of the entry
+   * @param pIsNull true if the value is null
+   * @param pTemplateId the key template id
+   * @param pSerializerId the serializer id
+   * @param pValueClassId the value class id
+   * @param pOffsets the offset table
+   * @param pOffsetsLen the number of used entries in the offset table
+   */
+  private static void writeHeader(ByteBuffer pBuffer, boolean pIsNull, int pTemplateId, int pSerializerId,
+    int pValueClassId, int[] pOffsets, int pOffsetsLen) {
 
-      Object value;
-      if (isNull) {
-        value = null;
+    /* Write the version */
+
+    byte flags = (byte) (pIsNull ? FLAG_ISNULL : 0);
+    pBuffer.put((byte) (SERIALIZATION_VERSION + (flags << 4)));
+
+    /* Write the ids */
+
+    putVarInt(pBuffer, pTemplateId);
+    putVarInt(pBuffer, pSerializerId);
+    putVarInt(pBuffer, pValueClassId);
+
+    /* Write the offset table */
+
+    for (int i = 0; i < pOffsetsLen; i++) {
+      putVarInt(pBuffer, pOffsets[i]);
+    }
+  }
+
+  /**
+   * Decodes the value that makes up the rest of an entry
+   *
+   * @param pBuffer the buffer, positioned at the value
+   * @param pValueClass the value class
+   * @param pSerializer the serializer name or null for the default serializer
+   * @return the value
+   */
+  private Object decodeValue(ByteBuffer pBuffer, Type pValueClass, @Nullable String pSerializer) {
+    StreamingSerializer streamingSerializer = getStreamingSerializer(pSerializer);
+    if (streamingSerializer != null) return streamingSerializer.deserialize(pBuffer, pValueClass);
+    return mConverterManager.convert(pBuffer.slice(), pValueClass, pSerializer);
+  }
+
+  /**
+   * Returns the streaming serializer for a serializer name
+   *
+   * @param pSerializer the serializer name or null for the default serializer
+   * @return the streaming serializer or null if there isn't one
+   */
+  private @Nullable StreamingSerializer getStreamingSerializer(@Nullable String pSerializer) {
+    CacheEngine cacheEngine = mCacheEngine;
+    if (cacheEngine == null) return null;
+    return cacheEngine.getStreamingSerializer(pSerializer != null ? pSerializer : Cache.DEFAULT_SERIALIZER);
+  }
+
+  /**
+   * Returns the serializer of a key, as it's recorded in an entry
+   *
+   * @param pKey the key
+   * @return the serializer name or null for the default serializer
+   */
+  private static @Nullable String getSerializer(KeySPI<?> pKey) {
+    String serializerName = pKey.getLastSerializerName();
+    return Cache.DEFAULT_SERIALIZER.equals(serializerName) ? null : serializerName;
+  }
+
+  /**
+   * Rebuilds the key of a v1 entry by lining up the parts of its base key with those of its full key
+   *
+   * @param pFullKey the full key string
+   * @param pBaseKeyId the id of the base key
+   * @param pOutputTypeId the id of the output type
+   * @param pBuffer the buffer positioned at the placeholder part data
+   * @return the key
+   */
+  private Key<?> deserializeV1Key(String pFullKey, int pBaseKeyId, int pOutputTypeId, ByteBuffer pBuffer) {
+    String baseKey = decompressString(pBaseKeyId);
+    if (baseKey == null) throw new IllegalArgumentException("null not supported");
+    var outputType = decompressType(pOutputTypeId);
+    if (outputType == null) throw new IllegalArgumentException("null not supported");
+
+    /* Now generate the Key */
+
+    //noinspection HardcodedFileSeparator
+    String[] baseSplit = baseKey.split("/");
+    int keyLen = baseSplit.length;
+    //noinspection HardcodedFileSeparator
+    String[] fullSplit = pFullKey.split("/");
+    if (keyLen != fullSplit.length) {
+      throw new IllegalStateException(
+        "The base key (" + baseKey + ") doesn't have the same number of parts as the full key (" + pFullKey + ")");
+    }
+
+    @SuppressWarnings("unchecked") KeySPI<? extends @Nullable Object>[] parts = new KeySPI[keyLen];
+
+    for (int i = 0; i < keyLen; i++) {
+      String partBaseKey = baseSplit[i];
+      if (partBaseKey.startsWith("{")) {
+        String strippedPartBaseKey = partBaseKey.substring(1, partBaseKey.length() - 1);
+        byte placeholderType = pBuffer.get();
+        if (placeholderType == PART_TYPE_ACCESS_CONTEXT) {
+          parts[i] = new ResolvedAccessContextPlaceholder<>(new StaticAccessContextPlaceholder<>(strippedPartBaseKey,
+            outputType
+          ), fullSplit[i]
+          );
+        } else if (placeholderType == PART_TYPE_PLACEHOLDER) {
+          parts[i] = new ResolvedKeyPlaceholder<>(new StaticKeyPlaceholder<>(strippedPartBaseKey, outputType),
+            fullSplit[i]
+          );
+        } else if (placeholderType == PART_TYPE_PLACEHOLDER_DEFAULTS) {
+          int defaultKeyId = getId(pBuffer);
+          Key<String> defaultKey = decompressKey(defaultKeyId);
+          @SuppressWarnings(
+            { "unchecked", "rawtypes" }) KeySPI<Object> r = (KeySPI<Object>) (KeySPI) new ResolvedKeyPlaceholder<>(new StaticKeyPlaceholderWithDefault(
+            strippedPartBaseKey,
+            outputType,
+            defaultKey
+          ), fullSplit[i]
+          );
+          parts[i] = r;
+        } else {
+          throw new IllegalStateException(
+            "The placeholder part type(" + String.valueOf(placeholderType) + ") is not recognized");
+        }
       } else {
-        ByteBuffer dataBuffer = buffer.slice();
-        value = mConverterManager.convert(dataBuffer, valueClass, serializer);
+        parts[i] = new StaticKey<>(fullSplit[i], outputType);
       }
+    }
 
-      var finalValue = new StaticCacheResult<@Nullable Object>(value, true);
+    return new CompositeKey<>(parts);
+  }
 
-      return new SimpleEntry<>(finalKey, finalValue);
+  /**
+   * Writes a non-negative int as a varint (seven bits per byte, least significant first)
+   *
+   * @param pBuffer the buffer
+   * @param pValue the value
+   */
+  @SuppressWarnings("MagicNumber")
+  protected static void putVarInt(ByteBuffer pBuffer, int pValue) {
+    int value = pValue;
+    while ((value & ~0x7F) != 0) {
+      pBuffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
     }
+    pBuffer.put((byte) value);
+  }
 
-    /* Since this code is not deserializing from bytes, it's just a simple return */
+  /**
+   * Reads a varint
+   *
+   * @param pBuffer the buffer
+   * @return the value
+   */
+  @SuppressWarnings("MagicNumber")
+  protected static int getVarInt(ByteBuffer pBuffer) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      if (shift > 28) throw new IllegalStateException("The varint is too long");
+      b = pBuffer.get();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
 
-    MemoryStorageData msd = (MemoryStorageData) pValue;
+  /**
+   * Returns the number of bytes that a value takes as a varint
+   *
+   * @param pValue the value
+   * @return the number of bytes
+   */
+  @SuppressWarnings("MagicNumber")
+  protected static int varIntSize(int pValue) {
+    return ((31 - Integer.numberOfLeadingZeros(pValue | 1)) / 7) + 1;
+  }
 
-    return new SimpleEntry<>(msd.key, new StaticCacheResult<@Nullable Object>(msd.value, true));
+  /**
+   * Reads a dictionary id in the v1 layout, which is an unsigned short
+   *
+   * @param pBuffer the buffer
+   * @return the id
+   */
+  protected static int getId(ByteBuffer pBuffer) {
+    return Short.toUnsignedInt(pBuffer.getShort());
+  }
+
+  private static int readId(ByteBuffer pBuffer, boolean pVarInt) {
+    return pVarInt ? getVarInt(pBuffer) : getId(pBuffer);
+  }
+
+  private static int readLength(ByteBuffer pBuffer, boolean pVarInt) {
+    return pVarInt ? getVarInt(pBuffer) : pBuffer.getShort();
+  }
+
+  /**
+   * Creates the write of a dictionary entry to the meta cache
+   *
+   * @param pKeyStr the key string of the entry
+   * @param pValue the encoded entry
+   * @return the write
+   */
+  private CommonKeyValuePair<CACHE, SER_KEY> dictionaryEntry(String pKeyStr, ByteBuffer pValue) {
+    @SuppressWarnings("unchecked") SER_KEY idKey = (
+      mKeySerializer != null ? mKeySerializer.apply(pKeyStr) : (SER_KEY) pKeyStr);
+    Object idValue = convertByteBufferToSERVALUE(pValue);
+    return new CommonKeyValuePair<>(mMetaCache != null ? mMetaCache : mPrimaryCache, idKey, null, idValue, null);
   }
 
   /**
-   * Compress a string
+   * Compress a string. No lock is taken. If two writers race to add the same string, both write its dictionary entry
+   * under the winning id, which is harmless, and ensures that each writer's batch carries the entries it refers to.
    *
    * @param pValue the string to compress
    * @param pWriteList the list to add additional key/values if necessary
-   * @return the short id assigned to the string
+   * @return the id assigned to the string
    */
-  protected short compressString(@Nullable String pValue, List<CommonKeyValuePair<CACHE, SER_KEY>> pWriteList) {
+  protected int compressString(@Nullable String pValue, List<CommonKeyValuePair<CACHE, SER_KEY>> pWriteList) {
     String value = pValue == null ? "__NULL__" : pValue;
-    Short id = mStringToShort.get(value);
-    if (id == null) {
-      synchronized (this) {
-        id = mStringToShort.get(value);
-        if (id == null) {
-          //noinspection NumericCastThatLosesPrecision
-          id = (short) mStringCounter.incrementAndGet();
-          mStringToShort.put(value, id);
-          mShortToString.put(id, value);
-          String strKey = mStringPrefix + id;
-          @SuppressWarnings("unchecked") SER_KEY idKey = (
-            mKeySerializer != null ? mKeySerializer.apply(strKey) : (SER_KEY) strKey);
-          Object idValue = convertByteBufferToSERVALUE(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
-          pWriteList.add(new CommonKeyValuePair<>(mMetaCache != null ? mMetaCache : mPrimaryCache,
-            idKey,
-            null,
-            idValue,
-            null
-          ));
-        }
-      }
-    }
+    Integer existing = mStrings.getId(value);
+    if (existing != null) return existing;
+    int id = mStrings.publish(value, mStrings.allocate());
+    pWriteList.add(dictionaryEntry(mStringPrefix + id, ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8))));
     return id;
   }
 
   /**
    * Decompress a string
    *
-   * @param pId the short id
+   * @param pId the id
    * @return the string
    */
-  protected @Nullable String decompressString(short pId) {
-    String str = mShortToString.get(pId);
+  protected @Nullable String decompressString(int pId) {
+    String str = mStrings.getValue(pId);
     if (str == null)
       throw new IllegalArgumentException("The string id (" + String.valueOf(pId) + ") is not recognized");
     if (str.equals("__NULL__")) return null;
@@ -867,131 +1439,80 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
   }
 
   /**
-   * Compress a type
+   * Compress a type. Like strings, no lock is taken. The component types are compressed (and their entries added to the
+   * write list) before the type itself is published, so a type's id is never visible before its parts are. The ids and
+   * lengths within a compound type are written as varints.
    *
    * @param pType the type
    * @param pWriteList the list to write additional key/value if necessary
-   * @return the short id
+   * @return the id
    */
-  protected short compressType(@Nullable Type pType, List<CommonKeyValuePair<CACHE, SER_KEY>> pWriteList) {
+  @SuppressWarnings("MagicNumber")
+  protected int compressType(@Nullable Type pType, List<CommonKeyValuePair<CACHE, SER_KEY>> pWriteList) {
     Type type = pType == null ? NULL_TYPE : pType;
-    Short id = mTypeToShort.get(type);
-    if (id == null) {
-      synchronized (this) {
-        id = mTypeToShort.get(type);
-        if (id == null) {
-          //noinspection NumericCastThatLosesPrecision
-          id = (short) mTypeCounter.incrementAndGet();
-          mTypeToShort.put(type, id);
-          mShortToType.put(id, type);
-          String typeKey = mTypePrefix + id;
-          @SuppressWarnings("unchecked") SER_KEY idKey = (
-            mKeySerializer != null ? mKeySerializer.apply(typeKey) : (SER_KEY) typeKey);
-          int size = 1;
-          byte[] extra;
-          switch (type) {
-            case Class<?> aClass -> {
-              String className = ClassUtils.getCanonicalName(aClass);
-              extra = className.getBytes(StandardCharsets.UTF_8);
-              size += extra.length;
-            }
-            case ParameterizedType pt -> {
-              short ownerTypeId = compressType(pt.getOwnerType(), pWriteList);
-              short rawTypeId = compressType(pt.getRawType(), pWriteList);
-              Type[] actualTypeArguments = pt.getActualTypeArguments();
-              //noinspection NumericCastThatLosesPrecision
-              short actualTypeArgumentsLen = (short) actualTypeArguments.length;
-              ByteBuffer extraBuffer = ByteBuffer.allocate(6 + (actualTypeArgumentsLen * 2));
-              extraBuffer.putShort(ownerTypeId);
-              extraBuffer.putShort(rawTypeId);
-              extraBuffer.putShort(actualTypeArgumentsLen);
-              for (Type typeArg : actualTypeArguments) {
-                short typeArgId = compressType(typeArg, pWriteList);
-                extraBuffer.putShort(typeArgId);
-              }
-              extraBuffer.rewind();
-              extra = extraBuffer.array();
-              size += extra.length;
-            }
-            case GenericArrayType gat -> {
-              short gctId = compressType(gat.getGenericComponentType(), pWriteList);
-              ByteBuffer extraBuffer = ByteBuffer.allocate(2);
-              extraBuffer.putShort(gctId);
-              extraBuffer.rewind();
-              extra = extraBuffer.array();
-              size += extra.length;
-            }
-            case WildcardType wt -> {
-              Type[] lowerBounds = wt.getLowerBounds();
-              //noinspection NumericCastThatLosesPrecision
-              short lowerBoundsLen = (short) lowerBounds.length;
-              Type[] upperBounds = wt.getUpperBounds();
-              //noinspection NumericCastThatLosesPrecision
-              short upperBoundsLen = (short) upperBounds.length;
-              ByteBuffer extraBuffer = ByteBuffer.allocate(4 + ((lowerBoundsLen + upperBoundsLen) * 2));
-              extraBuffer.putShort(lowerBoundsLen);
-              extraBuffer.putShort(upperBoundsLen);
-              for (Type typeArg : lowerBounds) {
-                short typeArgId = compressType(typeArg, pWriteList);
-                extraBuffer.putShort(typeArgId);
-              }
-              for (Type typeArg : upperBounds) {
-                short typeArgId = compressType(typeArg, pWriteList);
-                extraBuffer.putShort(typeArgId);
-              }
-              extraBuffer.rewind();
-              extra = extraBuffer.array();
-              size += extra.length;
-            }
-            default -> throw new IllegalArgumentException("Unrecognized type (" + type.getClass().getName() + ")");
-          }
-          ByteBuffer buffer = ByteBuffer.allocate(size);
-          switch (type) {
-            case Class<?> _ -> {
-              buffer.put(TYPE_CLASS);
-              buffer.put(extra);
-            }
-            case ParameterizedType _ -> {
-              buffer.put(TYPE_PARAMETERIZED);
-              buffer.put(extra);
-            }
-            case GenericArrayType _ -> {
-              buffer.put(TYPE_GENERIC_ARRAY);
-              buffer.put(extra);
-            }
-            case TypeVariable<?> _ -> {
-              buffer.put(TYPE_VARIABLE);
-              buffer.put(extra);
-            }
-            case WildcardType _ -> {
-              buffer.put(TYPE_WILDCARD);
-              buffer.put(extra);
-            }
-            default -> {
-            }
-          }
-          buffer.rewind();
-          Object idValue = convertByteBufferToSERVALUE(buffer);
-          pWriteList.add(new CommonKeyValuePair<>(mMetaCache != null ? mMetaCache : mPrimaryCache,
-            idKey,
-            null,
-            idValue,
-            null
-          ));
+    Integer existing = mTypes.getId(type);
+    if (existing != null) return existing;
+    ByteBuffer buffer;
+    switch (type) {
+      case Class<?> aClass -> {
+
+        /* If it's a CLASS type, then it's just the full classname */
+
+        byte[] className = ClassUtils.getCanonicalName(aClass).getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocate(1 + className.length);
+        buffer.put(TYPE_CLASS);
+        buffer.put(className);
+      }
+      case ParameterizedType pt -> {
+        int ownerTypeId = compressType(pt.getOwnerType(), pWriteList);
+        int rawTypeId = compressType(pt.getRawType(), pWriteList);
+        Type[] actualTypeArguments = pt.getActualTypeArguments();
+        buffer = ByteBuffer.allocate(1 + (5 * (3 + actualTypeArguments.length)));
+        buffer.put((byte) (TYPE_PARAMETERIZED | TYPE_FLAG_VARINT));
+        putVarInt(buffer, ownerTypeId);
+        putVarInt(buffer, rawTypeId);
+        putVarInt(buffer, actualTypeArguments.length);
+        for (Type typeArg : actualTypeArguments) {
+          putVarInt(buffer, compressType(typeArg, pWriteList));
         }
       }
+      case GenericArrayType gat -> {
+        int gctId = compressType(gat.getGenericComponentType(), pWriteList);
+        buffer = ByteBuffer.allocate(1 + 5);
+        buffer.put((byte) (TYPE_GENERIC_ARRAY | TYPE_FLAG_VARINT));
+        putVarInt(buffer, gctId);
+      }
+      case WildcardType wt -> {
+        Type[] lowerBounds = wt.getLowerBounds();
+        Type[] upperBounds = wt.getUpperBounds();
+        buffer = ByteBuffer.allocate(1 + (5 * (2 + lowerBounds.length + upperBounds.length)));
+        buffer.put((byte) (TYPE_WILDCARD | TYPE_FLAG_VARINT));
+        putVarInt(buffer, lowerBounds.length);
+        putVarInt(buffer, upperBounds.length);
+        for (Type typeArg : lowerBounds) {
+          putVarInt(buffer, compressType(typeArg, pWriteList));
+        }
+        for (Type typeArg : upperBounds) {
+          putVarInt(buffer, compressType(typeArg, pWriteList));
+        }
+      }
+      default -> throw new IllegalArgumentException("Unrecognized type (" + type.getClass().getName() + ")");
     }
+    int id = mTypes.publish(type, mTypes.allocate());
+    pWriteList.add(dictionaryEntry(mTypePrefix + id,
+      ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.position()))
+    ));
     return id;
   }
 
   /**
    * Decompress a type
    *
-   * @param pTypeId the type short id
+   * @param pTypeId the type id
    * @return the type
    */
-  protected @Nullable Type decompressType(short pTypeId) {
-    Type type = mShortToType.get(pTypeId);
+  protected @Nullable Type decompressType(int pTypeId) {
+    Type type = mTypes.getValue(pTypeId);
     if (type == null)
       throw new IllegalArgumentException("The type id (" + String.valueOf(pTypeId) + ") is not recognized");
     if (type.equals(NULL_TYPE)) return null;
@@ -999,54 +1520,70 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
   }
 
   /**
-   * Compress a key
+   * Compress a key template. Like strings and types, no lock is taken. A defaulted placeholder's default key is written
+   * into the template itself, as the type and base key of each of its parts.
    *
-   * @param pKey the key
+   * @param pTemplate the template
    * @param pWriteList the list of key/values to write if necessary
-   * @return the key short id
-   */
-  protected short compressKey(KeySPI<?> pKey, List<CommonKeyValuePair<CACHE, SER_KEY>> pWriteList) {
-    Short id = mKeyToShort.get(pKey);
-    if (id == null) {
-      synchronized (this) {
-        id = mKeyToShort.get(pKey);
-        if (id == null) {
-          //noinspection NumericCastThatLosesPrecision
-          id = (short) mKeyCounter.incrementAndGet();
-          mKeyToShort.put(pKey, id);
-          mShortToKey.put(id, pKey);
-
-          /* Verify that this key is just made up of static keys */
-
-          KeySPI<? extends @Nullable Object>[] parts = pKey.getParts();
-          int partsLen = parts.length;
-          ByteBuffer buffer = ByteBuffer.allocate(4 * partsLen);
-          for (KeySPI<?> p : parts) {
-            if (!(p instanceof StaticKey)) {
-              throw new IllegalArgumentException("Only purely static keys can be used for defaults that are serialized");
-            }
-            short typeId = compressType(p.getOutputType(), pWriteList);
-            short valueId = compressString(p.getBaseKey(), pWriteList);
-            buffer.putShort(typeId);
-            buffer.putShort(valueId);
-          }
-          buffer.rewind();
-          String keyKey = mKeyPrefix + id;
-          @SuppressWarnings("unchecked") SER_KEY idKey = (
-            mKeySerializer != null ? mKeySerializer.apply(keyKey) : (SER_KEY) keyKey);
-          Object idValue = convertByteBufferToSERVALUE(buffer);
-          pWriteList.add(new CommonKeyValuePair<>(mMetaCache != null ? mMetaCache : mPrimaryCache,
-            idKey,
-            null,
-            idValue,
-            null
-          ));
+   * @return the template id
+   */
+  @SuppressWarnings("MagicNumber")
+  protected int compressTemplate(KeyTemplate pTemplate, List<CommonKeyValuePair<CACHE, SER_KEY>> pWriteList) {
+    Integer existing = mTemplates.getId(pTemplate);
+    if (existing != null) return existing;
+    int partsLen = pTemplate.mPartTypes.length;
+    int size = 5 * 3;
+    for (int i = 0; i < partsLen; i++) {
+      KeySPI<String> defaultKey = pTemplate.mDefaultKeys[i];
+      size += 1 + (defaultKey == null ? 0 : 5 * (1 + (2 * defaultKey.getParts().length)));
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    putVarInt(buffer, compressString(pTemplate.mBaseKey, pWriteList));
+    putVarInt(buffer, compressType(pTemplate.mOutputType, pWriteList));
+    putVarInt(buffer, partsLen);
+    for (int i = 0; i < partsLen; i++) {
+      buffer.put(pTemplate.mPartTypes[i]);
+      KeySPI<String> defaultKey = pTemplate.mDefaultKeys[i];
+      if (defaultKey == null) continue;
+
+      /* Verify that the default key is just made up of static keys */
+
+      KeySPI<? extends @Nullable Object>[] parts = defaultKey.getParts();
+      putVarInt(buffer, parts.length);
+      for (KeySPI<?> p : parts) {
+        if (!(p instanceof StaticKey)) {
+          throw new IllegalArgumentException("Only purely static keys can be used for defaults that are serialized");
         }
+        putVarInt(buffer, compressType(p.getOutputType(), pWriteList));
+        putVarInt(buffer, compressString(p.getBaseKey(), pWriteList));
       }
     }
+    int id = mTemplates.publish(pTemplate, mTemplates.allocate());
+    pWriteList.add(dictionaryEntry(mTemplatePrefix + id,
+      ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.position()))
+    ));
     return id;
   }
 
+  /**
+   * Reads a default key that was written into a template
+   *
+   * @param pBuffer the buffer
+   * @return the key
+   */
+  private KeySPI<String> readDefaultKey(ByteBuffer pBuffer) {
+    int partLen = getVarInt(pBuffer);
+    @SuppressWarnings("unchecked") KeySPI<@Nullable Object>[] parts = new KeySPI[partLen];
+    for (int i = 0; i < partLen; i++) {
+      var keyType = decompressType(getVarInt(pBuffer));
+      if (keyType == null) throw new IllegalArgumentException("null not supported");
+      String keyBase = decompressString(getVarInt(pBuffer));
+      if (keyBase == null) throw new IllegalArgumentException("null not supported");
+      parts[i] = new StaticKey<>(keyBase, keyType);
+    }
+    return new CompositeKey<>(parts);
+  }
+
   /**
    * Decompress a key
    *
@@ -1054,8 +1591,8 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
    * @param <V> the key type
    * @return the key
    */
-  protected <V> Key<V> decompressKey(short pId) {
-    @SuppressWarnings("unchecked") Key<V> key = (Key<V>) mShortToKey.get(pId);
+  protected <V> Key<V> decompressKey(int pId) {
+    @SuppressWarnings("unchecked") Key<V> key = (Key<V>) mKeys.getValue(pId);
     if (key == null) throw new IllegalArgumentException("The key id (" + String.valueOf(pId) + ") is not recognized");
     return key;
   }
@@ -1121,6 +1658,34 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
     waitSemaphore(semaphore);
   }
 
+  @Override
+  public <V extends @Nullable Object> void storeAll(AccessContext pAccessContext,
+    Map<KeySPI<V>, CacheResult<V>> pResults) {
+    if (pResults.isEmpty()) return;
+
+    /* Convert all the data into the things to actually write */
+
+    List<CommonKeyValuePair<CACHE, SER_KEY>> kvPairs = new ArrayList<>();
+    List<Optional<Semaphore>> semaphores = new ArrayList<>();
+    for (Map.Entry<KeySPI<V>, CacheResult<V>> entry : pResults.entrySet()) {
+      kvPairs.addAll(serializeEntry(entry.getKey(), entry.getValue()));
+
+      /* Mark that the code is waiting for a callback from the cache */
+
+      semaphores.add(prepareSemphore(entry.getKey()));
+    }
+
+    /* Write them to the cache in one pass */
+
+    writeAllToCache(kvPairs);
+
+    /* Wait for the callbacks to occur */
+
+    for (Optional<Semaphore> semaphore : semaphores) {
+      waitSemaphore(semaphore);
+    }
+  }
+
   /**
    * Returns whether a callback is assigned to the given key
    *
@@ -1211,14 +1776,9 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
   @Override
   public <V extends @Nullable Object> void invalidate(AccessContext pAccessContext, KeySPI<V> pKey) {
 
-    /* Get the key string */
-
-    String keyStr = (mValuePrefix != null ? mValuePrefix + pKey : pKey.toString());
-
     /* Get the serialized version of the key */
 
-    @SuppressWarnings("unchecked") SER_KEY serKey = (
-      mKeySerializer != null ? mKeySerializer.apply(keyStr) : (SER_KEY) keyStr);
+    SER_KEY serKey = toSerKey(pKey);
 
     /* Mark that the code is waiting for a callback from the cache */
 
@@ -1232,6 +1792,28 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
 
   }
 
+  @Override
+  public void invalidateKeys(AccessContext pAccessContext, Collection<? extends KeySPI<?>> pKeys) {
+    if (pKeys.isEmpty()) return;
+
+    /* Get the serialized version of each key, and mark that the code is waiting for a callback from the cache */
+
+    Set<SER_KEY> serKeys = new LinkedHashSet<>();
+    List<Optional<Semaphore>> semaphores = new ArrayList<>();
+    for (KeySPI<?> key : pKeys) {
+      serKeys.add(toSerKey(key));
+      semaphores.add(prepareSemphore(key));
+    }
+
+    invalidateKeys(mPrimaryCache, serKeys);
+
+    /* Wait for the callbacks to occur */
+
+    for (Optional<Semaphore> semaphore : semaphores) {
+      waitSemaphore(semaphore);
+    }
+  }
+
   @Override
   public void invalidateAll(AccessContext pAccessContext) {
     invalidate(mPrimaryCache, null);
@@ -1267,33 +1849,73 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
   }
 
   @Override
-  public <V extends @Nullable Object> CacheResult<V> queryForKey(AccessContext pAccessContext, KeySPI<V> pKey) {
+  public Stream<Map.Entry<Key<?>, CacheResult<?>>> streamEntries(AccessContext pAccessContext, String pKeyStr) {
+    return streamPrimaryTree(pKeyStr).map((entry) -> deserializeEntry(entry.getKey(), entry.getValue()));
+  }
 
-    /* Get the key string */
+  @Override
+  public Stream<Key<?>> streamKeys(AccessContext pAccessContext, String pKeyStr) {
+    return streamPrimaryTree(pKeyStr).map((entry) -> deserializeKey(entry.getKey(), entry.getValue()));
+  }
 
-    String keyStr = (mValuePrefix != null ? mValuePrefix + pKey : pKey.toString());
+  @Override
+  public <V extends @Nullable Object> CacheResult<V> queryForKey(AccessContext pAccessContext, KeySPI<V> pKey) {
 
     /* Get the serialized version of the key */
 
-    @SuppressWarnings("unchecked") SER_KEY serKey = (
-      mKeySerializer != null ? mKeySerializer.apply(keyStr) : (SER_KEY) keyStr);
+    SER_KEY serKey = toSerKey(pKey);
 
     /* Query the underlying primary cache */
 
-    Optional<?> valueOpt = readFromPrimaryCache(serKey);
+    Object value = readValueFromPrimaryCache(serKey);
 
     /* If it's not found, then done */
 
-    if (valueOpt.isEmpty()) return CacheResult.notFound();
+    if (value == null) return CacheResult.notFound();
 
-    /* Deserialize the entry */
+    /* Decode just the value, since the key is already known */
 
-    Map.Entry<Key<?>, CacheResult<?>> result = deserializeEntry(serKey, valueOpt.get());
+    @SuppressWarnings("unchecked") V result = (V) deserializeValue(pKey, value);
+    return new StaticCacheResult<>(result, true);
+  }
 
-    /* Return the CacheResult */
+  @Override
+  public <V extends @Nullable Object> @Nullable Object queryValueForKey(AccessContext pAccessContext,
+    KeySPI<V> pKey) {
+    SER_KEY serKey = toSerKey(pKey);
+    Object value = readValueFromPrimaryCache(serKey);
+    if (value == null) return VALUE_NOT_FOUND;
+    return deserializeValue(pKey, value);
+  }
 
-    @SuppressWarnings("unchecked") CacheResult<V> cv = (CacheResult<V>) result.getValue();
-    return cv;
+  @Override
+  public <V extends @Nullable Object> Map<KeySPI<V>, CacheResult<V>> queryForKeys(AccessContext pAccessContext,
+    Collection<KeySPI<V>> pKeys) {
+
+    /* Get the serialized version of each key */
+
+    Map<SER_KEY, KeySPI<V>> keysBySerKey = new LinkedHashMap<>();
+    for (KeySPI<V> key : pKeys) {
+      keysBySerKey.put(toSerKey(key), key);
+    }
+
+    /* Query the underlying primary cache in one pass */
+
+    Map<SER_KEY, Object> values = readAllFromPrimaryCache(keysBySerKey.keySet());
+
+    /* Decode the values that were found */
+
+    Map<KeySPI<V>, CacheResult<V>> results = new HashMap<>();
+    for (Map.Entry<SER_KEY, KeySPI<V>> entry : keysBySerKey.entrySet()) {
+      Object value = values.get(entry.getKey());
+      if (value == null) {
+        results.put(entry.getValue(), CacheResult.notFound());
+        continue;
+      }
+      @SuppressWarnings("unchecked") V result = (V) deserializeValue(entry.getValue(), value);
+      results.put(entry.getValue(), new StaticCacheResult<>(result, true));
+    }
+    return results;
   }
 
   @Override
@@ -1329,9 +1951,18 @@ public abstract class AbstractCacheStorage<CACHE, SER_KEY> implements CacheStora
 
     @SuppressWarnings("unchecked") KeySPI<Object> keyObj = (KeySPI<Object>) entry.getKey();
 
-    /* Because this might be called on a non-reentrant thread, move the querying for real data into another thread */
+    /* Let the engine prune the dependency graph. It batches the work onto its own executor */
+
+    if ((pEvent == CacheKeyEvent.REMOVED) && (mCacheEngine != null)) mCacheEngine.keyRemoved(keyObj);
+
+    /*
+     * Because this might be called on a non-reentrant thread, move the querying for real data into another thread. The
+     * engine decides which one, so that callbacks can run on virtual threads.
+     */
 
-    mExecutorService.submit(() -> {
+    CacheEngine cacheEngine = mCacheEngine;
+    ExecutorService executor = (cacheEngine != null ? cacheEngine.getTaskExecutor() : mExecutorService);
+    executor.submit(() -> {
       if (mCacheEngine == null) throw new IllegalStateException("The cache engine has not been set");
       callCallbacks(keyObj, pEvent);
     });
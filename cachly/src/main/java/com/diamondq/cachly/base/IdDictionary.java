@@ -0,0 +1,103 @@
+package com.diamondq.cachly.base;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free, two-way dictionary between values and the int ids that stand in for them in serialized entries. Ids are
+ * allocated with a CAS on a counter that refuses to go past Integer.MAX_VALUE, so an id can never wrap around and be
+ * reused.
+ * <p>
+ * Two threads may race to assign an id to the same value. Both allocate an id, but only the first one to publish it
+ * wins, and the loser is handed the winning id. The losing id is simply never used.
+ *
+ * @param <T> the value type
+ */
+public final class IdDictionary<T> {
+
+  private final Map<T, Integer> mIdsByValue = new ConcurrentHashMap<>();
+
+  private final Map<Integer, T> mValuesById = new ConcurrentHashMap<>();
+
+  /**
+   * The last allocated id. Ids start at 1.
+   */
+  private final AtomicInteger mCounter = new AtomicInteger();
+
+  /**
+   * Returns the id of a value
+   *
+   * @param pValue the value
+   * @return the id or null if the value doesn't have one yet
+   */
+  public @Nullable Integer getId(T pValue) {
+    return mIdsByValue.get(pValue);
+  }
+
+  /**
+   * Returns the value of an id
+   *
+   * @param pId the id
+   * @return the value or null if the id isn't known
+   */
+  public @Nullable T getValue(int pId) {
+    return mValuesById.get(pId);
+  }
+
+  /**
+   * Returns whether an id is known
+   *
+   * @param pId the id
+   * @return true if it's known
+   */
+  public boolean containsId(int pId) {
+    return mValuesById.containsKey(pId);
+  }
+
+  /**
+   * Allocates a new id
+   *
+   * @return the id
+   */
+  public int allocate() {
+    while (true) {
+      int current = mCounter.get();
+      if (current == Integer.MAX_VALUE) throw new IllegalStateException("The dictionary has run out of ids");
+      if (mCounter.compareAndSet(current, current + 1)) return current + 1;
+    }
+  }
+
+  /**
+   * Publishes a value under a freshly allocated id, unless another thread got there first
+   *
+   * @param pValue the value
+   * @param pId the id from allocate()
+   * @return the id of the value, which is the given id unless another thread won the race
+   */
+  public int publish(T pValue, int pId) {
+
+    /* The reverse entry goes in first, so that anyone who sees the id can also decode it */
+
+    mValuesById.put(pId, pValue);
+    Integer existing = mIdsByValue.putIfAbsent(pValue, pId);
+    if (existing == null) return pId;
+    mValuesById.remove(pId, pValue);
+    return existing;
+  }
+
+  /**
+   * Restores a persisted mapping. The counter is moved past the id so that it's never allocated again.
+   *
+   * @param pValue the value
+   * @param pId the id
+   */
+  public void restore(T pValue, int pId) {
+    if (pId <= 0) throw new IllegalArgumentException("The id (" + pId + ") is not valid");
+    mValuesById.put(pId, pValue);
+    mIdsByValue.put(pValue, pId);
+    mCounter.accumulateAndGet(pId, Math::max);
+  }
+}
@@ -1,11 +1,16 @@
 package com.diamondq.cachly.impl;
 
 import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.AsyncCacheLoader;
+import com.diamondq.cachly.BulkCacheLoader;
 import com.diamondq.cachly.Cache;
 import com.diamondq.cachly.CacheKeyEvent;
+import com.diamondq.cachly.CacheLoadContext;
+import com.diamondq.cachly.CacheOverloadedException;
 import com.diamondq.cachly.CacheLoader;
 import com.diamondq.cachly.CacheLoaderInfo;
 import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.CacheValue;
 import com.diamondq.cachly.Key;
 import com.diamondq.cachly.KeyBuilder;
 import com.diamondq.cachly.KeyPlaceholder;
@@ -15,14 +20,18 @@ import com.diamondq.cachly.spi.AccessContextSPI;
 import com.diamondq.cachly.spi.BeanNameLocator;
 import com.diamondq.cachly.spi.CacheEngine;
 import com.diamondq.cachly.spi.CacheStorage;
+import com.diamondq.cachly.spi.CachlyEngineConfiguration;
 import com.diamondq.cachly.spi.CachlyPathConfiguration;
 import com.diamondq.cachly.spi.CompositeKey;
 import com.diamondq.cachly.spi.KeyDetails;
 import com.diamondq.cachly.spi.KeyPlaceholderSPI;
 import com.diamondq.cachly.spi.KeySPI;
+import com.diamondq.cachly.spi.LoadMetrics;
+import com.diamondq.cachly.spi.PathPolicy;
 import com.diamondq.cachly.spi.ResolvedKeyPlaceholder;
 import com.diamondq.cachly.spi.StaticAccessContextPlaceholder;
 import com.diamondq.cachly.spi.StaticCacheResult;
+import com.diamondq.cachly.spi.StreamingSerializer;
 import com.diamondq.common.TypeReference;
 import com.diamondq.common.context.Context;
 import com.diamondq.common.context.ContextFactory;
@@ -31,31 +40,43 @@ import com.diamondq.common.lambda.interfaces.Consumer3;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
-import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 
 import java.time.Duration;
+import java.util.AbstractMap;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -87,6 +108,11 @@ public final class CacheEngineImpl implements CacheEngine {
    */
   private final List<BeanNameLocator> mBeanNameLocators = new CopyOnWriteArrayList<>();
 
+  /**
+   * The streaming serializers by name
+   */
+  private final Map<String, StreamingSerializer> mStreamingSerializers = new ConcurrentHashMap<>();
+
   private final Map<String, CacheStorage> mCacheStorageByPath = new ConcurrentHashMap<>();
 
   private final Map<String, CacheStorage> mCacheStorageByName = new ConcurrentHashMap<>();
@@ -95,9 +121,17 @@ public final class CacheEngineImpl implements CacheEngine {
 
   private final Map<String, String> mSerializerNameByPath = new ConcurrentHashMap<>();
 
-  @SuppressWarnings(
-    "type.argument") private static final ThreadLocal<ArrayDeque<Set<String>>> sMonitored = ThreadLocal.withInitial(
-    ArrayDeque::new);
+  private final Map<String, PathPolicy> mPathPolicyByPath = new ConcurrentHashMap<>();
+
+  /**
+   * The load limits of each configured path that has any, created on first use
+   */
+  private final Map<String, LoadBulkhead> mBulkheads = new ConcurrentHashMap<>();
+
+  /**
+   * The trie compiled from the path maps above. It's replaced as a whole whenever they change.
+   */
+  private volatile PathTrie mPathTrie = PathTrie.EMPTY;
 
   private final KeySPI<CacheInfo> mStorageKey = (KeySPI<CacheInfo>) KeyBuilder.of(CacheInfoLoader.CACHE_INFO_NAME,
     new TypeReference<CacheInfo>() { // type
@@ -105,14 +139,74 @@ public final class CacheEngineImpl implements CacheEngine {
     }
   );
 
-  private @MonotonicNonNull CacheInfo mCacheInfo;
+  /**
+   * The placeholder and key template of the per-key dependency records stored underneath the storage key
+   */
+  private final KeyPlaceholder<DependencyRecord> mDependencyPlaceholder = KeyBuilder.placeholder(
+    DependencyRecordLoader.DEPENDENCY_PLACEHOLDER_NAME,
+    DependencyRecordLoader.TYPE_REF
+  );
+
+  private final KeySPI<DependencyRecord> mDependencyRecordKey = (KeySPI<DependencyRecord>) KeyBuilder.from(mStorageKey,
+    mDependencyPlaceholder
+  );
+
+  /**
+   * The in-memory dependency graph. It's persisted as one DependencyRecord per depended-on key.
+   */
+  private final DependencyGraph mDependencyGraph = new DependencyGraph();
+
+  /**
+   * The keys carrying each tag
+   */
+  private final TagIndex mTagIndex = new TagIndex();
 
   private final AccessContext mEmptyAccessContext = new AccessContextImpl(Collections.emptyMap());
 
+  /**
+   * The per-key locks used while loading
+   */
+  private final LoadLockManager mLoadLocks = new LoadLockManager();
+
+  /**
+   * The loads that are currently running, by key. Every kind of load publishes itself here before calling its loader,
+   * which is what keeps synchronous, asynchronous and background loads of the same key from overlapping.
+   */
+  private final Map<String, CompletableFuture<CacheResult<?>>> mInFlightLoads = new ConcurrentHashMap<>();
+
+  /**
+   * The scheduler for background reloads on refresh-ahead paths
+   */
+  private final RefreshAheadManager mRefreshAhead = new RefreshAheadManager((r) -> getTaskExecutor().execute(r),
+    this::refresh
+  );
+
+  /**
+   * The soft expiries of the entries on stale-while-revalidate paths
+   */
+  private final StaleValueManager mStaleValues = new StaleValueManager();
+
+  /**
+   * The batches of keys that the storages reported as removed, whose dependency edges need pruning
+   */
+  private final RemovalBatcher mRemovals = new RemovalBatcher((r) -> getTaskExecutor().execute(r),
+    this::pruneRemovedKeys
+  );
+
   private final Map<Class<?>, List<AccessContextSPI<?>>> mAccessContextSPIMap = new ConcurrentHashMap<>();
 
   private final Map<Class<?>, Class<?>> mAccessContextClassMap = new ConcurrentHashMap<>();
 
+  /**
+   * The fraction of cache hits that skip the fast path in order to be traced through a Context
+   */
+  private volatile double mTraceSampleRate;
+
+  /**
+   * The virtual thread per task executor, if the engine is configured to run its tasks on virtual threads
+   */
+  private volatile @Nullable ExecutorService mVirtualExecutor;
+
   /**
    * Constructor for OSGi-based solutions
    */
@@ -136,6 +230,30 @@ public final class CacheEngineImpl implements CacheEngine {
     mContextFactory = pContextFactory;
   }
 
+  /**
+   * Applies the engine wide configuration
+   *
+   * @param pEngineConfiguration the configuration
+   */
+  public void setEngineConfiguration(CachlyEngineConfiguration pEngineConfiguration) {
+    mTraceSampleRate = pEngineConfiguration.getTraceSampleRate();
+    ExecutorService virtualExecutor = mVirtualExecutor;
+    if (pEngineConfiguration.getVirtualThreads()) {
+      if (virtualExecutor == null) {
+        mVirtualExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("cachly-task-", 0).factory());
+      }
+    } else if (virtualExecutor != null) {
+      mVirtualExecutor = null;
+      virtualExecutor.shutdown();
+    }
+  }
+
+  @Override
+  public ExecutorService getTaskExecutor() {
+    ExecutorService virtualExecutor = mVirtualExecutor;
+    return virtualExecutor != null ? virtualExecutor : mExecutorService;
+  }
+
   @Override
   @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
   public void addBeanNameLocator(BeanNameLocator pBeanNameLocator) {
@@ -153,6 +271,17 @@ public final class CacheEngineImpl implements CacheEngine {
     finishSetup();
   }
 
+  @Override
+  @Deactivate
+  public void deactivate() {
+    mRefreshAhead.shutdown();
+    ExecutorService virtualExecutor = mVirtualExecutor;
+    if (virtualExecutor != null) {
+      mVirtualExecutor = null;
+      virtualExecutor.shutdown();
+    }
+  }
+
   /**
    * Injection Constructor for CDI-based solutions
    *
@@ -165,17 +294,21 @@ public final class CacheEngineImpl implements CacheEngine {
    * @param pCacheStorages the cache storages
    * @param pCacheLoaders the cache loaders
    * @param pAccessContextSPIs the context SPIs
+   * @param pStreamingSerializers the streaming serializers
+   * @param pEngineConfiguration the engine configuration
    */
   @Inject
   public CacheEngineImpl(ContextFactory pContextFactory, ConverterManager pConverterManager,
     @Named("DiamondQ") ExecutorService pExecutorService, CacheCallbackHandler pCallbackHandler,
     List<CachlyPathConfiguration> pPaths, List<BeanNameLocator> pNameLocators, List<CacheStorage> pCacheStorages,
-    List<CacheLoader<?>> pCacheLoaders, List<AccessContextSPI<?>> pAccessContextSPIs) {
+    List<CacheLoader<?>> pCacheLoaders, List<AccessContextSPI<?>> pAccessContextSPIs,
+    List<StreamingSerializer> pStreamingSerializers, CachlyEngineConfiguration pEngineConfiguration) {
 
     mContextFactory = pContextFactory;
     mConverterManager = pConverterManager;
     mExecutorService = pExecutorService;
     mCallbackHandler = pCallbackHandler;
+    setEngineConfiguration(pEngineConfiguration);
     pNameLocators.forEach(this::addBeanNameLocator);
 
     /* Build the map of storages by name */
@@ -194,6 +327,10 @@ public final class CacheEngineImpl implements CacheEngine {
 
     pAccessContextSPIs.forEach(this::addAccessContextSPI);
 
+    /* Build the map of streaming serializers */
+
+    pStreamingSerializers.forEach(this::addStreamingSerializer);
+
     finishSetup();
   }
 
@@ -228,6 +365,10 @@ public final class CacheEngineImpl implements CacheEngine {
     if (name == null) return;
 
     mCacheStorageByName.remove(name, pStorage);
+
+    /* Any paths that pointed at the storage no longer have it */
+
+    if (mCacheStorageByPath.values().removeIf((cs) -> cs == pStorage)) rebuildPathTrie();
   }
 
   @Override
@@ -247,6 +388,9 @@ public final class CacheEngineImpl implements CacheEngine {
       serializerName = DEFAULT_SERIALIZER;
     }
     mSerializerNameByPath.put(path, serializerName);
+    mPathPolicyByPath.put(path, PathPolicy.of(pPathConfig));
+    mBulkheads.remove(path);
+    rebuildPathTrie();
   }
 
   @Override
@@ -258,6 +402,19 @@ public final class CacheEngineImpl implements CacheEngine {
     if (cacheStorage != null) mCacheStorageByPath.remove(path, cacheStorage);
     var serializer = pPathConfig.getSerializer();
     if (serializer != null) mSerializerNameByPath.remove(path, serializer);
+    mPathPolicyByPath.remove(path);
+    mBulkheads.remove(path);
+    rebuildPathTrie();
+  }
+
+  /**
+   * Compiles a new path trie from the current configuration and swaps it in. The previous trie is retired, so that keys
+   * set up against it are set up again.
+   */
+  private synchronized void rebuildPathTrie() {
+    PathTrie oldTrie = mPathTrie;
+    mPathTrie = PathTrie.build(mCacheStorageByPath, mSerializerNameByPath, mPathPolicyByPath, mLoadersByPath);
+    oldTrie.retire();
   }
 
   private void finishSetup() {
@@ -271,16 +428,43 @@ public final class CacheEngineImpl implements CacheEngine {
       mSerializerNameByPath.put(CacheInfoLoader.CACHE_INFO_NAME, DEFAULT_SERIALIZER);
     }
     addCacheLoader(new CacheInfoLoader());
+    addCacheLoader(new DependencyRecordLoader());
 
-    /* Set up the storage key and cache information */
+    /* Set up the storage key and rebuild the cache information from the dependency records */
 
     AccessContext ac = createAccessContext(null);
     setupKey(mStorageKey);
-    CacheResult<CacheInfo> cacheInfoResult = mStorageKey.getLastStorage().queryForKey(ac, mStorageKey);
-    if (!cacheInfoResult.entryFound()) {
-      mCacheInfo = new CacheInfo();
-    } else {
-      mCacheInfo = cacheInfoResult.getValue();
+    CacheStorage storage = mStorageKey.getLastStorage();
+    String recordPrefix = CacheInfoLoader.CACHE_INFO_NAME + "/";
+    try (Stream<Map.Entry<Key<?>, CacheResult<?>>> entries = storage.streamEntries(ac,
+      CacheInfoLoader.CACHE_INFO_NAME
+    )) {
+      entries.forEach((entry) -> {
+        CacheResult<?> result = entry.getValue();
+        if ((!entry.getKey().toString().startsWith(recordPrefix)) || (!result.entryFound()) || (result.isNull())) {
+          return;
+        }
+        if (result.getValue() instanceof DependencyRecord record) {
+          for (KeySPI<?> dependent : record.dependents) {
+            mDependencyGraph.addEdge(record.key, dependent);
+          }
+          mDependencyGraph.restore(record.key, record.invalidatedAt);
+        }
+      });
+    }
+
+    /* Migrate a CacheInfo that was persisted as a single entry by an earlier version */
+
+    CacheResult<CacheInfo> legacyResult = storage.queryForKey(ac, mStorageKey);
+    if ((legacyResult.entryFound()) && (!legacyResult.isNull())) {
+      CacheInfo legacy = legacyResult.getValue();
+      legacy.dependencyMap.forEach((dep, dependents) -> {
+        for (KeySPI<?> dependent : dependents) {
+          mDependencyGraph.addEdge(dep, dependent);
+        }
+      });
+      persistDependencyRecords(ac, legacy.dependencyMap.keySet());
+      storage.invalidate(ac, mStorageKey);
     }
   }
 
@@ -290,13 +474,20 @@ public final class CacheEngineImpl implements CacheEngine {
     @SuppressWarnings("unchecked") CacheLoaderInfo<Object> details = (CacheLoaderInfo<Object>) pCacheLoader.getInfo();
     String path = details.key.toString();
     mLoadersByPath.put(path, details);
+    rebuildPathTrie();
   }
 
   @Override
   public void removeCacheLoader(CacheLoader<?> pCacheLoader) {
     @SuppressWarnings("unchecked") CacheLoaderInfo<Object> details = (CacheLoaderInfo<Object>) pCacheLoader.getInfo();
     String path = details.key.toString();
-    mLoadersByPath.remove(path, details);
+
+    /* A loader usually builds a new info on each call, so the registration is matched by the loader itself */
+
+    CacheLoaderInfo<Object> existing = mLoadersByPath.get(path);
+    if ((existing != null) && (existing.loader == pCacheLoader) && (mLoadersByPath.remove(path, existing))) {
+      rebuildPathTrie();
+    }
   }
 
   @Override
@@ -314,6 +505,22 @@ public final class CacheEngineImpl implements CacheEngine {
     if (list != null) list.remove(pAccessContextSPI);
   }
 
+  @Override
+  @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+  public void addStreamingSerializer(StreamingSerializer pSerializer) {
+    mStreamingSerializers.put(pSerializer.getName(), pSerializer);
+  }
+
+  @Override
+  public void removeStreamingSerializer(StreamingSerializer pSerializer) {
+    mStreamingSerializers.remove(pSerializer.getName(), pSerializer);
+  }
+
+  @Override
+  public @Nullable StreamingSerializer getStreamingSerializer(String pName) {
+    return mStreamingSerializers.get(pName);
+  }
+
   @Override
   public AccessContext createAccessContext(@Nullable AccessContext pExistingContext,
     @Nullable Object @Nullable ... pData) {
@@ -396,8 +603,29 @@ public final class CacheEngineImpl implements CacheEngine {
                                                                @Nullable Set<String> placeholderDependencies) {
   }
 
+  /**
+   * The keys that can be loaded together in a bulk load. The same loader may be shared by paths that are stored in
+   * different storages, so the storage is part of the group.
+   *
+   * @param <O> the result type
+   * @param loader the loader
+   * @param storage the last storage of the keys
+   */
+  private record LoadGroup<O extends @Nullable Object>(CacheLoader<O> loader, CacheStorage storage) {
+  }
+
+  /**
+   * Records a key as a dependency of the load that is currently running, if there is one
+   *
+   * @param pKeyStr the key string
+   */
+  private static void recordRead(String pKeyStr) {
+    CacheLoadContext loadContext = CacheLoadContext.current();
+    if (loadContext != null) loadContext.addDependency(pKeyStr);
+  }
+
   private <O extends @Nullable Object> PlaceHolderResult<O> resolvePlaceholders(AccessContext pAccessContext,
-    KeySPI<O> pKey, ArrayDeque<Set<String>> dependencyStack) {
+    KeySPI<O> pKey) {
 
     /*
      * If there are still defaults, since they need to be resolved. This is done here since some defaults may
@@ -411,8 +639,10 @@ public final class CacheEngineImpl implements CacheEngine {
       int partsLen = parts.length;
       @SuppressWarnings({ "null", "unchecked" }) KeySPI<? extends @Nullable Object>[] newParts = new KeySPI[partsLen];
 
-      dependencyStack.push(new HashSet<>());
-      try {
+      /* Resolve within a scope of its own, so that the lookups are collected separately */
+
+      CacheLoadContext placeholderContext = new CacheLoadContext();
+      placeholderContext.run(() -> {
         for (int i = 0; i < partsLen; i++) {
           KeySPI<? extends @Nullable Object> part = parts[i];
           if (part instanceof KeyPlaceholderSPI) {
@@ -426,15 +656,10 @@ public final class CacheEngineImpl implements CacheEngine {
             newParts[i] = part;
           }
         }
-      }
-      finally {
-
-        /* Pull the dependency set off the stack */
-
-        placeholderDependencies = dependencyStack.pop();
-        if (placeholderDependencies.isEmpty()) {
-          placeholderDependencies = null;
-        }
+      });
+      placeholderDependencies = placeholderContext.getDependencies();
+      if (placeholderDependencies.isEmpty()) {
+        placeholderDependencies = null;
       }
 
       key = new CompositeKey<>(newParts);
@@ -456,24 +681,21 @@ public final class CacheEngineImpl implements CacheEngine {
   private <O extends @Nullable Object> CacheResult<O> lookup(AccessContext pAccessContext, KeySPI<O> pKey,
     @SuppressWarnings("SameParameterValue") boolean pLoadIfMissing) {
 
-    ArrayDeque<Set<String>> dependencyStack = sMonitored.get();
-
     /*
      * If there are still defaults, since they need to be resolved. This is done here since some defaults may
      * require lookups and want them included in the dependencies
      */
 
-    var resolveResult = resolvePlaceholders(pAccessContext, pKey, dependencyStack);
+    var resolveResult = resolvePlaceholders(pAccessContext, pKey);
     KeySPI<O> key = resolveResult.key();
-    Set<String> placeholderDependencies = resolveResult.placeholderDependencies();
 
     String keyStr = key.toString();
 
     /* Is monitoring enabled? */
 
-    if (!dependencyStack.isEmpty()) {
-      dependencyStack.peek().add(keyStr);
-    }
+    recordRead(keyStr);
+
+    expireIfStale(pAccessContext, key, keyStr);
 
     /* Find the last storage given the key */
 
@@ -483,71 +705,917 @@ public final class CacheEngineImpl implements CacheEngine {
 
     CacheResult<O> queryResult = storage.queryForKey(pAccessContext, key);
 
-    if ((!pLoadIfMissing) || (queryResult.entryFound())) {
+    if (queryResult.entryFound()) {
+      CacheResult<O> hitResult = checkStale(pAccessContext, key, keyStr, queryResult);
+      if (hitResult != null) {
+        if (key.getPathPolicy().isRefreshAhead()) mRefreshAhead.read(keyStr);
+        return hitResult;
+      }
+      queryResult = CacheResult.notFound();
+    }
+    if (!pLoadIfMissing) {
       return queryResult;
     }
 
-    /* Synchronize so that if there are two threads requesting the same key at the same time,
+    return load(pAccessContext, key, keyStr, resolveResult.placeholderDependencies(), true);
+  }
+
+  /**
+   * Loads a resolved key that was not found in the storage, and stores the result
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pKeyStr the key string
+   * @param pPlaceholderDependencies any dependencies picked up while resolving the placeholders
+   * @param pJoinInFlight true if an in-flight load of the key should be waited on instead of loading, or false if the
+   *   caller already owns the key's in-flight entry
+   * @return the result
+   */
+  private <O extends @Nullable Object> CacheResult<O> load(AccessContext pAccessContext, KeySPI<O> pKey,
+    String pKeyStr, @Nullable Set<String> pPlaceholderDependencies, boolean pJoinInFlight) {
+
+    CacheStorage storage = pKey.getLastStorage();
+
+    /* The load timeout covers every wait below: on a running load, for the lock, and for a slot of the bulkhead */
+
+    PathPolicy policy = pKey.getPathPolicy();
+    long waitStart = System.nanoTime();
+
+    /* If a load of this key is already running, then just wait for it. This is done without holding the load lock,
+      since a load queued on the executor needs the lock in order to finish. A thread that already holds the lock
+      carries on, so that a recursive load is still reported below. */
+
+    if ((pJoinInFlight) && (!mLoadLocks.isHeldByCurrentThread(pKeyStr))) {
+      CompletableFuture<CacheResult<?>> inFlight = mInFlightLoads.get(pKeyStr);
+      if (inFlight != null) return joinInFlight(pAccessContext, pKey, pKeyStr, inFlight, waitStart);
+    }
+
+    /* Lock so that if there are two threads requesting the same key at the same time,
       one loads the result and the second waits and then sees the result. Otherwise, both threads could look up
       the object (only one is permanently kept), and for certain types of objects (like Class's) this could cause
       multiple instances of the object to be inuse when it was meant as a singleton.
 
-      NOTE: At the moment, this is synchronizing against an intern version of the key string. This will cause a 'memory-leak' for each unique string.
-      However, in most cases, this should only represent thousands of strings, not millions.
-     */
+      NOTE: The lock is reference counted and discarded once no thread holds it. A loader that (directly or through
+      other loaders) requests its own key causes an IllegalStateException rather than a deadlock.
+     */
+
+    LoadLockManager.LoadLock lock = mLoadLocks.acquire(pKeyStr, remainingLoadTimeout(policy, waitStart));
+    if (lock == null) {
+      LoadBulkhead bulkhead = getBulkhead(policy);
+      if (bulkhead != null) bulkhead.timedOut();
+      return shed(pAccessContext, pKey, pKeyStr);
+    }
+    CompletableFuture<CacheResult<?>> inFlight;
+    try (LoadLockManager.LoadLock ignored = lock) {
+      CacheResult<O> queryResult = storage.queryForKey(pAccessContext, pKey);
+
+      if (queryResult.entryFound()) return queryResult;
+
+      /* A load run for an asynchronous lookup already owns the in-flight entry */
+
+      Duration slotTimeout = remainingLoadTimeout(policy, waitStart);
+      if (!pJoinInFlight) return loadLocked(pAccessContext, pKey, pPlaceholderDependencies, slotTimeout);
+
+      /* Publish the load, so that asynchronous lookups of the key wait on it rather than starting another */
+
+      CompletableFuture<CacheResult<?>> future = new CompletableFuture<>();
+      inFlight = mInFlightLoads.putIfAbsent(pKeyStr, future);
+      if (inFlight == null) {
+        return runInFlight(pKeyStr,
+          future,
+          () -> loadLocked(pAccessContext, pKey, pPlaceholderDependencies, slotTimeout)
+        );
+      }
+    }
+
+    /* Another load started in the meantime. Like above, it's waited on once the lock has been released. */
+
+    return joinInFlight(pAccessContext, pKey, pKeyStr, inFlight, waitStart);
+  }
+
+  /**
+   * Waits for a load of a key that another caller published. The wait takes part in the cycle detection of the load
+   * locks, so loaders on different threads that wait on each other's keys are reported instead of hanging. It's also
+   * bounded by what's left of the path's load timeout, after which the lookup is shed.
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pKeyStr the key string
+   * @param pFuture the published future of the load
+   * @param pWaitStart when the caller started waiting, from {@link System#nanoTime()}
+   * @return the result
+   */
+  private <O extends @Nullable Object> CacheResult<O> joinInFlight(AccessContext pAccessContext, KeySPI<O> pKey,
+    String pKeyStr, CompletableFuture<CacheResult<?>> pFuture, long pWaitStart) {
+    PathPolicy policy = pKey.getPathPolicy();
+    Duration timeout = remainingLoadTimeout(policy, pWaitStart);
+    CompletableFuture<CacheResult<O>> future = castFuture(pFuture);
+    try (LoadLockManager.LoadWait ignored = mLoadLocks.awaitLoad(pKeyStr)) {
+      if (timeout == null) return join(future);
+      return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+    catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException re) throw re;
+      if (ex.getCause() instanceof Error er) throw er;
+      throw new CompletionException(ex.getCause());
+    }
+    catch (TimeoutException | InterruptedException ex) {
+      if (ex instanceof InterruptedException) Thread.currentThread().interrupt();
+      LoadBulkhead bulkhead = getBulkhead(policy);
+      if (bulkhead != null) bulkhead.timedOut();
+      return shed(pAccessContext, pKey, pKeyStr);
+    }
+  }
+
+  /**
+   * Runs a load that has been published as the in-flight load of its key. The future is completed with the outcome,
+   * and the entry is removed once the load is done.
+   *
+   * @param <O> the result type
+   * @param pKeyStr the key string
+   * @param pFuture the published future
+   * @param pLoad the load
+   * @return the result
+   */
+  private <O extends @Nullable Object> CacheResult<O> runInFlight(String pKeyStr,
+    CompletableFuture<CacheResult<?>> pFuture, Supplier<CacheResult<O>> pLoad) {
+    try {
+      CacheResult<O> result = pLoad.get();
+      pFuture.complete(result);
+      return result;
+    }
+    catch (RuntimeException | Error ex) {
+      pFuture.completeExceptionally(ex);
+      throw ex;
+    }
+    finally {
+      mInFlightLoads.remove(pKeyStr, pFuture);
+    }
+  }
+
+  /**
+   * Calls the loader for a key and stores the result. The caller must hold the key's load lock.
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pPlaceholderDependencies any dependencies picked up while resolving the placeholders
+   * @param pSlotTimeout how long to wait for a slot of the path's bulkhead, or null to wait indefinitely
+   * @return the result
+   */
+  private <O extends @Nullable Object> CacheResult<O> loadLocked(AccessContext pAccessContext, KeySPI<O> pKey,
+    @Nullable Set<String> pPlaceholderDependencies, @Nullable Duration pSlotTimeout) {
+
+    /* Now attempt to look up the data */
+
+    CacheLoader<O> cacheLoader = pKey.getLoader();
+
+    /* Wait for a slot if the path limits its loads */
+
+    LoadBulkhead bulkhead = getBulkhead(pKey.getPathPolicy());
+    if ((bulkhead != null) && (!bulkhead.acquire(pSlotTimeout))) return shed(pAccessContext, pKey, pKey.toString());
+
+    /* To track dependencies, run the loader within a new load context */
+
+    CacheLoadContext loadContext = new CacheLoadContext();
+    long generation = mDependencyGraph.generation();
+    CacheResult<O> loadedResult = new StaticCacheResult<>();
+    try {
+      loadContext.run(() -> cacheLoader.load(this, pAccessContext, pKey, loadedResult));
+    }
+    finally {
+      if (bulkhead != null) bulkhead.release();
+    }
+    Set<String> dependencies = new HashSet<>(loadContext.getDependencies());
+    if (pPlaceholderDependencies != null) {
+      dependencies.addAll(pPlaceholderDependencies);
+    }
+
+    /* Now store the result */
+
+    if (loadedResult.entryFound()) {
+      pKey.getLastStorage().store(pAccessContext, pKey, loadedResult);
+      mRefreshAhead.stored(pAccessContext, pKey, pKey.getPathPolicy().getWriteExpiry(loadedResult));
+    } else if (pKey.getPathPolicy().getStaleWhileRevalidate() != null) {
+
+      /* A stale entry that is no longer found must not stay behind */
+
+      pKey.getLastStorage().invalidate(pAccessContext, pKey);
+    }
+    mStaleValues.stored(pKey, loadedResult);
+    mTagIndex.tagged(pKey, loadedResult.entryFound() ? loadedResult.getTags() : Collections.emptySet());
+
+    /* Store the dependencies for later tracking */
+
+    recordDependencies(pAccessContext, pKey, dependencies);
+    mDependencyGraph.loaded(pKey.toString(), generation);
+
+    /* Return */
+
+    return loadedResult;
+  }
+
+  /**
+   * Reloads a key on a refresh-ahead path, or a stale key on a stale-while-revalidate path, in the background. Unlike a
+   * load, the existing entry is ignored, and simply replaced once the loader completes, so readers keep seeing the
+   * current value until then.
+   *
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   */
+  private void refresh(AccessContext pAccessContext, KeySPI<?> pKey) {
+    String keyStr = pKey.toString();
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pKey)) {
+      try (LoadLockManager.LoadLock ignored = mLoadLocks.acquire(keyStr)) {
+
+        /* An entry that was removed in the meantime is left to be loaded when it's next read */
+
+        if (pKey.getLastStorage().queryValueForKey(pAccessContext, pKey) == CacheStorage.VALUE_NOT_FOUND) return;
+
+        /* If the key is already being loaded, then that load stores a fresh value anyway */
+
+        CompletableFuture<CacheResult<?>> future = new CompletableFuture<>();
+        if (mInFlightLoads.putIfAbsent(keyStr, future) != null) return;
+        Duration slotTimeout = pKey.getPathPolicy().getLoadTimeout();
+        runInFlight(keyStr, future, () -> loadLocked(pAccessContext, pKey, null, slotTimeout));
+      }
+      catch (RuntimeException ex) {
+        ctx.reportThrowable(ex);
+      }
+    }
+  }
+
+  /**
+   * Prunes the dependency edges of keys that the storages reported as removed. A key that is no longer resident can't
+   * have been loaded from the keys it depended on, so those edges are dropped. The edges to the keys that depend on it
+   * are kept while those keys are still around, since invalidating it must still reach them. Once a key has no edges
+   * left, it's dropped from the graph entirely.
+   *
+   * @param pKeys the removed keys
+   */
+  private void pruneRemovedKeys(Collection<KeySPI<?>> pKeys) {
+    Set<String> changedDependencies = new HashSet<>();
+    for (KeySPI<?> key : pKeys) {
+      String keyStr = key.toString();
+      if (keyStr.startsWith(CacheInfoLoader.CACHE_INFO_NAME)) continue;
+      try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, key)) {
+
+        /* Holding the load lock means that the key can't be reloaded (and its edges recorded again) in the meantime */
+
+        try (LoadLockManager.LoadLock ignored = mLoadLocks.acquire(keyStr)) {
+          if (!key.hasKeyDetails()) setupKey(key);
+          @Nullable Object resident = key.getLastStorage().queryValueForKey(mEmptyAccessContext, key);
+          if (resident != CacheStorage.VALUE_NOT_FOUND) continue;
+
+          /* Dropping the edges would hide a pending lazy invalidation from the keys depending on this one */
+
+          long staleSince = mDependencyGraph.staleSince(keyStr);
+          if (staleSince != 0L) {
+            mDependencyGraph.invalidated(keyStr, staleSince);
+            changedDependencies.add(keyStr);
+          }
+          changedDependencies.addAll(mDependencyGraph.removeDependencies(keyStr));
+          mTagIndex.removed(keyStr);
+          mStaleValues.remove(keyStr);
+          mRefreshAhead.cancel(keyStr);
+        }
+        catch (RuntimeException ex) {
+          ctx.reportThrowable(ex);
+        }
+      }
+    }
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, changedDependencies)) {
+      try {
+        persistDependencyRecords(mEmptyAccessContext, changedDependencies);
+      }
+      catch (RuntimeException ex) {
+        ctx.reportThrowable(ex);
+      }
+    }
+  }
+
+  /**
+   * Removes a key if it's stale because something it depends on was lazily invalidated after it was loaded, so that
+   * the caller goes on to reload it. The key is marked as invalidated at the same generation, which is how the keys
+   * depending on it find out that they're stale too.
+   *
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pKeyStr the key string
+   */
+  private void expireIfStale(AccessContext pAccessContext, KeySPI<?> pKey, String pKeyStr) {
+    if (mDependencyGraph.staleSince(pKeyStr) == 0L) return;
+    try (LoadLockManager.LoadLock ignored = mLoadLocks.acquire(pKeyStr)) {
+
+      /* It may have been reloaded while waiting for the lock */
+
+      long staleSince = mDependencyGraph.staleSince(pKeyStr);
+      if (staleSince == 0L) return;
+      CacheStorage storage = pKey.getLastStorage();
+      mRefreshAhead.cancel(pKeyStr);
+      mDependencyGraph.invalidated(pKeyStr, staleSince);
+
+      /* The key's own record carries the generation, so that it survives a restart */
+
+      Set<String> changedDependencies = new HashSet<>(mDependencyGraph.removeDependencies(pKeyStr));
+      changedDependencies.add(pKeyStr);
+      persistDependencyRecords(pAccessContext, changedDependencies);
+
+      /* On a stale-while-revalidate path, the entry stays and is served as stale while it's reloaded */
+
+      if (mStaleValues.invalidated(pKey)) return;
+      mTagIndex.removed(pKeyStr);
+      storage.invalidate(pAccessContext, pKey);
+    }
+  }
+
+  /**
+   * Checks a hit on a stale-while-revalidate path against the entry's soft expiry. A stale entry is still served, and
+   * a single background reload of it is started. An entry whose grace window has passed is removed, so that the caller
+   * goes on to load it.
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pKeyStr the key string
+   * @param pHit the result found in the storage
+   * @return the result to serve, or null if the entry needs to be loaded
+   */
+  private <O extends @Nullable Object> @Nullable CacheResult<O> checkStale(AccessContext pAccessContext,
+    KeySPI<O> pKey, String pKeyStr, CacheResult<O> pHit) {
+    if (pKey.getPathPolicy().getStaleWhileRevalidate() == null) return pHit;
+    switch (mStaleValues.check(pKeyStr)) {
+      case FRESH -> {
+        return pHit;
+      }
+      case STALE -> {
+        if (mStaleValues.revalidate(pKeyStr)) getTaskExecutor().execute(() -> refresh(pAccessContext, pKey));
+        return new StaleValueManager.StaleCacheResult<>(pHit.isNull() ? null : pHit.getValue());
+      }
+      case EXPIRED -> {
+        mStaleValues.remove(pKeyStr);
+        mTagIndex.removed(pKeyStr);
+        pKey.getLastStorage().invalidate(pAccessContext, pKey);
+        return null;
+      }
+    }
+    return pHit;
+  }
+
+  /**
+   * Records that the given key depends on the set of dependencies
+   *
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @param pDependencies the dependencies
+   */
+  private void recordDependencies(AccessContext pAccessContext, KeySPI<?> pKey, Set<String> pDependencies) {
+    persistDependencyRecords(pAccessContext, addDependencies(pKey, pDependencies));
+  }
+
+  /**
+   * Adds the dependencies to the in-memory graph without persisting it
+   *
+   * @param pKey the key
+   * @param pDependencies the dependencies
+   * @return the dependencies that gained the key as a new dependent (and whose records therefore need to be written)
+   */
+  private Set<String> addDependencies(KeySPI<?> pKey, Set<String> pDependencies) {
+    if (pDependencies.isEmpty()) return Collections.emptySet();
+    Set<String> changed = new HashSet<>();
+    for (String dep : pDependencies) {
+      if (mDependencyGraph.addEdge(dep, pKey)) changed.add(dep);
+    }
+    return changed;
+  }
+
+  /**
+   * Writes the dependency records of the given keys to their storage. Only those records are written, so the cost
+   * depends on the number of edges touched rather than on the size of the whole graph. A key without any dependents
+   * has its record removed.
+   *
+   * @param pAccessContext the access context
+   * @param pDependencies the keys whose dependents changed
+   */
+  private void persistDependencyRecords(AccessContext pAccessContext, Collection<String> pDependencies) {
+    if (pDependencies.isEmpty()) return;
+    Map<KeySPI<DependencyRecord>, CacheResult<DependencyRecord>> toStore = new LinkedHashMap<>();
+    List<KeySPI<DependencyRecord>> toRemove = new ArrayList<>();
+    for (String dep : pDependencies) {
+      KeySPI<DependencyRecord> recordKey = dependencyRecordKey(dep);
+      List<KeySPI<?>> dependents = mDependencyGraph.getDependents(dep);
+      if (dependents.isEmpty()) toRemove.add(recordKey);
+      else {
+        DependencyRecord record = new DependencyRecord(dep, dependents, mDependencyGraph.getInvalidatedAt(dep));
+        toStore.put(recordKey, new StaticCacheResult<>(record, true));
+      }
+    }
+    CacheStorage storage = mDependencyRecordKey.getLastStorage();
+    if (!toStore.isEmpty()) storage.storeAll(pAccessContext, toStore);
+    if (!toRemove.isEmpty()) storage.invalidateKeys(pAccessContext, toRemove);
+  }
+
+  /**
+   * Returns the set up key of the dependency record for a given key. The key string is escaped, since it's used as a
+   * single segment of the record key.
+   *
+   * @param pKeyStr the key string
+   * @return the record key
+   */
+  private KeySPI<DependencyRecord> dependencyRecordKey(String pKeyStr) {
+    String segment = pKeyStr;
+    if ((segment.indexOf('%') != -1) || (segment.indexOf('/') != -1))
+      segment = segment.replace("%", "%25").replace("/", "%2F");
+    KeySPI<DependencyRecord> recordKey = resolve(mDependencyRecordKey, mDependencyPlaceholder, segment);
+    if (!recordKey.hasKeyDetails()) setupKey(recordKey);
+    return recordKey;
+  }
+
+  /**
+   * The asynchronous version of lookup. A hit is returned as an already completed future. On a miss, only one load per
+   * key is run at a time, and all callers share the same future. Regular loaders are run on the executor, while
+   * AsyncCacheLoaders are started directly since they don't block.
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @return the future result
+   */
+  private <O extends @Nullable Object> CompletableFuture<CacheResult<O>> lookupAsync(AccessContext pAccessContext,
+    KeySPI<O> pKey) {
+
+    var resolveResult = resolvePlaceholders(pAccessContext, pKey);
+    KeySPI<O> key = resolveResult.key();
+    Set<String> placeholderDependencies = resolveResult.placeholderDependencies();
+
+    String keyStr = key.toString();
+
+    /* Is monitoring enabled? */
+
+    recordRead(keyStr);
+
+    expireIfStale(pAccessContext, key, keyStr);
+
+    /* A hit doesn't need any further work */
+
+    CacheStorage storage = key.getLastStorage();
+    CacheResult<O> queryResult = storage.queryForKey(pAccessContext, key);
+    if (queryResult.entryFound()) {
+      CacheResult<O> hitResult = checkStale(pAccessContext, key, keyStr, queryResult);
+      if (hitResult != null) {
+        if (key.getPathPolicy().isRefreshAhead()) mRefreshAhead.read(keyStr);
+        return CompletableFuture.completedFuture(hitResult);
+      }
+    }
+
+    return withLoadTimeout(pAccessContext,
+      startLoadAsync(pAccessContext, key, keyStr, placeholderDependencies),
+      key,
+      keyStr
+    );
+  }
+
+  /**
+   * Bounds how long the caller waits for an asynchronous load, if the path has a load timeout. The load itself keeps
+   * running, and other callers waiting on it are not affected.
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pFuture the future of the load
+   * @param pKey the resolved key
+   * @param pKeyStr the key string
+   * @return the future to hand to the caller
+   */
+  private <O extends @Nullable Object> CompletableFuture<CacheResult<O>> withLoadTimeout(AccessContext pAccessContext,
+    CompletableFuture<CacheResult<O>> pFuture, KeySPI<O> pKey, String pKeyStr) {
+    Duration timeout = pKey.getPathPolicy().getLoadTimeout();
+    if ((timeout == null) || (pFuture.isDone())) return pFuture;
+    return pFuture.copy().orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS).exceptionally((ex) -> {
+      Throwable cause = ex.getCause();
+      if ((!(ex instanceof CompletionException)) || (cause == null)) cause = ex;
+      if (!(cause instanceof TimeoutException)) {
+        if (ex instanceof CompletionException ce) throw ce;
+        throw new CompletionException(ex);
+      }
+      LoadBulkhead bulkhead = getBulkhead(pKey.getPathPolicy());
+      if (bulkhead != null) bulkhead.timedOut();
+      return shed(pAccessContext, pKey, pKeyStr);
+    });
+  }
+
+  /**
+   * Decides the result of a lookup whose load was shed, according to the path's overload policy
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pKeyStr the key string
+   * @return the result
+   * @throws CacheOverloadedException if the policy is to fail fast, or there is no stale value to serve
+   */
+  private <O extends @Nullable Object> CacheResult<O> shed(AccessContext pAccessContext, KeySPI<O> pKey,
+    String pKeyStr) {
+    PathPolicy policy = pKey.getPathPolicy();
+    switch (policy.getOverloadPolicy()) {
+      case SERVE_STALE -> {
+
+        /* A stale entry is kept in the storage until its grace window has passed */
+
+        if ((policy.getStaleWhileRevalidate() != null) && (mStaleValues.check(pKeyStr)
+          == StaleValueManager.Staleness.STALE)) {
+          CacheResult<O> staleResult = pKey.getLastStorage().queryForKey(pAccessContext, pKey);
+          if (staleResult.entryFound()) {
+            return new StaleValueManager.StaleCacheResult<>(staleResult.isNull() ? null : staleResult.getValue());
+          }
+        }
+      }
+      case IF_PRESENT -> {
+        return CacheResult.notFound();
+      }
+      case FAIL_FAST -> {
+      }
+    }
+    throw new CacheOverloadedException(
+      "The loads of the path " + policy.getPath() + " are overloaded, so " + pKeyStr + " could not be loaded");
+  }
+
+  /**
+   * Returns what's left of a path's load timeout
+   *
+   * @param pPolicy the path policy
+   * @param pWaitStart when the caller started waiting, from {@link System#nanoTime()}
+   * @return the remaining duration, which may be zero, or null if the path waits indefinitely
+   */
+  private static @Nullable Duration remainingLoadTimeout(PathPolicy pPolicy, long pWaitStart) {
+    Duration timeout = pPolicy.getLoadTimeout();
+    if (timeout == null) return null;
+    long remaining = timeout.toNanos() - (System.nanoTime() - pWaitStart);
+    return Duration.ofNanos(Math.max(remaining, 0L));
+  }
+
+  /**
+   * Returns the bulkhead of a path
+   *
+   * @param pPolicy the path policy
+   * @return the bulkhead or null if the path doesn't limit its loads
+   */
+  private @Nullable LoadBulkhead getBulkhead(PathPolicy pPolicy) {
+    String path = pPolicy.getPath();
+    if ((path == null) || (!pPolicy.hasLoadLimits())) return null;
+    LoadBulkhead bulkhead = mBulkheads.get(path);
+    if (bulkhead == null) bulkhead = mBulkheads.computeIfAbsent(path, (_) -> new LoadBulkhead(pPolicy));
+    return bulkhead;
+  }
+
+  /**
+   * Starts loading a resolved key that was not found in the storage, unless a load of the key is already running
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pKeyStr the key string
+   * @param pPlaceholderDependencies any dependencies picked up while resolving the placeholders
+   * @return the future result, which is shared with any other callers waiting on the same key
+   */
+  private <O extends @Nullable Object> CompletableFuture<CacheResult<O>> startLoadAsync(AccessContext pAccessContext,
+    KeySPI<O> pKey, String pKeyStr, @Nullable Set<String> pPlaceholderDependencies) {
+
+    CacheStorage storage = pKey.getLastStorage();
+
+    /* Join any existing load, otherwise register ours */
+
+    CompletableFuture<CacheResult<?>> future = new CompletableFuture<>();
+    CompletableFuture<CacheResult<?>> existing = mInFlightLoads.putIfAbsent(pKeyStr, future);
+    if (existing != null) return castFuture(existing);
+    future.whenComplete((_, _) -> mInFlightLoads.remove(pKeyStr, future));
+
+    try {
+      CacheLoader<O> cacheLoader = pKey.getLoader();
+      if (cacheLoader instanceof AsyncCacheLoader<O> asyncCacheLoader) {
+
+        /* A load that finished just before ours was registered has already stored the value */
+
+        CacheResult<O> queryResult = storage.queryForKey(pAccessContext, pKey);
+        if (queryResult.entryFound()) {
+          future.complete(queryResult);
+          return castFuture(future);
+        }
+
+        /* Starting the load mustn't block, so it's shed right away if the path has no free slot */
+
+        LoadBulkhead bulkhead = getBulkhead(pKey.getPathPolicy());
+        if ((bulkhead != null) && (!bulkhead.tryAcquire())) {
+          future.complete(shed(pAccessContext, pKey, pKeyStr));
+          return castFuture(future);
+        }
+        if (bulkhead != null) future.whenComplete((_, _) -> bulkhead.release());
+
+        /*
+         * Track the dependencies within a new load context. The context stays open until the stage completes, so that
+         * any work the loader passes the context on to is included.
+         */
+
+        CacheLoadContext loadContext = new CacheLoadContext();
+        long generation = mDependencyGraph.generation();
+        CacheResult<O> loadedResult = new StaticCacheResult<>();
+        CompletionStage<?> stage = loadContext.call(() -> asyncCacheLoader.loadAsync(this,
+          pAccessContext,
+          pKey,
+          loadedResult
+        ));
+
+        stage.whenComplete((_, ex) -> {
+          if (ex != null) {
+            future.completeExceptionally(ex);
+            return;
+          }
+          try {
+            Set<String> dependencies = new HashSet<>(loadContext.getDependencies());
+            if (pPlaceholderDependencies != null) {
+              dependencies.addAll(pPlaceholderDependencies);
+            }
+            if (loadedResult.entryFound()) {
+              storage.store(pAccessContext, pKey, loadedResult);
+              mRefreshAhead.stored(pAccessContext, pKey, pKey.getPathPolicy().getWriteExpiry(loadedResult));
+            }
+            mStaleValues.stored(pKey, loadedResult);
+            mTagIndex.tagged(pKey, loadedResult.entryFound() ? loadedResult.getTags() : Collections.emptySet());
+            recordDependencies(pAccessContext, pKey, dependencies);
+            mDependencyGraph.loaded(pKeyStr, generation);
+            future.complete(loadedResult);
+          }
+          catch (RuntimeException ex2) {
+            future.completeExceptionally(ex2);
+          }
+        });
+      } else {
+        getTaskExecutor().execute(() -> {
+          try {
+            future.complete(load(pAccessContext, pKey, pKeyStr, pPlaceholderDependencies, false));
+          }
+          catch (Throwable ex) {
+            future.completeExceptionally(ex);
+          }
+        });
+      }
+    }
+    catch (RuntimeException ex) {
+      future.completeExceptionally(ex);
+    }
+    return castFuture(future);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <O extends @Nullable Object> CompletableFuture<CacheResult<O>> castFuture(
+    CompletableFuture<CacheResult<?>> pFuture) {
+    return (CompletableFuture<CacheResult<O>>) (CompletableFuture<?>) pFuture;
+  }
+
+  /**
+   * Looks up a set of keys. The keys are resolved and grouped by storage, so that each storage is only queried once.
+   * Any misses are then grouped by loader, and loaded with a single loadAll when the loader is a BulkCacheLoader.
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKeys the keys (which must already be set up)
+   * @return the results by the original key
+   */
+  private <O extends @Nullable Object> Map<KeySPI<O>, CacheResult<O>> lookupAll(AccessContext pAccessContext,
+    Collection<KeySPI<O>> pKeys) {
+
+    /* Resolve each key and group them by storage */
+
+    Map<KeySPI<O>, PlaceHolderResult<O>> resolvedByKey = new LinkedHashMap<>();
+    Map<CacheStorage, List<KeySPI<O>>> keysByStorage = new LinkedHashMap<>();
+    for (KeySPI<O> key : pKeys) {
+      if (resolvedByKey.containsKey(key)) continue;
+      var resolveResult = resolvePlaceholders(pAccessContext, key);
+      resolvedByKey.put(key, resolveResult);
+      KeySPI<O> resolvedKey = resolveResult.key();
+
+      /* Is monitoring enabled? */
+
+      String resolvedKeyStr = resolvedKey.toString();
+      recordRead(resolvedKeyStr);
+
+      expireIfStale(pAccessContext, resolvedKey, resolvedKeyStr);
+      keysByStorage.computeIfAbsent(resolvedKey.getLastStorage(), (_) -> new ArrayList<>()).add(resolvedKey);
+    }
+
+    /* Query each storage once */
+
+    Map<String, CacheResult<O>> resultsByKeyStr = new HashMap<>();
+    for (Map.Entry<CacheStorage, List<KeySPI<O>>> entry : keysByStorage.entrySet()) {
+      entry.getKey()
+        .queryForKeys(pAccessContext, entry.getValue())
+        .forEach((key, result) -> resultsByKeyStr.put(key.toString(), result));
+    }
+
+    /* Group the misses by loader and storage */
+
+    Map<LoadGroup<O>, Map<String, PlaceHolderResult<O>>> missesByGroup = new LinkedHashMap<>();
+    for (PlaceHolderResult<O> resolveResult : resolvedByKey.values()) {
+      String keyStr = resolveResult.key().toString();
+      CacheResult<O> result = resultsByKeyStr.get(keyStr);
+      CacheResult<O> hitResult = ((result != null) && (result.entryFound()) ? checkStale(pAccessContext,
+        resolveResult.key(),
+        keyStr,
+        result
+      ) : null);
+      if (hitResult != null) {
+        resultsByKeyStr.put(keyStr, hitResult);
+        if (resolveResult.key().getPathPolicy().isRefreshAhead()) mRefreshAhead.read(keyStr);
+      } else {
+        KeySPI<O> key = resolveResult.key();
+        missesByGroup.computeIfAbsent(new LoadGroup<>(key.getLoader(), key.getLastStorage()), (_) -> new TreeMap<>())
+          .putIfAbsent(keyStr, resolveResult);
+      }
+    }
+
+    /* Load the misses */
 
-    synchronized (key.toString().intern()) {
-      queryResult = storage.queryForKey(pAccessContext, key);
+    for (Map.Entry<LoadGroup<O>, Map<String, PlaceHolderResult<O>>> entry : missesByGroup.entrySet()) {
+      Map<String, PlaceHolderResult<O>> misses = entry.getValue();
+      if ((entry.getKey().loader() instanceof BulkCacheLoader<O> bulkCacheLoader) && (misses.size() > 1)) {
+        resultsByKeyStr.putAll(loadAll(pAccessContext, bulkCacheLoader, entry.getKey().storage(), misses));
+      } else {
+        for (Map.Entry<String, PlaceHolderResult<O>> miss : misses.entrySet()) {
+          PlaceHolderResult<O> resolveResult = miss.getValue();
+          resultsByKeyStr.put(miss.getKey(),
+            load(pAccessContext, resolveResult.key(), miss.getKey(), resolveResult.placeholderDependencies(), true)
+          );
+        }
+      }
+    }
 
-      if (queryResult.entryFound()) return queryResult;
+    /* Map the results back to the original keys */
 
-      /* Now attempt to look up the data */
+    Map<KeySPI<O>, CacheResult<O>> results = new LinkedHashMap<>();
+    for (Map.Entry<KeySPI<O>, PlaceHolderResult<O>> entry : resolvedByKey.entrySet()) {
+      CacheResult<O> result = resultsByKeyStr.get(entry.getValue().key().toString());
+      results.put(entry.getKey(), result != null ? result : CacheResult.notFound());
+    }
+    return results;
+  }
 
-      CacheLoader<O> cacheLoader = key.getLoader();
+  /**
+   * Loads a set of keys from a BulkCacheLoader. All the keys share the same loader and the same last storage.
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pLoader the loader
+   * @param pStorage the last storage of the keys
+   * @param pMisses the resolved keys that were missing, sorted by key string
+   * @return the results by key string
+   */
+  private <O extends @Nullable Object> Map<String, CacheResult<O>> loadAll(AccessContext pAccessContext,
+    BulkCacheLoader<O> pLoader, CacheStorage pStorage, Map<String, PlaceHolderResult<O>> pMisses) {
 
-      /* To track dependencies, create a new set to add to the current stack */
+    /* Waiting on loads that are already running is bounded by the load timeout, counted from here */
 
-      dependencyStack.push(new HashSet<>());
+    long waitStart = System.nanoTime();
 
-      CacheResult<O> loadedResult = new StaticCacheResult<>();
-      Set<String> dependencies;
-      try {
-        cacheLoader.load(this, pAccessContext, key, loadedResult);
-      }
-      finally {
+    /* Take the load locks in sorted order so that overlapping bulk loads can't deadlock each other */
 
-        /* Pull the dependency set off the stack */
+    Map<String, CacheResult<O>> results = new HashMap<>();
+    Map<String, CompletableFuture<CacheResult<?>>> published = new HashMap<>();
+    Map<String, CompletableFuture<CacheResult<?>>> inFlight = new HashMap<>();
+    List<LoadLockManager.LoadLock> locks = new ArrayList<>(pMisses.size());
+    try {
+      for (String keyStr : pMisses.keySet()) {
+        locks.add(mLoadLocks.acquire(keyStr));
+      }
 
-        dependencies = dependencyStack.pop();
-        if (placeholderDependencies != null) {
-          dependencies.addAll(placeholderDependencies);
+      /* Another thread may have loaded some of the keys while waiting for the locks */
+
+      List<KeySPI<O>> keys = new ArrayList<>(pMisses.size());
+      pMisses.values().forEach((resolveResult) -> keys.add(resolveResult.key()));
+      pStorage.queryForKeys(pAccessContext, keys).forEach((key, result) -> results.put(key.toString(), result));
+
+      /* Publish the loads, leaving out any keys that another load is already working on */
+
+      Map<Key<O>, CacheResult<O>> toLoad = new LinkedHashMap<>();
+      Map<String, KeySPI<O>> toLoadKeys = new HashMap<>();
+      Set<String> placeholderDependencies = new HashSet<>();
+      for (Map.Entry<String, PlaceHolderResult<O>> entry : pMisses.entrySet()) {
+        CacheResult<O> existing = results.get(entry.getKey());
+        if ((existing != null) && (existing.entryFound())) continue;
+        CompletableFuture<CacheResult<?>> future = new CompletableFuture<>();
+        CompletableFuture<CacheResult<?>> existingLoad = mInFlightLoads.putIfAbsent(entry.getKey(), future);
+        if (existingLoad != null) {
+          inFlight.put(entry.getKey(), existingLoad);
+          continue;
         }
+        published.put(entry.getKey(), future);
+        PlaceHolderResult<O> resolveResult = entry.getValue();
+        toLoad.put(resolveResult.key(), new StaticCacheResult<>());
+        toLoadKeys.put(entry.getKey(), resolveResult.key());
+        Set<String> keyPlaceholderDependencies = resolveResult.placeholderDependencies();
+        if (keyPlaceholderDependencies != null) placeholderDependencies.addAll(keyPlaceholderDependencies);
+      }
+      if (!toLoad.isEmpty()) {
+        loadAllLocked(pAccessContext, pLoader, pStorage, toLoad, toLoadKeys, placeholderDependencies, results);
+      }
+      published.forEach((keyStr, future) -> future.complete(results.get(keyStr)));
+    }
+    catch (RuntimeException | Error ex) {
+      published.values().forEach((future) -> future.completeExceptionally(ex));
+      throw ex;
+    }
+    finally {
+      published.forEach(mInFlightLoads::remove);
+      for (int i = locks.size() - 1; i >= 0; i--) {
+        locks.get(i).close();
       }
+    }
 
-      /* Now store the result */
+    /* The loads that were already running are waited on once the locks have been released */
 
-      if (loadedResult.entryFound()) {
-        storage.store(pAccessContext, key, loadedResult);
-      }
+    inFlight.forEach((keyStr, future) -> results.put(keyStr,
+      joinInFlight(pAccessContext, Objects.requireNonNull(pMisses.get(keyStr)).key(), keyStr, future, waitStart)
+    ));
+    return results;
+  }
+
+  /**
+   * Calls a BulkCacheLoader for the given keys and stores the results. The caller must hold the keys' load locks.
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pLoader the loader
+   * @param pStorage the storage of the keys
+   * @param pToLoad the keys to load, each with an empty result
+   * @param pToLoadKeys the same keys by key string
+   * @param pPlaceholderDependencies the dependencies picked up while resolving the placeholders of all the keys
+   * @param pResults the results by key string, which are added to
+   */
+  private <O extends @Nullable Object> void loadAllLocked(AccessContext pAccessContext, BulkCacheLoader<O> pLoader,
+    CacheStorage pStorage, Map<Key<O>, CacheResult<O>> pToLoad, Map<String, KeySPI<O>> pToLoadKeys,
+    Set<String> pPlaceholderDependencies, Map<String, CacheResult<O>> pResults) {
 
-      /* Store the dependencies for later tracking */
+    /* Load everything at once. Since the dependencies can't be attributed to individual keys, every key gets them all */
 
-      if (!dependencies.isEmpty()) {
-        if (mCacheInfo == null) throw new IllegalStateException("finishSetup has not been called");
-        for (String dep : dependencies) {
-          Set<KeySPI<?>> set = mCacheInfo.dependencyMap.computeIfAbsent(dep, (_) -> new HashSet<>());
-          set.add(key);
-        }
-        Set<String> set = mCacheInfo.reverseDependencyMap.computeIfAbsent(key.toString(), (_) -> new HashSet<>());
-        set.addAll(dependencies);
-        mStorageKey.getLastStorage().store(pAccessContext, mStorageKey, new StaticCacheResult<>(mCacheInfo, true));
-      }
+    /* The whole batch takes a single slot of the path's bulkhead */
 
-      /* Return */
+    PathPolicy policy = pToLoadKeys.values().iterator().next().getPathPolicy();
+    LoadBulkhead bulkhead = getBulkhead(policy);
+    if ((bulkhead != null) && (!bulkhead.acquire(policy.getLoadTimeout()))) {
+      pToLoadKeys.forEach((keyStr, key) -> pResults.put(keyStr, shed(pAccessContext, key, keyStr)));
+      return;
+    }
 
-      return loadedResult;
+    CacheLoadContext loadContext = new CacheLoadContext();
+    long generation = mDependencyGraph.generation();
+    try {
+      loadContext.run(() -> pLoader.loadAll(this, pAccessContext, pToLoad));
+    }
+    finally {
+      if (bulkhead != null) bulkhead.release();
     }
+    Set<String> dependencies = new HashSet<>(loadContext.getDependencies());
+    dependencies.addAll(pPlaceholderDependencies);
+
+    /* Store the results */
+
+    Set<String> changedDependencies = new HashSet<>();
+    Map<KeySPI<O>, CacheResult<O>> toStore = new LinkedHashMap<>();
+    for (Map.Entry<String, KeySPI<O>> entry : pToLoadKeys.entrySet()) {
+      KeySPI<O> key = entry.getValue();
+      CacheResult<O> loadedResult = pToLoad.get(key);
+      if (loadedResult == null) loadedResult = CacheResult.notFound();
+      else if (loadedResult.entryFound()) toStore.put(key, loadedResult);
+      mStaleValues.stored(key, loadedResult);
+      mTagIndex.tagged(key, loadedResult.entryFound() ? loadedResult.getTags() : Collections.emptySet());
+      pResults.put(entry.getKey(), loadedResult);
+      changedDependencies.addAll(addDependencies(key, dependencies));
+      mDependencyGraph.loaded(entry.getKey(), generation);
+    }
+    pStorage.storeAll(pAccessContext, toStore);
+    toStore.forEach((key, result) -> mRefreshAhead.stored(pAccessContext,
+      key,
+      key.getPathPolicy().getWriteExpiry(result)
+    ));
+    persistDependencyRecords(pAccessContext, changedDependencies);
+  }
 
+  /**
+   * Waits for a future, unwrapping any runtime exception that it completed with
+   *
+   * @param <T> the result type
+   * @param pFuture the future
+   * @return the result
+   */
+  private static <T> T join(CompletableFuture<T> pFuture) {
+    try {
+      return pFuture.join();
+    }
+    catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException re) throw re;
+      if (ex.getCause() instanceof Error er) throw er;
+      throw ex;
+    }
   }
 
   /**
@@ -562,13 +1630,14 @@ public final class CacheEngineImpl implements CacheEngine {
     KeySPI<O> key = pKey;
     try (Context ignored = mContextFactory.newContext(CacheEngineImpl.class, this, key, pCacheResult)) {
 
-      key = resolvePlaceholders(pAccessContext, key, new ArrayDeque<>()).key();
+      key = resolvePlaceholders(pAccessContext, key).key();
 
       /* Find the last storage given the key */
 
       CacheStorage storage = key.getLastStorage();
 
       storage.store(pAccessContext, key, pCacheResult);
+      stored(pAccessContext, key, pCacheResult);
 
       /* Now attempt to look up the data */
 
@@ -580,48 +1649,141 @@ public final class CacheEngineImpl implements CacheEngine {
     }
   }
 
+  /**
+   * Updates the bookkeeping of an entry that was set directly, the same way a load does. On a refresh-ahead path, the
+   * refresh is rescheduled from now, or cancelled if the entry doesn't expire.
+   *
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pCacheResult the stored result
+   */
+  private void stored(AccessContext pAccessContext, KeySPI<?> pKey, CacheResult<?> pCacheResult) {
+    mRefreshAhead.stored(pAccessContext,
+      pKey,
+      pCacheResult.entryFound() ? pKey.getPathPolicy().getWriteExpiry(pCacheResult) : null
+    );
+    mStaleValues.stored(pKey, pCacheResult);
+    mTagIndex.tagged(pKey, pCacheResult.entryFound() ? pCacheResult.getTags() : Collections.emptySet());
+  }
+
   @Override
   public void invalidateAll(AccessContext pAccessContext) {
+    mRefreshAhead.clear();
+    mStaleValues.clear();
+    mTagIndex.clear();
+
+    /* The dependency records are wiped with the storages, so the graph goes too */
+
+    mDependencyGraph.clear();
     mCacheStorageByPath.values().stream().distinct().forEach((cs) -> cs.invalidateAll(pAccessContext));
   }
 
+  /**
+   * The keys affected by an invalidation, grouped by their storage
+   *
+   * @param keysByStorage the keys to remove, by storage
+   * @param changedDependencies the keys whose dependency records need to be written
+   */
+  private record InvalidationPlan(Map<CacheStorage, List<KeySPI<?>>> keysByStorage, Set<String> changedDependencies) {
+  }
+
+  /**
+   * Invalidates a key and everything that depends on it
+   *
+   * @param <O> the result type
+   * @param pAccessContext the access context
+   * @param pKey the key
+   */
   private <O extends @Nullable Object> void invalidateInternal(AccessContext pAccessContext, KeySPI<O> pKey) {
-    KeySPI<O> key = pKey;
-    try (Context ignored = mContextFactory.newContext(CacheEngineImpl.class, this, key)) {
+    try (Context ignored = mContextFactory.newContext(CacheEngineImpl.class, this, pKey)) {
+      applyInvalidation(pAccessContext, planInvalidation(pAccessContext, List.of(pKey)));
+    }
+  }
+
+  /**
+   * Carries out an invalidation plan
+   *
+   * @param pAccessContext the access context
+   * @param pPlan the plan
+   */
+  private void applyInvalidation(AccessContext pAccessContext, InvalidationPlan pPlan) {
 
-      key = resolvePlaceholders(pAccessContext, key, new ArrayDeque<>()).key();
+    /* Remove the keys from each storage. NOTE: This may cause the data to load back depending on callbacks */
 
-      String keyStr = key.toString();
+    pPlan.keysByStorage.forEach((storage, keys) -> storage.invalidateKeys(pAccessContext, keys));
+    persistDependencyRecords(pAccessContext, pPlan.changedDependencies);
+  }
 
-      /* Find the last storage given the key */
+  /**
+   * Walks the dependents of a set of keys breadth first, detaching each affected key from the dependency graph. Each
+   * key is only visited once, no matter how many paths lead to it, and nothing is removed from the storages yet.
+   *
+   * @param pAccessContext the access context
+   * @param pKeys the keys being invalidated
+   * @return the plan
+   */
+  private InvalidationPlan planInvalidation(AccessContext pAccessContext, Collection<? extends KeySPI<?>> pKeys) {
+    Map<CacheStorage, List<KeySPI<?>>> keysByStorage = new LinkedHashMap<>();
+    Set<String> changedDependencies = new HashSet<>();
+    Set<String> visited = new HashSet<>();
+    ArrayDeque<KeySPI<?>> queue = new ArrayDeque<>();
+    for (KeySPI<?> key : pKeys) {
+      if (!key.hasKeyDetails()) setupKey(key);
+      KeySPI<?> resolvedKey = resolvePlaceholders(pAccessContext, key).key();
+      if (visited.add(resolvedKey.toString())) queue.add(resolvedKey);
+    }
 
-      CacheStorage storage = key.getLastStorage();
+    /* The keys being invalidated come first in the queue, and everything after them is a dependent */
 
-      if (mCacheInfo == null) throw new IllegalStateException("finishSetup has not been called");
-      mCacheInfo.reverseDependencyMap.remove(keyStr);
+    int roots = queue.size();
+    int processed = 0;
+    while (!queue.isEmpty()) {
+      KeySPI<?> key = queue.removeFirst();
+      boolean cascade = (processed++ >= roots);
+      if (!key.hasKeyDetails()) setupKey(key);
+      key = resolvePlaceholders(pAccessContext, key).key();
 
-      /* Were there dependencies? */
+      String keyStr = key.toString();
 
-      Set<KeySPI<?>> depSet = mCacheInfo.dependencyMap.remove(keyStr);
+      /* Find the last storage given the key */
 
-      /* Call the invalidation routine on the storage. NOTE: This may cause the data to load back depending on callbacks */
+      CacheStorage storage = key.getLastStorage();
 
-      storage.invalidate(pAccessContext, key);
+      mRefreshAhead.cancel(keyStr);
 
-      if (depSet != null) {
+      /* A dependent entry on a stale-while-revalidate path stays, and is served as stale while it's reloaded */
 
-        /* Save the updated CacheInfo */
+      boolean keep = (cascade) && (key.getPathPolicy().getStaleWhileRevalidate() != null) && (storage.queryForKey(
+        pAccessContext,
+        key
+      ).entryFound()) && (mStaleValues.invalidated(key));
+      if (!keep) {
+        mStaleValues.remove(keyStr);
+        mTagIndex.removed(keyStr);
+      }
 
-        mStorageKey.getLastStorage().store(pAccessContext, mStorageKey, new StaticCacheResult<>(mCacheInfo, true));
+      /* Drop the key from the records of the keys it depends on */
 
-        /* Invalidate all the keys */
+      changedDependencies.addAll(mDependencyGraph.removeDependencies(keyStr));
 
-        for (KeySPI<?> dep : depSet) {
-          invalidate(pAccessContext, dep);
-        }
+      /* Were there dependencies? With lazy invalidation, they're left to find out that they're stale when read */
+
+      List<KeySPI<?>> depSet;
+      if ((!cascade) && (key.getPathPolicy().isLazyInvalidation())) {
+        mDependencyGraph.bump(keyStr);
+        changedDependencies.add(keyStr);
+        depSet = Collections.emptyList();
+      } else {
+        depSet = mDependencyGraph.removeDependents(keyStr);
+      }
+      if (!depSet.isEmpty()) changedDependencies.add(keyStr);
+      for (KeySPI<?> dep : depSet) {
+        if (visited.add(dep.toString())) queue.add(dep);
       }
 
+      if (!keep) keysByStorage.computeIfAbsent(storage, (_) -> new ArrayList<>()).add(key);
     }
+    return new InvalidationPlan(keysByStorage, changedDependencies);
   }
 
   /**
@@ -631,48 +1793,26 @@ public final class CacheEngineImpl implements CacheEngine {
    * @param <O> the key type
    */
   public <O extends @Nullable Object> void setupKey(KeySPI<O> pKey) {
-    KeySPI<? extends @Nullable Object>[] parts = pKey.getParts();
-    StringBuilder sb = new StringBuilder();
-    CacheStorage lastStorage = null;
-    String lastSerializerName = null;
-    for (KeySPI<? extends @Nullable Object> part : parts) {
-      sb.append(part.getBaseKey());
-
-      String currentPath = sb.toString();
-
-      /* Look up the storage */
-
-      CacheStorage testCacheStorage = mCacheStorageByPath.get(currentPath);
-      if (testCacheStorage != null) {
-        lastStorage = testCacheStorage;
-      }
+    PathTrie.Node node = mPathTrie.getRoot();
+    for (KeySPI<? extends @Nullable Object> part : pKey.getParts()) {
 
-      /* Look up the serializer */
+      /* Walk down the trie. Once off the trie, no configured path covers the rest of the parts */
 
-      String testSerializerName = mSerializerNameByPath.get(currentPath);
-      if (testSerializerName != null) {
-        lastSerializerName = testSerializerName;
-      }
-
-      /* Now look up the loader */
-
-      CacheLoaderInfo<Object> loaderInfo = mLoadersByPath.get(currentPath);
-
-      if ((lastStorage != null) && (lastSerializerName != null) && (loaderInfo != null)) {
-        KeyDetails<Object> keyDetails = new KeyDetails<>(lastStorage,
-          lastSerializerName,
-          loaderInfo.supportsNull,
-          loaderInfo.loader
-        );
+      if (node != null) node = node.child(part.getBaseKey());
+      KeyDetails<Object> keyDetails = node != null ? node.getDetails() : null;
+      if (keyDetails != null) {
         @SuppressWarnings("unchecked") KeySPI<Object> castedPart = (KeySPI<Object>) part;
         castedPart.storeKeyDetails(keyDetails);
+      } else {
+
+        /* Drop any details from a retired trie, so that the part fails the same way as one that was never covered */
+
+        part.clearKeyDetails();
       }
 
       if (part instanceof StaticAccessContextPlaceholder<?> sacp) {
         sacp.setAccessContextSPI(mAccessContextSPIMap);
       }
-      //noinspection HardcodedFileSeparator
-      sb.append("/");
     }
   }
 
@@ -707,8 +1847,54 @@ public final class CacheEngineImpl implements CacheEngine {
     return new CompositeKey<>(newParts);
   }
 
+  /**
+   * Attempts to serve a cache hit directly from the storage, without creating a Context or any intermediate results.
+   * Anything other than a plain hit (keys needing setup or placeholder resolution, misses, nulls that aren't allowed,
+   * errors and sampled calls) returns {@link CacheStorage#VALUE_NOT_FOUND} so that the caller takes the full path.
+   *
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @param <V> the key type
+   * @return the value or {@link CacheStorage#VALUE_NOT_FOUND}
+   */
+  private <V extends @Nullable Object> @Nullable Object fastGet(AccessContext pAccessContext, Key<V> pKey) {
+    if (!(pKey instanceof KeySPI<V> ki)) return CacheStorage.VALUE_NOT_FOUND;
+    if ((ki.hasPlaceholders()) || (!ki.hasKeyDetails())) return CacheStorage.VALUE_NOT_FOUND;
+    double sampleRate = mTraceSampleRate;
+    if ((sampleRate > 0.0) && (ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+      return CacheStorage.VALUE_NOT_FOUND;
+    }
+    String keyStr = ki.toString();
+    if (mDependencyGraph.staleSince(keyStr) != 0L) return CacheStorage.VALUE_NOT_FOUND;
+    if ((ki.getPathPolicy().getStaleWhileRevalidate() != null) && (mStaleValues.check(keyStr)
+      != StaleValueManager.Staleness.FRESH)) return CacheStorage.VALUE_NOT_FOUND;
+    Object value;
+    try {
+      value = ki.getLastStorage().queryValueForKey(pAccessContext, ki);
+    }
+    catch (RuntimeException ex) {
+
+      /* Let the full path repeat the query, so that the error is reported through a Context */
+
+      return CacheStorage.VALUE_NOT_FOUND;
+    }
+    if (value == CacheStorage.VALUE_NOT_FOUND) return value;
+    if ((value == null) && (!ki.supportsNull())) return CacheStorage.VALUE_NOT_FOUND;
+
+    /* Same bookkeeping as a hit in lookup */
+
+    recordRead(keyStr);
+    if (ki.getPathPolicy().isRefreshAhead()) mRefreshAhead.read(keyStr);
+    return value;
+  }
+
   @Override
   public <V extends @Nullable Object> V get(AccessContext pAccessContext, Key<V> pKey) {
+    Object fastValue = fastGet(pAccessContext, pKey);
+    if (fastValue != CacheStorage.VALUE_NOT_FOUND) {
+      @SuppressWarnings("unchecked") V castedValue = (V) fastValue;
+      return castedValue;
+    }
     try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pKey)) {
       if (!(pKey instanceof KeySPI<V> ki)) {
         throw ctx.reportThrowable(new IllegalStateException("Unsupported key type: " + pKey.getClass().getName()));
@@ -735,6 +1921,11 @@ public final class CacheEngineImpl implements CacheEngine {
 
   @Override
   public <V extends @Nullable Object> Optional<@NonNull V> getIfPresent(AccessContext pAccessContext, Key<V> pKey) {
+    Object fastValue = fastGet(pAccessContext, pKey);
+    if (fastValue != CacheStorage.VALUE_NOT_FOUND) {
+      @SuppressWarnings("unchecked") V castedValue = (V) fastValue;
+      return Optional.ofNullable(castedValue);
+    }
     try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pKey)) {
       if (!(pKey instanceof KeySPI<V> ki)) {
         throw ctx.reportThrowable(new IllegalStateException("Unsupported key type: " + pKey.getClass().getName()));
@@ -749,6 +1940,182 @@ public final class CacheEngineImpl implements CacheEngine {
     }
   }
 
+  @Override
+  public <V extends @Nullable Object> CompletableFuture<V> getAsync(AccessContext pAccessContext, Key<V> pKey) {
+    if (!(pKey instanceof KeySPI<V> ki)) {
+      return CompletableFuture.failedFuture(new IllegalStateException(
+        "Unsupported key type: " + pKey.getClass().getName()));
+    }
+    try {
+      if (!ki.hasKeyDetails()) {
+        setupKey(ki);
+      }
+      return this.<V>lookupAsync(pAccessContext, ki).thenApply((result) -> {
+        if (result.entryFound()) {
+          if (result.isNull()) {
+            if (ki.supportsNull()) {
+              return null;
+            }
+            throw new NullPointerException(ki.toString());
+          }
+          return result.getValue();
+        }
+        if (ki.supportsNull()) {
+          return null;
+        }
+        throw new NoSuchElementException(ki.toString());
+      });
+    }
+    catch (RuntimeException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+
+  @Override
+  public <V extends @Nullable Object> CompletableFuture<Optional<@NonNull V>> getIfPresentAsync(
+    AccessContext pAccessContext, Key<V> pKey) {
+    if (!(pKey instanceof KeySPI<V> ki)) {
+      return CompletableFuture.failedFuture(new IllegalStateException(
+        "Unsupported key type: " + pKey.getClass().getName()));
+    }
+    try {
+      if (!ki.hasKeyDetails()) {
+        setupKey(ki);
+      }
+      //noinspection ConstantConditions
+      return this.<V>lookupAsync(pAccessContext, ki)
+        .thenApply((result) -> result.entryFound() ? Optional.ofNullable(result.isNull() ? null : result.getValue()) :
+          Optional.empty());
+    }
+    catch (RuntimeException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+
+  @Override
+  public <V extends @Nullable Object> CompletableFuture<@Nullable Void> setAsync(AccessContext pAccessContext,
+    Key<V> pKey, V pValue) {
+    return CompletableFuture.runAsync(() -> set(pAccessContext, pKey, pValue), getTaskExecutor());
+  }
+
+  @Override
+  public <V extends @Nullable Object> void setAll(AccessContext pAccessContext, Map<? extends Key<V>, V> pValues) {
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pValues)) {
+
+      /* Resolve each key, and group them by storage */
+
+      Map<CacheStorage, Map<KeySPI<V>, CacheResult<V>>> byStorage = new LinkedHashMap<>();
+      for (Map.Entry<? extends Key<V>, V> entry : pValues.entrySet()) {
+        Key<V> rawKey = entry.getKey();
+        if (!(rawKey instanceof KeySPI<V> ki)) {
+          throw ctx.reportThrowable(new IllegalStateException("Unsupported key type: " + rawKey.getClass().getName()));
+        }
+        if (!ki.hasKeyDetails()) {
+          setupKey(ki);
+        }
+        KeySPI<V> key = resolvePlaceholders(pAccessContext, ki).key();
+        byStorage.computeIfAbsent(key.getLastStorage(), (_) -> new LinkedHashMap<>())
+          .put(key, new StaticCacheResult<>(entry.getValue(), true));
+      }
+
+      /* Write each storage in one pass */
+
+      for (Map.Entry<CacheStorage, Map<KeySPI<V>, CacheResult<V>>> storageEntry : byStorage.entrySet()) {
+        storageEntry.getKey().storeAll(pAccessContext, storageEntry.getValue());
+        storageEntry.getValue().forEach((key, result) -> stored(pAccessContext, key, result));
+      }
+
+      /* Write-back loaders still see each key */
+
+      for (Map<KeySPI<V>, CacheResult<V>> results : byStorage.values()) {
+        for (Map.Entry<KeySPI<V>, CacheResult<V>> entry : results.entrySet()) {
+          KeySPI<V> key = entry.getKey();
+          if (key.getLoader() instanceof WriteBackCacheLoader<V> writeBackCacheLoader) {
+            writeBackCacheLoader.store(this, pAccessContext, key, entry.getValue());
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public <V extends @Nullable Object> CacheValue<V> getCacheValue(AccessContext pAccessContext, Key<V> pKey) {
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pKey)) {
+      if (!(pKey instanceof KeySPI<V> ki)) {
+        throw ctx.reportThrowable(new IllegalStateException("Unsupported key type: " + pKey.getClass().getName()));
+      }
+      if (!ki.hasKeyDetails()) {
+        setupKey(ki);
+      }
+      CacheResult<V> result = lookup(pAccessContext, ki, true);
+      if (!result.entryFound()) {
+        return ctx.exit(new CacheValue<>(null, false, false));
+      }
+      return ctx.exit(new CacheValue<>(result.isNull() ? null : result.getValue(),
+        true,
+        result instanceof StaleValueManager.StaleCacheResult
+      ));
+    }
+  }
+
+  @Override
+  public <V extends @Nullable Object> Map<Key<V>, V> getAll(AccessContext pAccessContext,
+    Collection<? extends Key<V>> pKeys) {
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pKeys)) {
+      List<KeySPI<V>> keys = new ArrayList<>(pKeys.size());
+      for (Key<V> key : pKeys) {
+        if (!(key instanceof KeySPI<V> ki)) {
+          throw ctx.reportThrowable(new IllegalStateException("Unsupported key type: " + key.getClass().getName()));
+        }
+        if (!ki.hasKeyDetails()) {
+          setupKey(ki);
+        }
+        keys.add(ki);
+      }
+      Map<Key<V>, V> values = new LinkedHashMap<>();
+      for (Map.Entry<KeySPI<V>, CacheResult<V>> entry : lookupAll(pAccessContext, keys).entrySet()) {
+        KeySPI<V> ki = entry.getKey();
+        CacheResult<V> result = entry.getValue();
+        if ((result.entryFound()) && (!result.isNull())) {
+          values.put(ki, result.getValue());
+        } else if (ki.supportsNull()) {
+          values.put(ki, null);
+        } else if (result.entryFound()) {
+          throw ctx.reportThrowable(new NullPointerException(ki.toString()));
+        } else {
+          throw ctx.reportThrowable(new NoSuchElementException(ki.toString()));
+        }
+      }
+      return ctx.exit(values);
+    }
+  }
+
+  @Override
+  public <V extends @Nullable Object> Map<Key<V>, @NonNull V> getAllIfPresent(AccessContext pAccessContext,
+    Collection<? extends Key<V>> pKeys) {
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pKeys)) {
+      List<KeySPI<V>> keys = new ArrayList<>(pKeys.size());
+      for (Key<V> key : pKeys) {
+        if (!(key instanceof KeySPI<V> ki)) {
+          throw ctx.reportThrowable(new IllegalStateException("Unsupported key type: " + key.getClass().getName()));
+        }
+        if (!ki.hasKeyDetails()) {
+          setupKey(ki);
+        }
+        keys.add(ki);
+      }
+      Map<Key<V>, @NonNull V> values = new LinkedHashMap<>();
+      for (Map.Entry<KeySPI<V>, CacheResult<V>> entry : lookupAll(pAccessContext, keys).entrySet()) {
+        CacheResult<V> result = entry.getValue();
+        if ((result.entryFound()) && (!result.isNull())) {
+          @SuppressWarnings("nullness") @NonNull V value = result.getValue();
+          values.put(entry.getKey(), value);
+        }
+      }
+      return ctx.exit(values);
+    }
+  }
+
   @Override
   public <K1 extends @Nullable Object, V extends @Nullable Object> V get(AccessContext pAccessContext, Key<V> pKey,
     KeyPlaceholder<K1> pHolder1, String pValue1) {
@@ -1112,6 +2479,38 @@ public final class CacheEngineImpl implements CacheEngine {
     invalidateInternal(pAccessContext, ki);
   }
 
+  @Override
+  public <V extends @Nullable Object> CompletableFuture<@Nullable Void> invalidateAsync(AccessContext pAccessContext,
+    Key<V> pKey) {
+    if (!(pKey instanceof KeySPI<V> ki)) {
+      return CompletableFuture.failedFuture(new IllegalStateException(
+        "Unsupported key type: " + pKey.getClass().getName()));
+    }
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, ki)) {
+      try {
+        if (!ki.hasKeyDetails()) setupKey(ki);
+        InvalidationPlan plan = planInvalidation(pAccessContext, List.of(ki));
+
+        /* Each storage removes its keys on the executor, and the records are only written once they're all done */
+
+        CompletableFuture<?>[] batches = plan.keysByStorage.entrySet()
+          .stream()
+          .map((entry) -> CompletableFuture.runAsync(() -> entry.getKey().invalidateKeys(pAccessContext,
+            entry.getValue()
+          ), getTaskExecutor()))
+          .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(batches)
+          .thenRun(() -> persistDependencyRecords(pAccessContext, plan.changedDependencies));
+      }
+      catch (RuntimeException ex) {
+
+        /* Failures while planning are reported through the future, the same as those of the removals */
+
+        return CompletableFuture.failedFuture(ctx.reportThrowable(ex));
+      }
+    }
+  }
+
   @Override
   public <K1 extends @Nullable Object, V extends @Nullable Object> void invalidate(AccessContext pAccessContext,
     Key<V> pKey, KeyPlaceholder<K1> pHolder1, String pValue1) {
@@ -1157,32 +2556,155 @@ public final class CacheEngineImpl implements CacheEngine {
   public Map<String, CacheLoaderInfo<?>> getCacheLoadersByPath() {
     Map<String, CacheLoaderInfo<?>> result = new HashMap<>(mLoadersByPath);
     result.remove(CacheInfoLoader.CACHE_INFO_NAME);
+    result.remove(mDependencyRecordKey.toString());
     return result;
   }
 
   @Override
   public Stream<Map.Entry<Key<?>, CacheResult<?>>> streamEntries(AccessContext pAccessContext) {
-    return //
+    Stream<Map.Entry<Key<?>, CacheResult<?>>> entries = //
       /* Get the distinct list of CacheStorages */
       mCacheStorageByPath.values().stream().distinct() //
-        /* Expand each into a stream of string keys */.flatMap((cs) -> cs.streamEntries(pAccessContext));
+        /* Expand each into a stream of string keys */.flatMap((cs) -> cs.streamEntries(pAccessContext)) //
+        /* Leave out the dependency records */.filter((entry) -> !isDependencyRecord(entry.getKey()));
+
+    /* The records are shown as a single entry instead, gathered once the stream gets that far */
+
+    return Stream.concat(entries, Stream.of(mStorageKey).flatMap((_) -> streamCacheInfo(pAccessContext)));
+  }
+
+  @Override
+  public Stream<Map.Entry<Key<?>, CacheResult<?>>> streamEntries(AccessContext pAccessContext, Key<?> pPrefixKey) {
+    String prefix = resolvePrefix(pAccessContext, pPrefixKey);
+    return mCacheStorageByPath.values()
+      .stream()
+      .distinct()
+      .flatMap((cs) -> cs.streamEntries(pAccessContext, prefix))
+      .filter((entry) -> !isDependencyRecord(entry.getKey()));
+  }
+
+  /**
+   * Returns whether the key is one of the per-key dependency records that the engine stores for itself
+   *
+   * @param pKey the key
+   * @return true if it's a dependency record
+   */
+  private static boolean isDependencyRecord(Key<?> pKey) {
+    return pKey.toString().startsWith(CacheInfoLoader.CACHE_INFO_NAME + "/");
+  }
+
+  /**
+   * Gathers the dependency records into the single CacheInfo entry that the engine's own data is shown as
+   *
+   * @param pAccessContext the Access Context
+   * @return the entry, or nothing if there are no records
+   */
+  private Stream<Map.Entry<Key<?>, CacheResult<?>>> streamCacheInfo(AccessContext pAccessContext) {
+    CacheInfo info = new CacheInfo();
+    CacheStorage storage = mStorageKey.getLastStorage();
+    try (Stream<Map.Entry<Key<?>, CacheResult<?>>> entries = storage.streamEntries(pAccessContext,
+      CacheInfoLoader.CACHE_INFO_NAME
+    )) {
+      entries.forEach((entry) -> {
+        CacheResult<?> result = entry.getValue();
+        if ((!isDependencyRecord(entry.getKey())) || (!result.entryFound()) || (result.isNull())) return;
+        if (result.getValue() instanceof DependencyRecord record) {
+          info.dependencyMap.put(record.key, new HashSet<>(record.dependents));
+          for (KeySPI<?> dependent : record.dependents) {
+            info.reverseDependencyMap.computeIfAbsent(dependent.toString(), (_) -> ConcurrentHashMap.newKeySet())
+              .add(record.key);
+          }
+        }
+      });
+    }
+    if (info.dependencyMap.isEmpty()) return Stream.empty();
+    return Stream.of(new AbstractMap.SimpleEntry<>(mStorageKey, new StaticCacheResult<>(info, true)));
+  }
+
+  @Override
+  public void invalidateTree(AccessContext pAccessContext, Key<?> pPrefixKey) {
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pPrefixKey)) {
+      try {
+
+        /* Only the keys are needed, so the values aren't decoded */
+
+        String prefix = resolvePrefix(pAccessContext, pPrefixKey);
+        List<KeySPI<?>> keys;
+        Stream<Key<?>> stream = mCacheStorageByPath.values()
+          .stream()
+          .distinct()
+          .flatMap((cs) -> cs.streamKeys(pAccessContext, prefix))
+          .filter((key) -> !isDependencyRecord(key));
+        try (stream) {
+          keys = stream.<KeySPI<?>>map((key) -> (KeySPI<?>) key).toList();
+        }
+        if (!keys.isEmpty()) applyInvalidation(pAccessContext, planInvalidation(pAccessContext, keys));
+      }
+      catch (RuntimeException ex) {
+        throw ctx.reportThrowable(ex);
+      }
+    }
+  }
+
+  @Override
+  public void invalidateByTag(AccessContext pAccessContext, String pTag) {
+    try (Context ctx = mContextFactory.newContext(CacheEngineImpl.class, this, pTag)) {
+      try {
+        List<KeySPI<?>> keys = mTagIndex.getKeys(pTag);
+        if (!keys.isEmpty()) applyInvalidation(pAccessContext, planInvalidation(pAccessContext, keys));
+      }
+      catch (RuntimeException ex) {
+        throw ctx.reportThrowable(ex);
+      }
+    }
+  }
+
+  /**
+   * Resolves the key at the root of a subtree to its key string
+   *
+   * @param pAccessContext the access context
+   * @param pPrefixKey the key
+   * @return the key string
+   */
+  private String resolvePrefix(AccessContext pAccessContext, Key<?> pPrefixKey) {
+    if (!(pPrefixKey instanceof KeySPI<?> ki)) {
+      throw new IllegalStateException("Unsupported key type: " + pPrefixKey.getClass().getName());
+    }
+    if (!ki.hasPlaceholders()) return ki.toString();
+    if (!ki.hasKeyDetails()) setupKey(ki);
+    return resolvePlaceholders(pAccessContext, ki).key().toString();
+  }
+
+  @Override
+  public void keyRemoved(KeySPI<?> pKey) {
+    mRemovals.removed(pKey);
+  }
+
+  @Override
+  public int getDependencyGraphSize() {
+    return mDependencyGraph.size();
+  }
+
+  @Override
+  public int getTagIndexSize() {
+    return mTagIndex.size();
+  }
+
+  @Override
+  public Map<String, LoadMetrics> getLoadMetrics() {
+    Map<String, LoadMetrics> result = new TreeMap<>();
+    mBulkheads.forEach((path, bulkhead) -> result.put(path, bulkhead.getMetrics()));
+    return Collections.unmodifiableMap(result);
   }
 
   @Override
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   public Collection<Key<?>> getDependentKeys(AccessContext pAccessContext, String pKeyStr) {
-    if (mCacheInfo == null) throw new IllegalStateException("finishSetup has not been called");
-    Collection<Key<?>> result = (Collection) mCacheInfo.dependencyMap.get(pKeyStr);
-    if (result == null) return Collections.emptyList();
-    return result;
+    return Collections.unmodifiableList(mDependencyGraph.getDependents(pKeyStr));
   }
 
   @Override
   public Collection<String> getDependentOnKeys(AccessContext pAccessContext, String pKeyStr) {
-    if (mCacheInfo == null) throw new IllegalStateException("finishSetup has not been called");
-    Collection<String> result = mCacheInfo.reverseDependencyMap.get(pKeyStr);
-    if (result == null) return Collections.emptyList();
-    return result;
+    return mDependencyGraph.getDependencies(pKeyStr);
   }
 
   @Override
@@ -1202,7 +2724,7 @@ public final class CacheEngineImpl implements CacheEngine {
       setupKey(ki);
     }
 
-    var resolvedKey = resolvePlaceholders(pAccessContext, ki, new ArrayDeque<>()).key();
+    var resolvedKey = resolvePlaceholders(pAccessContext, ki).key();
 
     /* Find the last storage given the key */
 
@@ -1214,6 +2736,10 @@ public final class CacheEngineImpl implements CacheEngine {
     //noinspection RedundantTypeArguments
     storage.<V>registerOnChange(pAccessContext, resolvedKey, pCallback);
 
+    /* Keys with listeners are always kept fresh on refresh-ahead paths */
+
+    mRefreshAhead.alwaysHot(resolvedKey.toString());
+
     getIfPresent(pAccessContext, resolvedKey);
   }
 }
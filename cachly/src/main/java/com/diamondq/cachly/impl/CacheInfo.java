@@ -8,7 +8,9 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Represents data that Cachly uses to work but is stored within the underlying Cache engine for persistence
+ * Represents data that Cachly uses to work but is stored within the underlying Cache engine for persistence. The
+ * dependency graph is now held in a {@link DependencyGraph} and persisted as {@link DependencyRecord}s, so this is only
+ * read to migrate data persisted by earlier versions.
  */
 public class CacheInfo {
 
@@ -0,0 +1,514 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.spi.KeySPI;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The in-memory dependency graph. Each key is assigned an int id the first time it's seen, and the edges are stored as
+ * primitive int sets on the nodes at both ends, so an edge costs a few bytes instead of a set entry holding a key. The
+ * key object of a dependent is kept once on its node (it's needed to invalidate it), rather than once per edge.
+ * <p>
+ * The edge sets of a node are guarded by the node itself, so updates to different keys never contend. An edge is
+ * always added and removed at both ends together, holding the locks of both nodes (lowest id first). Once a node has
+ * no edges left, it's removed and its id is reused, so the graph only ever holds the keys that take part in an edge.
+ * All the query methods return immutable snapshots.
+ * <p>
+ * The graph also supports lazy invalidation through generations. The global generation is bumped whenever a key is
+ * lazily invalidated, and that key's node records the new value. Each key records the generation at which its load
+ * started, and it's stale if any key it (transitively) depends on was invalidated after that. A check that finds the
+ * key fresh moves its generation up to the current one, so the dependencies are only walked again after the next lazy
+ * invalidation. Since generations only live on nodes, this relies on a key keeping its node for as long as anything
+ * that depends on it is around.
+ * <p>
+ * The invalidation generations are persisted with the dependency records, and restored with {@link #restore(String,
+ * long)}. The load generations aren't, so after a restart every key depending on a lazily invalidated key is
+ * considered stale once.
+ */
+final class DependencyGraph {
+
+  private static final int[] EMPTY_IDS = new int[0];
+
+  private static final class Node {
+    final int id;
+
+    final String keyStr;
+
+    /**
+     * The key, once it has been seen as a dependent
+     */
+    volatile @Nullable KeySPI<?> key;
+
+    /**
+     * The generation at which the last load of this key started, or at which it was last found to be fresh. Only
+     * modified while holding the lock on the node.
+     */
+    volatile long loadedAt;
+
+    /**
+     * The generation at which this key was last lazily invalidated
+     */
+    volatile long invalidatedAt;
+
+    /**
+     * Set once the node has been removed from the graph. Guarded by the node.
+     */
+    boolean removed;
+
+    /**
+     * The ids of the keys that depend on this key. Guarded by the node.
+     */
+    final IntSet dependents = new IntSet();
+
+    /**
+     * The ids of the keys that this key depends on. Guarded by the node.
+     */
+    final IntSet dependencies = new IntSet();
+
+    Node(int pId, String pKeyStr) {
+      id = pId;
+      keyStr = pKeyStr;
+    }
+  }
+
+  /**
+   * A minimal open-addressing set of non-negative ints. It's not thread safe.
+   */
+  private static final class IntSet {
+
+    private static final int FREE = -1;
+
+    private int[] mSlots = EMPTY_IDS;
+
+    private int mSize;
+
+    boolean add(int pValue) {
+      if ((mSize + 1) * 4 > mSlots.length * 3) grow();
+      int mask = mSlots.length - 1;
+      int slot = mix(pValue) & mask;
+      while (mSlots[slot] != FREE) {
+        if (mSlots[slot] == pValue) return false;
+        slot = (slot + 1) & mask;
+      }
+      mSlots[slot] = pValue;
+      mSize++;
+      return true;
+    }
+
+    boolean remove(int pValue) {
+      if (mSize == 0) return false;
+      int mask = mSlots.length - 1;
+      int hole = mix(pValue) & mask;
+      while (mSlots[hole] != pValue) {
+        if (mSlots[hole] == FREE) return false;
+        hole = (hole + 1) & mask;
+      }
+      if (--mSize == 0) {
+        mSlots = EMPTY_IDS;
+        return true;
+      }
+
+      /* Shift back any later entries of the probe run that can no longer be reached past the hole */
+
+      int next = (hole + 1) & mask;
+      while (mSlots[next] != FREE) {
+        int home = mix(mSlots[next]) & mask;
+        if (((next - home) & mask) >= ((next - hole) & mask)) {
+          mSlots[hole] = mSlots[next];
+          hole = next;
+        }
+        next = (next + 1) & mask;
+      }
+      mSlots[hole] = FREE;
+      return true;
+    }
+
+    boolean isEmpty() {
+      return mSize == 0;
+    }
+
+    void clear() {
+      mSlots = EMPTY_IDS;
+      mSize = 0;
+    }
+
+    int[] toArray() {
+      int[] result = new int[mSize];
+      int count = 0;
+      for (int value : mSlots) {
+        if (value != FREE) result[count++] = value;
+      }
+      return result;
+    }
+
+    private void grow() {
+      int[] old = mSlots;
+      //noinspection MagicNumber
+      mSlots = new int[Math.max(8, old.length * 2)];
+      Arrays.fill(mSlots, FREE);
+      mSize = 0;
+      for (int value : old) {
+        if (value != FREE) add(value);
+      }
+    }
+
+    private static int mix(int pValue) {
+      int h = pValue * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+  }
+
+  private final Map<String, Node> mNodesByKey = new ConcurrentHashMap<>();
+
+  /**
+   * The nodes by id. It's only modified while holding the lock on the graph. A node is always visible here before its
+   * id is added to any edge set, and its id is only reused once it's no longer in any edge set.
+   */
+  @SuppressWarnings("MagicNumber") private volatile @Nullable Node[] mNodesById = new Node[64];
+
+  /**
+   * The ids of removed nodes that can be reused. Guarded by the graph.
+   */
+  private int[] mFreeIds = EMPTY_IDS;
+
+  private int mFreeCount;
+
+  private int mNextId;
+
+  /**
+   * The current generation. It only changes on a lazy invalidation, while holding its own lock.
+   */
+  private final AtomicLong mGeneration = new AtomicLong();
+
+  /**
+   * Adds an edge to the graph
+   *
+   * @param pDependency the key that is depended on
+   * @param pDependent the key that depends on it
+   * @return true if the edge is new
+   */
+  boolean addEdge(String pDependency, KeySPI<?> pDependent) {
+    String dependentStr = pDependent.toString();
+    while (true) {
+      Node dependency = node(pDependency);
+      Node dependent = node(dependentStr);
+      if (dependent.key == null) dependent.key = pDependent;
+      Node first = (dependency.id <= dependent.id ? dependency : dependent);
+      Node second = (first == dependency ? dependent : dependency);
+      synchronized (first) {
+        synchronized (second) {
+
+          /* If either node was removed after it was looked up, then try again with the new node */
+
+          if ((dependency.removed) || (dependent.removed)) continue;
+          dependent.dependencies.add(dependency.id);
+          return dependency.dependents.add(dependent.id);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a snapshot of the keys that depend on the given key
+   *
+   * @param pKeyStr the key
+   * @return the dependent keys
+   */
+  List<KeySPI<?>> getDependents(String pKeyStr) {
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node == null) return Collections.emptyList();
+    List<KeySPI<?>> result = new ArrayList<>();
+    for (Node dependent : snapshot(node, true)) {
+      KeySPI<?> key = dependent.key;
+      if (key != null) result.add(key);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Returns a snapshot of the keys that the given key depends on
+   *
+   * @param pKeyStr the key
+   * @return the key strings of the dependencies
+   */
+  List<String> getDependencies(String pKeyStr) {
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node == null) return Collections.emptyList();
+    List<String> result = new ArrayList<>();
+    for (Node dependency : snapshot(node, false)) {
+      result.add(dependency.keyStr);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Removes the edges from the given key to the keys it depends on
+   *
+   * @param pKeyStr the key
+   * @return the key strings of the dependencies that lost the key as a dependent
+   */
+  Set<String> removeDependencies(String pKeyStr) {
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node == null) return Collections.emptySet();
+    Set<String> changed = new HashSet<>();
+    Node[] dependencies = snapshot(node, false);
+    for (Node dependency : dependencies) {
+      if (unlink(dependency, node)) changed.add(dependency.keyStr);
+      tryRemove(dependency);
+    }
+    tryRemove(node);
+    return changed;
+  }
+
+  /**
+   * Removes the edges to the keys that depend on the given key
+   *
+   * @param pKeyStr the key
+   * @return a snapshot of the keys that depended on it (empty if there were none)
+   */
+  List<KeySPI<?>> removeDependents(String pKeyStr) {
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node == null) return Collections.emptyList();
+    Node[] dependents = snapshot(node, true);
+    if (dependents.length == 0) return Collections.emptyList();
+    List<KeySPI<?>> result = new ArrayList<>(dependents.length);
+    for (Node dependent : dependents) {
+      if (unlink(node, dependent)) {
+        KeySPI<?> key = dependent.key;
+        if (key != null) result.add(key);
+      }
+      tryRemove(dependent);
+    }
+    tryRemove(node);
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Returns the current generation. It's captured before a load starts, and passed to {@link #loaded(String, long)}
+   * afterward.
+   *
+   * @return the generation
+   */
+  long generation() {
+    return mGeneration.get();
+  }
+
+  /**
+   * Records the generation at which the (just completed) load of a key started
+   *
+   * @param pKeyStr the key
+   * @param pGeneration the generation
+   */
+  void loaded(String pKeyStr, long pGeneration) {
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node == null) return;
+    synchronized (node) {
+      node.loadedAt = pGeneration;
+    }
+  }
+
+  /**
+   * Lazily invalidates a key by bumping its generation. The keys that depend on it are then stale until reloaded.
+   *
+   * @param pKeyStr the key
+   */
+  void bump(String pKeyStr) {
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node == null) return;
+
+    /* The node is updated before the generation is published, so a check that sees the new generation sees it too */
+
+    synchronized (mGeneration) {
+      long generation = mGeneration.get() + 1;
+      node.invalidatedAt = generation;
+      mGeneration.set(generation);
+    }
+  }
+
+  /**
+   * Marks a key that was found stale as invalidated at the same generation as the key that made it stale. Keys that
+   * depend on it, and were loaded before that generation, are then stale as well.
+   *
+   * @param pKeyStr the key
+   * @param pGeneration the generation returned by {@link #staleSince(String)}
+   */
+  void invalidated(String pKeyStr, long pGeneration) {
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node == null) return;
+    synchronized (node) {
+      if (pGeneration > node.invalidatedAt) node.invalidatedAt = pGeneration;
+    }
+  }
+
+  /**
+   * Restores the generation at which a key was last lazily invalidated, as read back from its dependency record. The
+   * global generation is moved up to at least that value.
+   *
+   * @param pKeyStr the key
+   * @param pGeneration the generation
+   */
+  void restore(String pKeyStr, long pGeneration) {
+    if (pGeneration == 0L) return;
+    synchronized (mGeneration) {
+      invalidated(pKeyStr, pGeneration);
+      if (pGeneration > mGeneration.get()) mGeneration.set(pGeneration);
+    }
+  }
+
+  /**
+   * Returns the generation at which a key was last lazily invalidated
+   *
+   * @param pKeyStr the key
+   * @return the generation or 0 if it never was
+   */
+  long getInvalidatedAt(String pKeyStr) {
+    Node node = mNodesByKey.get(pKeyStr);
+    return (node == null ? 0L : node.invalidatedAt);
+  }
+
+  /**
+   * Checks whether a key is stale because something it depends on, directly or not, was lazily invalidated after its
+   * load started. This is a couple of volatile reads unless there has been a lazy invalidation since the key was last
+   * loaded or checked.
+   *
+   * @param pKeyStr the key
+   * @return the latest generation at which something it depends on was invalidated, or 0 if it's not stale
+   */
+  long staleSince(String pKeyStr) {
+    long generation = mGeneration.get();
+    if (generation == 0L) return 0L;
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node == null) return 0L;
+    long since = node.loadedAt;
+    if (since >= generation) return 0L;
+    long result = invalidatedSince(node, since, new HashSet<>());
+    if (result != 0L) return result;
+
+    /* Nothing was invalidated up to the generation read above, unless a load was recorded in the meantime */
+
+    synchronized (node) {
+      if (node.loadedAt == since) node.loadedAt = generation;
+    }
+    return 0L;
+  }
+
+  private long invalidatedSince(Node pNode, long pSince, Set<Node> pVisited) {
+    long result = 0L;
+    for (Node dependency : snapshot(pNode, false)) {
+      if (!pVisited.add(dependency)) continue;
+      long invalidatedAt = dependency.invalidatedAt;
+      if (invalidatedAt > pSince) result = Math.max(result, invalidatedAt);
+      result = Math.max(result, invalidatedSince(dependency, pSince, pVisited));
+    }
+    return result;
+  }
+
+  /**
+   * Removes every key from the graph, such as when the whole cache is invalidated. The generation isn't reset, so it
+   * never goes backwards.
+   */
+  synchronized void clear() {
+    for (Node node : mNodesByKey.values()) {
+      synchronized (node) {
+        node.removed = true;
+        node.dependents.clear();
+        node.dependencies.clear();
+      }
+    }
+    mNodesByKey.clear();
+    //noinspection MagicNumber
+    mNodesById = new Node[64];
+    mFreeIds = EMPTY_IDS;
+    mFreeCount = 0;
+    mNextId = 0;
+  }
+
+  /**
+   * Returns the number of keys in the graph
+   *
+   * @return the number of keys
+   */
+  int size() {
+    return mNodesByKey.size();
+  }
+
+  /**
+   * Resolves the ids in one of the edge sets of a node. This is done while holding the lock on the node, since an id
+   * can't be reused while it's still in one of its edge sets.
+   */
+  private Node[] snapshot(Node pNode, boolean pDependents) {
+    synchronized (pNode) {
+      int[] ids = (pDependents ? pNode.dependents : pNode.dependencies).toArray();
+      @Nullable Node[] nodes = mNodesById;
+      Node[] result = new Node[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        Node node = nodes[ids[i]];
+        if (node == null) throw new IllegalStateException("The dependency graph references a removed key");
+        result[i] = node;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Removes an edge at both ends
+   *
+   * @return true if the edge was present
+   */
+  private static boolean unlink(Node pDependency, Node pDependent) {
+    Node first = (pDependency.id <= pDependent.id ? pDependency : pDependent);
+    Node second = (first == pDependency ? pDependent : pDependency);
+    synchronized (first) {
+      synchronized (second) {
+
+        /* A removed node has no edges, and its id may already belong to another node */
+
+        if ((pDependency.removed) || (pDependent.removed)) return false;
+        pDependent.dependencies.remove(pDependency.id);
+        return pDependency.dependents.remove(pDependent.id);
+      }
+    }
+  }
+
+  /**
+   * Removes a node from the graph if it no longer has any edges
+   */
+  private synchronized void tryRemove(Node pNode) {
+    synchronized (pNode) {
+      if ((pNode.removed) || (!pNode.dependents.isEmpty()) || (!pNode.dependencies.isEmpty())) return;
+      pNode.removed = true;
+    }
+    mNodesByKey.remove(pNode.keyStr, pNode);
+    @Nullable Node[] nodes = mNodesById;
+    nodes[pNode.id] = null;
+    mNodesById = nodes;
+    //noinspection MagicNumber
+    if (mFreeCount == mFreeIds.length) mFreeIds = Arrays.copyOf(mFreeIds, Math.max(16, mFreeCount * 2));
+    mFreeIds[mFreeCount++] = pNode.id;
+  }
+
+  private Node node(String pKeyStr) {
+    Node node = mNodesByKey.get(pKeyStr);
+    if (node != null) return node;
+    synchronized (this) {
+      return mNodesByKey.computeIfAbsent(pKeyStr, (_) -> {
+        int id = (mFreeCount > 0 ? mFreeIds[--mFreeCount] : mNextId++);
+        @Nullable Node[] nodes = mNodesById;
+        if (id == nodes.length) nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        Node newNode = new Node(id, pKeyStr);
+        nodes[id] = newNode;
+        mNodesById = nodes;
+        return newNode;
+      });
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.spi.KeySPI;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The persisted edges of the dependency graph for a single key: the set of keys that depend on it. Each key has its
+ * own record, so that recording a dependency only rewrites the records that changed.
+ */
+public class DependencyRecord {
+
+  /**
+   * The key that is depended on
+   */
+  public final String key;
+
+  /**
+   * The keys that depend on it
+   */
+  public final Set<KeySPI<? extends @Nullable Object>> dependents;
+
+  /**
+   * The generation at which the key was last lazily invalidated, or 0 if it never was
+   */
+  public final long invalidatedAt;
+
+  /**
+   * Default constructor (used by serializers)
+   */
+  public DependencyRecord() {
+    key = "";
+    dependents = new HashSet<>();
+    invalidatedAt = 0L;
+  }
+
+  /**
+   * Primary constructor
+   *
+   * @param pKey the key that is depended on
+   * @param pDependents the keys that depend on it
+   * @param pInvalidatedAt the generation at which the key was last lazily invalidated, or 0 if it never was
+   */
+  public DependencyRecord(String pKey, Collection<KeySPI<? extends @Nullable Object>> pDependents,
+    long pInvalidatedAt) {
+    key = pKey;
+    dependents = new HashSet<>(pDependents);
+    invalidatedAt = pInvalidatedAt;
+  }
+}
@@ -0,0 +1,44 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.Cache;
+import com.diamondq.cachly.CacheLoader;
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.Key;
+import com.diamondq.cachly.KeyBuilder;
+import com.diamondq.common.TypeReference;
+import jakarta.inject.Singleton;
+
+/**
+ * Cache Loader representing the internal per-key dependency records. The records are only ever written by the engine,
+ * so a missing record simply means that nothing depends on the key.
+ */
+@Singleton
+public class DependencyRecordLoader implements CacheLoader<DependencyRecord> {
+
+  /**
+   * The name of the placeholder holding the (escaped) key that is depended on
+   */
+  public static final String DEPENDENCY_PLACEHOLDER_NAME = "dependency";
+
+  /**
+   * The TypeReference for the DependencyRecord
+   */
+  public static final TypeReference<DependencyRecord> TYPE_REF = new TypeReference<>() {
+  };
+
+  @Override
+  public CacheLoaderInfo<DependencyRecord> getInfo() {
+    Key<CacheInfo> base = KeyBuilder.of(CacheInfoLoader.CACHE_INFO_NAME, CacheInfoLoader.TYPE_REF);
+    Key<DependencyRecord> key = KeyBuilder.from(base, KeyBuilder.placeholder(DEPENDENCY_PLACEHOLDER_NAME, TYPE_REF));
+    return new CacheLoaderInfo<>(key, false, "", this);
+  }
+
+  @Override
+  public void load(Cache pCache, AccessContext pAccessContext, Key<DependencyRecord> pKey,
+    CacheResult<DependencyRecord> pResult) {
+    pResult.setNotFound();
+  }
+
+}
@@ -0,0 +1,120 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.spi.LoadMetrics;
+import com.diamondq.cachly.spi.PathPolicy;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the loads of a single path. At most max-concurrent-loads run at once, at most max-queued-loads wait for a
+ * slot, and none waits longer than what's left of the load timeout. Each path has its own bulkhead, so an outage of
+ * one backend can only tie up the threads loading from it.
+ */
+final class LoadBulkhead {
+
+  /**
+   * The slots, or null if the number of concurrent loads isn't limited
+   */
+  private final @Nullable Semaphore mPermits;
+
+  private final int mMaxQueued;
+
+  private final AtomicInteger mActive = new AtomicInteger();
+
+  private final AtomicInteger mQueued = new AtomicInteger();
+
+  private final LongAdder mRejected = new LongAdder();
+
+  private final LongAdder mTimedOut = new LongAdder();
+
+  /**
+   * Primary constructor
+   *
+   * @param pPolicy the policy of the path
+   */
+  LoadBulkhead(PathPolicy pPolicy) {
+    Integer maxConcurrent = pPolicy.getMaxConcurrentLoads();
+    mPermits = (maxConcurrent == null ? null : new Semaphore(maxConcurrent, true));
+    mMaxQueued = pPolicy.getMaxQueuedLoads();
+  }
+
+  /**
+   * Waits for a slot, within the queue limit and the given timeout. The caller passes what's left of the load timeout,
+   * since it may already have spent some of it waiting for the key's load lock.
+   *
+   * @param pTimeout the maximum time to wait, or null to wait indefinitely
+   * @return true if a slot was acquired (which must be given back with release) or false if the load should be shed
+   */
+  boolean acquire(@Nullable Duration pTimeout) {
+    Semaphore permits = mPermits;
+    if ((permits != null) && (!permits.tryAcquire())) {
+      if (mQueued.incrementAndGet() > mMaxQueued) {
+        mQueued.decrementAndGet();
+        mRejected.increment();
+        return false;
+      }
+      try {
+        if (pTimeout == null) permits.acquire();
+        else if (!permits.tryAcquire(pTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+          mTimedOut.increment();
+          return false;
+        }
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        mRejected.increment();
+        return false;
+      }
+      finally {
+        mQueued.decrementAndGet();
+      }
+    }
+    mActive.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Takes a slot only if one is free right away. Used by asynchronous loads, which must not block the caller.
+   *
+   * @return true if a slot was acquired (which must be given back with release) or false if the load should be shed
+   */
+  boolean tryAcquire() {
+    Semaphore permits = mPermits;
+    if ((permits != null) && (!permits.tryAcquire())) {
+      mRejected.increment();
+      return false;
+    }
+    mActive.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Gives back a slot
+   */
+  void release() {
+    mActive.decrementAndGet();
+    Semaphore permits = mPermits;
+    if (permits != null) permits.release();
+  }
+
+  /**
+   * Records that a lookup timed out while waiting for another thread to load the same key
+   */
+  void timedOut() {
+    mTimedOut.increment();
+  }
+
+  /**
+   * Returns the current metrics
+   *
+   * @return the metrics
+   */
+  LoadMetrics getMetrics() {
+    return new LoadMetrics(mActive.get(), mQueued.get(), mRejected.sum(), mTimedOut.sum());
+  }
+}
@@ -0,0 +1,237 @@
+package com.diamondq.cachly.impl;
+
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Manages the per-key locks used to make sure that only a single thread loads a given key at a time. Locks are
+ * reference counted and removed as soon as no thread holds or waits on them, so the number of locks is bounded by the
+ * number of concurrent loads rather than the number of distinct keys ever seen.
+ * <p>
+ * Since a loader may request other keys while holding its own lock, the manager also tracks which key each thread is
+ * waiting on. A recursive load of the same key, or a cycle of loaders waiting on each other across threads, is reported
+ * as an {@link IllegalStateException} instead of deadlocking. A thread that waits on a load published by another
+ * thread, rather than on the lock itself, registers the wait with {@link #awaitLoad(String)} so that it takes part in
+ * the same detection.
+ */
+public final class LoadLockManager {
+
+  /**
+   * A handle to an acquired lock. Closing it releases the lock.
+   */
+  public final class LoadLock implements AutoCloseable {
+
+    private final String        mKey;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    /**
+     * The number of threads holding or waiting on this lock. Only modified within a map compute.
+     */
+    private int                 mRefCount;
+
+    private volatile @Nullable Thread mOwner;
+
+    private LoadLock(String pKey) {
+      mKey = pKey;
+    }
+
+    /**
+     * Returns the key that this lock protects
+     *
+     * @return the key
+     */
+    public String getKey() {
+      return mKey;
+    }
+
+    @Override
+    public void close() {
+      mOwner = null;
+      mLock.unlock();
+      release(this);
+    }
+  }
+
+  /**
+   * A handle to a registered wait on another thread's load. Closing it ends the wait.
+   */
+  public final class LoadWait implements AutoCloseable {
+
+    private final LoadLock mLock;
+
+    private final Thread mThread;
+
+    private LoadWait(LoadLock pLock, Thread pThread) {
+      mLock = pLock;
+      mThread = pThread;
+    }
+
+    @Override
+    public void close() {
+      mWaiting.remove(mThread, mLock);
+      release(mLock);
+    }
+  }
+
+  private final Map<String, LoadLock> mLocks = new ConcurrentHashMap<>();
+
+  /**
+   * The lock that each thread is currently waiting on. Used for cycle detection.
+   */
+  private final Map<Thread, LoadLock> mWaiting = new ConcurrentHashMap<>();
+
+  /**
+   * Acquires the load lock for the given key, blocking until it's available.
+   *
+   * @param pKey the key
+   * @return the lock handle, which must be closed to release the lock
+   * @throws IllegalStateException if the current thread already holds the lock for the key, or if waiting would
+   *   deadlock with another loader
+   */
+  public LoadLock acquire(String pKey) {
+    LoadLock lock = acquire(pKey, null);
+    assert lock != null;
+    return lock;
+  }
+
+  /**
+   * Acquires the load lock for the given key, blocking until it's available or the timeout passes.
+   *
+   * @param pKey the key
+   * @param pTimeout the maximum time to wait, or null to wait indefinitely
+   * @return the lock handle, which must be closed to release the lock, or null if the timeout passed (or the thread was
+   *   interrupted) first
+   * @throws IllegalStateException if the current thread already holds the lock for the key, or if waiting would
+   *   deadlock with another loader
+   */
+  public @Nullable LoadLock acquire(String pKey, @Nullable Duration pTimeout) {
+    LoadLock lock = mLocks.compute(pKey, (_, existing) -> {
+      LoadLock l = (existing == null ? new LoadLock(pKey) : existing);
+      l.mRefCount++;
+      return l;
+    });
+    assert lock != null;
+
+    Thread current = Thread.currentThread();
+    if (lock.mLock.isHeldByCurrentThread()) {
+      release(lock);
+      throw new IllegalStateException("Recursive load of the key " + pKey + " detected");
+    }
+
+    if (!lock.mLock.tryLock()) {
+
+      /* Record what we're waiting on, and make sure that doesn't close a cycle */
+
+      mWaiting.put(current, lock);
+      try {
+        String cycle = findCycle(current, lock);
+        if (cycle != null) {
+          release(lock);
+          throw new IllegalStateException("Cyclic load detected: " + cycle);
+        }
+        if (pTimeout == null) lock.mLock.lock();
+        else if (!lock.mLock.tryLock(pTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+          release(lock);
+          return null;
+        }
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        release(lock);
+        return null;
+      }
+      finally {
+        mWaiting.remove(current);
+      }
+    }
+    lock.mOwner = current;
+    return lock;
+  }
+
+  /**
+   * Registers that the current thread is about to wait on a load of the given key that another thread is running,
+   * without taking the key's lock. The loading thread holds the lock, so the wait is recorded as a wait on it.
+   *
+   * @param pKey the key
+   * @return the wait handle, which must be closed once the wait is over
+   * @throws IllegalStateException if waiting would deadlock with another loader
+   */
+  public LoadWait awaitLoad(String pKey) {
+    LoadLock lock = mLocks.compute(pKey, (_, existing) -> {
+      LoadLock l = (existing == null ? new LoadLock(pKey) : existing);
+      l.mRefCount++;
+      return l;
+    });
+    assert lock != null;
+
+    Thread current = Thread.currentThread();
+    mWaiting.put(current, lock);
+    String cycle = findCycle(current, lock);
+    if (cycle != null) {
+      mWaiting.remove(current, lock);
+      release(lock);
+      throw new IllegalStateException("Cyclic load detected: " + cycle);
+    }
+    return new LoadWait(lock, current);
+  }
+
+  /**
+   * Returns whether the current thread holds the load lock for the given key
+   *
+   * @param pKey the key
+   * @return true if it's held by the current thread
+   */
+  public boolean isHeldByCurrentThread(String pKey) {
+    LoadLock lock = mLocks.get(pKey);
+    return (lock != null) && (lock.mLock.isHeldByCurrentThread());
+  }
+
+  /**
+   * Returns the number of locks currently held or waited on
+   *
+   * @return the count
+   */
+  public int size() {
+    return mLocks.size();
+  }
+
+  /**
+   * Walks the chain of owner -> waiting lock -> owner to see if it leads back to the given thread
+   *
+   * @param pThread the thread about to wait
+   * @param pLock the lock it's about to wait on
+   * @return a description of the cycle or null if there is no cycle
+   */
+  private @Nullable String findCycle(Thread pThread, LoadLock pLock) {
+    StringBuilder sb = new StringBuilder();
+    LoadLock lock = pLock;
+
+    /* The chain can't be longer than the number of waiting threads without repeating */
+
+    int limit = mWaiting.size() + 1;
+    for (int i = 0; i < limit; i++) {
+      Thread owner = lock.mOwner;
+      if (owner == null) return null;
+      if (!sb.isEmpty()) sb.append(" -> ");
+      sb.append(lock.mKey);
+      if (owner == pThread) return sb.toString();
+      LoadLock next = mWaiting.get(owner);
+      if (next == null) return null;
+      lock = next;
+    }
+    return null;
+  }
+
+  private void release(LoadLock pLock) {
+    mLocks.computeIfPresent(pLock.mKey, (_, existing) -> {
+      if (existing != pLock) return existing;
+      return (--existing.mRefCount == 0 ? null : existing);
+    });
+  }
+}
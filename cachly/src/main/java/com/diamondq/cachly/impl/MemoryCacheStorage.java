@@ -8,36 +8,70 @@ import com.diamondq.cachly.spi.CommonKeyValuePair;
 import com.diamondq.common.converters.ConverterManager;
 import org.jspecify.annotations.Nullable;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.stream.Stream;
 
 /**
- * Cache Storage of entries into memory
+ * Cache Storage of entries into memory. Expired entries are removed when they're read, and each write also checks a
+ * few records past a sweep cursor, so that entries which are never read again are still reclaimed.
  */
 public final class MemoryCacheStorage extends AbstractCacheStorage<String, String> implements BeanNameable {
 
+  /**
+   * How many records each write checks for expiry
+   */
+  private static final int SWEEP_PER_WRITE = 2;
+
   private final CacheCallbackHandler mHandler;
   private final String               mBeanName;
 
-  @SuppressWarnings("ClassCanBeRecord")
   private static final class DataRecord {
     public final           Object data;
     public final @Nullable Long   expiresAt;
 
-    private DataRecord(Object pData, @Nullable Long pExpiresAt) {
+    /**
+     * The idle time in milliseconds (or 0 if the entry doesn't expire on idle)
+     */
+    public final long accessMillis;
+
+    /**
+     * When the entry expires if it isn't read again. Only meaningful if accessMillis is set.
+     */
+    public volatile long accessExpiresAt;
+
+    private DataRecord(Object pData, long pNow, @Nullable Duration pExpiresIn, @Nullable Duration pExpiresAfterAccess) {
       data = pData;
-      expiresAt = pExpiresAt;
+      expiresAt = pExpiresIn != null ? pNow + pExpiresIn.toMillis() : null;
+      accessMillis = pExpiresAfterAccess != null ? pExpiresAfterAccess.toMillis() : 0L;
+      accessExpiresAt = pNow + accessMillis;
+    }
+
+    private boolean isExpired(long pNow) {
+      if ((expiresAt != null) && (expiresAt < pNow)) return true;
+      return (accessMillis > 0L) && (accessExpiresAt < pNow);
     }
   }
 
-  private final ConcurrentMap<String, DataRecord> mData;
+  /**
+   * The records, ordered by key so that a subtree of keys is a contiguous range
+   */
+  private final ConcurrentNavigableMap<String, DataRecord> mData;
+
+  /**
+   * The last key checked by the sweep, or null to start again from the first key. Writes racing on it only means some
+   * records are checked twice.
+   */
+  private volatile @Nullable String mSweepCursor;
 
   /**
    * Primary constructor
@@ -61,11 +95,12 @@ public final class MemoryCacheStorage extends AbstractCacheStorage<String, Strin
       null,
       null,
       null,
+      null,
       null
     );
     mBeanName = pBeanName;
     mHandler = pHandler;
-    mData = new ConcurrentHashMap<>();
+    mData = new ConcurrentSkipListMap<>();
     pHandler.registerCacheStorage(mData, this);
   }
 
@@ -78,23 +113,84 @@ public final class MemoryCacheStorage extends AbstractCacheStorage<String, Strin
   protected void writeToCache(CommonKeyValuePair<String, String> pEntry) {
     var serValue = pEntry.serValue;
     if (serValue == null) throw new IllegalStateException("serValue is null");
-    var hasOld = mData.put(pEntry.serKey,
-      new DataRecord(serValue, pEntry.expiresIn != null ? Instant.now().plus(pEntry.expiresIn).toEpochMilli() : null)
-    ) != null;
+    long now = System.currentTimeMillis();
+    var hasOld = mData.put(pEntry.serKey, new DataRecord(serValue, now, pEntry.expiresIn, pEntry.expiresAfterAccess))
+      != null;
     mHandler.handleEvent(mData, pEntry.serKey, hasOld ? CacheKeyEvent.MODIFIED : CacheKeyEvent.ADDED, pEntry.serValue);
+    sweepExpired(now, SWEEP_PER_WRITE);
   }
 
   @Override
-  protected Optional<?> readFromPrimaryCache(String pKey) {
-    DataRecord dataRecord = mData.get(pKey);
-    if (dataRecord == null) return Optional.empty();
-    if (dataRecord.expiresAt != null) {
-      if (dataRecord.expiresAt < System.currentTimeMillis()) {
-        mData.remove(pKey);
-        return Optional.empty();
+  protected void writeAllToCache(List<CommonKeyValuePair<String, String>> pEntries) {
+
+    /* Calculate the current time once for the whole batch */
+
+    long now = System.currentTimeMillis();
+    for (CommonKeyValuePair<String, String> entry : pEntries) {
+      var serValue = entry.serValue;
+      if (serValue == null) throw new IllegalStateException("serValue is null");
+      var hasOld = mData.put(entry.serKey,
+        new DataRecord(serValue, now, entry.expiresIn, entry.expiresAfterAccess)
+      ) != null;
+      mHandler.handleEvent(mData, entry.serKey, hasOld ? CacheKeyEvent.MODIFIED : CacheKeyEvent.ADDED, serValue);
+    }
+    sweepExpired(now, SWEEP_PER_WRITE * pEntries.size());
+  }
+
+  /**
+   * Checks the records after the sweep cursor, and removes any that have expired. Once the end of the keys is reached,
+   * the next sweep starts again from the first key.
+   *
+   * @param pNow the current time
+   * @param pCount the number of records to check
+   */
+  private void sweepExpired(long pNow, int pCount) {
+    String cursor = mSweepCursor;
+    for (int i = 0; i < pCount; i++) {
+      Map.Entry<String, DataRecord> entry = (cursor == null ? mData.firstEntry() : mData.higherEntry(cursor));
+      if (entry == null) {
+        cursor = null;
+        break;
       }
+      cursor = entry.getKey();
+      removeIfExpired(cursor, entry.getValue(), pNow);
     }
-    return Optional.of(dataRecord.data);
+    mSweepCursor = cursor;
+  }
+
+  /**
+   * Removes a record if it has expired
+   *
+   * @param pKey the key
+   * @param pRecord the record
+   * @param pNow the current time
+   * @return true if the record had expired
+   */
+  private boolean removeIfExpired(String pKey, DataRecord pRecord, long pNow) {
+    if (!pRecord.isExpired(pNow)) return false;
+
+    /* Only remove this record, in case it was replaced in the meantime */
+
+    if (mData.remove(pKey, pRecord)) mHandler.handleEvent(mData, pKey, CacheKeyEvent.REMOVED, pRecord.data);
+    return true;
+  }
+
+  @Override
+  protected Optional<?> readFromPrimaryCache(String pKey) {
+    return Optional.ofNullable(readValueFromPrimaryCache(pKey));
+  }
+
+  @Override
+  protected @Nullable Object readValueFromPrimaryCache(String pKey) {
+    DataRecord dataRecord = mData.get(pKey);
+    if (dataRecord == null) return null;
+    long now = System.currentTimeMillis();
+    if (removeIfExpired(pKey, dataRecord, now)) return null;
+
+    /* Reading the entry extends its idle expiry */
+
+    if (dataRecord.accessMillis > 0L) dataRecord.accessExpiresAt = now + dataRecord.accessMillis;
+    return dataRecord.data;
   }
 
   @Override
@@ -106,6 +202,21 @@ public final class MemoryCacheStorage extends AbstractCacheStorage<String, Strin
     }
   }
 
+  @Override
+  protected void invalidateKeys(String pCache, Collection<String> pKeys) {
+
+    /* Remove everything first, and only then fire the events */
+
+    List<Map.Entry<String, Object>> removed = new ArrayList<>(pKeys.size());
+    for (String key : pKeys) {
+      var origValue = mData.remove(key);
+      if (origValue != null) removed.add(new AbstractMap.SimpleEntry<>(key, origValue.data));
+    }
+    for (Map.Entry<String, Object> entry : removed) {
+      mHandler.handleEvent(mData, entry.getKey(), CacheKeyEvent.REMOVED, entry.getValue());
+    }
+  }
+
   @Override
   protected Stream<Map.Entry<String, ? extends Object>> streamPrimary() {
     @SuppressWarnings(
@@ -115,6 +226,21 @@ public final class MemoryCacheStorage extends AbstractCacheStorage<String, Strin
     return r;
   }
 
+  @Override
+  protected Stream<Map.Entry<String, ? extends Object>> streamPrimaryTree(String pKeyStr) {
+
+    /* The children are every key from root + "/" up to (but not including) root + "0", which is the next character */
+
+    String rootKey = toValueKeyString(pKeyStr);
+    DataRecord root = mData.get(rootKey);
+    //noinspection HardcodedFileSeparator
+    Stream<Map.Entry<String, DataRecord>> records = mData.subMap(rootKey + "/", rootKey + "0").entrySet().stream();
+    if (root != null) records = Stream.concat(Stream.of(new AbstractMap.SimpleEntry<>(rootKey, root)), records);
+    return records.<Map.Entry<String, ? extends Object>>map((entry) -> new AbstractMap.SimpleEntry<>(entry.getKey(),
+      entry.getValue().data
+    ));
+  }
+
   @Override
   protected Stream<Entry<String, ? extends Object>> streamMetaEntries() {
     return streamPrimary();
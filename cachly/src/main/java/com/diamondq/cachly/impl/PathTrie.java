@@ -0,0 +1,174 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.CacheLoaderInfo;
+import com.diamondq.cachly.spi.CacheStorage;
+import com.diamondq.cachly.spi.KeyDetails;
+import com.diamondq.cachly.spi.PathPolicy;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable trie compiled from the configured paths, storages, serializers, policies and loaders. Each node holds
+ * the {@link KeyDetails} that apply to keys ending at that path (if there is a loader for it), so setting up a key is
+ * just a walk down the trie, and all keys resolved from the same template share the same details.
+ * <p>
+ * A new trie is built whenever the configuration changes. The old one is then retired, which marks all its details
+ * stale so that keys holding them are set up again against the new trie.
+ */
+final class PathTrie {
+
+  static final class Node {
+
+    private final Map<String, Node> mChildren = new HashMap<>();
+
+    private @Nullable KeyDetails<Object> mDetails;
+
+    /**
+     * Returns the child node for the base key of a key part
+     *
+     * @param pBaseKey the base key (which may contain / separators)
+     * @return the node or null if no configured path goes through it
+     */
+    @Nullable Node child(String pBaseKey) {
+      Node child = mChildren.get(pBaseKey);
+      if ((child != null) || (pBaseKey.indexOf('/') == -1)) return child;
+      Node node = this;
+      for (String segment : pBaseKey.split("/")) {
+        node = node.mChildren.get(segment);
+        if (node == null) return null;
+      }
+      return node;
+    }
+
+    /**
+     * Returns the details for keys ending at this node
+     *
+     * @return the details or null if there is no loader (or storage or serializer) covering this path
+     */
+    @Nullable KeyDetails<Object> getDetails() {
+      return mDetails;
+    }
+  }
+
+  static final PathTrie EMPTY = new PathTrie(new Node(), Collections.emptyList());
+
+  private final Node mRoot;
+
+  private final List<KeyDetails<Object>> mAllDetails;
+
+  private PathTrie(Node pRoot, List<KeyDetails<Object>> pAllDetails) {
+    mRoot = pRoot;
+    mAllDetails = pAllDetails;
+  }
+
+  /**
+   * Compiles a trie from the current configuration
+   *
+   * @param pStorages the storages by path
+   * @param pSerializerNames the serializer names by path
+   * @param pPolicies the policies by path
+   * @param pLoaders the loaders by path
+   * @return the trie
+   */
+  static PathTrie build(Map<String, CacheStorage> pStorages, Map<String, String> pSerializerNames,
+    Map<String, PathPolicy> pPolicies, Map<String, CacheLoaderInfo<Object>> pLoaders) {
+
+    /* Create a node for every configured path */
+
+    Set<String> paths = new LinkedHashSet<>();
+    paths.addAll(pStorages.keySet());
+    paths.addAll(pSerializerNames.keySet());
+    paths.addAll(pPolicies.keySet());
+    paths.addAll(pLoaders.keySet());
+    Node root = new Node();
+    for (String path : paths) {
+      Node node = root;
+      for (String segment : path.split("/")) {
+        node = node.mChildren.computeIfAbsent(segment, (_) -> new Node());
+      }
+    }
+
+    /* Now resolve the details, with each node inheriting from its parent */
+
+    List<KeyDetails<Object>> allDetails = new ArrayList<>();
+    for (Map.Entry<String, Node> entry : root.mChildren.entrySet()) {
+      resolve(entry.getKey(),
+        entry.getValue(),
+        null,
+        null,
+        PathPolicy.DEFAULT,
+        pStorages,
+        pSerializerNames,
+        pPolicies,
+        pLoaders,
+        allDetails
+      );
+    }
+    return new PathTrie(root, allDetails);
+  }
+
+  private static void resolve(String pPath, Node pNode, @Nullable CacheStorage pLastStorage,
+    @Nullable String pLastSerializerName, PathPolicy pLastPolicy, Map<String, CacheStorage> pStorages,
+    Map<String, String> pSerializerNames, Map<String, PathPolicy> pPolicies,
+    Map<String, CacheLoaderInfo<Object>> pLoaders, List<KeyDetails<Object>> pAllDetails) {
+    CacheStorage storage = pStorages.get(pPath);
+    if (storage == null) storage = pLastStorage;
+    String serializerName = pSerializerNames.get(pPath);
+    if (serializerName == null) serializerName = pLastSerializerName;
+    PathPolicy policy = pPolicies.get(pPath);
+    if (policy == null) policy = pLastPolicy;
+    else if (policy.isInheritPolicy()) policy = policy.inheritFrom(pLastPolicy);
+
+    CacheLoaderInfo<Object> loaderInfo = pLoaders.get(pPath);
+    if ((storage != null) && (serializerName != null) && (loaderInfo != null)) {
+      KeyDetails<Object> details = new KeyDetails<>(storage,
+        serializerName,
+        loaderInfo.supportsNull,
+        loaderInfo.loader,
+        policy
+      );
+      pNode.mDetails = details;
+      pAllDetails.add(details);
+    }
+
+    for (Map.Entry<String, Node> entry : pNode.mChildren.entrySet()) {
+      //noinspection HardcodedFileSeparator
+      resolve(pPath + "/" + entry.getKey(),
+        entry.getValue(),
+        storage,
+        serializerName,
+        policy,
+        pStorages,
+        pSerializerNames,
+        pPolicies,
+        pLoaders,
+        pAllDetails
+      );
+    }
+  }
+
+  /**
+   * Returns the root of the trie
+   *
+   * @return the root
+   */
+  Node getRoot() {
+    return mRoot;
+  }
+
+  /**
+   * Retires this trie, marking all of its details stale
+   */
+  void retire() {
+    for (KeyDetails<Object> details : mAllDetails) {
+      details.markStale();
+    }
+  }
+}
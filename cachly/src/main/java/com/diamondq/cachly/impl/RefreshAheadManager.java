@@ -0,0 +1,193 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.AccessContext;
+import com.diamondq.cachly.spi.KeySPI;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Tracks the entries on refresh-ahead paths. When such an entry is stored with an expiry, a refresh is scheduled for
+ * once the path's refresh-ahead factor of the expiry has elapsed. At that point, if the entry was read since it was
+ * stored (or it has a change listener), the refresher is called on the executor to reload it. Otherwise, the entry is
+ * left to expire normally.
+ * <p>
+ * The refreshes are timed by a single scheduler thread owned by the manager. A refresh that is replaced or cancelled
+ * is removed from the scheduler right away, so rewriting a key doesn't pile up pending tasks until their delays pass.
+ */
+final class RefreshAheadManager {
+
+  private static final class Entry {
+    final AccessContext accessContext;
+
+    final KeySPI<?> key;
+
+    volatile boolean read;
+
+    /**
+     * The scheduled refresh, once it has been scheduled
+     */
+    volatile @Nullable ScheduledFuture<?> future;
+
+    Entry(AccessContext pAccessContext, KeySPI<?> pKey) {
+      accessContext = pAccessContext;
+      key = pKey;
+    }
+
+    void cancel() {
+      ScheduledFuture<?> scheduled = future;
+      if (scheduled != null) scheduled.cancel(false);
+    }
+  }
+
+  private final Executor mExecutor;
+
+  private final BiConsumer<AccessContext, KeySPI<?>> mRefresher;
+
+  /**
+   * Times the refreshes. Its thread is only started once the first refresh is scheduled.
+   */
+  private final ScheduledThreadPoolExecutor mScheduler;
+
+  /**
+   * The currently scheduled entries by key string. A scheduled refresh only runs if its entry is still the current one.
+   */
+  private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+
+  /**
+   * The keys that have change listeners, and are therefore always considered hot until they're invalidated or removed
+   */
+  private final Set<String> mAlwaysHot = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Primary constructor
+   *
+   * @param pExecutor the executor to run the refreshes on
+   * @param pRefresher the function that reloads a key
+   */
+  RefreshAheadManager(Executor pExecutor, BiConsumer<AccessContext, KeySPI<?>> pRefresher) {
+    mExecutor = pExecutor;
+    mRefresher = pRefresher;
+    mScheduler = new ScheduledThreadPoolExecutor(1,
+      Thread.ofPlatform().name("cachly-refresh-ahead").daemon().factory()
+    );
+    mScheduler.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Called after an entry has been stored. If the path has refresh-ahead enabled and the entry expires, then a refresh
+   * is scheduled, replacing any earlier one. Otherwise, any earlier refresh is cancelled.
+   *
+   * @param pAccessContext the access context
+   * @param pKey the resolved key
+   * @param pExpiry the expiry of the stored entry (or null if it doesn't expire, or wasn't found)
+   */
+  void stored(AccessContext pAccessContext, KeySPI<?> pKey, @Nullable Duration pExpiry) {
+    var policy = pKey.getPathPolicy();
+    if (!policy.isRefreshAhead()) return;
+
+    String keyStr = pKey.toString();
+    if (pExpiry == null) {
+      cancelEntry(keyStr);
+      return;
+    }
+    Entry entry = new Entry(pAccessContext, pKey);
+    Entry previous = mEntries.put(keyStr, entry);
+    if (previous != null) previous.cancel();
+    long delay = (long) (pExpiry.toMillis() * policy.getRefreshAheadFactor());
+    try {
+      entry.future = mScheduler.schedule(() -> mExecutor.execute(() -> refresh(keyStr, entry)),
+        delay,
+        TimeUnit.MILLISECONDS
+      );
+    }
+    catch (RejectedExecutionException ex) {
+
+      /* The manager has been shut down, so the entry is left to expire normally */
+
+      mEntries.remove(keyStr, entry);
+    }
+  }
+
+  /**
+   * Records that an entry was read
+   *
+   * @param pKeyStr the key string
+   */
+  void read(String pKeyStr) {
+    Entry entry = mEntries.get(pKeyStr);
+    if (entry != null) entry.read = true;
+  }
+
+  /**
+   * Marks a key as always hot
+   *
+   * @param pKeyStr the key string
+   */
+  void alwaysHot(String pKeyStr) {
+    mAlwaysHot.add(pKeyStr);
+  }
+
+  /**
+   * Cancels any scheduled refresh of the key, such as when it's invalidated or removed. The key is also no longer
+   * considered always hot.
+   *
+   * @param pKeyStr the key string
+   */
+  void cancel(String pKeyStr) {
+    cancelEntry(pKeyStr);
+    mAlwaysHot.remove(pKeyStr);
+  }
+
+  /**
+   * Cancels every scheduled refresh, such as when the whole cache is invalidated
+   */
+  void clear() {
+    for (String keyStr : mEntries.keySet()) {
+      cancelEntry(keyStr);
+    }
+    mAlwaysHot.clear();
+  }
+
+  /**
+   * Cancels every scheduled refresh and stops the scheduler, once the engine is shut down
+   */
+  void shutdown() {
+    mScheduler.shutdownNow();
+    clear();
+  }
+
+  private void cancelEntry(String pKeyStr) {
+    Entry entry = mEntries.remove(pKeyStr);
+    if (entry != null) entry.cancel();
+  }
+
+  private void refresh(String pKeyStr, Entry pEntry) {
+
+    /* If the entry was stored again or invalidated, then this refresh is no longer relevant */
+
+    if (mEntries.get(pKeyStr) != pEntry) return;
+    if ((!pEntry.read) && (!mAlwaysHot.contains(pKeyStr))) {
+      mEntries.remove(pKeyStr, pEntry);
+      return;
+    }
+    try {
+      mRefresher.accept(pEntry.accessContext, pEntry.key);
+    }
+    finally {
+
+      /* A successful refresh stores a new entry, so only clean up if that didn't happen */
+
+      mEntries.remove(pKeyStr, pEntry);
+    }
+  }
+}
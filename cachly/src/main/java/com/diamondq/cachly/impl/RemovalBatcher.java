@@ -0,0 +1,66 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.spi.KeySPI;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Collects the keys that the storages report as removed (invalidated, evicted or expired) and hands them to a handler
+ * in batches on the executor. The reporting thread, which is often the native cache's own thread, only records the
+ * key. Repeated removals of the same key before a batch runs are collapsed.
+ */
+final class RemovalBatcher {
+
+  private final Executor mExecutor;
+
+  private final Consumer<Collection<KeySPI<?>>> mHandler;
+
+  /**
+   * The removed keys that haven't been handled yet, by key string
+   */
+  private final Map<String, KeySPI<?>> mPending = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+  /**
+   * Primary constructor
+   *
+   * @param pExecutor the executor to run the batches on
+   * @param pHandler the function that handles a batch of removed keys
+   */
+  RemovalBatcher(Executor pExecutor, Consumer<Collection<KeySPI<?>>> pHandler) {
+    mExecutor = pExecutor;
+    mHandler = pHandler;
+  }
+
+  /**
+   * Records that a key was removed
+   *
+   * @param pKey the key
+   */
+  void removed(KeySPI<?> pKey) {
+    mPending.put(pKey.toString(), pKey);
+    if (mScheduled.compareAndSet(false, true)) mExecutor.execute(this::drain);
+  }
+
+  private void drain() {
+
+    /* Clear the flag first, so that a key added while draining either gets picked up here or schedules a new batch */
+
+    mScheduled.set(false);
+    List<KeySPI<?>> batch = new ArrayList<>();
+    for (Iterator<Map.Entry<String, KeySPI<?>>> i = mPending.entrySet().iterator(); i.hasNext(); ) {
+      batch.add(i.next().getValue());
+      i.remove();
+    }
+    if (!batch.isEmpty()) mHandler.accept(batch);
+  }
+}
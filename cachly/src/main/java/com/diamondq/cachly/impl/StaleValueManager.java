@@ -0,0 +1,139 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.CacheResult;
+import com.diamondq.cachly.spi.KeySPI;
+import com.diamondq.cachly.spi.StaticCacheResult;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the soft expiry of entries on stale-while-revalidate paths. The storage keeps such an entry for its expiry
+ * plus the path's grace window, so the value itself is never copied. Only the time at which the entry turns stale is
+ * recorded here, either its expiry or the moment it was invalidated through a dependency. Within the grace window
+ * after that, a reader is given the stored value as stale while the entry is reloaded in the background.
+ */
+final class StaleValueManager {
+
+  /**
+   * A result that is being served after its entry expired or was invalidated
+   *
+   * @param <V> the value type
+   */
+  static final class StaleCacheResult<V extends @Nullable Object> extends StaticCacheResult<V> {
+    StaleCacheResult(@Nullable V pValue) {
+      super(pValue, true);
+    }
+  }
+
+  /**
+   * The state of a stored entry
+   */
+  enum Staleness {
+    /**
+     * The entry can be served as is
+     */
+    FRESH,
+
+    /**
+     * The entry is within its grace window, so it's served as stale while it's reloaded
+     */
+    STALE,
+
+    /**
+     * The grace window has passed, so the entry must be loaded again before it's served
+     */
+    EXPIRED
+  }
+
+  /**
+   * The soft expiry of an entry
+   *
+   * @param staleAt when the entry turns stale
+   * @param staleUntil when the grace window ends
+   * @param revalidating true once a background reload has been started
+   */
+  private record Entry(long staleAt, long staleUntil, boolean revalidating) {
+  }
+
+  private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+
+  /**
+   * Called after an entry has been stored. If the entry expires, its soft expiry is recorded, otherwise any previous
+   * one is discarded.
+   *
+   * @param pKey the resolved key
+   * @param pResult the stored result
+   */
+  void stored(KeySPI<?> pKey, CacheResult<?> pResult) {
+    Duration grace = pKey.getPathPolicy().getStaleWhileRevalidate();
+    if (grace == null) return;
+    String keyStr = pKey.toString();
+    Duration expiry = pKey.getPathPolicy().getWriteExpiry(pResult);
+    if ((expiry == null) || (!pResult.entryFound())) {
+      mEntries.remove(keyStr);
+      return;
+    }
+    long staleAt = System.currentTimeMillis() + expiry.toMillis();
+    mEntries.put(keyStr, new Entry(staleAt, staleAt + grace.toMillis(), false));
+  }
+
+  /**
+   * Called instead of removing an entry that is invalidated through a dependency. The entry is stale right away, and
+   * stays in the storage for the grace window.
+   *
+   * @param pKey the resolved key
+   * @return true if the entry is kept, or false if the path doesn't keep stale entries
+   */
+  boolean invalidated(KeySPI<?> pKey) {
+    Duration grace = pKey.getPathPolicy().getStaleWhileRevalidate();
+    if (grace == null) return false;
+    long now = System.currentTimeMillis();
+    mEntries.put(pKey.toString(), new Entry(now, now + grace.toMillis(), false));
+    return true;
+  }
+
+  /**
+   * Returns the state of a stored entry
+   *
+   * @param pKeyStr the key string
+   * @return the state
+   */
+  Staleness check(String pKeyStr) {
+    Entry entry = mEntries.get(pKeyStr);
+    if (entry == null) return Staleness.FRESH;
+    long now = System.currentTimeMillis();
+    if (now < entry.staleAt) return Staleness.FRESH;
+    return (now < entry.staleUntil ? Staleness.STALE : Staleness.EXPIRED);
+  }
+
+  /**
+   * Claims the background reload of a stale entry, so that only a single one is started
+   *
+   * @param pKeyStr the key string
+   * @return true if the caller should start the reload
+   */
+  boolean revalidate(String pKeyStr) {
+    Entry entry = mEntries.get(pKeyStr);
+    if ((entry == null) || (entry.revalidating)) return false;
+    return mEntries.replace(pKeyStr, entry, new Entry(entry.staleAt, entry.staleUntil, true));
+  }
+
+  /**
+   * Discards the soft expiry of an entry, once it's no longer stored
+   *
+   * @param pKeyStr the key string
+   */
+  void remove(String pKeyStr) {
+    mEntries.remove(pKeyStr);
+  }
+
+  /**
+   * Discards all the soft expiries
+   */
+  void clear() {
+    mEntries.clear();
+  }
+}
@@ -0,0 +1,113 @@
+package com.diamondq.cachly.impl;
+
+import com.diamondq.cachly.spi.KeySPI;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The inverted index from the tags that loaders attach to their results to the keys carrying them. A key's tags are
+ * replaced each time it's stored, and dropped once it's invalidated or the storage reports it as removed, so the index
+ * stays proportional to the number of resident tagged entries.
+ */
+final class TagIndex {
+
+  /**
+   * The tagged keys by tag, and then by key string
+   */
+  private final Map<String, Map<String, KeySPI<?>>> mKeysByTag = new ConcurrentHashMap<>();
+
+  /**
+   * The tags of each tagged key
+   */
+  private final Map<String, Set<String>> mTagsByKey = new ConcurrentHashMap<>();
+
+  /**
+   * Records the tags of a stored key, replacing any it had before
+   *
+   * @param pKey the resolved key
+   * @param pTags the tags (may be empty)
+   */
+  void tagged(KeySPI<?> pKey, Set<String> pTags) {
+    String keyStr = pKey.toString();
+    if (pTags.isEmpty()) {
+      removed(keyStr);
+      return;
+    }
+    Set<String> tags = Set.copyOf(pTags);
+    mTagsByKey.compute(keyStr, (_, previous) -> {
+
+      /*
+       * Done within the compute, so that concurrent updates of the same key are applied one at a time. Each tag's key
+       * map is also only changed within a compute, so an emptied map can't be dropped while a key is being added.
+       */
+
+      if (previous != null) {
+        for (String tag : previous) {
+          if (!tags.contains(tag)) untag(tag, keyStr);
+        }
+      }
+      for (String tag : tags) {
+        mKeysByTag.compute(tag, (_, keys) -> {
+          Map<String, KeySPI<?>> result = (keys == null ? new ConcurrentHashMap<>() : keys);
+          result.put(keyStr, pKey);
+          return result;
+        });
+      }
+      return tags;
+    });
+  }
+
+  /**
+   * Drops a key from the index
+   *
+   * @param pKeyStr the key string
+   */
+  void removed(String pKeyStr) {
+    mTagsByKey.computeIfPresent(pKeyStr, (_, previous) -> {
+      for (String tag : previous) {
+        untag(tag, pKeyStr);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Returns a snapshot of the keys carrying a tag
+   *
+   * @param pTag the tag
+   * @return the keys
+   */
+  List<KeySPI<?>> getKeys(String pTag) {
+    Map<String, KeySPI<?>> keys = mKeysByTag.get(pTag);
+    if (keys == null) return Collections.emptyList();
+    return List.copyOf(keys.values());
+  }
+
+  /**
+   * Returns the number of tagged keys
+   *
+   * @return the number of keys
+   */
+  int size() {
+    return mTagsByKey.size();
+  }
+
+  /**
+   * Drops everything
+   */
+  void clear() {
+    mTagsByKey.clear();
+    mKeysByTag.clear();
+  }
+
+  private void untag(String pTag, String pKeyStr) {
+    mKeysByTag.computeIfPresent(pTag, (_, keys) -> {
+      keys.remove(pKeyStr);
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+}
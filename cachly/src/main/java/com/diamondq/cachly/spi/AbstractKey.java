@@ -39,6 +39,11 @@ public class AbstractKey<O extends @Nullable Object> implements KeySPI<O> {
    */
   protected final boolean mHasPlaceholders;
 
+  /**
+   * The lazily computed identity
+   */
+  private volatile @Nullable KeyIdentity mIdentity;
+
   /**
    * Primary Constructor
    *
@@ -113,7 +118,8 @@ public class AbstractKey<O extends @Nullable Object> implements KeySPI<O> {
 
   @Override
   public boolean hasKeyDetails() {
-    return mKeyDetails != null;
+    KeyDetails<O> keyDetails = mKeyDetails;
+    return (keyDetails != null) && (!keyDetails.isStale());
   }
 
   @Override
@@ -148,6 +154,14 @@ public class AbstractKey<O extends @Nullable Object> implements KeySPI<O> {
     return keyDetails.getLoader();
   }
 
+  @Override
+  public PathPolicy getPathPolicy() {
+    KeyDetails<O> keyDetails = mKeyDetails;
+    if (keyDetails == null)
+      throw new IllegalStateException("Unable to find a path policy that will cover " + getFullBaseKey());
+    return keyDetails.getPathPolicy();
+  }
+
   @SuppressWarnings("SuspiciousGetterSetter")
   @Override
   public String getBaseKey() {
@@ -163,6 +177,16 @@ public class AbstractKey<O extends @Nullable Object> implements KeySPI<O> {
     return mKey;
   }
 
+  @Override
+  public KeyIdentity getIdentity() {
+    KeyIdentity identity = mIdentity;
+    if (identity == null) {
+      identity = new KeyIdentity(mKey, getFullBaseKey(), hashCode());
+      mIdentity = identity;
+    }
+    return identity;
+  }
+
   @Override
   public String toString() {
     return mKey;
@@ -6,6 +6,7 @@ import com.diamondq.cachly.CacheLoaderInfo;
 import org.jspecify.annotations.Nullable;
 
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * SPI level methods on the cache engine
@@ -97,9 +98,77 @@ public interface CacheEngine extends Cache {
    */
   void removeAccessContextSPI(AccessContextSPI<?> pAccessContextSPI);
 
+  /**
+   * Adds a new streaming serializer
+   *
+   * @param pSerializer the serializer
+   */
+  void addStreamingSerializer(StreamingSerializer pSerializer);
+
+  /**
+   * Removes a streaming serializer
+   *
+   * @param pSerializer the serializer
+   */
+  void removeStreamingSerializer(StreamingSerializer pSerializer);
+
+  /**
+   * Returns the streaming serializer with the given name
+   *
+   * @param pName the serializer name
+   * @return the serializer or null if there isn't one, in which case the ByteBuffer converters are used
+   */
+  @Nullable StreamingSerializer getStreamingSerializer(String pName);
+
   /**
    * If it's not created via CDI or OSGi, this method must be called to finish the internal setup
    */
   void activate();
 
+  /**
+   * Shuts down the executors that the engine started for its own tasks, such as timing refresh-ahead. OSGi calls this
+   * when the component is deactivated. Otherwise, it should be called once the engine is no longer used.
+   */
+  void deactivate();
+
+  /**
+   * Called by a CacheStorage when a key has been removed from it, whether by an invalidation or because it was evicted
+   * or expired. The dependency edges of keys that are no longer resident are pruned in the background.
+   *
+   * @param pKey the key
+   */
+  void keyRemoved(KeySPI<?> pKey);
+
+  /**
+   * Returns the number of keys currently held in the dependency graph. It's meant to be exposed as a gauge, and should
+   * stay proportional to the number of resident entries that have dependencies.
+   *
+   * @return the number of keys
+   */
+  int getDependencyGraphSize();
+
+  /**
+   * Returns the number of keys currently held in the tag index. Like the dependency graph, it should stay proportional
+   * to the number of resident entries that carry tags.
+   *
+   * @return the number of keys
+   */
+  int getTagIndexSize();
+
+  /**
+   * Returns the executor that loads, callbacks and write-back are run on. This is either the executor service the
+   * engine was created with, or a virtual thread per task executor if the engine is configured for virtual threads.
+   *
+   * @return the executor
+   */
+  ExecutorService getTaskExecutor();
+
+  /**
+   * Returns the metrics of the load limits of each path that has them. A path only shows up once one of its keys has
+   * been loaded.
+   *
+   * @return the metrics by configured path
+   */
+  Map<String, LoadMetrics> getLoadMetrics();
+
 }
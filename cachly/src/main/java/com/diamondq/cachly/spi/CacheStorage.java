@@ -8,6 +8,8 @@ import com.diamondq.common.lambda.interfaces.Consumer3;
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -17,6 +19,11 @@ import java.util.stream.Stream;
  */
 public interface CacheStorage {
 
+  /**
+   * The marker returned by {@link #queryValueForKey(AccessContext, KeySPI)} when the key isn't present
+   */
+  Object VALUE_NOT_FOUND = new Object();
+
   /**
    * Tries to look up a given key within the storage
    *
@@ -27,6 +34,39 @@ public interface CacheStorage {
    */
   <V extends @Nullable Object> CacheResult<V> queryForKey(AccessContext pAccessContext, KeySPI<V> pKey);
 
+  /**
+   * Tries to look up a given key within the storage, returning just the value. This is the allocation-free variant of
+   * {@link #queryForKey(AccessContext, KeySPI)} used on the cache hit path.
+   *
+   * @param pAccessContext the access context
+   * @param pKey the key
+   * @param <V> the key type
+   * @return the value (which may be null), or {@link #VALUE_NOT_FOUND} if the key isn't present
+   */
+  default <V extends @Nullable Object> @Nullable Object queryValueForKey(AccessContext pAccessContext,
+    KeySPI<V> pKey) {
+    CacheResult<V> result = queryForKey(pAccessContext, pKey);
+    if (!result.entryFound()) return VALUE_NOT_FOUND;
+    return result.isNull() ? null : result.getValue();
+  }
+
+  /**
+   * Tries to look up a set of keys within the storage in a single pass
+   *
+   * @param pAccessContext the access context
+   * @param pKeys the keys
+   * @param <V> the key type
+   * @return the results by key. Keys that were not found may be missing or mapped to a not found result
+   */
+  default <V extends @Nullable Object> Map<KeySPI<V>, CacheResult<V>> queryForKeys(AccessContext pAccessContext,
+    Collection<KeySPI<V>> pKeys) {
+    Map<KeySPI<V>, CacheResult<V>> results = new HashMap<>();
+    for (KeySPI<V> key : pKeys) {
+      results.put(key, queryForKey(pAccessContext, key));
+    }
+    return results;
+  }
+
   /**
    * Stores a new value into the Cache Storage
    *
@@ -37,6 +77,20 @@ public interface CacheStorage {
    */
   <V extends @Nullable Object> void store(AccessContext pAccessContext, KeySPI<V> pKey, CacheResult<V> pLoadedResult);
 
+  /**
+   * Stores a set of values into the Cache Storage in a single pass
+   *
+   * @param pAccessContext the Access Context
+   * @param pResults the data to store by key
+   * @param <V> the key type
+   */
+  default <V extends @Nullable Object> void storeAll(AccessContext pAccessContext,
+    Map<KeySPI<V>, CacheResult<V>> pResults) {
+    for (Map.Entry<KeySPI<V>, CacheResult<V>> entry : pResults.entrySet()) {
+      store(pAccessContext, entry.getKey(), entry.getValue());
+    }
+  }
+
   /**
    * Invalidates (i.e., removes) a given key and its value from the Cache Storage
    *
@@ -46,6 +100,18 @@ public interface CacheStorage {
    */
   <V extends @Nullable Object> void invalidate(AccessContext pAccessContext, KeySPI<V> pKey);
 
+  /**
+   * Invalidates (i.e., removes) a set of keys and their values from the Cache Storage in a single pass
+   *
+   * @param pAccessContext the Access Context
+   * @param pKeys the keys
+   */
+  default void invalidateKeys(AccessContext pAccessContext, Collection<? extends KeySPI<?>> pKeys) {
+    for (KeySPI<?> key : pKeys) {
+      invalidate(pAccessContext, key);
+    }
+  }
+
   /**
    * Returns a stream of all stored keys and values
    *
@@ -55,6 +121,38 @@ public interface CacheStorage {
   Stream<Map.Entry<Key<? extends @Nullable Object>, CacheResult<? extends @Nullable Object>>> streamEntries(
     AccessContext pAccessContext);
 
+  /**
+   * Returns a stream of the stored keys and values in a subtree, which is the given key and every key below it. By
+   * default, every entry is streamed and filtered, but storages that keep an ordered index of their keys should only
+   * visit the subtree.
+   *
+   * @param pAccessContext the access context
+   * @param pKeyStr the key string at the root of the subtree
+   * @return the stream of Key and Values
+   */
+  default Stream<Map.Entry<Key<? extends @Nullable Object>, CacheResult<? extends @Nullable Object>>> streamEntries(
+    AccessContext pAccessContext, String pKeyStr) {
+    //noinspection HardcodedFileSeparator
+    String childPrefix = pKeyStr + "/";
+    return streamEntries(pAccessContext).filter((entry) -> {
+      String keyStr = entry.getKey().toString();
+      return keyStr.startsWith(childPrefix) || keyStr.equals(pKeyStr);
+    });
+  }
+
+  /**
+   * Returns a stream of the stored keys in a subtree, which is the given key and every key below it. By default, the
+   * keys are taken from {@link #streamEntries(AccessContext, String)}, but storages that serialize their values should
+   * avoid decoding them.
+   *
+   * @param pAccessContext the access context
+   * @param pKeyStr the key string at the root of the subtree
+   * @return the stream of Keys
+   */
+  default Stream<Key<? extends @Nullable Object>> streamKeys(AccessContext pAccessContext, String pKeyStr) {
+    return streamEntries(pAccessContext, pKeyStr).map(Map.Entry::getKey);
+  }
+
   /**
    * Invalidates all the keys and values
    *
@@ -0,0 +1,66 @@
+package com.diamondq.cachly.spi;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Introspected;
+
+/**
+ * Engine wide configuration (normally reading from the Micronaut application.yml), but can be manually created as well
+ */
+@SuppressWarnings("unused")
+@Introspected
+@ConfigurationProperties(CachlyEngineConfiguration.CACHLY_ENGINE_PREFIX)
+public class CachlyEngineConfiguration {
+
+  /**
+   * The prefix in the Micronaut configuration for these configuration entries
+   */
+  public static final String CACHLY_ENGINE_PREFIX = "cachly.engine";
+
+  private double mTraceSampleRate;
+
+  private boolean mVirtualThreads;
+
+  /**
+   * Gets the fraction of cache hits that are traced through a Context
+   *
+   * @return the rate between 0 and 1
+   */
+  public double getTraceSampleRate() {
+    return mTraceSampleRate;
+  }
+
+  /**
+   * Sets the fraction of cache hits that are traced through a Context. Misses and errors are always traced, but hits
+   * normally take a fast path that doesn't create a Context at all.
+   *
+   * @param pTraceSampleRate the rate, which must be between 0 and 1
+   */
+  public void setTraceSampleRate(double pTraceSampleRate) {
+    if ((pTraceSampleRate < 0.0) || (pTraceSampleRate > 1.0)) {
+      throw new IllegalArgumentException("The trace sample rate must be between 0 and 1, but was " + pTraceSampleRate);
+    }
+    mTraceSampleRate = pTraceSampleRate;
+  }
+
+  /**
+   * Gets whether loads, callbacks and write-back run on virtual threads
+   *
+   * @return true if a virtual thread is started per task
+   */
+  public boolean getVirtualThreads() {
+    return mVirtualThreads;
+  }
+
+  /**
+   * Sets whether loads, callbacks and write-back run on virtual threads. Loaders are mostly I/O bound, so this lets a
+   * large number of concurrent misses wait on their backends without tying up a platform thread each. The per-key load
+   * locks are ReentrantLocks and the storage dictionaries are lock-free. The only monitors left guard short in-memory
+   * updates of the dependency graph, and since Java 24 a virtual thread blocked on a monitor doesn't pin its carrier.
+   *
+   * @param pVirtualThreads true to start a virtual thread per task instead of using the executor service
+   */
+  public void setVirtualThreads(boolean pVirtualThreads) {
+    mVirtualThreads = pVirtualThreads;
+  }
+
+}
@@ -5,6 +5,8 @@ import io.micronaut.context.annotation.Parameter;
 import io.micronaut.core.annotation.Introspected;
 import org.jspecify.annotations.Nullable;
 
+import java.time.Duration;
+
 /**
  * Configuration class (normally reading from the Micronaut application.yml), but can be manually created as well
  */
@@ -22,6 +24,30 @@ public class CachlyPathConfiguration {
 
   private @Nullable String mSerializer;
 
+  private @Nullable Double mRefreshAheadFactor;
+
+  private @Nullable Duration mStaleWhileRevalidate;
+
+  private @Nullable Duration mExpireAfterWrite;
+
+  private @Nullable Duration mExpireAfterAccess;
+
+  private @Nullable Duration mNegativeTtl;
+
+  private @Nullable Duration mMaxTtl;
+
+  private @Nullable Boolean mLazyInvalidation;
+
+  private @Nullable Integer mMaxConcurrentLoads;
+
+  private @Nullable Integer mMaxQueuedLoads;
+
+  private @Nullable Duration mLoadTimeout;
+
+  private @Nullable OverloadPolicy mOverloadPolicy;
+
+  private boolean mInheritPolicy;
+
   private final String mName;
 
   /**
@@ -78,4 +104,252 @@ public class CachlyPathConfiguration {
     mSerializer = pSerializer;
   }
 
-}
\ No newline at end of file
+  /**
+   * Gets the refresh-ahead factor
+   *
+   * @return the factor or null if refresh-ahead is disabled
+   */
+  public @Nullable Double getRefreshAheadFactor() {
+    return mRefreshAheadFactor;
+  }
+
+  /**
+   * Sets the refresh-ahead factor. Once this fraction of an entry's expiry has elapsed, and the entry has been read
+   * since it was stored (or has a change listener), it is reloaded in the background so that readers never see it
+   * expire. For example, 0.8 refreshes at 80% of the expiry.
+   *
+   * @param pRefreshAheadFactor the factor, which must be greater than 0 and less than 1
+   */
+  public void setRefreshAheadFactor(Double pRefreshAheadFactor) {
+    if ((pRefreshAheadFactor <= 0.0) || (pRefreshAheadFactor >= 1.0)) {
+      throw new IllegalArgumentException(
+        "The refresh-ahead factor for " + mName + " must be between 0 and 1, but was " + pRefreshAheadFactor);
+    }
+    mRefreshAheadFactor = pRefreshAheadFactor;
+  }
+
+  /**
+   * Gets the stale-while-revalidate grace window
+   *
+   * @return the grace window or null if disabled
+   */
+  public @Nullable Duration getStaleWhileRevalidate() {
+    return mStaleWhileRevalidate;
+  }
+
+  /**
+   * Sets the stale-while-revalidate grace window. When an entry expires, or is invalidated because something it
+   * depends on changed, its previous value is served (flagged as stale) for this long while a single background
+   * reload runs.
+   *
+   * @param pStaleWhileRevalidate the grace window
+   */
+  public void setStaleWhileRevalidate(Duration pStaleWhileRevalidate) {
+    mStaleWhileRevalidate = requirePositive("stale-while-revalidate window", pStaleWhileRevalidate);
+  }
+
+  /**
+   * Gets how long entries live after being written
+   *
+   * @return the duration or null if entries don't expire
+   */
+  public @Nullable Duration getExpireAfterWrite() {
+    return mExpireAfterWrite;
+  }
+
+  /**
+   * Sets how long entries live after being written. An expiry set on the result (or passed to set) takes precedence.
+   *
+   * @param pExpireAfterWrite the duration
+   */
+  public void setExpireAfterWrite(Duration pExpireAfterWrite) {
+    mExpireAfterWrite = requirePositive("expire-after-write", pExpireAfterWrite);
+  }
+
+  /**
+   * Gets how long entries live after they were last read or written
+   *
+   * @return the duration or null if entries don't expire on idle
+   */
+  public @Nullable Duration getExpireAfterAccess() {
+    return mExpireAfterAccess;
+  }
+
+  /**
+   * Sets how long entries live after they were last read or written
+   *
+   * @param pExpireAfterAccess the duration
+   */
+  public void setExpireAfterAccess(Duration pExpireAfterAccess) {
+    mExpireAfterAccess = requirePositive("expire-after-access", pExpireAfterAccess);
+  }
+
+  /**
+   * Gets how long negative (null or not found) results live
+   *
+   * @return the duration or null if they use the expire-after-write
+   */
+  public @Nullable Duration getNegativeTtl() {
+    return mNegativeTtl;
+  }
+
+  /**
+   * Sets how long negative (null or not found) results live. This is usually much shorter than the expire-after-write,
+   * so that lookups of missing data don't stay pinned in the cache.
+   *
+   * @param pNegativeTtl the duration
+   */
+  public void setNegativeTtl(Duration pNegativeTtl) {
+    mNegativeTtl = requirePositive("negative-ttl", pNegativeTtl);
+  }
+
+  /**
+   * Gets the upper bound on how long any entry lives
+   *
+   * @return the duration or null if there is no bound
+   */
+  public @Nullable Duration getMaxTtl() {
+    return mMaxTtl;
+  }
+
+  /**
+   * Sets the upper bound on how long any entry lives, including entries with an explicit expiry
+   *
+   * @param pMaxTtl the duration
+   */
+  public void setMaxTtl(Duration pMaxTtl) {
+    mMaxTtl = requirePositive("max-ttl", pMaxTtl);
+  }
+
+  /**
+   * Gets whether invalidating a key on this path only bumps its generation, leaving the dependent entries to be found
+   * stale when they're next read
+   *
+   * @return true if lazy, false if dependents are removed eagerly, or null if not configured
+   */
+  public @Nullable Boolean getLazyInvalidation() {
+    return mLazyInvalidation;
+  }
+
+  /**
+   * Sets whether invalidating a key on this path only bumps its generation instead of removing every dependent entry.
+   * This makes invalidating a key with a huge number of dependents a constant time operation, at the cost of a
+   * generation check when a dependent is read.
+   *
+   * @param pLazyInvalidation true if lazy
+   */
+  public void setLazyInvalidation(boolean pLazyInvalidation) {
+    mLazyInvalidation = pLazyInvalidation;
+  }
+
+  /**
+   * Gets the maximum number of loads that run at the same time for keys on this path
+   *
+   * @return the limit or null if unlimited
+   */
+  public @Nullable Integer getMaxConcurrentLoads() {
+    return mMaxConcurrentLoads;
+  }
+
+  /**
+   * Sets the maximum number of loads that run at the same time for keys on this path. This acts as a bulkhead, so that
+   * a slow backend only ties up this many threads rather than every thread that reads from it.
+   *
+   * @param pMaxConcurrentLoads the limit, which must be positive
+   */
+  public void setMaxConcurrentLoads(int pMaxConcurrentLoads) {
+    if (pMaxConcurrentLoads <= 0) {
+      throw new IllegalArgumentException(
+        "The max-concurrent-loads for " + mName + " must be positive, but was " + pMaxConcurrentLoads);
+    }
+    mMaxConcurrentLoads = pMaxConcurrentLoads;
+  }
+
+  /**
+   * Gets the maximum number of loads that wait for a slot once the max-concurrent-loads is reached
+   *
+   * @return the limit or null if unlimited
+   */
+  public @Nullable Integer getMaxQueuedLoads() {
+    return mMaxQueuedLoads;
+  }
+
+  /**
+   * Sets the maximum number of loads that wait for a slot once the max-concurrent-loads is reached. Any further loads
+   * are shed according to the overload-policy.
+   *
+   * @param pMaxQueuedLoads the limit, which may be zero to never wait
+   */
+  public void setMaxQueuedLoads(int pMaxQueuedLoads) {
+    if (pMaxQueuedLoads < 0) {
+      throw new IllegalArgumentException(
+        "The max-queued-loads for " + mName + " must not be negative, but was " + pMaxQueuedLoads);
+    }
+    mMaxQueuedLoads = pMaxQueuedLoads;
+  }
+
+  /**
+   * Gets how long a lookup waits for a load on this path before it's shed
+   *
+   * @return the duration or null if it waits indefinitely
+   */
+  public @Nullable Duration getLoadTimeout() {
+    return mLoadTimeout;
+  }
+
+  /**
+   * Sets how long a lookup waits for a load on this path, whether for a slot or for another thread loading the same
+   * key, before it's shed according to the overload-policy. A single deadline covers all the waits. It only bounds the
+   * waiting: once a synchronous lookup has a slot, the loader runs to completion however long it takes.
+   *
+   * @param pLoadTimeout the duration
+   */
+  public void setLoadTimeout(Duration pLoadTimeout) {
+    mLoadTimeout = requirePositive("load-timeout", pLoadTimeout);
+  }
+
+  /**
+   * Gets what a lookup does when its load is shed
+   *
+   * @return the policy or null if not configured
+   */
+  public @Nullable OverloadPolicy getOverloadPolicy() {
+    return mOverloadPolicy;
+  }
+
+  /**
+   * Sets what a lookup does when its load is shed
+   *
+   * @param pOverloadPolicy the policy
+   */
+  public void setOverloadPolicy(OverloadPolicy pOverloadPolicy) {
+    mOverloadPolicy = pOverloadPolicy;
+  }
+
+  /**
+   * Gets whether settings that aren't configured on this path are inherited from the nearest configured parent path
+   *
+   * @return true if inherited
+   */
+  public boolean isInheritPolicy() {
+    return mInheritPolicy;
+  }
+
+  /**
+   * Sets whether settings that aren't configured on this path are inherited from the nearest configured parent path
+   *
+   * @param pInheritPolicy true if inherited
+   */
+  public void setInheritPolicy(boolean pInheritPolicy) {
+    mInheritPolicy = pInheritPolicy;
+  }
+
+  private Duration requirePositive(String pSetting, Duration pDuration) {
+    if (pDuration.isNegative() || pDuration.isZero()) {
+      throw new IllegalArgumentException(
+        "The " + pSetting + " for " + mName + " must be positive, but was " + pDuration);
+    }
+    return pDuration;
+  }
+
+}
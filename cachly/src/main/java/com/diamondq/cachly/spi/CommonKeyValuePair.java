@@ -11,6 +11,8 @@ public class CommonKeyValuePair<CACHE, SER_KEY> {
 
   public final @Nullable Duration expiresIn;
 
+  public final @Nullable Duration expiresAfterAccess;
+
   public final @Nullable Key<? extends @Nullable Object> key;
 
   public final SER_KEY serKey;
@@ -19,11 +21,17 @@ public class CommonKeyValuePair<CACHE, SER_KEY> {
 
   public CommonKeyValuePair(CACHE pCache, SER_KEY pSerKey, @Nullable Key<? extends @Nullable Object> pKey,
     @Nullable Object pSerValue, @Nullable Duration pExpiresIn) {
+    this(pCache, pSerKey, pKey, pSerValue, pExpiresIn, null);
+  }
+
+  public CommonKeyValuePair(CACHE pCache, SER_KEY pSerKey, @Nullable Key<? extends @Nullable Object> pKey,
+    @Nullable Object pSerValue, @Nullable Duration pExpiresIn, @Nullable Duration pExpiresAfterAccess) {
     cache = pCache;
     serKey = pSerKey;
     key = pKey;
     serValue = pSerValue;
     expiresIn = pExpiresIn;
+    expiresAfterAccess = pExpiresAfterAccess;
   }
 
 }
\ No newline at end of file
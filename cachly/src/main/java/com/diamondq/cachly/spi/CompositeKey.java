@@ -26,6 +26,11 @@ public class CompositeKey<O extends @Nullable Object> implements KeySPI<O> {
 
   private final boolean mHasPlaceholders;
 
+  /**
+   * The lazily computed identity, since the parts never change
+   */
+  private volatile @Nullable KeyIdentity mIdentity;
+
   /**
    * A constructor that takes a string (that may have / separator characters)
    *
@@ -153,9 +158,26 @@ public class CompositeKey<O extends @Nullable Object> implements KeySPI<O> {
 
   @Override
   public String getFullBaseKey() {
+    return getIdentity().getFullBaseKey();
+  }
+
+  @Override
+  public KeyIdentity getIdentity() {
+    KeyIdentity identity = mIdentity;
+    if (identity == null) {
+      identity = new KeyIdentity(joinParts(false),
+        joinParts(true),
+        Objects.hash(Arrays.hashCode(mParts), mHasPlaceholders)
+      );
+      mIdentity = identity;
+    }
+    return identity;
+  }
+
+  private String joinParts(boolean pBaseKeys) {
     StringBuilder sb = new StringBuilder();
-    for (KeySPI<?> part : mParts) {
-      sb.append(part.getBaseKey());
+    for (KeySPI<? extends @Nullable Object> part : mParts) {
+      sb.append(pBaseKeys ? part.getBaseKey() : part.getKey());
       //noinspection HardcodedFileSeparator
       sb.append("/");
     }
@@ -180,6 +202,11 @@ public class CompositeKey<O extends @Nullable Object> implements KeySPI<O> {
     return mLast.getLoader();
   }
 
+  @Override
+  public PathPolicy getPathPolicy() {
+    return mLast.getPathPolicy();
+  }
+
   @Override
   public @Nullable KeySPI<@Nullable Object> getPreviousKey() {
     if (mPartsLen == 1) return null;
@@ -210,9 +237,10 @@ public class CompositeKey<O extends @Nullable Object> implements KeySPI<O> {
 
   @Override
   public boolean hasKeyDetails() {
-    for (KeySPI<? extends @Nullable Object> part : mParts)
-      if (!part.hasKeyDetails()) return false;
-    return true;
+
+    /* All the details come from the last part. Earlier parts legitimately have none when there is no loader for them */
+
+    return mLast.hasKeyDetails();
   }
 
   @Override
@@ -227,21 +255,12 @@ public class CompositeKey<O extends @Nullable Object> implements KeySPI<O> {
 
   @Override
   public String toString() {
-    StringBuilder sb = new StringBuilder();
-    for (KeySPI<? extends @Nullable Object> part : mParts) {
-      sb.append(part.getKey());
-      //noinspection HardcodedFileSeparator
-      sb.append("/");
-    }
-    var len = sb.length();
-    if (len == 0) throw new IllegalStateException("CompositeKey cannot be created with no parts");
-    sb.setLength(len - 1);
-    return sb.toString();
+    return getIdentity().getFullKey();
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(Arrays.hashCode(mParts), mHasPlaceholders);
+    return getIdentity().getHash();
   }
 
   @Override
@@ -250,6 +269,7 @@ public class CompositeKey<O extends @Nullable Object> implements KeySPI<O> {
     if (pObj == null) return false;
     if (pObj.getClass() != CompositeKey.class) return false;
     @SuppressWarnings("unchecked") CompositeKey<O> other = (CompositeKey<O>) pObj;
+    if (hashCode() != other.hashCode()) return false;
     return Arrays.equals(mParts, other.mParts) && Objects.equals(mHasPlaceholders, other.mHasPlaceholders);
   }
 }
\ No newline at end of file
@@ -13,12 +13,17 @@ public class KeyDetails<O extends @Nullable Object> {
 
   private final CacheLoader<O> mLoader;
 
+  private final PathPolicy mPathPolicy;
+
+  private volatile boolean mStale;
+
   public KeyDetails(CacheStorage pLastStorage, String pLastSerializerName, boolean pSupportsNull,
-    CacheLoader<O> pLoader) {
+    CacheLoader<O> pLoader, PathPolicy pPathPolicy) {
     mLastStorage = pLastStorage;
     mLastSerializerName = pLastSerializerName;
     mSupportsNull = pSupportsNull;
     mLoader = pLoader;
+    mPathPolicy = pPathPolicy;
   }
 
   public CacheStorage getLastStorage() {
@@ -37,4 +42,24 @@ public class KeyDetails<O extends @Nullable Object> {
     return mLoader;
   }
 
+  public PathPolicy getPathPolicy() {
+    return mPathPolicy;
+  }
+
+  /**
+   * Returns whether the configuration these details were built from has since changed, and the key must be set up again
+   *
+   * @return true if stale
+   */
+  public boolean isStale() {
+    return mStale;
+  }
+
+  /**
+   * Marks these details as stale
+   */
+  public void markStale() {
+    mStale = true;
+  }
+
 }
@@ -0,0 +1,84 @@
+package com.diamondq.cachly.spi;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.function.Function;
+
+/**
+ * The immutable identity of a key: its full string, its full base key and its hash. It's computed once per key, so
+ * that the hot paths (lookups, locks, dependency maps, storage keys) don't rebuild the strings on every call. It also
+ * holds the serialized key of the last storage that asked for it.
+ */
+public final class KeyIdentity {
+
+  private record SerializedKey(Object owner, Object serKey) {
+  }
+
+  private final String mFullKey;
+
+  private final String mFullBaseKey;
+
+  private final int mHash;
+
+  private volatile @Nullable SerializedKey mSerializedKey;
+
+  /**
+   * Primary constructor
+   *
+   * @param pFullKey the full key string
+   * @param pFullBaseKey the full base key string
+   * @param pHash the hash of the key
+   */
+  public KeyIdentity(String pFullKey, String pFullBaseKey, int pHash) {
+    mFullKey = pFullKey;
+    mFullBaseKey = pFullBaseKey;
+    mHash = pHash;
+  }
+
+  /**
+   * Returns the full key string
+   *
+   * @return the string
+   */
+  public String getFullKey() {
+    return mFullKey;
+  }
+
+  /**
+   * Returns the full base key string
+   *
+   * @return the string
+   */
+  public String getFullBaseKey() {
+    return mFullBaseKey;
+  }
+
+  /**
+   * Returns the hash of the key
+   *
+   * @return the hash
+   */
+  public int getHash() {
+    return mHash;
+  }
+
+  /**
+   * Returns the serialized key for a given storage. It's only calculated if a different storage asked for it last.
+   *
+   * @param pOwner the storage the serialized key belongs to
+   * @param pSerializer the function to serialize the full key for that storage
+   * @param <SER_KEY> the serialized key type
+   * @return the serialized key
+   */
+  public <SER_KEY> SER_KEY getSerializedKey(Object pOwner, Function<String, SER_KEY> pSerializer) {
+    SerializedKey cached = mSerializedKey;
+    if ((cached != null) && (cached.owner == pOwner)) {
+      @SuppressWarnings("unchecked") SER_KEY serKey = (SER_KEY) cached.serKey;
+      return serKey;
+    }
+    SER_KEY serKey = pSerializer.apply(mFullKey);
+    mSerializedKey = new SerializedKey(pOwner, serKey);
+    return serKey;
+  }
+
+}
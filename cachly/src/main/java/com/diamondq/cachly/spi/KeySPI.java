@@ -41,6 +41,13 @@ public interface KeySPI<O extends @Nullable Object> extends Key<O> {
    */
   CacheLoader<O> getLoader();
 
+  /**
+   * Returns the policy of the path that covers this key
+   *
+   * @return the path policy
+   */
+  PathPolicy getPathPolicy();
+
   /**
    * Associate the key details with this key
    *
@@ -76,4 +83,12 @@ public interface KeySPI<O extends @Nullable Object> extends Key<O> {
    */
   boolean hasPlaceholders();
 
+  /**
+   * Returns the identity (full key string, full base key, hash and serialized key) of this key. It's computed once and
+   * then reused.
+   *
+   * @return the identity
+   */
+  KeyIdentity getIdentity();
+
 }
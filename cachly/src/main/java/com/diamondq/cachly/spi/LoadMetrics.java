@@ -0,0 +1,12 @@
+package com.diamondq.cachly.spi;
+
+/**
+ * A snapshot of the load limits of a path
+ *
+ * @param activeLoads the number of loads currently running
+ * @param queuedLoads the number of loads currently waiting for a slot
+ * @param rejectedLoads the number of loads shed since the queue was full
+ * @param timedOutLoads the number of loads shed since they waited longer than the load timeout
+ */
+public record LoadMetrics(int activeLoads, int queuedLoads, long rejectedLoads, long timedOutLoads) {
+}
@@ -136,12 +136,36 @@ public class OSGiEngineSetup {
       }
     );
     accessTracker.open();
+    ServiceTracker<StreamingSerializer, StreamingSerializer> serializerTracker = new ServiceTracker<>(pContext,
+      StreamingSerializer.class,
+      new ServiceTrackerCustomizer<>() {
+
+        @Override
+        public StreamingSerializer addingService(ServiceReference<StreamingSerializer> reference) {
+          var service = pContext.getService(reference);
+          if (service != null) pEngine.addStreamingSerializer(service);
+          return service;
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<StreamingSerializer> reference, StreamingSerializer service) {
+          // Nothing to do
+        }
+
+        @Override
+        public void removedService(ServiceReference<StreamingSerializer> reference, StreamingSerializer service) {
+          pEngine.removeStreamingSerializer(service);
+        }
+      }
+    );
+    serializerTracker.open();
     return () -> {
       pathTracker.close();
       loaderTracker.close();
       storageTracker.close();
       nameTracker.close();
       accessTracker.close();
+      serializerTracker.close();
     };
   }
 }
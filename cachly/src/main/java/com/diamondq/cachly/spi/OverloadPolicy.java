@@ -0,0 +1,24 @@
+package com.diamondq.cachly.spi;
+
+/**
+ * What a lookup does when the load it needs is shed, because the path's loads are at their concurrency and queue
+ * limits, or because it waited longer than the path's load timeout
+ */
+public enum OverloadPolicy {
+
+  /**
+   * Fail with a {@link com.diamondq.cachly.CacheOverloadedException}
+   */
+  FAIL_FAST,
+
+  /**
+   * Serve the stored entry as stale, if it's within its stale-while-revalidate grace window, failing fast otherwise
+   */
+  SERVE_STALE,
+
+  /**
+   * Return the result as getIfPresent would, which is not found since the entry isn't in the storage
+   */
+  IF_PRESENT
+
+}
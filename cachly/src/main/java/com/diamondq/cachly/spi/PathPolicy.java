@@ -0,0 +1,292 @@
+package com.diamondq.cachly.spi;
+
+import com.diamondq.cachly.CacheResult;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+
+/**
+ * The immutable set of behaviours that apply to all keys under a configured path. It's built from a
+ * {@link CachlyPathConfiguration}, and carried on each key through the {@link KeyDetails}.
+ */
+public final class PathPolicy {
+
+  /**
+   * The policy used for paths that don't have any configuration
+   */
+  public static final PathPolicy DEFAULT = new PathPolicy(null,
+    null,
+    null,
+    null,
+    null,
+    null,
+    null,
+    null,
+    null,
+    null,
+    null,
+    null,
+    false
+  );
+
+  private final @Nullable String mPath;
+
+  private final @Nullable Double mRefreshAheadFactor;
+
+  private final @Nullable Duration mStaleWhileRevalidate;
+
+  private final @Nullable Duration mExpireAfterWrite;
+
+  private final @Nullable Duration mExpireAfterAccess;
+
+  private final @Nullable Duration mNegativeTtl;
+
+  private final @Nullable Duration mMaxTtl;
+
+  private final @Nullable Boolean mLazyInvalidation;
+
+  private final @Nullable Integer mMaxConcurrentLoads;
+
+  private final @Nullable Integer mMaxQueuedLoads;
+
+  private final @Nullable Duration mLoadTimeout;
+
+  private final @Nullable OverloadPolicy mOverloadPolicy;
+
+  private final boolean mInheritPolicy;
+
+  private PathPolicy(@Nullable String pPath, @Nullable Double pRefreshAheadFactor,
+    @Nullable Duration pStaleWhileRevalidate, @Nullable Duration pExpireAfterWrite,
+    @Nullable Duration pExpireAfterAccess, @Nullable Duration pNegativeTtl, @Nullable Duration pMaxTtl,
+    @Nullable Boolean pLazyInvalidation, @Nullable Integer pMaxConcurrentLoads, @Nullable Integer pMaxQueuedLoads,
+    @Nullable Duration pLoadTimeout, @Nullable OverloadPolicy pOverloadPolicy, boolean pInheritPolicy) {
+    mPath = pPath;
+    mRefreshAheadFactor = pRefreshAheadFactor;
+    mStaleWhileRevalidate = pStaleWhileRevalidate;
+    mExpireAfterWrite = pExpireAfterWrite;
+    mExpireAfterAccess = pExpireAfterAccess;
+    mNegativeTtl = pNegativeTtl;
+    mMaxTtl = pMaxTtl;
+    mLazyInvalidation = pLazyInvalidation;
+    mMaxConcurrentLoads = pMaxConcurrentLoads;
+    mMaxQueuedLoads = pMaxQueuedLoads;
+    mLoadTimeout = pLoadTimeout;
+    mOverloadPolicy = pOverloadPolicy;
+    mInheritPolicy = pInheritPolicy;
+  }
+
+  /**
+   * Builds the policy from the path configuration
+   *
+   * @param pConfig the path configuration
+   * @return the policy
+   */
+  public static PathPolicy of(CachlyPathConfiguration pConfig) {
+    return new PathPolicy(pConfig.getName(),
+      pConfig.getRefreshAheadFactor(),
+      pConfig.getStaleWhileRevalidate(),
+      pConfig.getExpireAfterWrite(),
+      pConfig.getExpireAfterAccess(),
+      pConfig.getNegativeTtl(),
+      pConfig.getMaxTtl(),
+      pConfig.getLazyInvalidation(),
+      pConfig.getMaxConcurrentLoads(),
+      pConfig.getMaxQueuedLoads(),
+      pConfig.getLoadTimeout(),
+      pConfig.getOverloadPolicy(),
+      pConfig.isInheritPolicy()
+    );
+  }
+
+  /**
+   * Returns the configured path that this policy was built for. Keys below it that have no configuration of their own
+   * share the same policy.
+   *
+   * @return the path or null for the default policy
+   */
+  public @Nullable String getPath() {
+    return mPath;
+  }
+
+  /**
+   * Returns whether settings that aren't configured on this path should be taken from the nearest parent path
+   *
+   * @return true if the parent's policy is inherited
+   */
+  public boolean isInheritPolicy() {
+    return mInheritPolicy;
+  }
+
+  /**
+   * Returns a new policy where every setting that isn't configured on this path is taken from the parent
+   *
+   * @param pParent the parent's (already resolved) policy
+   * @return the merged policy
+   */
+  public PathPolicy inheritFrom(PathPolicy pParent) {
+    return new PathPolicy(mPath,
+      mRefreshAheadFactor != null ? mRefreshAheadFactor : pParent.mRefreshAheadFactor,
+      mStaleWhileRevalidate != null ? mStaleWhileRevalidate : pParent.mStaleWhileRevalidate,
+      mExpireAfterWrite != null ? mExpireAfterWrite : pParent.mExpireAfterWrite,
+      mExpireAfterAccess != null ? mExpireAfterAccess : pParent.mExpireAfterAccess,
+      mNegativeTtl != null ? mNegativeTtl : pParent.mNegativeTtl,
+      mMaxTtl != null ? mMaxTtl : pParent.mMaxTtl,
+      mLazyInvalidation != null ? mLazyInvalidation : pParent.mLazyInvalidation,
+      mMaxConcurrentLoads != null ? mMaxConcurrentLoads : pParent.mMaxConcurrentLoads,
+      mMaxQueuedLoads != null ? mMaxQueuedLoads : pParent.mMaxQueuedLoads,
+      mLoadTimeout != null ? mLoadTimeout : pParent.mLoadTimeout,
+      mOverloadPolicy != null ? mOverloadPolicy : pParent.mOverloadPolicy,
+      mInheritPolicy
+    );
+  }
+
+  /**
+   * Returns the fraction of an entry's expiry after which a hot entry is reloaded in the background
+   *
+   * @return the factor (0 if refresh-ahead is disabled)
+   */
+  public double getRefreshAheadFactor() {
+    return mRefreshAheadFactor == null ? 0.0 : mRefreshAheadFactor;
+  }
+
+  /**
+   * Returns whether refresh-ahead is enabled
+   *
+   * @return true if enabled
+   */
+  public boolean isRefreshAhead() {
+    return (mRefreshAheadFactor != null) && (mRefreshAheadFactor > 0.0);
+  }
+
+  /**
+   * Returns the grace window during which the previous value of an expired or dependency-invalidated entry is served
+   * while it's reloaded
+   *
+   * @return the grace window or null if stale-while-revalidate is disabled
+   */
+  public @Nullable Duration getStaleWhileRevalidate() {
+    return mStaleWhileRevalidate;
+  }
+
+  /**
+   * Returns how long an entry lives after being written, unless the result overrides it
+   *
+   * @return the duration or null if entries don't expire
+   */
+  public @Nullable Duration getExpireAfterWrite() {
+    return mExpireAfterWrite;
+  }
+
+  /**
+   * Returns how long an entry lives after it was last read or written
+   *
+   * @return the duration or null if entries don't expire on idle
+   */
+  public @Nullable Duration getExpireAfterAccess() {
+    return mExpireAfterAccess;
+  }
+
+  /**
+   * Returns how long a negative (null or not found) result lives, unless the result overrides it
+   *
+   * @return the duration or null if negative results use the expire-after-write
+   */
+  public @Nullable Duration getNegativeTtl() {
+    return mNegativeTtl;
+  }
+
+  /**
+   * Returns the upper bound on how long any entry lives, including ones with an override expiry
+   *
+   * @return the duration or null if there is no bound
+   */
+  public @Nullable Duration getMaxTtl() {
+    return mMaxTtl;
+  }
+
+  /**
+   * Returns whether invalidating a key only bumps its generation, leaving its dependents to be found stale on their next
+   * read, rather than removing them all
+   *
+   * @return true if lazy
+   */
+  public boolean isLazyInvalidation() {
+    return Boolean.TRUE.equals(mLazyInvalidation);
+  }
+
+  /**
+   * Returns whether any load limits are configured, and so whether loads on this path go through a bulkhead
+   *
+   * @return true if limited
+   */
+  public boolean hasLoadLimits() {
+    return (mMaxConcurrentLoads != null) || (mLoadTimeout != null);
+  }
+
+  /**
+   * Returns the maximum number of loads that run at the same time
+   *
+   * @return the limit or null if unlimited
+   */
+  public @Nullable Integer getMaxConcurrentLoads() {
+    return mMaxConcurrentLoads;
+  }
+
+  /**
+   * Returns the maximum number of loads that wait for a slot once the concurrency limit is reached
+   *
+   * @return the limit (Integer.MAX_VALUE if unlimited)
+   */
+  public int getMaxQueuedLoads() {
+    return mMaxQueuedLoads == null ? Integer.MAX_VALUE : mMaxQueuedLoads;
+  }
+
+  /**
+   * Returns how long a lookup waits for a load before it's shed. This bounds the wait on another caller's load of the
+   * same key, for the key's load lock and for a slot together, but not a synchronous loader call itself.
+   *
+   * @return the duration or null if it waits indefinitely
+   */
+  public @Nullable Duration getLoadTimeout() {
+    return mLoadTimeout;
+  }
+
+  /**
+   * Returns what a lookup does when its load is shed
+   *
+   * @return the policy (FAIL_FAST if not configured)
+   */
+  public OverloadPolicy getOverloadPolicy() {
+    return mOverloadPolicy == null ? OverloadPolicy.FAIL_FAST : mOverloadPolicy;
+  }
+
+  /**
+   * Calculates how long a result lives after being written. The result's override expiry wins over the path's
+   * negative-ttl (for null or not found results) and expire-after-write, and everything is capped by the max-ttl.
+   *
+   * @param pResult the result being written
+   * @return the duration or null if the result doesn't expire
+   */
+  public @Nullable Duration getWriteExpiry(CacheResult<?> pResult) {
+    Duration expiry = pResult.getOverrideExpiry();
+    if ((expiry == null) && ((!pResult.entryFound()) || (pResult.isNull()))) expiry = mNegativeTtl;
+    if (expiry == null) expiry = mExpireAfterWrite;
+    if ((mMaxTtl != null) && ((expiry == null) || (expiry.compareTo(mMaxTtl) > 0))) expiry = mMaxTtl;
+    return expiry;
+  }
+
+  /**
+   * Calculates how long a result is kept in the storage after being written. On a stale-while-revalidate path, a found
+   * entry that expires is kept for the grace window on top of its expiry, so that it can still be served while it's
+   * reloaded.
+   *
+   * @param pResult the result being written
+   * @return the duration or null if the result isn't removed from the storage
+   */
+  public @Nullable Duration getStorageExpiry(CacheResult<?> pResult) {
+    Duration expiry = getWriteExpiry(pResult);
+    if ((expiry == null) || (mStaleWhileRevalidate == null) || (!pResult.entryFound())) return expiry;
+    return expiry.plus(mStaleWhileRevalidate);
+  }
+
+}
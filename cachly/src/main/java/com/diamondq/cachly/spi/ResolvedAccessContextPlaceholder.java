@@ -15,6 +15,8 @@ public class ResolvedAccessContextPlaceholder<O extends @Nullable Object> implem
 
   private final KeySPI<@Nullable Object>[] mParts;
 
+  private volatile @Nullable KeyIdentity mIdentity;
+
   public ResolvedAccessContextPlaceholder(KeySPI<O> pPlaceholder, String pKey) {
     mPlaceholder = pPlaceholder;
     mKey = pKey;
@@ -76,6 +78,11 @@ public class ResolvedAccessContextPlaceholder<O extends @Nullable Object> implem
     return mPlaceholder.getLoader();
   }
 
+  @Override
+  public PathPolicy getPathPolicy() {
+    return mPlaceholder.getPathPolicy();
+  }
+
   @Override
   public KeySPI<@Nullable Object>[] getParts() {
     return mParts;
@@ -113,6 +120,16 @@ public class ResolvedAccessContextPlaceholder<O extends @Nullable Object> implem
     return mPlaceholder;
   }
 
+  @Override
+  public KeyIdentity getIdentity() {
+    KeyIdentity identity = mIdentity;
+    if (identity == null) {
+      identity = new KeyIdentity(mKey, mKey, hashCode());
+      mIdentity = identity;
+    }
+    return identity;
+  }
+
   @Override
   public String toString() {
     return mKey;
@@ -15,6 +15,8 @@ public class ResolvedKeyPlaceholder<O extends @Nullable Object> implements KeySP
 
   private final KeySPI<@Nullable Object>[] mParts;
 
+  private volatile @Nullable KeyIdentity mIdentity;
+
   public ResolvedKeyPlaceholder(KeySPI<O> pPlaceholder, String pKey) {
     mPlaceholder = pPlaceholder;
     mKey = pKey;
@@ -76,6 +78,11 @@ public class ResolvedKeyPlaceholder<O extends @Nullable Object> implements KeySP
     return mPlaceholder.getLoader();
   }
 
+  @Override
+  public PathPolicy getPathPolicy() {
+    return mPlaceholder.getPathPolicy();
+  }
+
   @Override
   public KeySPI<@Nullable Object>[] getParts() {
     return mParts;
@@ -109,6 +116,16 @@ public class ResolvedKeyPlaceholder<O extends @Nullable Object> implements KeySP
     mPlaceholder.storeKeyDetails(pDetails);
   }
 
+  @Override
+  public KeyIdentity getIdentity() {
+    KeyIdentity identity = mIdentity;
+    if (identity == null) {
+      identity = new KeyIdentity(mKey, mKey, hashCode());
+      mIdentity = identity;
+    }
+    return identity;
+  }
+
   @Override
   public String toString() {
     return mKey;
@@ -4,6 +4,9 @@ import com.diamondq.cachly.CacheResult;
 import org.jspecify.annotations.Nullable;
 
 import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class StaticCacheResult<V extends @Nullable Object> implements CacheResult<V> {
 
@@ -15,6 +18,8 @@ public class StaticCacheResult<V extends @Nullable Object> implements CacheResul
 
   private boolean mFound;
 
+  private @Nullable Set<String> mTags;
+
   public StaticCacheResult() {
     mValue = null;
     mFound = false;
@@ -74,4 +79,22 @@ public class StaticCacheResult<V extends @Nullable Object> implements CacheResul
   public boolean isNull() {
     return mValue == null;
   }
+
+  @Override
+  public CacheResult<V> addTag(String pTag) {
+    Set<String> tags = mTags;
+    if (tags == null) {
+      tags = new LinkedHashSet<>();
+      mTags = tags;
+    }
+    tags.add(pTag);
+    return this;
+  }
+
+  @Override
+  public Set<String> getTags() {
+    Set<String> tags = mTags;
+    if (tags == null) return Collections.emptySet();
+    return Collections.unmodifiableSet(tags);
+  }
 }
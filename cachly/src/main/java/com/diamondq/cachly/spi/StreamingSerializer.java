@@ -0,0 +1,42 @@
+package com.diamondq.cachly.spi;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+/**
+ * A serializer that writes a value straight into the array that a serializing storage will keep, so that an entry is
+ * built with a single copy of the value rather than one for the value and another for the header plus the value. It's
+ * looked up by the serializer name of a path, and a path whose serializer has none falls back to the ByteBuffer
+ * converters of the ConverterManager.
+ * <p>
+ * Since either path may read an entry that the other wrote, the bytes of a value must be the same as the ones the
+ * serializer's converters produce.
+ */
+public interface StreamingSerializer {
+
+  /**
+   * Returns the name of the serializer, as it's given in a path configuration
+   *
+   * @return the name
+   */
+  String getName();
+
+  /**
+   * Serializes a value, leaving room in front of it for the header of the entry
+   *
+   * @param pValue the value
+   * @param pHeaderSize the number of bytes to leave for the header
+   * @return an array holding exactly the header room followed by the value. The header room is left for the caller to
+   *   fill in, and may hold anything.
+   */
+  byte[] serialize(Object pValue, int pHeaderSize);
+
+  /**
+   * Deserializes a value from the remaining bytes of a buffer. The backing array is read in place, without copying it.
+   *
+   * @param pBuffer the buffer, positioned at the value
+   * @param pType the type of the value
+   * @return the value
+   */
+  Object deserialize(ByteBuffer pBuffer, Type pType);
+}